@@ -0,0 +1,35 @@
+/**
+ *
+ */
+package vtc;
+
+/**
+ * @author markebbert
+ *
+ *	Thrown instead of exiting the JVM when a tool gives up on a job run in
+ *	a session that does not own the JVM (see VTCSession.setExitOnError).
+ *	Like ThreadDeath, this is an Error so the tools' catch-all handlers for
+ *	Exception let it through to whoever ran the job.
+ */
+public class JobExitException extends Error {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = 3172649925080533128L;
+
+	private int status;
+
+	public JobExitException(int status){
+		super("Job exited with status " + status);
+		this.status = status;
+	}
+
+	/**
+	 * The status the tool would have exited the JVM with
+	 * @return
+	 */
+	public int getStatus(){
+		return this.status;
+	}
+}
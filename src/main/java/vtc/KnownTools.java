@@ -16,6 +16,25 @@ public enum KnownTools {
 			new ArrayList<String>(Arrays.asList(new String[]{"SO", "SetOperator"}))),
     VAR_STATS("VarStats", "VS", "Perform various statistical analyses",
             new ArrayList<String>(Arrays.asList(new String[]{"VS", "VarStats"}))),
+    SITE_CATALOG("SiteCatalog", "SC", "Keep a persistent catalog of variant sites and perform" +
+    		" site-level set operations on it",
+    		new ArrayList<String>(Arrays.asList(new String[]{"SC", "SiteCatalog"}))),
+    SIMILARITY_MATRIX("SimilarityMatrix", "SM", "Estimate pairwise similarity between many" +
+    		" variant sets from sketches",
+    		new ArrayList<String>(Arrays.asList(new String[]{"SM", "SimilarityMatrix"}))),
+    SHARD("Shard", "SH", "Split a SetOperator or VarStats job into shards run as separate" +
+    		" processes",
+    		new ArrayList<String>(Arrays.asList(new String[]{"SH", "Shard"}))),
+    REGION_QUERY("RegionQuery", "RQ", "Answer queries for the variants in a region over HTTP," +
+    		" from VCFs kept in memory",
+    		new ArrayList<String>(Arrays.asList(new String[]{"RQ", "RegionQuery"}))),
+    BATCH("Batch", "BA", "Run a manifest of jobs in one JVM, reading shared input files once",
+    		new ArrayList<String>(Arrays.asList(new String[]{"BA", "Batch"}))),
+    DAEMON("Daemon", "DM", "Keep VTC running with input files in memory, and run the jobs" +
+    		" submitted to it",
+    		new ArrayList<String>(Arrays.asList(new String[]{"DM", "Daemon"}))),
+    SUBMIT("Submit", "SU", "Run a job on a running Daemon",
+    		new ArrayList<String>(Arrays.asList(new String[]{"SU", "Submit"}))),
     ARUP_FREQUENCY_CALCULATOR("ARUPFrequencyCalculator", "AFC", "Navigate ARUP result directories " +
 			"and calculate test-specific variant frequencies",
 			new ArrayList<String>(Arrays.asList(new String[]{"AFC", "ARUPFrequencyCalculator"})));
@@ -10,7 +10,15 @@ import net.sourceforge.argparse4j.inf.Namespace;
 
 import org.apache.log4j.Logger;
 
+import vtc.tools.batch.BatchEngine;
+import vtc.tools.daemon.DaemonEngine;
+import vtc.tools.daemon.SubmitEngine;
+import vtc.tools.query.QueryEngine;
 import vtc.tools.setoperator.SetOperatorEngine;
+import vtc.tools.shard.ShardEngine;
+import vtc.tools.similarity.SimilarityEngine;
+import vtc.tools.sitecatalog.SiteCatalogEngine;
+import vtc.tools.utilitybelt.UtilityBelt;
 import vtc.tools.varstats.VarStatsEngine;
 
 /**
@@ -20,7 +28,6 @@ import vtc.tools.varstats.VarStatsEngine;
 public class VTCEngine implements Engine{
 	
 	private static Logger logger = Logger.getLogger(VTCEngine.class);
-	private static ArgumentParser parser;
 	
 	public VTCEngine(){
 		return;
@@ -30,16 +37,27 @@ public class VTCEngine implements Engine{
 	 * @param args
 	 */
 	public static void main(String[] args) {
+		run(args, new VTCSession());
+	}
+
+	/**
+	 * Run the tool named by args[0] with the rest of 'args', working in
+	 * 'session'. Processes that run many jobs (e.g., the daemon) call this
+	 * once per job, each with its own session.
+	 * @param args
+	 * @param session
+	 */
+	public static void run(String[] args, VTCSession session) {
 
 		VTCEngine vtc = new VTCEngine();
 		
-		parser = vtc.instantiateArgParser();
+		ArgumentParser parser = vtc.instantiateArgParser();
 		Namespace parsedArgs;
 
 		try {
 			/* args[0] is the argument for VTCEngine specifying the tool to create */
 			if(args.length == 0){
-				printUsageHelpAndExit();
+				printUsageHelpAndExit(parser);
 			}
 			String[] vtcArgs = new String[] {args[0]};
 			
@@ -56,28 +74,70 @@ public class VTCEngine implements Engine{
 				throw new ArgumentParserException("Invalid tool specified: " + toolName, parser);
 			}
 			
-			/* Determine which tool was specified and call it */
-			if(tool == KnownTools.SET_OPERATOR){
-				SetOperatorEngine soe = new SetOperatorEngine(toolArgs);
-				soe.operate();
+			/* Each run gets its own pool IDs and pool defaults */
+			VTCSession previous = VTCSession.enter(session);
+			try{
+				runTool(tool, toolArgs);
+			} finally {
+				VTCSession.exit(previous);
 			}
-			else if(tool == KnownTools.VAR_STATS){
-                VarStatsEngine vse = new VarStatsEngine(toolArgs);
-                vse.doStats();
-            }
-//			else if(tool == KnownTools.ARUP_FREQUENCY_CALCULATOR){
-//				ARUPFrequencyCalculatorEngine afce = new ARUPFrequencyCalculatorEngine(toolArgs);
-//				afce.calculateFrequencies();
-//			}
 			
 		} catch (ArgumentParserException e) {
-			printErrorUsageHelpAndExit(e);
+			printErrorUsageHelpAndExit(parser, e);
 		} catch (Exception e) {
 			logger.error("Caught unexpected exception, something is very wrong!");
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Determine which tool was specified and call it
+	 * @param tool
+	 * @param toolArgs
+	 */
+	private static void runTool(KnownTools tool, String[] toolArgs){
+		if(tool == KnownTools.SET_OPERATOR){
+			SetOperatorEngine soe = new SetOperatorEngine(toolArgs);
+			soe.operate();
+		}
+		else if(tool == KnownTools.VAR_STATS){
+			VarStatsEngine vse = new VarStatsEngine(toolArgs);
+			vse.doStats();
+		}
+		else if(tool == KnownTools.SITE_CATALOG){
+			SiteCatalogEngine sce = new SiteCatalogEngine(toolArgs);
+			sce.catalog();
+		}
+		else if(tool == KnownTools.SIMILARITY_MATRIX){
+			SimilarityEngine sme = new SimilarityEngine(toolArgs);
+			sme.computeSimilarity();
+		}
+		else if(tool == KnownTools.SHARD){
+			ShardEngine she = new ShardEngine(toolArgs);
+			she.shard();
+		}
+		else if(tool == KnownTools.REGION_QUERY){
+			QueryEngine rqe = new QueryEngine(toolArgs);
+			rqe.serve();
+		}
+		else if(tool == KnownTools.BATCH){
+			BatchEngine bae = new BatchEngine(toolArgs);
+			bae.runBatch();
+		}
+		else if(tool == KnownTools.DAEMON){
+			DaemonEngine dme = new DaemonEngine(toolArgs);
+			dme.serve();
+		}
+		else if(tool == KnownTools.SUBMIT){
+			SubmitEngine sue = new SubmitEngine(toolArgs);
+			sue.submit();
+		}
+//		else if(tool == KnownTools.ARUP_FREQUENCY_CALCULATOR){
+//			ARUPFrequencyCalculatorEngine afce = new ARUPFrequencyCalculatorEngine(toolArgs);
+//			afce.calculateFrequencies();
+//		}
+	}
+
 	/**
 	 * Remove element from array 'orig' by copying to a new array without the element
 	 * @param orig
@@ -117,15 +177,15 @@ public class VTCEngine implements Engine{
 		return null;
 	}
 	
-	private static void printErrorUsageHelpAndExit(Exception e){
+	private static void printErrorUsageHelpAndExit(ArgumentParser parser, Exception e){
 		logger.error(e.getMessage());
-		printUsageHelpAndExit();
+		printUsageHelpAndExit(parser);
 	}
 	
-	private static void printUsageHelpAndExit(){
+	private static void printUsageHelpAndExit(ArgumentParser parser){
 		parser.printUsage();
 		parser.printHelp();
-		System.exit(1);		
+		UtilityBelt.exit(1);		
 	}
 	
 	private static String createToolCommandLineToString(){
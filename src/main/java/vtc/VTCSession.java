@@ -0,0 +1,249 @@
+/**
+ *
+ */
+package vtc;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.TreeSet;
+
+import vtc.datastructures.RegionList;
+import vtc.datastructures.SupportedFileType;
+import vtc.datastructures.VariantPoolCache;
+
+/**
+ * @author markebbert
+ *
+ *	The state shared by everything in a single VTC job: the pool and
+ *	operation IDs used so far, and the run-wide defaults for new
+ *	VariantPools (regions, memory budget, compressed records, input
+ *	backends). Each thread
+ *	works in the session it entered, or the default session if it entered
+ *	none, so jobs running in their own sessions in the same JVM never see
+ *	each other's IDs or defaults. Threads inherit the session of the thread
+ *	that created them.
+ */
+public class VTCSession {
+
+	private static final VTCSession defaultSession = new VTCSession();
+	private static final InheritableThreadLocal<VTCSession> currentSession =
+			new InheritableThreadLocal<VTCSession>();
+
+	private ArrayList<String> usedPoolIDs = new ArrayList<String>();
+	private ArrayList<String> generatedPoolIDs = new ArrayList<String>();
+	private TreeSet<String> usedSamplePoolIDs = new TreeSet<String>();
+	private ArrayList<String> usedOperationIDs = new ArrayList<String>();
+	private ArrayList<String> generatedOperationIDs = new ArrayList<String>();
+
+	/* Defaults for every VariantPool created in this session */
+	private RegionList defaultRegions;
+	private long defaultMemoryBudget = 0;
+	private File defaultSpillDir;
+	private boolean defaultCompressedRecords = false;
+	private TreeSet<String> rawLinePoolIDs = new TreeSet<String>();
+	private boolean defaultIndexedPools = false;
+	private String defaultPoolBackend;
+
+	/* Jobs in a session that does not own the JVM end with a
+	 * JobExitException instead of exiting */
+	private boolean exitOnError = true;
+
+	/* Loaded VariantPools shared by the jobs in a long-running process */
+	private VariantPoolCache poolCache;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	public VTCSession(){
+		/* A new session starts with the defaults above and no loaded pools */
+	}
+
+
+
+	/****************************************************
+	 * Current session
+	 */
+
+	/**
+	 * The session entered by this thread, or the default session
+	 * @return
+	 */
+	public static VTCSession current(){
+		VTCSession session = currentSession.get();
+		return session == null ? defaultSession : session;
+	}
+
+	/**
+	 * Work in 'session' on this thread (and threads it creates) until exit
+	 * is called.
+	 * @param session
+	 * @return the session entered before, to pass to exit
+	 */
+	public static VTCSession enter(VTCSession session){
+		VTCSession previous = currentSession.get();
+		currentSession.set(session);
+		return previous;
+	}
+
+	/**
+	 * Return to the session this thread was in before enter
+	 * @param previous the session returned by enter
+	 */
+	public static void exit(VTCSession previous){
+		if(previous == null){
+			currentSession.remove();
+		}
+		else{
+			currentSession.set(previous);
+		}
+	}
+
+
+
+	/****************************************************
+	 * Pool and operation IDs
+	 */
+
+	/**
+	 * Generate a poolID for a file the user did not define one for. IDs are
+	 * numbered in the order they are generated.
+	 * @param fileType
+	 * @return
+	 */
+	public synchronized String generatePoolID(SupportedFileType fileType){
+		String id = fileType.getPoolIDPrefix() + Integer.toString(generatedPoolIDs.size() + 1);
+		generatedPoolIDs.add(id);
+		return id;
+	}
+
+	public synchronized void addPoolID(String poolID){
+		usedPoolIDs.add(poolID);
+	}
+
+	/**
+	 * @return a copy of all VariantPool IDs used in this session
+	 */
+	public synchronized ArrayList<String> getAllPoolIDs(){
+		return new ArrayList<String>(usedPoolIDs);
+	}
+
+	public synchronized void addSamplePoolID(String poolID){
+		usedSamplePoolIDs.add(poolID);
+	}
+
+	/**
+	 * @return a copy of all SamplePool IDs used in this session
+	 */
+	public synchronized TreeSet<String> getAllSamplePoolIDs(){
+		return new TreeSet<String>(usedSamplePoolIDs);
+	}
+
+	/**
+	 * Generate an operation ID if the user didn't provide one. IDs are generated
+	 * as 's1', 's2', etc.
+	 * @return
+	 */
+	public synchronized String generateOperationID(){
+		String id = "s" + Integer.toString(generatedOperationIDs.size() + 1);
+		generatedOperationIDs.add(id);
+		return id;
+	}
+
+	public synchronized void addOperationID(String operID){
+		usedOperationIDs.add(operID);
+	}
+
+
+
+	/****************************************************
+	 * VariantPool defaults
+	 */
+
+	public synchronized RegionList getDefaultRegions(){
+		return defaultRegions;
+	}
+
+	public synchronized void setDefaultRegions(RegionList regions){
+		this.defaultRegions = regions;
+	}
+
+	public synchronized long getDefaultMemoryBudget(){
+		return defaultMemoryBudget;
+	}
+
+	public synchronized File getDefaultSpillDir(){
+		return defaultSpillDir;
+	}
+
+	public synchronized void setDefaultMemoryBudget(long bytes, File spillDir){
+		this.defaultMemoryBudget = bytes;
+		this.defaultSpillDir = spillDir;
+	}
+
+	public synchronized boolean getDefaultCompressedRecords(){
+		return defaultCompressedRecords;
+	}
+
+	public synchronized void setDefaultCompressedRecords(boolean compressed){
+		this.defaultCompressedRecords = compressed;
+	}
+
+	public synchronized boolean keepsRawLines(String poolID){
+		return rawLinePoolIDs.contains(poolID);
+	}
+
+	public synchronized void setRawLinePoolIDs(Collection<String> poolIDs){
+		this.rawLinePoolIDs = new TreeSet<String>(poolIDs);
+	}
+
+	public synchronized boolean getDefaultIndexedPools(){
+		return defaultIndexedPools;
+	}
+
+	public synchronized void setDefaultIndexedPools(boolean indexed){
+		this.defaultIndexedPools = indexed;
+	}
+
+	public synchronized String getDefaultPoolBackend(){
+		return defaultPoolBackend;
+	}
+
+	public synchronized void setDefaultPoolBackend(String backend){
+		this.defaultPoolBackend = backend;
+	}
+
+
+
+	/****************************************************
+	 * Long-running processes
+	 */
+
+	public synchronized boolean exitOnError(){
+		return exitOnError;
+	}
+
+	/**
+	 * Whether a tool giving up on a job may exit the JVM. Processes that
+	 * run many jobs (e.g., the daemon) turn this off.
+	 * @param exitOnError
+	 */
+	public synchronized void setExitOnError(boolean exitOnError){
+		this.exitOnError = exitOnError;
+	}
+
+	public synchronized VariantPoolCache getPoolCache(){
+		return poolCache;
+	}
+
+	/**
+	 * Get input VariantPoolHeavy objects from 'poolCache' rather than
+	 * reading them
+	 * @param poolCache
+	 */
+	public synchronized void setPoolCache(VariantPoolCache poolCache){
+		this.poolCache = poolCache;
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ *
+ */
+package vtc.api;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import vtc.JobExitException;
+import vtc.VTCSession;
+import vtc.datastructures.InvalidInputFileException;
+import vtc.datastructures.PoolPlanner;
+import vtc.datastructures.RegionList;
+
+/**
+ * @author markebbert
+ *
+ *	The options jobs share for reading their inputs, and running a job in
+ *	its own VTCSession with them. A job that fails throws a VTCException
+ *	rather than exiting the JVM.
+ */
+class JobSession {
+
+	private ArrayList<String> inputs = new ArrayList<String>();
+	private ArrayList<File> inputFiles = new ArrayList<File>();
+	private boolean addChr;
+	private List<String> regions;
+	private long memoryBudget = 0;
+	private File spillDir;
+	private boolean compressedRecords = false;
+	private String poolBackend;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	JobSession(boolean addChr){
+		this.addChr = addChr;
+	}
+
+	JobSession(JobSession options){
+		this.inputs = new ArrayList<String>(options.inputs);
+		this.inputFiles = new ArrayList<File>(options.inputFiles);
+		this.addChr = options.addChr;
+		this.regions = options.regions;
+		this.memoryBudget = options.memoryBudget;
+		this.spillDir = options.spillDir;
+		this.compressedRecords = options.compressedRecords;
+		this.poolBackend = options.poolBackend;
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	/**
+	 * @return the inputs, as 'poolID=path' or 'path'
+	 */
+	List<String> getInputs(){
+		return inputs;
+	}
+
+	boolean addChr(){
+		return addChr;
+	}
+
+
+
+	/****************************************************
+	 * Setters
+	 */
+
+	void addInput(String poolID, File file){
+		if(file == null){
+			throw new IllegalArgumentException("An input file is required");
+		}
+		inputs.add(poolID == null ? file.getPath() : poolID + "=" + file.getPath());
+		inputFiles.add(file);
+	}
+
+	void setAddChr(boolean addChr){
+		this.addChr = addChr;
+	}
+
+	void setRegions(String... regions){
+		this.regions = regions == null || regions.length == 0 ? null : Arrays.asList(regions);
+	}
+
+	void setMemoryBudget(long bytes, File spillDir){
+		if(bytes < 0){
+			throw new IllegalArgumentException("The memory budget cannot be negative");
+		}
+		this.memoryBudget = bytes;
+		this.spillDir = spillDir;
+	}
+
+	void setCompressedRecords(boolean compressedRecords){
+		this.compressedRecords = compressedRecords;
+	}
+
+	void setPoolBackend(String name){
+		if(name != null && !PoolPlanner.AUTO.equalsIgnoreCase(name) && PoolPlanner.getBackend(name) == null){
+			throw new IllegalArgumentException("Unknown pool backend: " + name +
+					". Choose from " + PoolPlanner.getBackendChoices());
+		}
+		this.poolBackend = name == null || PoolPlanner.AUTO.equalsIgnoreCase(name) ? null : name;
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Run 'job' in a new session with these options
+	 * @param job
+	 * @return the job's result
+	 * @throws VTCException if the job fails
+	 */
+	<T> T run(Callable<T> job) throws VTCException{
+		VTCSession session = new VTCSession();
+		session.setExitOnError(false);
+		session.setDefaultMemoryBudget(memoryBudget, spillDir);
+		session.setDefaultCompressedRecords(compressedRecords);
+		session.setDefaultPoolBackend(poolBackend);
+
+		VTCSession previous = VTCSession.enter(session);
+		try{
+			for(File file : inputFiles){
+				if(!file.exists()){
+					throw new InvalidInputFileException(file.getPath() + " not found.");
+				}
+			}
+			if(regions != null){
+				session.setDefaultRegions(RegionList.parse(regions));
+			}
+			return job.call();
+		} catch (VTCException e){
+			throw e;
+		} catch (JobExitException e){
+			throw new VTCException("The job failed with status " + e.getStatus(), e);
+		} catch (Exception e){
+			throw new VTCException(e.getMessage() == null ? e.toString() : e.getMessage(), e);
+		} finally {
+			VTCSession.exit(previous);
+		}
+	}
+}
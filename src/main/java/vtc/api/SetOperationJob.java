@@ -0,0 +1,378 @@
+/**
+ *
+ */
+package vtc.api;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import vtc.datastructures.SupportedFileType;
+import vtc.datastructures.VariantPoolHeavy;
+import vtc.tools.setoperator.ComplementType;
+import vtc.tools.setoperator.IntersectType;
+import vtc.tools.setoperator.Operator;
+import vtc.tools.setoperator.ParallelSetOperator;
+import vtc.tools.setoperator.SetOperator;
+import vtc.tools.setoperator.operation.ComplementOperation;
+import vtc.tools.setoperator.operation.IntersectOperation;
+import vtc.tools.setoperator.operation.Operation;
+import vtc.tools.setoperator.operation.OperationFactory;
+import vtc.tools.setoperator.operation.UnionOperation;
+import vtc.tools.utilitybelt.UtilityBelt;
+
+/**
+ * @author markebbert
+ *
+ *	A SetOperator job, for running in this JVM. Jobs are built with a
+ *	Builder and may be run any number of times, each run in its own
+ *	VTCSession:
+ *
+ *	SetOperationResult result = new SetOperationJob.Builder()
+ *			.input("a", fileA).input("b", fileB)
+ *			.intersect("aAndB", "a", "b")
+ *			.intersectType(IntersectType.ALT)
+ *			.build().run();
+ */
+public class SetOperationJob {
+
+	private JobSession options;
+	private List<String> operations;
+	private IntersectType intersectType;
+	private ComplementType complementType;
+	private boolean forceUniqueNames;
+	private int threads;
+	private File outFile;
+	private SupportedFileType outputFormat;
+	private File refGenome;
+	private boolean repairHeader;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	private SetOperationJob(Builder builder){
+		this.options = new JobSession(builder.options);
+		this.operations = Collections.unmodifiableList(new ArrayList<String>(builder.operations));
+		this.intersectType = builder.intersectType;
+		this.complementType = builder.complementType;
+		this.forceUniqueNames = builder.forceUniqueNames;
+		this.threads = builder.threads;
+		this.outFile = builder.outFile;
+		this.outputFormat = builder.outputFormat;
+		this.refGenome = builder.refGenome;
+		this.repairHeader = builder.repairHeader;
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	/**
+	 * @return the operations, in the order they are performed
+	 */
+	public List<String> getOperations(){
+		return operations;
+	}
+
+	public IntersectType getIntersectType(){
+		return intersectType;
+	}
+
+	public ComplementType getComplementType(){
+		return complementType;
+	}
+
+	/**
+	 * @return the file the last operation's result is written to, or null
+	 * if it is not written
+	 */
+	public File getOutFile(){
+		return outFile;
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Read the inputs and perform each operation in order
+	 * @return
+	 * @throws VTCException if an input cannot be read, an operation is
+	 * invalid or the result cannot be written
+	 */
+	public SetOperationResult run() throws VTCException{
+		return options.run(new Callable<SetOperationResult>(){
+			@Override
+			public SetOperationResult call() throws Exception {
+				return perform();
+			}
+		});
+	}
+
+	private SetOperationResult perform() throws Exception {
+		if(outFile != null && outputFormat == SupportedFileType.VCF && !refGenome.exists()){
+			throw new VTCException(refGenome.getPath() + " not found.");
+		}
+
+		/* Intersections by MATCH_SAMPLE write their statistics next to the output */
+		String outPath = (outFile == null ? new File("variant_list.out.vcf") : outFile).getCanonicalPath();
+
+		TreeMap<String, VariantPoolHeavy> allVPs = UtilityBelt.createHeavyVariantPools(
+				options.getInputs(), options.addChr());
+		LinkedHashMap<String, VariantPoolHeavy> results = new LinkedHashMap<String, VariantPoolHeavy>();
+		VariantPoolHeavy result = null;
+		for(String oper : operations){
+			Operation op = OperationFactory.createOperation(oper, allVPs);
+			ParallelSetOperator so = new ParallelSetOperator(threads, false, options.addChr());
+			ArrayList<VariantPoolHeavy> associatedVPs = UtilityBelt.getAssociatedVariantPoolsAsArrayList(op, allVPs);
+
+			Operator o = op.getOperator();
+			if(o == Operator.COMPLEMENT){
+				result = so.performComplement((ComplementOperation) op, associatedVPs, complementType);
+			}
+			else if(o == Operator.INTERSECT){
+				result = so.performIntersect((IntersectOperation) op, associatedVPs, intersectType, outPath);
+			}
+			else{
+				result = so.performUnion((UnionOperation) op, associatedVPs, forceUniqueNames);
+			}
+			SetOperator.setMergedHeader(result, associatedVPs);
+
+			/* Later operations may use the result */
+			allVPs.put(result.getPoolID(), result);
+			results.put(result.getPoolID(), result);
+		}
+
+		if(outFile != null){
+			result.setFile(outFile.getAbsoluteFile());
+			VariantPoolHeavy.printVariantPool(outFile.getAbsolutePath(), result, refGenome,
+					outputFormat, repairHeader);
+		}
+		return new SetOperationResult(results, outFile);
+	}
+
+
+
+	/****************************************************
+	 * Builder
+	 */
+
+	public static class Builder {
+
+		private JobSession options = new JobSession(false);
+		private ArrayList<String> operations = new ArrayList<String>();
+		private IntersectType intersectType = IntersectType.HET_OR_HOMO_ALT;
+		private ComplementType complementType = ComplementType.HET_OR_HOMO_ALT;
+		private boolean forceUniqueNames = false;
+		private int threads = 1;
+		private File outFile;
+		private SupportedFileType outputFormat;
+		private File refGenome;
+		private boolean repairHeader = false;
+
+		/**
+		 * Read 'file' as the VariantPool 'poolID'
+		 * @param poolID
+		 * @param file
+		 * @return
+		 */
+		public Builder input(String poolID, File file){
+			options.addInput(poolID, file);
+			return this;
+		}
+
+		/**
+		 * Read 'file' as a VariantPool with a generated ID ('v1', 'v2', etc.)
+		 * @param file
+		 * @return
+		 */
+		public Builder input(File file){
+			options.addInput(null, file);
+			return this;
+		}
+
+		/**
+		 * Perform an operation given as on the command line, e.g.,
+		 * 'aAndB=i[a:b]'
+		 * @param operation
+		 * @return
+		 */
+		public Builder operation(String operation){
+			if(operation == null){
+				throw new IllegalArgumentException("An operation is required");
+			}
+			operations.add(operation);
+			return this;
+		}
+
+		public Builder intersect(String operationID, String... poolIDs){
+			return operation(Operator.INTERSECT, operationID, poolIDs);
+		}
+
+		/**
+		 * Subtract the second and later pools from the first, in order
+		 * @param operationID
+		 * @param poolIDs
+		 * @return
+		 */
+		public Builder complement(String operationID, String... poolIDs){
+			return operation(Operator.COMPLEMENT, operationID, poolIDs);
+		}
+
+		public Builder union(String operationID, String... poolIDs){
+			return operation(Operator.UNION, operationID, poolIDs);
+		}
+
+		private Builder operation(Operator o, String operationID, String... poolIDs){
+			if(poolIDs.length < 2){
+				throw new IllegalArgumentException("An operation requires at least two VariantPools");
+			}
+			StringBuilder sb = new StringBuilder();
+			if(operationID != null){
+				sb.append(operationID).append("=");
+			}
+			sb.append(o == Operator.INTERSECT ? "i" : (o == Operator.COMPLEMENT ? "c" : "u")).append("[");
+			for(int i = 0; i < poolIDs.length; i++){
+				sb.append(i == 0 ? "" : ":").append(poolIDs[i]);
+			}
+			return operation(sb.append("]").toString());
+		}
+
+		public Builder intersectType(IntersectType intersectType){
+			if(intersectType == null){
+				throw new IllegalArgumentException("An IntersectType is required");
+			}
+			this.intersectType = intersectType;
+			return this;
+		}
+
+		public Builder complementType(ComplementType complementType){
+			if(complementType == null){
+				throw new IllegalArgumentException("A ComplementType is required");
+			}
+			this.complementType = complementType;
+			return this;
+		}
+
+		/**
+		 * Treat samples with the same name in different pools as different
+		 * samples in unions
+		 * @param forceUniqueNames
+		 * @return
+		 */
+		public Builder forceUniqueNames(boolean forceUniqueNames){
+			this.forceUniqueNames = forceUniqueNames;
+			return this;
+		}
+
+		/**
+		 * Add 'chr' to contig names that lack it
+		 * @param addChr
+		 * @return
+		 */
+		public Builder addChr(boolean addChr){
+			options.setAddChr(addChr);
+			return this;
+		}
+
+		/**
+		 * Perform each operation on up to 'threads' contigs at once
+		 * @param threads
+		 * @return
+		 */
+		public Builder threads(int threads){
+			if(threads < 1){
+				throw new IllegalArgumentException("threads must be at least 1");
+			}
+			this.threads = threads;
+			return this;
+		}
+
+		/**
+		 * Write the last operation's result to 'outFile'. VCF output needs
+		 * the reference genome's sequence dictionary.
+		 * @param outFile
+		 * @param outputFormat
+		 * @param refGenome
+		 * @return
+		 */
+		public Builder output(File outFile, SupportedFileType outputFormat, File refGenome){
+			if(outFile == null || outputFormat == null){
+				throw new IllegalArgumentException("An output file and format are required");
+			}
+			if(outputFormat == SupportedFileType.VCF && refGenome == null){
+				throw new IllegalArgumentException("A reference genome must be provided if output format is VCF");
+			}
+			this.outFile = outFile;
+			this.outputFormat = outputFormat;
+			this.refGenome = refGenome;
+			return this;
+		}
+
+		public Builder repairHeader(boolean repairHeader){
+			this.repairHeader = repairHeader;
+			return this;
+		}
+
+		/**
+		 * Only read records in these regions ('chr', 'chr:start-end' or BED
+		 * files)
+		 * @param regions
+		 * @return
+		 */
+		public Builder regions(String... regions){
+			options.setRegions(regions);
+			return this;
+		}
+
+		/**
+		 * Spill each input's records to 'spillDir' beyond 'bytes' of memory
+		 * @param bytes
+		 * @param spillDir
+		 * @return
+		 */
+		public Builder memoryBudget(long bytes, File spillDir){
+			options.setMemoryBudget(bytes, spillDir);
+			return this;
+		}
+
+		public Builder compressedRecords(boolean compressedRecords){
+			options.setCompressedRecords(compressedRecords);
+			return this;
+		}
+
+		/**
+		 * Read every input with the named PoolBackend, or PoolPlanner.AUTO
+		 * @param name
+		 * @return
+		 */
+		public Builder poolBackend(String name){
+			options.setPoolBackend(name);
+			return this;
+		}
+
+		/**
+		 * @return the job
+		 * @throws IllegalStateException if there are no inputs or operations
+		 */
+		public SetOperationJob build(){
+			if(options.getInputs().isEmpty()){
+				throw new IllegalStateException("At least one input is required");
+			}
+			if(operations.isEmpty()){
+				throw new IllegalStateException("At least one operation is required");
+			}
+			return new SetOperationJob(this);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+/**
+ *
+ */
+package vtc.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import vtc.datastructures.VariantPoolHeavy;
+import vtc.tools.setoperator.SetOperationCounts;
+
+/**
+ * @author markebbert
+ *
+ *	The VariantPools a SetOperationJob built, one per operation.
+ */
+public class SetOperationResult {
+
+	private LinkedHashMap<String, VariantPoolHeavy> results;
+	private File outFile;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	SetOperationResult(LinkedHashMap<String, VariantPoolHeavy> results, File outFile){
+		this.results = results;
+		this.outFile = outFile;
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	/**
+	 * @return each operation's result by operation ID, in the order the
+	 * operations were performed
+	 */
+	public Map<String, VariantPoolHeavy> getResults(){
+		return Collections.unmodifiableMap(results);
+	}
+
+	/**
+	 * @return the last operation's result
+	 */
+	public VariantPoolHeavy getResult(){
+		return new ArrayList<VariantPoolHeavy>(results.values()).get(results.size() - 1);
+	}
+
+	/**
+	 * @param operationID
+	 * @return the operation's result, or null if there was no such operation
+	 */
+	public VariantPoolHeavy getResult(String operationID){
+		return results.get(operationID);
+	}
+
+	/**
+	 * @param operationID
+	 * @return the counts of the operation's result, as printed by
+	 * SetOperator's --count-only, or null if there was no such operation
+	 * @throws IOException
+	 */
+	public SetOperationCounts getCounts(String operationID) throws IOException{
+		VariantPoolHeavy result = results.get(operationID);
+		return result == null ? null : new SetOperationCounts(result);
+	}
+
+	/**
+	 * @return the file the last result was written to, or null
+	 */
+	public File getOutFile(){
+		return outFile;
+	}
+}
@@ -0,0 +1,27 @@
+/**
+ * 
+ */
+package vtc.api;
+
+/**
+ * @author markebbert
+ *
+ *	Thrown when a job run through the API fails, e.g., because an input
+ *	could not be read or an operation is invalid. The cause is the error
+ *	the tool reported.
+ */
+public class VTCException extends Exception {
+	
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = -4262107416354271385L;
+
+	public VTCException(String message){
+		super(message);
+	}
+	
+	public VTCException(String message, Throwable cause){
+		super(message, cause);
+	}
+}
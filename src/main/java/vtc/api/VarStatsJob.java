@@ -0,0 +1,191 @@
+/**
+ *
+ */
+package vtc.api;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+
+import vtc.datastructures.AccessPattern;
+import vtc.tools.utilitybelt.UtilityBelt;
+import vtc.tools.varstats.SupportedDetailedSummaryTypes;
+import vtc.tools.varstats.VariantPoolSummarizer;
+import vtc.tools.varstats.VariantPoolSummary;
+
+/**
+ * @author markebbert
+ *
+ *	A VarStats summary job, for running in this JVM. Jobs are built with a
+ *	Builder and may be run any number of times, each run in its own
+ *	VTCSession:
+ *
+ *	VarStatsResult result = new VarStatsJob.Builder()
+ *			.input("a", fileA)
+ *			.detailedSummary(SupportedDetailedSummaryTypes.INDIVIDUAL, "out/a")
+ *			.build().run();
+ */
+public class VarStatsJob {
+
+	private JobSession options;
+	private boolean summary;
+	private SupportedDetailedSummaryTypes detailedSummaryType;
+	private String detailedOutPrefix;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	private VarStatsJob(Builder builder){
+		this.options = new JobSession(builder.options);
+		this.summary = builder.summary;
+		this.detailedSummaryType = builder.detailedSummaryType;
+		this.detailedOutPrefix = builder.detailedOutPrefix;
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Read the inputs and summarize them
+	 * @return
+	 * @throws VTCException if an input cannot be read or summarized
+	 */
+	public VarStatsResult run() throws VTCException{
+		return options.run(new Callable<VarStatsResult>(){
+			@Override
+			public VarStatsResult call() throws Exception {
+				return summarize();
+			}
+		});
+	}
+
+	private VarStatsResult summarize() throws Exception {
+		HashMap<String, VariantPoolSummary> summaries = null, detailedSummaries = null;
+
+		/* Pools read sequentially can only be read once, so each summary reads its own */
+		if(summary){
+			summaries = VariantPoolSummarizer.summarizeVariantPools(UtilityBelt.createVariantPools(
+					options.getInputs(), options.addChr(), AccessPattern.SEQUENTIAL));
+		}
+		if(detailedSummaryType == SupportedDetailedSummaryTypes.COMBINED){
+			detailedSummaries = VariantPoolSummarizer.summarizeVariantPoolsDetailedCombined(
+					UtilityBelt.createHeavyVariantPools(options.getInputs(), options.addChr()), detailedOutPrefix);
+		}
+		else if(detailedSummaryType == SupportedDetailedSummaryTypes.INDIVIDUAL){
+			detailedSummaries = VariantPoolSummarizer.summarizeVariantPoolsDetailed(UtilityBelt.createVariantPools(
+					options.getInputs(), options.addChr(), AccessPattern.SEQUENTIAL), detailedOutPrefix);
+		}
+		return new VarStatsResult(summaries, detailedSummaries);
+	}
+
+
+
+	/****************************************************
+	 * Builder
+	 */
+
+	public static class Builder {
+
+		private JobSession options = new JobSession(true);
+		private boolean summary = true;
+		private SupportedDetailedSummaryTypes detailedSummaryType;
+		private String detailedOutPrefix;
+
+		/**
+		 * Read 'file' as the VariantPool 'poolID'
+		 * @param poolID
+		 * @param file
+		 * @return
+		 */
+		public Builder input(String poolID, File file){
+			options.addInput(poolID, file);
+			return this;
+		}
+
+		/**
+		 * Read 'file' as a VariantPool with a generated ID ('v1', 'v2', etc.)
+		 * @param file
+		 * @return
+		 */
+		public Builder input(File file){
+			options.addInput(null, file);
+			return this;
+		}
+
+		/**
+		 * Summarize each input (on by default)
+		 * @param summary
+		 * @return
+		 */
+		public Builder summary(boolean summary){
+			this.summary = summary;
+			return this;
+		}
+
+		/**
+		 * Also write detailed summaries, to
+		 * '<outPrefix>_<poolID>_detailed_summary.txt', or to
+		 * '<poolID>_detailed_summary.txt' if 'outPrefix' is null
+		 * @param type
+		 * @param outPrefix
+		 * @return
+		 */
+		public Builder detailedSummary(SupportedDetailedSummaryTypes type, String outPrefix){
+			this.detailedSummaryType = type;
+			this.detailedOutPrefix = outPrefix;
+			return this;
+		}
+
+		/**
+		 * Add 'chr' to contig names that lack it (on by default, as in
+		 * VarStats)
+		 * @param addChr
+		 * @return
+		 */
+		public Builder addChr(boolean addChr){
+			options.setAddChr(addChr);
+			return this;
+		}
+
+		/**
+		 * Only read records in these regions ('chr', 'chr:start-end' or BED
+		 * files)
+		 * @param regions
+		 * @return
+		 */
+		public Builder regions(String... regions){
+			options.setRegions(regions);
+			return this;
+		}
+
+		/**
+		 * Read every input with the named PoolBackend, or PoolPlanner.AUTO
+		 * @param name
+		 * @return
+		 */
+		public Builder poolBackend(String name){
+			options.setPoolBackend(name);
+			return this;
+		}
+
+		/**
+		 * @return the job
+		 * @throws IllegalStateException if there are no inputs or nothing
+		 * to do
+		 */
+		public VarStatsJob build(){
+			if(options.getInputs().isEmpty()){
+				throw new IllegalStateException("At least one input is required");
+			}
+			if(!summary && detailedSummaryType == null){
+				throw new IllegalStateException("Request a summary, a detailed summary or both");
+			}
+			return new VarStatsJob(this);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/**
+ *
+ */
+package vtc.api;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import vtc.tools.varstats.VariantPoolSummary;
+
+/**
+ * @author markebbert
+ *
+ *	The summaries a VarStatsJob produced
+ */
+public class VarStatsResult {
+
+	private HashMap<String, VariantPoolSummary> summaries;
+	private HashMap<String, VariantPoolSummary> detailedSummaries;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	VarStatsResult(HashMap<String, VariantPoolSummary> summaries,
+			HashMap<String, VariantPoolSummary> detailedSummaries){
+		this.summaries = summaries;
+		this.detailedSummaries = detailedSummaries;
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	/**
+	 * @return each input's summary, keyed by '<poolID>_<file name>', or an
+	 * empty map if no summary was requested
+	 */
+	public Map<String, VariantPoolSummary> getSummaries(){
+		return summaries == null ? Collections.<String, VariantPoolSummary>emptyMap()
+				: Collections.unmodifiableMap(summaries);
+	}
+
+	/**
+	 * @return the detailed summaries, keyed by pool ID (or 'combined' for a
+	 * combined summary of several inputs), or an empty map if none was
+	 * requested
+	 */
+	public Map<String, VariantPoolSummary> getDetailedSummaries(){
+		return detailedSummaries == null ? Collections.<String, VariantPoolSummary>emptyMap()
+				: Collections.unmodifiableMap(detailedSummaries);
+	}
+}
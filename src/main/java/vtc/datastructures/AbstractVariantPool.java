@@ -4,7 +4,10 @@
 package vtc.datastructures;
 
 
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.CloseableTribbleIterator;
 import htsjdk.tribble.FeatureReader;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFCodec;
@@ -15,18 +18,20 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
 import java.util.TreeSet;
 
 import org.apache.log4j.Logger;
 
+import vtc.VTCSession;
+
 /**
  * @author markebbert
  *
  */
 public abstract class AbstractVariantPool implements VariantPool {
-	private static ArrayList<String> usedPoolIDs = new ArrayList<String>();
-	private static ArrayList<String> generatedPoolIDs = new ArrayList<String>();
-
 	private String poolID;
 	private File file;
 	private boolean addChr;
@@ -34,8 +39,13 @@ public abstract class AbstractVariantPool implements VariantPool {
 	private boolean earlyVarAccess;
 	private SamplePool samples;
 	private VCFHeader header;
+	private VariantDictionary dictionary;
 	
-	private final VCFCodec vcfCodec = new VCFCodec();
+	private ContigAliasMap contigAliases;
+	private boolean keepRawLines;
+	
+	/* Only variants overlapping these regions are read. Null means the whole file. */
+	private RegionList regions;
 	private FeatureReader<VariantContext> reader;
 	private Iterator<VariantContext> varIter = null;
 	private VariantContext currVar = null;
@@ -89,6 +99,8 @@ public abstract class AbstractVariantPool implements VariantPool {
 		AbstractVariantPool.addPoolID(poolID);
 		this.addChr(addChr);
 		this.earlyVarAccess = false;
+		this.dictionary = new VariantDictionary();
+		this.regions = VTCSession.current().getDefaultRegions();
 	}
 	
 	
@@ -133,12 +145,43 @@ public abstract class AbstractVariantPool implements VariantPool {
 	private void openVCFForReading() throws IOException{
 		if(this.reader == null){
 			logger.info("Opening " + this.getFile().getPath() + " for reading...");
-			reader = AbstractFeatureReader.getFeatureReader(this.getFile().getPath(), vcfCodec, this.requireIndex);
+			
+			AbstractFeatureReader<VariantContext, ?> featureReader =
+					AbstractFeatureReader.getFeatureReader(this.getFile().getPath(), newCodec(), this.requireIndex);
+			reader = featureReader;
 			this.setHeader((VCFHeader)reader.getHeader());
-			varIter = reader.iterator();
+			if(regions == null){
+				varIter = reader.iterator();
+			}
+			else if(featureReader.hasIndex()){
+				varIter = new RegionQueryIterator(featureReader);
+			}
+			else{
+				logger.info(this.getFile().getPath() + " is not indexed. Reading the whole file" +
+						" to find variants in the requested regions.");
+				varIter = new RegionFilterIterator(reader.iterator());
+			}
 			currVarCount = 0;
 		}
 	}
+	
+	/**
+	 * Create the codec for reading the file
+	 * @return
+	 */
+	private VCFCodec newCodec(){
+		
+		/* Index queries compare contigs with the file's own names, so
+		 * records can't be renamed while reading regions.
+		 */
+		ContigAliasMap aliases = regions == null ? contigAliases : null;
+		if(aliases != null || keepRawLines){
+			ContigAliasCodec codec = new ContigAliasCodec(aliases, keepRawLines);
+			codec.setDictionary(this.getDictionary());
+			return codec;
+		}
+		return new VCFCodec();
+	}
 
 	
 	
@@ -156,16 +199,42 @@ public abstract class AbstractVariantPool implements VariantPool {
 		return this.poolID;
 	}
 	
+	/**
+	 * The contig names used by this pool, or null if contigs are
+	 * kept as they are in the file
+	 * @return
+	 */
+	public ContigAliasMap getContigAliases(){
+		return this.contigAliases;
+	}
+	
+	/**
+	 * The dictionary of contigs, alleles, FILTER values, and INFO keys
+	 * shared by the variants stored in this pool
+	 * @return
+	 */
+	public VariantDictionary getDictionary(){
+		return this.dictionary;
+	}
+	
 	public File getFile(){
 		return this.file;
 	}
 
 	/**
-	 * Return the list of all PoolIDs
+	 * Return a copy of the list of all PoolIDs in the current session
 	 * @return
 	 */
 	public static ArrayList<String> getAllPoolIDs(){
-		return AbstractVariantPool.usedPoolIDs;
+		return VTCSession.current().getAllPoolIDs();
+	}
+	
+	/**
+	 * Records are stored with every sample's genotype unless a subclass
+	 * says otherwise
+	 */
+	public VariantContext withAllGenotypes(VariantContext var){
+		return var;
 	}
 	
 	public TreeSet<String> getSamples(){
@@ -262,6 +331,48 @@ public abstract class AbstractVariantPool implements VariantPool {
 		}		
 	}
 	
+	/**
+	 * Rename contigs with 'aliases' as the file is read. Must be set
+	 * before reading any variants.
+	 * @param aliases
+	 */
+	protected void setContigAliases(ContigAliasMap aliases){
+		this.contigAliases = aliases;
+	}
+	
+	/**
+	 * Keep each variant's line from the file (as a RawVariantContext), so
+	 * writers can copy the line rather than encode the variant again. Must
+	 * be set before reading any variants.
+	 * @param keepRawLines
+	 */
+	public void setKeepRawLines(boolean keepRawLines){
+		this.keepRawLines = keepRawLines;
+	}
+	
+	/**
+	 * Only read variants overlapping 'regions'. Indexed files are queried
+	 * region by region; other files are read in full and filtered. Must be
+	 * set before reading any variants.
+	 * @param regions the regions, or null to read the whole file
+	 */
+	public void setRegions(RegionList regions){
+		this.regions = regions;
+	}
+	
+	/**
+	 * Set the regions for every pool created in the current session after
+	 * this call. See setRegions.
+	 * @param regions
+	 */
+	public static void setDefaultRegions(RegionList regions){
+		VTCSession.current().setDefaultRegions(regions);
+	}
+	
+	public RegionList getRegions(){
+		return this.regions;
+	}
+	
 	protected void addChr(boolean addChr){
 		this.addChr = addChr;
 	}
@@ -277,9 +388,7 @@ public abstract class AbstractVariantPool implements VariantPool {
 	 * @return
 	 */
 	public static String generatePoolID(SupportedFileType fileType){
-		String id = fileType.getPoolIDPrefix() + Integer.toString(generatedPoolIDs.size() + 1); 
-		generatedPoolIDs.add(id);
-		return id;
+		return VTCSession.current().generatePoolID(fileType);
 	}
 	
 	/**
@@ -287,7 +396,252 @@ public abstract class AbstractVariantPool implements VariantPool {
 	 * @param poolID
 	 */
 	protected static void addPoolID(String poolID){
-		usedPoolIDs.add(poolID);
+		VTCSession.current().addPoolID(poolID);
+	}
+	
+	
+	
+	
+	/****************************************************
+	 * Iterators
+	 */
+	
+	public VariantPoolIterator iterator() throws IOException{
+		return iterator(null);
+	}
+	
+	/**
+	 * Open the file again for each iterator. Indexed files are queried for
+	 * 'range'; other files are read from the start and filtered.
+	 */
+	public VariantPoolIterator iterator(RegionList.Region range) throws IOException{
+		AbstractFeatureReader<VariantContext, ?> featureReader =
+				AbstractFeatureReader.getFeatureReader(this.getFile().getPath(), newCodec(), this.requireIndex);
+		Iterator<VariantContext> it;
+		if(regions == null && range != null && featureReader.hasIndex()){
+			String contig = null;
+			for(String name : featureReader.getSequenceNames()){
+				if(RegionList.sameContig(name, range.getChr())){
+					contig = name;
+				}
+			}
+			it = contig == null ? new ArrayList<VariantContext>().iterator()
+					: featureReader.query(contig, range.getStart(), range.getEnd());
+		}
+		else if(regions == null){
+			it = featureReader.iterator();
+		}
+		else if(featureReader.hasIndex()){
+			it = new RegionQueryIterator(featureReader);
+		}
+		else{
+			it = new RegionFilterIterator(featureReader.iterator());
+		}
+		return new ReaderIterator(featureReader, it, range);
+	}
+	
+	/**
+	 * The contigs of indexed files come from the index, and their lengths
+	 * from the header
+	 */
+	public LinkedHashMap<String, Integer> getContigExtents() throws IOException{
+		LinkedHashMap<String, Integer> extents = new LinkedHashMap<String, Integer>();
+		AbstractFeatureReader<VariantContext, ?> featureReader =
+				AbstractFeatureReader.getFeatureReader(this.getFile().getPath(), new VCFCodec(), false);
+		try{
+			if(!featureReader.hasIndex()){
+				return extents;
+			}
+			SAMSequenceDictionary dict = ((VCFHeader) featureReader.getHeader()).getSequenceDictionary();
+			TreeMap<String, Integer> sorted = new TreeMap<String, Integer>(new NaturalOrderComparator());
+			for(String name : featureReader.getSequenceNames()){
+				SAMSequenceRecord seq = dict == null ? null : dict.getSequence(name);
+				int length = seq == null || seq.getSequenceLength() <= 0 ? Integer.MAX_VALUE : seq.getSequenceLength();
+				sorted.put(contigAliases == null || regions != null ? name : contigAliases.translate(name), length);
+			}
+			extents.putAll(sorted);
+			return extents;
+		} finally {
+			featureReader.close();
+		}
+	}
+	
+	/**
+	 * Reads records from its own FeatureReader, keeping those starting in
+	 * a range, and closes the reader at the end
+	 */
+	private static class ReaderIterator implements VariantPoolIterator {
+		private FeatureReader<VariantContext> reader;
+		private Iterator<VariantContext> it;
+		private RegionList.Region range;
+		private VariantContext next;
+		
+		private ReaderIterator(FeatureReader<VariantContext> reader, Iterator<VariantContext> it,
+				RegionList.Region range){
+			this.reader = reader;
+			this.it = it;
+			this.range = range;
+			advance();
+		}
+		
+		private void advance(){
+			next = null;
+			VariantContext var;
+			while(it.hasNext()){
+				var = it.next();
+				if(range == null || (RegionList.sameContig(var.getChr(), range.getChr())
+						&& var.getStart() >= range.getStart() && var.getStart() <= range.getEnd())){
+					next = var;
+					return;
+				}
+			}
+			try {
+				close();
+			} catch (IOException e) {
+				logger.warn("Could not close " + e.getMessage());
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public VariantContext next() {
+			if(next == null){
+				throw new NoSuchElementException();
+			}
+			VariantContext var = next;
+			advance();
+			return var;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(reader != null){
+				reader.close();
+				reader = null;
+			}
+		}
+	}
+	
+	/**
+	 * Queries the index for each region in turn, in the file's contig order.
+	 * A record overlapping two regions is only returned for the first.
+	 */
+	private class RegionQueryIterator implements Iterator<VariantContext>{
+		private FeatureReader<VariantContext> reader;
+		private Iterator<RegionList.Region> regionIter;
+		private RegionList.Region currRegion, prevRegion;
+		private CloseableTribbleIterator<VariantContext> query;
+		private VariantContext next;
+		
+		private RegionQueryIterator(FeatureReader<VariantContext> reader){
+			this.reader = reader;
+			this.regionIter = regions.getRegions(reader.getSequenceNames()).iterator();
+			advance();
+		}
+		
+		private void advance(){
+			next = null;
+			try {
+				while(true){
+					while(query != null && query.hasNext()){
+						VariantContext var = query.next();
+						if(prevRegion != null && prevRegion.getChr().equals(currRegion.getChr())
+								&& var.getStart() <= prevRegion.getEnd()){
+							continue;
+						}
+						next = var;
+						return;
+					}
+					if(query != null){
+						query.close();
+						query = null;
+					}
+					if(!regionIter.hasNext()){
+						return;
+					}
+					prevRegion = currRegion;
+					currRegion = regionIter.next();
+					query = reader.query(currRegion.getChr(), currRegion.getStart(), currRegion.getEnd());
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Could not query " + getFile().getPath() + " for " +
+						currRegion + ": " + e.getMessage());
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public VariantContext next() {
+			if(next == null){
+				throw new NoSuchElementException();
+			}
+			VariantContext var = next;
+			advance();
+			return var;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+	
+	/**
+	 * Reads the whole file, returning only the records overlapping a region
+	 */
+	private class RegionFilterIterator implements Iterator<VariantContext>{
+		private Iterator<VariantContext> it;
+		private VariantContext next;
+		
+		private RegionFilterIterator(Iterator<VariantContext> it){
+			this.it = it;
+			advance();
+		}
+		
+		private void advance(){
+			next = null;
+			VariantContext var;
+			while(it.hasNext()){
+				var = it.next();
+				if(regions.overlaps(var.getChr(), var.getStart(), var.getEnd())){
+					next = var;
+					return;
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public VariantContext next() {
+			if(next == null){
+				throw new NoSuchElementException();
+			}
+			VariantContext var = next;
+			advance();
+			return var;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
 	}
 }
 
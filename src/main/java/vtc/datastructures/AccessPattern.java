@@ -0,0 +1,21 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+/**
+ * @author markebbert
+ *
+ *	How an operation reads its input VariantPools. The PoolPlanner only
+ *	chooses backends that support the operation's pattern.
+ */
+public enum AccessPattern {
+
+	/* One pass over the records with getNextVar (e.g., VarStats summaries) */
+	SEQUENTIAL,
+
+	/* Records are iterated in key order and looked up by key (e.g., set
+	 * operations). Pools for lookups are VariantPoolHeavy objects.
+	 */
+	LOOKUP;
+}
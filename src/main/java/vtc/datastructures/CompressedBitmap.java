@@ -0,0 +1,574 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @author markebbert
+ *
+ *	A compressed bitmap of non-negative integers. The bitmap is split into
+ *	chunks of 65,536 values keyed by the high 16 bits of each value (the same
+ *	layout used by 'roaring' bitmaps). Sparse chunks are stored as sorted arrays
+ *	and dense chunks as plain bit arrays, so a bitmap only costs memory for the
+ *	values it actually holds. Set operations work chunk by chunk.
+ */
+public class CompressedBitmap {
+
+	/* A chunk holding more than this many values is cheaper as a bit array */
+	private static final int MAX_ARRAY_CARDINALITY = 4096;
+	private static final int BITMAP_WORDS = 1024;
+	private static final int SERIAL_MAGIC = 0x56544342; // 'VTCB'
+
+	private TreeMap<Integer, Container> containers;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	public CompressedBitmap(){
+		this.containers = new TreeMap<Integer, Container>();
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	/**
+	 * Test whether this bitmap holds value
+	 * @param value
+	 * @return
+	 */
+	public boolean contains(int value){
+		Container c = containers.get(highBits(value));
+		return c != null && c.contains(lowBits(value));
+	}
+
+	/**
+	 * Return the number of values in this bitmap
+	 * @return
+	 */
+	public int getCardinality(){
+		int cardinality = 0;
+		for(Container c : containers.values()){
+			cardinality += c.cardinality();
+		}
+		return cardinality;
+	}
+
+	public boolean isEmpty(){
+		return containers.isEmpty();
+	}
+
+	/**
+	 * Return all values in ascending order
+	 * @return
+	 */
+	public int[] toArray(){
+		int[] values = new int[getCardinality()];
+		int i = 0;
+		for(Map.Entry<Integer, Container> e : containers.entrySet()){
+			i = e.getValue().fill(e.getKey() << 16, values, i);
+		}
+		return values;
+	}
+
+
+
+	/****************************************************
+	 * Setters
+	 */
+
+	/**
+	 * Add a non-negative value to the bitmap
+	 * @param value
+	 */
+	public void add(int value){
+		if(value < 0){
+			throw new IllegalArgumentException("CompressedBitmap only holds non-negative values: " + value);
+		}
+		int high = highBits(value);
+		Container c = containers.get(high);
+		if(c == null){
+			c = new ArrayContainer();
+		}
+		containers.put(high, c.add(lowBits(value)));
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Return a new bitmap with the values found in both bitmaps
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public static CompressedBitmap and(CompressedBitmap a, CompressedBitmap b){
+		CompressedBitmap result = new CompressedBitmap();
+		for(Map.Entry<Integer, Container> e : a.containers.entrySet()){
+			Container other = b.containers.get(e.getKey());
+			if(other != null){
+				result.putIfNotEmpty(e.getKey(), e.getValue().and(other));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Return a new bitmap with the values found in either bitmap
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public static CompressedBitmap or(CompressedBitmap a, CompressedBitmap b){
+		CompressedBitmap result = new CompressedBitmap();
+		for(Map.Entry<Integer, Container> e : a.containers.entrySet()){
+			Container other = b.containers.get(e.getKey());
+			if(other != null){
+				result.putIfNotEmpty(e.getKey(), e.getValue().or(other));
+			}
+			else{
+				result.putIfNotEmpty(e.getKey(), e.getValue().copy());
+			}
+		}
+		for(Map.Entry<Integer, Container> e : b.containers.entrySet()){
+			if(!a.containers.containsKey(e.getKey())){
+				result.putIfNotEmpty(e.getKey(), e.getValue().copy());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Return a new bitmap with the values in 'a' that are not in 'b' (i.e., a - b)
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public static CompressedBitmap andNot(CompressedBitmap a, CompressedBitmap b){
+		CompressedBitmap result = new CompressedBitmap();
+		for(Map.Entry<Integer, Container> e : a.containers.entrySet()){
+			Container other = b.containers.get(e.getKey());
+			if(other != null){
+				result.putIfNotEmpty(e.getKey(), e.getValue().andNot(other));
+			}
+			else{
+				result.putIfNotEmpty(e.getKey(), e.getValue().copy());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Write this bitmap to 'out'
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(DataOutput out) throws IOException{
+		out.writeInt(SERIAL_MAGIC);
+		out.writeInt(containers.size());
+		for(Map.Entry<Integer, Container> e : containers.entrySet()){
+			out.writeChar(e.getKey());
+			e.getValue().write(out);
+		}
+	}
+
+	/**
+	 * Read a bitmap previously written with 'write'
+	 * @param in
+	 * @return
+	 * @throws IOException
+	 */
+	public static CompressedBitmap read(DataInput in) throws IOException{
+		if(in.readInt() != SERIAL_MAGIC){
+			throw new IOException("Not a compressed bitmap. The file may be corrupt.");
+		}
+		CompressedBitmap bitmap = new CompressedBitmap();
+		int nContainers = in.readInt();
+		for(int i = 0; i < nContainers; i++){
+			int high = in.readChar();
+			byte type = in.readByte();
+			if(type == ArrayContainer.TYPE){
+				bitmap.containers.put(high, ArrayContainer.read(in));
+			}
+			else if(type == BitmapContainer.TYPE){
+				bitmap.containers.put(high, BitmapContainer.read(in));
+			}
+			else{
+				throw new IOException("Unknown bitmap container type: " + type);
+			}
+		}
+		return bitmap;
+	}
+
+	private void putIfNotEmpty(int high, Container c){
+		if(c.cardinality() > 0){
+			containers.put(high, c);
+		}
+	}
+
+	private static int highBits(int value){
+		return value >>> 16;
+	}
+
+	private static char lowBits(int value){
+		return (char) (value & 0xFFFF);
+	}
+
+
+
+	/****************************************************
+	 * Containers
+	 */
+
+	private static abstract class Container {
+		abstract Container add(char low);
+		abstract boolean contains(char low);
+		abstract int cardinality();
+		abstract Container and(Container other);
+		abstract Container or(Container other);
+		abstract Container andNot(Container other);
+		abstract Container copy();
+		abstract int fill(int base, int[] values, int offset);
+		abstract void write(DataOutput out) throws IOException;
+	}
+
+	/**
+	 * A sparse chunk stored as a sorted array
+	 */
+	private static class ArrayContainer extends Container {
+		static final byte TYPE = 0;
+		char[] values;
+		int size;
+
+		ArrayContainer(){
+			this(new char[4], 0);
+		}
+
+		ArrayContainer(char[] values, int size){
+			this.values = values;
+			this.size = size;
+		}
+
+		@Override
+		Container add(char low){
+			int i = binarySearch(low);
+			if(i >= 0){
+				return this;
+			}
+			if(size >= MAX_ARRAY_CARDINALITY){
+				return toBitmap().add(low);
+			}
+			i = -i - 1;
+			if(size == values.length){
+				char[] grown = new char[Math.min(MAX_ARRAY_CARDINALITY, values.length * 2)];
+				System.arraycopy(values, 0, grown, 0, size);
+				values = grown;
+			}
+			System.arraycopy(values, i, values, i + 1, size - i);
+			values[i] = low;
+			size++;
+			return this;
+		}
+
+		@Override
+		boolean contains(char low){
+			return binarySearch(low) >= 0;
+		}
+
+		@Override
+		int cardinality(){
+			return size;
+		}
+
+		@Override
+		Container and(Container other){
+			char[] result = new char[size];
+			int n = 0;
+			if(other instanceof ArrayContainer){
+				ArrayContainer o = (ArrayContainer) other;
+				int i = 0, j = 0;
+				while(i < size && j < o.size){
+					if(values[i] < o.values[j]){ i++; }
+					else if(values[i] > o.values[j]){ j++; }
+					else{
+						result[n++] = values[i];
+						i++;
+						j++;
+					}
+				}
+			}
+			else{
+				for(int i = 0; i < size; i++){
+					if(other.contains(values[i])){
+						result[n++] = values[i];
+					}
+				}
+			}
+			return new ArrayContainer(result, n);
+		}
+
+		@Override
+		Container or(Container other){
+			if(other instanceof BitmapContainer){
+				return other.or(this);
+			}
+			ArrayContainer o = (ArrayContainer) other;
+			char[] result = new char[size + o.size];
+			int i = 0, j = 0, n = 0;
+			while(i < size || j < o.size){
+				if(j >= o.size || (i < size && values[i] < o.values[j])){
+					result[n++] = values[i++];
+				}
+				else if(i >= size || values[i] > o.values[j]){
+					result[n++] = o.values[j++];
+				}
+				else{
+					result[n++] = values[i];
+					i++;
+					j++;
+				}
+			}
+			ArrayContainer merged = new ArrayContainer(result, n);
+			return n > MAX_ARRAY_CARDINALITY ? merged.toBitmap() : merged;
+		}
+
+		@Override
+		Container andNot(Container other){
+			char[] result = new char[size];
+			int n = 0;
+			for(int i = 0; i < size; i++){
+				if(!other.contains(values[i])){
+					result[n++] = values[i];
+				}
+			}
+			return new ArrayContainer(result, n);
+		}
+
+		@Override
+		Container copy(){
+			char[] copy = new char[size];
+			System.arraycopy(values, 0, copy, 0, size);
+			return new ArrayContainer(copy, size);
+		}
+
+		@Override
+		int fill(int base, int[] out, int offset){
+			for(int i = 0; i < size; i++){
+				out[offset++] = base | values[i];
+			}
+			return offset;
+		}
+
+		@Override
+		void write(DataOutput out) throws IOException{
+			out.writeByte(TYPE);
+			out.writeInt(size);
+			for(int i = 0; i < size; i++){
+				out.writeChar(values[i]);
+			}
+		}
+
+		static ArrayContainer read(DataInput in) throws IOException{
+			int size = in.readInt();
+			char[] values = new char[Math.max(size, 4)];
+			for(int i = 0; i < size; i++){
+				values[i] = in.readChar();
+			}
+			return new ArrayContainer(values, size);
+		}
+
+
+		BitmapContainer toBitmap(){
+			BitmapContainer b = new BitmapContainer();
+			for(int i = 0; i < size; i++){
+				b.add(values[i]);
+			}
+			return b;
+		}
+
+		private int binarySearch(char low){
+			int lo = 0, hi = size - 1;
+			while(lo <= hi){
+				int mid = (lo + hi) >>> 1;
+				if(values[mid] < low){ lo = mid + 1; }
+				else if(values[mid] > low){ hi = mid - 1; }
+				else{ return mid; }
+			}
+			return -(lo + 1);
+		}
+	}
+
+	/**
+	 * A dense chunk stored as a bit array
+	 */
+	private static class BitmapContainer extends Container {
+		static final byte TYPE = 1;
+		long[] words;
+		int cardinality;
+
+		BitmapContainer(){
+			this(new long[BITMAP_WORDS], 0);
+		}
+
+		BitmapContainer(long[] words, int cardinality){
+			this.words = words;
+			this.cardinality = cardinality;
+		}
+
+		@Override
+		Container add(char low){
+			long before = words[low >>> 6];
+			long after = before | (1L << low);
+			if(before != after){
+				words[low >>> 6] = after;
+				cardinality++;
+			}
+			return this;
+		}
+
+		@Override
+		boolean contains(char low){
+			return (words[low >>> 6] & (1L << low)) != 0;
+		}
+
+		@Override
+		int cardinality(){
+			return cardinality;
+		}
+
+		@Override
+		Container and(Container other){
+			if(other instanceof ArrayContainer){
+				return other.and(this);
+			}
+			long[] o = ((BitmapContainer) other).words;
+			long[] result = new long[BITMAP_WORDS];
+			for(int i = 0; i < BITMAP_WORDS; i++){
+				result[i] = words[i] & o[i];
+			}
+			return shrink(result);
+		}
+
+		@Override
+		Container or(Container other){
+			long[] result = new long[BITMAP_WORDS];
+			System.arraycopy(words, 0, result, 0, BITMAP_WORDS);
+			if(other instanceof ArrayContainer){
+				ArrayContainer o = (ArrayContainer) other;
+				for(int i = 0; i < o.size; i++){
+					result[o.values[i] >>> 6] |= 1L << o.values[i];
+				}
+			}
+			else{
+				long[] o = ((BitmapContainer) other).words;
+				for(int i = 0; i < BITMAP_WORDS; i++){
+					result[i] |= o[i];
+				}
+			}
+			return new BitmapContainer(result, countBits(result));
+		}
+
+		@Override
+		Container andNot(Container other){
+			long[] result = new long[BITMAP_WORDS];
+			System.arraycopy(words, 0, result, 0, BITMAP_WORDS);
+			if(other instanceof ArrayContainer){
+				ArrayContainer o = (ArrayContainer) other;
+				for(int i = 0; i < o.size; i++){
+					result[o.values[i] >>> 6] &= ~(1L << o.values[i]);
+				}
+			}
+			else{
+				long[] o = ((BitmapContainer) other).words;
+				for(int i = 0; i < BITMAP_WORDS; i++){
+					result[i] &= ~o[i];
+				}
+			}
+			return shrink(result);
+		}
+
+		@Override
+		Container copy(){
+			long[] copy = new long[BITMAP_WORDS];
+			System.arraycopy(words, 0, copy, 0, BITMAP_WORDS);
+			return new BitmapContainer(copy, cardinality);
+		}
+
+		@Override
+		int fill(int base, int[] out, int offset){
+			for(int i = 0; i < BITMAP_WORDS; i++){
+				long w = words[i];
+				while(w != 0){
+					int bit = Long.numberOfTrailingZeros(w);
+					out[offset++] = base | (i << 6) | bit;
+					w &= w - 1;
+				}
+			}
+			return offset;
+		}
+
+		@Override
+		void write(DataOutput out) throws IOException{
+			out.writeByte(TYPE);
+			out.writeInt(cardinality);
+			for(int i = 0; i < BITMAP_WORDS; i++){
+				out.writeLong(words[i]);
+			}
+		}
+
+		static BitmapContainer read(DataInput in) throws IOException{
+			int cardinality = in.readInt();
+			long[] words = new long[BITMAP_WORDS];
+			for(int i = 0; i < BITMAP_WORDS; i++){
+				words[i] = in.readLong();
+			}
+			return new BitmapContainer(words, cardinality);
+		}
+
+
+		/**
+		 * Convert back to an array if the result became sparse
+		 * @param result
+		 * @return
+		 */
+		private static Container shrink(long[] result){
+			int card = countBits(result);
+			BitmapContainer b = new BitmapContainer(result, card);
+			if(card > MAX_ARRAY_CARDINALITY){
+				return b;
+			}
+			int[] lows = new int[card];
+			b.fill(0, lows, 0);
+			return new ArrayContainer(toChars(lows), card);
+		}
+
+		private static int countBits(long[] w){
+			int card = 0;
+			for(long l : w){
+				card += Long.bitCount(l);
+			}
+			return card;
+		}
+
+		private static char[] toChars(int[] lows){
+			char[] chars = new char[Math.max(lows.length, 4)];
+			for(int i = 0; i < lows.length; i++){
+				chars[i] = (char) lows[i];
+			}
+			return chars;
+		}
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import htsjdk.tribble.Feature;
+import htsjdk.tribble.readers.LineIterator;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+
+import java.util.List;
+
+/**
+ * @author markebbert
+ *
+ *	A VCFCodec that renames contigs with a ContigAliasMap as each line is
+ *	decoded, so records are created with the pool's contig names instead of
+ *	being rebuilt afterward. Lines already using the pool's naming style are
+ *	decoded unchanged.
+ *
+ *	It can also keep each record's line (after renaming) by decoding to
+ *	RawVariantContexts, so writers can copy the line instead of encoding the
+ *	record again.
+ *
+ *	Given a pool's VariantDictionary, the strings htsjdk caches while
+ *	decoding (e.g., contigs) are taken from the dictionary, so records share
+ *	them with the rest of the pool without being rebuilt.
+ */
+public class ContigAliasCodec extends VCFCodec {
+
+	private ContigAliasMap aliases;
+	private boolean keepRawLines;
+	private List<String> samples;
+	private VariantDictionary dictionary;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	public ContigAliasCodec(ContigAliasMap aliases){
+		this(aliases, false);
+	}
+
+	/**
+	 * @param aliases the contig names to use, or null to keep contigs as
+	 * they are in the file
+	 * @param keepRawLines
+	 */
+	public ContigAliasCodec(ContigAliasMap aliases, boolean keepRawLines){
+		super();
+		this.aliases = aliases;
+		this.keepRawLines = keepRawLines;
+	}
+
+
+
+	/****************************************************
+	 * Setters
+	 */
+
+	/**
+	 * Share decoded values through 'dictionary'
+	 * @param dictionary
+	 */
+	public void setDictionary(VariantDictionary dictionary){
+		this.dictionary = dictionary;
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	@Override
+	public Object readActualHeader(LineIterator lineIterator){
+		Object header = super.readActualHeader(lineIterator);
+		if(header instanceof VCFHeader){
+			if(aliases != null){
+				aliases.addContigs((VCFHeader) header);
+			}
+			samples = ((VCFHeader) header).getGenotypeSamples();
+		}
+		return header;
+	}
+
+	@Override
+	public VariantContext decode(String line){
+		String translated = translate(line);
+		VariantContext vc = super.decode(translated);
+		if(keepRawLines && vc != null){
+			return new RawVariantContext(vc, translated, samples);
+		}
+		return vc;
+	}
+
+	@Override
+	public Feature decodeLoc(String line){
+		return super.decodeLoc(translate(line));
+	}
+
+	/**
+	 * Use the dictionary's copy of short strings. Longer ones (e.g., indel
+	 * alleles) are only cached for this file, as htsjdk does.
+	 */
+	@Override
+	protected String getCachedString(String str){
+		if(dictionary == null || str.length() > VariantDictionary.MAX_INTERNED_LENGTH){
+			return super.getCachedString(str);
+		}
+		return dictionary.intern(str);
+	}
+
+	/**
+	 * Replace the contig at the start of 'line' if it isn't in the pool's
+	 * naming style
+	 * @param line
+	 * @return
+	 */
+	private String translate(String line){
+		if(aliases == null || line.length() == 0 || line.charAt(0) == '#'){
+			return line;
+		}
+		int tab = line.indexOf('\t');
+		if(tab < 0 || !aliases.needsTranslation(line, tab)){
+			return line;
+		}
+		return aliases.translate(line.substring(0, tab)) + line.substring(tab);
+	}
+}
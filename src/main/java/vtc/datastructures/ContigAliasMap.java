@@ -0,0 +1,107 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import htsjdk.variant.vcf.VCFContigHeaderLine;
+import htsjdk.variant.vcf.VCFHeader;
+
+import java.util.HashMap;
+
+/**
+ * @author markebbert
+ *
+ *	Translates the contig names of a file to the names a pool uses, either
+ *	with or without the 'chr' prefix. Each name is translated once and the
+ *	result reused, so every record on a contig shares the same String. The
+ *	table is filled from the header's ##contig lines when the file is opened,
+ *	and extended for any contig not declared there.
+ */
+public class ContigAliasMap {
+
+	private boolean addChr;
+	private HashMap<String, String> aliases;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * @param addChr true to add the 'chr' prefix, false to remove it
+	 */
+	public ContigAliasMap(boolean addChr){
+		this.addChr = addChr;
+		this.aliases = new HashMap<String, String>();
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	public boolean addChr(){
+		return this.addChr;
+	}
+
+	/**
+	 * Test whether a contig name is already in this map's naming style,
+	 * without creating any Strings. 'line' may be a whole VCF record.
+	 * @param line
+	 * @param contigEnd the end of the contig name within 'line'
+	 * @return
+	 */
+	public boolean needsTranslation(String line, int contigEnd){
+		boolean hasChr = contigEnd >= 3 && line.regionMatches(true, 0, "chr", 0, 3);
+		return hasChr != addChr;
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Add the contigs declared in 'header'
+	 * @param header
+	 */
+	public void addContigs(VCFHeader header){
+		for(VCFContigHeaderLine line : header.getContigLines()){
+			translate(line.getID());
+		}
+	}
+
+	/**
+	 * Get the name for 'contig' in this map's naming style
+	 * @param contig
+	 * @return
+	 */
+	public synchronized String translate(String contig){
+		String alias = aliases.get(contig);
+		if(alias == null){
+			alias = normalize(contig, addChr);
+			aliases.put(contig, alias);
+		}
+		return alias;
+	}
+
+	/**
+	 * Add or remove the 'chr' prefix
+	 * @param contig
+	 * @param addChr
+	 * @return
+	 */
+	public static String normalize(String contig, boolean addChr){
+		if(addChr){
+			if(!contig.toLowerCase().startsWith("chr")){
+				return "chr" + contig;
+			}
+		}
+		else if(contig.toLowerCase().startsWith("chr")){
+			return contig.substring(3);
+		}
+		return contig;
+	}
+}
@@ -0,0 +1,58 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+/**
+ * @author markebbert
+ *
+ *	The Reactive Streams interfaces, as in java.util.concurrent.Flow, for
+ *	publishing records to non-blocking pipelines. Publishers send a
+ *	subscriber no more items than it has requested, and send its signals
+ *	one at a time.
+ */
+public final class Flow {
+
+	private Flow(){
+		return;
+	}
+
+	public static interface Publisher<T> {
+
+		/**
+		 * Start sending items to 'subscriber'. It is sent onSubscribe, then
+		 * onNext for each item it requests, then onComplete or onError.
+		 * @param subscriber
+		 */
+		public void subscribe(Subscriber<? super T> subscriber);
+	}
+
+	public static interface Subscriber<T> {
+
+		public void onSubscribe(Subscription subscription);
+
+		public void onNext(T item);
+
+		public void onError(Throwable throwable);
+
+		public void onComplete();
+	}
+
+	public static interface Subscription {
+
+		/**
+		 * Allow up to 'n' more items to be sent. Requests less than 1 end
+		 * the subscription with an IllegalArgumentException.
+		 * @param n
+		 */
+		public void request(long n);
+
+		/**
+		 * Stop sending items. Items already being sent may still arrive.
+		 */
+		public void cancel();
+	}
+
+	public static interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+	}
+}
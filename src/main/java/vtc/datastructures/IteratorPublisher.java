@@ -0,0 +1,208 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import vtc.VTCSession;
+
+/**
+ * @author markebbert
+ *
+ *	A Flow.Publisher that sends each subscriber the items of its own
+ *	iterator, opened once the subscriber first requests items. Items are
+ *	read and sent as tasks on an Executor, only as they are requested, so
+ *	no thread waits on a slow subscriber. Each task sends at most
+ *	MAX_BATCH items before giving the Executor's thread back.
+ *
+ *	Tasks run in the VTCSession of the thread that subscribed.
+ */
+public abstract class IteratorPublisher<T> implements Flow.Publisher<T> {
+
+	private static Logger logger = Logger.getLogger(IteratorPublisher.class);
+
+	public static final int MAX_BATCH = 1024;
+
+	private Executor executor;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	public IteratorPublisher(Executor executor){
+		if(executor == null){
+			throw new NullPointerException("An Executor is required");
+		}
+		this.executor = executor;
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Open a new iterator for one subscriber. Runs on the Executor.
+	 * @return
+	 * @throws Exception
+	 */
+	protected abstract Iterator<T> open() throws Exception;
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super T> subscriber){
+		if(subscriber == null){
+			throw new NullPointerException("A Subscriber is required");
+		}
+		new IteratorSubscription(subscriber).signal();
+	}
+
+	/**
+	 * Sends the items of one iterator to one subscriber. All signals to the
+	 * subscriber are sent from run(), which runs on one thread at a time:
+	 * 'pending' counts the calls to signal() that run() has not yet seen.
+	 */
+	private class IteratorSubscription implements Flow.Subscription, Runnable {
+		private Flow.Subscriber<? super T> subscriber;
+		private VTCSession session = VTCSession.current();
+		private AtomicInteger pending = new AtomicInteger();
+		private AtomicLong demand = new AtomicLong();
+		private volatile boolean cancelled = false;
+		private volatile String badRequest;
+
+		/* Only used in run() */
+		private boolean subscribed = false;
+		private boolean done = false;
+		private Iterator<T> it;
+
+		private IteratorSubscription(Flow.Subscriber<? super T> subscriber){
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n){
+			if(n <= 0){
+				badRequest = "Requested " + n + " items. Requests must be for at least 1 item.";
+			}
+			else{
+				long current, next;
+				do{
+					current = demand.get();
+					next = current + n < 0 ? Long.MAX_VALUE : current + n;
+				} while(!demand.compareAndSet(current, next));
+			}
+			signal();
+		}
+
+		@Override
+		public void cancel(){
+			cancelled = true;
+			signal();
+		}
+
+		private void signal(){
+			if(pending.getAndIncrement() == 0){
+				executor.execute(this);
+			}
+		}
+
+		@Override
+		public void run(){
+			VTCSession previous = VTCSession.enter(session);
+			try{
+				int seen = pending.get();
+				while(true){
+					if(!subscribed){
+						subscribed = true;
+						subscriber.onSubscribe(this);
+					}
+					if(!done && !drain()){
+						/* More is requested, so keep going in a new task */
+						executor.execute(this);
+						return;
+					}
+					seen = pending.addAndGet(-seen);
+					if(seen == 0){
+						return;
+					}
+				}
+			} finally {
+				VTCSession.exit(previous);
+			}
+		}
+
+		/**
+		 * Send up to MAX_BATCH of the requested items
+		 * @return false if more items were requested than were sent
+		 */
+		private boolean drain(){
+			if(cancelled){
+				finish();
+				return true;
+			}
+			if(badRequest != null){
+				fail(new IllegalArgumentException(badRequest));
+				return true;
+			}
+			if(demand.get() == 0){
+				return true;
+			}
+			boolean complete = false;
+			try{
+				if(it == null){
+					it = open();
+				}
+				for(int sent = 0; sent < MAX_BATCH && !complete; sent++){
+					if(cancelled){
+						finish();
+						return true;
+					}
+					complete = !it.hasNext();
+					if(!complete){
+						subscriber.onNext(it.next());
+						if(demand.get() != Long.MAX_VALUE && demand.decrementAndGet() == 0){
+							return true;
+						}
+					}
+				}
+			} catch (Exception e) {
+				fail(e);
+				return true;
+			}
+			if(complete){
+				finish();
+				subscriber.onComplete();
+			}
+			return complete;
+		}
+
+		private void fail(Throwable throwable){
+			finish();
+			subscriber.onError(throwable);
+		}
+
+		/**
+		 * Stop sending and close the iterator
+		 */
+		private void finish(){
+			done = true;
+			if(it instanceof Closeable){
+				try {
+					((Closeable) it).close();
+				} catch (IOException e) {
+					logger.warn("Could not close iterator: " + e.getMessage());
+				}
+			}
+			it = null;
+		}
+	}
+}
@@ -0,0 +1,219 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.LocationAware;
+import htsjdk.samtools.util.RuntimeIOException;
+import htsjdk.tribble.index.DynamicIndexCreator;
+import htsjdk.tribble.index.IndexCreator;
+import htsjdk.tribble.index.IndexFactory;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.index.tabix.TabixIndexCreator;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterFactory;
+import htsjdk.variant.vcf.VCFHeader;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * @author markebbert
+ *
+ *	A VariantContextWriter that copies each RawVariantContext's line straight
+ *	to the file rather than encoding the record again. The header and all
+ *	other records are written by htsjdk's VCF writer into the same stream, so
+ *	output and on-the-fly indexes are the same as htsjdk's.
+ *
+ *	Lines are only copied if the header has the same samples, in the same
+ *	order, as the file they were read from. Lines are not checked against the
+ *	header, so they are only copied with ALLOW_MISSING_FIELDS_IN_HEADER.
+ */
+public class PassthroughVCFWriter implements VariantContextWriter {
+
+	private static Logger logger = Logger.getLogger(PassthroughVCFWriter.class);
+
+	/* Lines are read one byte per char */
+	private static final Charset LINE_CHARSET = Charset.forName("ISO-8859-1");
+
+	private File file;
+	private VariantContextWriter writer;
+	private OutputStream out;
+	private LocationAware location;
+	private IndexCreator indexer;
+	private boolean copyLines;
+
+	private List<String> samples;
+	private List<String> lastSourceSamples;
+	private boolean lastSourceMatches;
+	private long copiedRecords, encodedRecords;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * Write to 'file', block compressed if it ends with '.gz'. Throws a
+	 * RuntimeIOException if the file can't be created, as htsjdk's writers do.
+	 * @param file
+	 * @param dict
+	 * @param options as for VariantContextWriterFactory. USE_ASYNC_IO is ignored.
+	 */
+	public PassthroughVCFWriter(File file, SAMSequenceDictionary dict, EnumSet<Options> options){
+		this.file = file;
+		boolean index = options.contains(Options.INDEX_ON_THE_FLY);
+		try{
+			if(VariantContextWriterFactory.isCompressedVcf(file)){
+				BlockCompressedOutputStream bgzf = new BlockCompressedOutputStream(file);
+				this.out = bgzf;
+				this.location = bgzf;
+				this.indexer = index ? new TabixIndexCreator(dict, TabixFormat.VCF) : null;
+			}
+			else{
+				PositionOutputStream pos = new PositionOutputStream(
+						new BufferedOutputStream(new FileOutputStream(file)));
+				this.out = pos;
+				this.location = pos;
+				this.indexer = index
+						? new DynamicIndexCreator(file, IndexFactory.IndexBalanceApproach.FOR_SEEK_TIME) : null;
+			}
+		} catch (FileNotFoundException e) {
+			throw new RuntimeIOException("Unable to open " + file.getPath() + " for writing", e);
+		}
+
+		/* Lines are written between htsjdk's records, so it can't write
+		 * from another thread.
+		 */
+		EnumSet<Options> vcfOptions = EnumSet.copyOf(options);
+		vcfOptions.remove(Options.USE_ASYNC_IO);
+		this.writer = VariantContextWriterFactory.createVcf(file, out, dict, indexer, vcfOptions);
+		this.copyLines = options.contains(Options.ALLOW_MISSING_FIELDS_IN_HEADER)
+				&& !options.contains(Options.DO_NOT_WRITE_GENOTYPES);
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	public long getCopiedRecords(){
+		return this.copiedRecords;
+	}
+
+	public long getEncodedRecords(){
+		return this.encodedRecords;
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	@Override
+	public void writeHeader(VCFHeader header){
+		writer.writeHeader(header);
+		this.samples = header.getGenotypeSamples();
+	}
+
+	@Override
+	public void add(VariantContext vc){
+		if(copyLines && samples != null && vc instanceof RawVariantContext
+				&& sameSamples(((RawVariantContext) vc).getSourceSamples())){
+			try {
+				if(indexer != null){
+					indexer.addFeature(vc, location.getPosition());
+				}
+				out.write(((RawVariantContext) vc).getLine().getBytes(LINE_CHARSET));
+				out.write('\n');
+			} catch (IOException e) {
+				throw new RuntimeIOException("Unable to write the VCF object to " + file.getPath(), e);
+			}
+			copiedRecords++;
+		}
+		else{
+			writer.add(vc);
+			encodedRecords++;
+		}
+	}
+
+	@Override
+	public boolean checkError(){
+		return writer.checkError();
+	}
+
+	@Override
+	public void close(){
+		writer.close();
+		logger.debug("Copied " + copiedRecords + " and encoded " + encodedRecords
+				+ " records in " + file.getPath());
+	}
+
+	/**
+	 * Records from one file share their sample list, so only compare the
+	 * list when it changes
+	 * @param sourceSamples
+	 * @return
+	 */
+	private boolean sameSamples(List<String> sourceSamples){
+		if(sourceSamples != lastSourceSamples){
+			lastSourceSamples = sourceSamples;
+			lastSourceMatches = samples.equals(sourceSamples);
+		}
+		return lastSourceMatches;
+	}
+
+	/**
+	 * Counts the bytes written, for indexing
+	 */
+	private static class PositionOutputStream extends OutputStream implements LocationAware {
+		private OutputStream out;
+		private long position = 0;
+
+		private PositionOutputStream(OutputStream out){
+			this.out = out;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			position++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			position += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+
+		@Override
+		public long getPosition(){
+			return position;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * @author markebbert
+ *
+ *	A way of holding the records of an input VCF as a VariantPool (e.g., all
+ *	in memory, or read from the file as needed). The PoolPlanner chooses a
+ *	backend for each input. Backends other than those in PoolBackends may be
+ *	added with PoolPlanner.register.
+ */
+public interface PoolBackend {
+
+	/**
+	 * @return the name used to choose this backend on the command line
+	 */
+	public String getName();
+
+	/**
+	 * @param pattern
+	 * @return whether pools from this backend can be read with 'pattern'.
+	 * Backends supporting LOOKUP must create VariantPoolHeavy objects.
+	 */
+	public boolean supports(AccessPattern pattern);
+
+	/**
+	 * @param file
+	 * @return whether this backend can read 'file'
+	 * @throws IOException
+	 */
+	public boolean canRead(File file) throws IOException;
+
+	/**
+	 * Create a pool for 'file'
+	 *
+	 * @param file
+	 * @param poolID
+	 * @param addChr
+	 * @param heapBudget the memory (in bytes) the pool should try to stay within
+	 * @return
+	 * @throws IOException
+	 */
+	public AbstractVariantPool createVariantPool(File file, String poolID, boolean addChr,
+			long heapBudget) throws IOException;
+}
@@ -0,0 +1,100 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import java.io.File;
+import java.io.IOException;
+
+import vtc.VTCSession;
+
+/**
+ * @author markebbert
+ *
+ *	The VariantPool backends that come with VTC
+ */
+public enum PoolBackends implements PoolBackend {
+
+	/* Read the file once, in file order, without keeping the records */
+	STREAMING("streaming"){
+		@Override
+		public boolean supports(AccessPattern pattern){
+			return pattern == AccessPattern.SEQUENTIAL;
+		}
+
+		@Override
+		public AbstractVariantPool createVariantPool(File file, String poolID, boolean addChr,
+				long heapBudget) throws IOException{
+			return new VariantPoolLight(file, poolID, false, addChr);
+		}
+	},
+
+	/* Hold every record in memory, decoded (or as set by --memory-budget
+	 * and --compress-records)
+	 */
+	HEAVY("heavy"){
+		@Override
+		public AbstractVariantPool createVariantPool(File file, String poolID, boolean addChr,
+				long heapBudget) throws IOException{
+			return new VariantPoolHeavy(file, poolID, addChr);
+		}
+	},
+
+	/* Hold every record in memory in compressed blocks */
+	COMPRESSED("compressed"){
+		@Override
+		public AbstractVariantPool createVariantPool(File file, String poolID, boolean addChr,
+				long heapBudget) throws IOException{
+			return new VariantPoolHeavy(file, poolID, addChr, 0, null, true);
+		}
+	},
+
+	/* Hold records in memory up to the heap budget and spill the rest to disk */
+	SPILLED("spilled"){
+		@Override
+		public AbstractVariantPool createVariantPool(File file, String poolID, boolean addChr,
+				long heapBudget) throws IOException{
+			File spillDir = VTCSession.current().getDefaultSpillDir();
+			if(spillDir == null){
+				spillDir = new File(System.getProperty("java.io.tmpdir"));
+			}
+			return new VariantPoolHeavy(file, poolID, addChr, Math.max(heapBudget, 1), spillDir, false);
+		}
+	},
+
+	/* Read records from the file as they are needed, using a VariantKeyIndex */
+	INDEXED("indexed"){
+		@Override
+		public boolean canRead(File file) throws IOException{
+			return VCFLineReader.canRead(file);
+		}
+
+		@Override
+		public AbstractVariantPool createVariantPool(File file, String poolID, boolean addChr,
+				long heapBudget) throws IOException{
+			return new VariantPoolIndexed(file, poolID, addChr);
+		}
+	};
+
+	private String name;
+
+	private PoolBackends(String name){
+		this.name = name;
+	}
+
+	public String getName(){
+		return name;
+	}
+
+	public boolean supports(AccessPattern pattern){
+		return true;
+	}
+
+	public boolean canRead(File file) throws IOException{
+		return true;
+	}
+
+	public String toString(){
+		return name;
+	}
+}
@@ -0,0 +1,254 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import org.apache.log4j.Logger;
+
+import vtc.VTCSession;
+
+/**
+ * @author markebbert
+ *
+ *	Chooses the backend for each input VariantPool of an operation from the
+ *	way the operation reads its pools, the size of each file, whether it can
+ *	be read by offset, and the memory available. Pools that are only read once
+ *	are streamed. Pools that are looked up are held in memory if they fit,
+ *	compressed in memory if that fits, read from the file as needed if the
+ *	file can be indexed, and spilled to disk otherwise.
+ *
+ *	The choice is logged for each input, and can be overridden for a session
+ *	with setDefaultBackend (e.g., SetOperator's --pool-backend).
+ */
+public class PoolPlanner {
+
+	private static Logger logger = Logger.getLogger(PoolPlanner.class);
+
+	/* Estimated bytes of decoded records per byte of plain and
+	 * block-compressed VCF */
+	public static final long VCF_EXPANSION = 4;
+	public static final long GZ_EXPANSION = 16;
+
+	/* The backend name for choosing automatically */
+	public static final String AUTO = "auto";
+
+	/* Records take about this many times less memory when compressed */
+	public static final long COMPRESSION_RATIO = 4;
+
+	private static final LinkedHashMap<String, PoolBackend> backends = new LinkedHashMap<String, PoolBackend>();
+	static {
+		for(PoolBackends backend : PoolBackends.values()){
+			register(backend);
+		}
+	}
+
+	private AccessPattern pattern;
+	private long heapBudget;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * Plan the pools for an operation reading 'inputs' files with 'pattern'.
+	 * Each input may use an equal share of half the maximum heap.
+	 *
+	 * @param pattern
+	 * @param inputs
+	 */
+	public PoolPlanner(AccessPattern pattern, int inputs){
+		this.pattern = pattern;
+		this.heapBudget = Runtime.getRuntime().maxMemory() / 2 / Math.max(inputs, 1);
+	}
+
+
+
+	/****************************************************
+	 * Backends
+	 */
+
+	/**
+	 * Make 'backend' available by its name, replacing any backend with the
+	 * same name
+	 * @param backend
+	 */
+	public static synchronized void register(PoolBackend backend){
+		backends.put(backend.getName().toLowerCase(), backend);
+	}
+
+	/**
+	 * @param name
+	 * @return the backend named 'name', or null if there is none
+	 */
+	public static synchronized PoolBackend getBackend(String name){
+		return backends.get(name.toLowerCase());
+	}
+
+	/**
+	 * @return the names of the registered backends
+	 */
+	public static synchronized ArrayList<String> getBackendNames(){
+		return new ArrayList<String>(backends.keySet());
+	}
+
+	/**
+	 * @return AUTO followed by the names of the registered backends, for
+	 * command-line options
+	 */
+	public static ArrayList<String> getBackendChoices(){
+		ArrayList<String> choices = getBackendNames();
+		choices.add(0, AUTO);
+		return choices;
+	}
+
+	/**
+	 * Use the backend named 'name' for every input pool created in the
+	 * current session after this call, where the operation allows it
+	 * @param name the backend's name, or null or AUTO to choose automatically
+	 */
+	public static void setDefaultBackend(String name){
+		VTCSession.current().setDefaultPoolBackend(AUTO.equalsIgnoreCase(name) ? null : name);
+	}
+
+
+
+	/****************************************************
+	 * Getters and setters
+	 */
+
+	public AccessPattern getAccessPattern(){
+		return pattern;
+	}
+
+	public long getHeapBudget(){
+		return heapBudget;
+	}
+
+	/**
+	 * @param bytes the memory each input may use
+	 */
+	public void setHeapBudget(long bytes){
+		this.heapBudget = bytes;
+	}
+
+	/**
+	 * Estimate the memory needed to hold every record in 'file' decoded
+	 *
+	 * @param file
+	 * @return
+	 */
+	public static long estimateHeapBytes(File file){
+		String name = file.getName();
+		return file.length() * (name.endsWith(".gz") || name.endsWith(".bgz") ? GZ_EXPANSION : VCF_EXPANSION);
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Choose the backend for 'file' and log the choice
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public PoolBackend choose(File file) throws IOException{
+		VTCSession session = VTCSession.current();
+
+		String name = session.getDefaultPoolBackend();
+		if(name != null){
+			PoolBackend backend = getBackend(name);
+			if(backend == null){
+				logger.warn("Unknown pool backend '" + name + "'. Choosing one for " + file.getName() + ".");
+			}
+			else if(!backend.supports(pattern)){
+				logger.warn("The " + name + " pool backend does not support " + pattern +
+						" access. Choosing one for " + file.getName() + ".");
+			}
+			else if(!backend.canRead(file)){
+				logger.warn("The " + name + " pool backend cannot read " + file.getName() +
+						". Choosing another.");
+			}
+			else{
+				return chosen(file, backend, "requested");
+			}
+		}
+
+		if(session.getDefaultIndexedPools() && PoolBackends.INDEXED.supports(pattern)
+				&& PoolBackends.INDEXED.canRead(file)){
+			return chosen(file, PoolBackends.INDEXED, "requested with --indexed");
+		}
+		if(pattern == AccessPattern.SEQUENTIAL){
+			return chosen(file, PoolBackends.STREAMING, "read once");
+		}
+
+		/* Only the regions are loaded, and the memory options apply to heavy pools */
+		if(session.getDefaultRegions() != null){
+			return chosen(file, PoolBackends.HEAVY, "limited to regions");
+		}
+		if(session.getDefaultMemoryBudget() > 0 || session.getDefaultCompressedRecords()){
+			return chosen(file, PoolBackends.HEAVY, "memory options given");
+		}
+
+		long estimate = estimateHeapBytes(file);
+		String sizes = "about " + (estimate >> 20) + " MB decoded, " + (heapBudget >> 20) + " MB available";
+		if(estimate <= heapBudget){
+			return chosen(file, PoolBackends.HEAVY, sizes);
+		}
+		if(estimate / COMPRESSION_RATIO <= heapBudget){
+			return chosen(file, PoolBackends.COMPRESSED, sizes);
+		}
+		if(PoolBackends.INDEXED.canRead(file)){
+			return chosen(file, PoolBackends.INDEXED, sizes);
+		}
+		return chosen(file, PoolBackends.SPILLED, sizes + ", not block-compressed");
+	}
+
+	private PoolBackend chosen(File file, PoolBackend backend, String reason){
+		logger.info("Using the " + backend.getName() + " pool backend for " + file.getName() +
+				" (" + reason + ")");
+		return backend;
+	}
+
+	/**
+	 * Create a pool for 'file' with the backend chosen for it
+	 *
+	 * @param file
+	 * @param poolID
+	 * @param addChr
+	 * @return
+	 * @throws IOException
+	 */
+	public AbstractVariantPool createVariantPool(File file, String poolID, boolean addChr) throws IOException{
+		return createVariantPool(choose(file), file, poolID, addChr);
+	}
+
+	/**
+	 * Create a pool for 'file' with 'backend'
+	 *
+	 * @param backend
+	 * @param file
+	 * @param poolID
+	 * @param addChr
+	 * @return
+	 * @throws IOException
+	 */
+	public AbstractVariantPool createVariantPool(PoolBackend backend, File file, String poolID,
+			boolean addChr) throws IOException{
+		AbstractVariantPool vp = backend.createVariantPool(file, poolID, addChr, heapBudget);
+		if(pattern == AccessPattern.LOOKUP && !(vp instanceof VariantPoolHeavy)){
+			throw new IllegalStateException("The " + backend.getName() + " pool backend claims to" +
+					" support lookups but did not create a VariantPoolHeavy.");
+		}
+		return vp;
+	}
+}
@@ -0,0 +1,55 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.util.List;
+
+/**
+ * @author markebbert
+ *
+ *	A VariantContext that still holds the line it was decoded from, and the
+ *	samples of the file it was read from. Records built from it (e.g., with
+ *	a VariantContextBuilder) are plain VariantContexts, so only records that
+ *	are unchanged since they were read keep their line.
+ */
+public class RawVariantContext extends VariantContext {
+
+	private static final long serialVersionUID = 3580126594171640817L;
+
+	private String line;
+	private List<String> sourceSamples;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * @param vc the record decoded from 'line'
+	 * @param line the line, without its newline
+	 * @param sourceSamples the samples in the header of the file 'line' is
+	 * from, in column order
+	 */
+	public RawVariantContext(VariantContext vc, String line, List<String> sourceSamples){
+		super(vc);
+		this.line = line;
+		this.sourceSamples = sourceSamples;
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	public String getLine(){
+		return this.line;
+	}
+
+	public List<String> getSourceSamples(){
+		return this.sourceSamples;
+	}
+}
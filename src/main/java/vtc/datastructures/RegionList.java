@@ -0,0 +1,299 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * @author markebbert
+ *
+ *	A set of genomic regions to restrict variant pools to. Regions are given
+ *	as 'chr:start-end' (1-based, inclusive), 'chr:pos', 'chr' (the whole
+ *	contig), or as BED files (0-based, half-open). Overlapping regions are
+ *	merged. Contigs match with or without the 'chr' prefix.
+ */
+public class RegionList {
+
+	private ArrayList<Region> regions;
+	private HashMap<String, ArrayList<Region>> regionsByContig;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	public RegionList(List<Region> regions){
+		this.regionsByContig = new HashMap<String, ArrayList<Region>>();
+		for(Region r : regions){
+			String key = contigKey(r.getChr());
+			ArrayList<Region> contigRegions = regionsByContig.get(key);
+			if(contigRegions == null){
+				contigRegions = new ArrayList<Region>();
+				regionsByContig.put(key, contigRegions);
+			}
+			contigRegions.add(r);
+		}
+
+		this.regions = new ArrayList<Region>();
+		for(String key : regionsByContig.keySet()){
+			ArrayList<Region> merged = merge(regionsByContig.get(key));
+			regionsByContig.put(key, merged);
+			this.regions.addAll(merged);
+		}
+		Collections.sort(this.regions, new RegionComparator());
+	}
+
+	/**
+	 * Parse region strings and BED files. Any value naming an existing file
+	 * is read as a BED file.
+	 * @param values
+	 * @return
+	 * @throws InvalidInputFileException
+	 * @throws IOException
+	 */
+	public static RegionList parse(List<String> values) throws InvalidInputFileException, IOException{
+		ArrayList<Region> regions = new ArrayList<Region>();
+		for(String value : values){
+			if(new File(value).isFile()){
+				regions.addAll(readBED(new File(value)));
+			}
+			else{
+				for(String region : value.split(",")){
+					if(!region.trim().isEmpty()){
+						regions.add(parseRegion(region.trim()));
+					}
+				}
+			}
+		}
+		return new RegionList(regions);
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	/**
+	 * All regions, sorted by contig and start
+	 * @return
+	 */
+	public ArrayList<Region> getRegions(){
+		return this.regions;
+	}
+
+	/**
+	 * Get the regions named and sorted by the contigs in 'contigOrder'.
+	 * Contigs missing from 'contigOrder' are left out.
+	 * @param contigOrder e.g., the sequence names of an indexed file
+	 * @return
+	 */
+	public ArrayList<Region> getRegions(List<String> contigOrder){
+		ArrayList<Region> ordered = new ArrayList<Region>();
+		for(String contig : contigOrder){
+			ArrayList<Region> contigRegions = regionsByContig.get(contigKey(contig));
+			if(contigRegions != null){
+				for(Region r : contigRegions){
+					ordered.add(new Region(contig, r.getStart(), r.getEnd()));
+				}
+			}
+		}
+		return ordered;
+	}
+
+	/**
+	 * Test whether chr:start-end overlaps any region
+	 * @param chr
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public boolean overlaps(String chr, int start, int end){
+		ArrayList<Region> contigRegions = regionsByContig.get(contigKey(chr));
+		if(contigRegions == null){
+			return false;
+		}
+
+		/* Find the last region starting at or before 'end' */
+		int lo = 0, hi = contigRegions.size() - 1, mid, found = -1;
+		while(lo <= hi){
+			mid = (lo + hi) >>> 1;
+			if(contigRegions.get(mid).getStart() <= end){
+				found = mid;
+				lo = mid + 1;
+			}
+			else{
+				hi = mid - 1;
+			}
+		}
+		return found >= 0 && contigRegions.get(found).getEnd() >= start;
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Contigs are compared without the 'chr' prefix
+	 */
+	private static String contigKey(String contig){
+		return ContigAliasMap.normalize(contig, false);
+	}
+
+	/**
+	 * Test whether two contig names are the same, with or without the
+	 * 'chr' prefix
+	 */
+	public static boolean sameContig(String contig1, String contig2){
+		return contigKey(contig1).equals(contigKey(contig2));
+	}
+
+	private static ArrayList<Region> merge(ArrayList<Region> contigRegions){
+		Collections.sort(contigRegions, new RegionComparator());
+		ArrayList<Region> merged = new ArrayList<Region>();
+		Region last = null;
+		for(Region r : contigRegions){
+			if(last != null && r.getStart() - 1 <= last.getEnd()){
+				last = new Region(last.getChr(), last.getStart(), Math.max(last.getEnd(), r.getEnd()));
+				merged.set(merged.size() - 1, last);
+			}
+			else{
+				last = r;
+				merged.add(r);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Parse 'chr:start-end', 'chr:pos' or 'chr'
+	 */
+	public static Region parseRegion(String region) throws InvalidInputFileException{
+		int colon = region.lastIndexOf(':');
+		if(colon < 0){
+			return new Region(region, 1, Integer.MAX_VALUE);
+		}
+		String chr = region.substring(0, colon);
+		String range = region.substring(colon + 1);
+		try{
+			int dash = range.indexOf('-');
+			if(dash < 0){
+				int pos = Integer.parseInt(range);
+				return new Region(chr, pos, pos);
+			}
+			int start = Integer.parseInt(range.substring(0, dash));
+			int end = Integer.parseInt(range.substring(dash + 1));
+			if(start < 1 || end < start){
+				throw new InvalidInputFileException("Invalid region: " + region);
+			}
+			return new Region(chr, start, end);
+		} catch (NumberFormatException e){
+			throw new InvalidInputFileException("Invalid region: " + region +
+					". Expected 'chr:start-end', 'chr:pos', 'chr', or a BED file.");
+		}
+	}
+
+	private static ArrayList<Region> readBED(File bed) throws InvalidInputFileException, IOException{
+		ArrayList<Region> regions = new ArrayList<Region>();
+		BufferedReader reader = new BufferedReader(new FileReader(bed));
+		try{
+			String line;
+			String[] cols;
+			int lineNo = 0;
+			while((line = reader.readLine()) != null){
+				lineNo++;
+				if(line.isEmpty() || line.startsWith("#") || line.startsWith("track")
+						|| line.startsWith("browser")){
+					continue;
+				}
+				cols = line.split("\t");
+				if(cols.length < 3){
+					throw new InvalidInputFileException("Invalid BED line " + lineNo + " in " +
+							bed.getPath() + ": " + line);
+				}
+				try{
+					/* BED is 0-based and half-open */
+					regions.add(new Region(cols[0], Integer.parseInt(cols[1].trim()) + 1,
+							Integer.parseInt(cols[2].trim())));
+				} catch (NumberFormatException e){
+					throw new InvalidInputFileException("Invalid BED line " + lineNo + " in " +
+							bed.getPath() + ": " + line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return regions;
+	}
+
+
+
+	/****************************************************
+	 * Regions
+	 */
+
+	/**
+	 * A 1-based, inclusive genomic region
+	 */
+	public static class Region {
+		private String chr;
+		private int start, end;
+
+		public Region(String chr, int start, int end){
+			this.chr = chr;
+			this.start = start;
+			this.end = end;
+		}
+
+		public String getChr(){
+			return chr;
+		}
+
+		public int getStart(){
+			return start;
+		}
+
+		public int getEnd(){
+			return end;
+		}
+
+		/**
+		 * Test whether a record spanning start-end overlaps this region
+		 * @param start
+		 * @param end
+		 * @return
+		 */
+		public boolean overlaps(int start, int end){
+			return start <= this.end && end >= this.start;
+		}
+
+		@Override
+		public String toString(){
+			return chr + ":" + start + "-" + end;
+		}
+	}
+
+	private static class RegionComparator implements Comparator<Region> {
+		private NaturalOrderComparator naturalOrder = new NaturalOrderComparator();
+
+		@Override
+		public int compare(Region r1, Region r2){
+			int c = naturalOrder.compare(contigKey(r1.getChr()), contigKey(r2.getChr()));
+			if(c != 0){
+				return c;
+			}
+			return r1.getStart() < r2.getStart() ? -1 : (r1.getStart() == r2.getStart() ? 0 : 1);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * @author markebbert
+ *
+ *	Publishes a single result, such as a VariantPoolSummary or the
+ *	SetOperationCounts of an operation, computed on the Executor when a
+ *	subscriber first requests it. 'result' is called for each subscriber.
+ */
+public class ResultPublisher<T> extends IteratorPublisher<T> {
+
+	private Callable<? extends T> result;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	public ResultPublisher(Callable<? extends T> result, Executor executor){
+		super(executor);
+		this.result = result;
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	@Override
+	protected Iterator<T> open() throws Exception {
+		T item = result.call();
+		if(item == null){
+			throw new NullPointerException("No result to publish");
+		}
+		return Collections.singletonList(item).iterator();
+	}
+}
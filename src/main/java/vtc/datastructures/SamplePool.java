@@ -9,6 +9,7 @@ import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import vtc.VTCSession;
 import vtc.tools.setoperator.operation.InvalidOperationException;
 
 /**
@@ -17,14 +18,11 @@ import vtc.tools.setoperator.operation.InvalidOperationException;
  */
 public class SamplePool implements Pool{
 
-	private static TreeSet<String> usedPoolIDs = new TreeSet<String>();
-	
 	/* This poolID must match the poolID of its associated VariantPool object
 	 * since all samples come from the variants anyway.
 	 */
 	private String poolID;
 	private TreeSet<String> samples;
-	private static TreeSet<String> definedVariantPoolIDs; // Keep track of all variantPools defined on the command line
 
 	// Match on the expected pattern for a sample pool (e.g. f1[s1,s3] )
 	private static Pattern samplePoolPattern = Pattern.compile("^(\\w+)(\\[(.+)\\])*$");
@@ -41,7 +39,6 @@ public class SamplePool implements Pool{
 	
 	public SamplePool(){
 		this.samples = new TreeSet<String>();
-		SamplePool.definedVariantPoolIDs = new TreeSet<String>();
 	}
 	
 	
@@ -59,8 +56,12 @@ public class SamplePool implements Pool{
 		return this.poolID;
 	}
 	
+	/**
+	 * Return a copy of the set of all sample pool IDs in the current session
+	 * @return
+	 */
 	public static TreeSet<String> getAllPoolIDs(){
-		return SamplePool.usedPoolIDs;
+		return VTCSession.current().getAllSamplePoolIDs();
 	}
 	
 	
@@ -99,7 +100,7 @@ public class SamplePool implements Pool{
 		}
 		else{
 			this.setPoolID(m.group(1));
-			SamplePool.usedPoolIDs.add(this.getPoolID());
+			VTCSession.current().addSamplePoolID(this.getPoolID());
 			
 			/* Verify this poolID maps to an existing VariantPool poolID. */
 			ArrayList<String> allVariantPoolIDs = VariantPoolHeavy.getAllPoolIDs();
@@ -0,0 +1,175 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * @author markebbert
+ *
+ *	The variants of a VariantPoolHeavy sorted by start on each contig, for
+ *	finding the variants overlapping a range with binary searches rather
+ *	than a scan of the pool. Each contig also keeps the greatest end seen
+ *	up to each variant, so variants starting before the range but
+ *	reaching into it (e.g., long deletions) are found too.
+ *
+ *	The index is a snapshot of the pool when it was built, and is safe
+ *	for many threads to read at once.
+ */
+public class SortedVariantIndex {
+
+	private VariantPoolHeavy vp;
+	private HashMap<String, ContigIndex> contigs;
+	private int size;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * Index every variant in 'vp'
+	 *
+	 * @param vp
+	 * @throws IOException
+	 */
+	public SortedVariantIndex(VariantPoolHeavy vp) throws IOException{
+		this.vp = vp;
+		this.contigs = new HashMap<String, ContigIndex>();
+
+		HashMap<String, ArrayList<VariantContext>> byContig = new HashMap<String, ArrayList<VariantContext>>();
+		VariantContext var;
+		while((var = vp.getNextVar()) != null){
+			ArrayList<VariantContext> vars = byContig.get(var.getChr());
+			if(vars == null){
+				vars = new ArrayList<VariantContext>();
+				byContig.put(var.getChr(), vars);
+			}
+			vars.add(var);
+			size++;
+		}
+		for(String contig : byContig.keySet()){
+			contigs.put(contig, new ContigIndex(byContig.get(contig)));
+		}
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	public VariantPoolHeavy getVariantPool(){
+		return vp;
+	}
+
+	/**
+	 * @return the number of variants indexed
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Get the variants overlapping 'chr':'start'-'end' (1-based, inclusive),
+	 * in order of start. 'chr' may be given with or without the 'chr' prefix.
+	 *
+	 * @param chr
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public List<VariantContext> query(String chr, int start, int end){
+		ContigIndex index = contigs.get(ContigAliasMap.normalize(chr, vp.addChr()));
+		if(index == null || end < start){
+			return new ArrayList<VariantContext>();
+		}
+		return index.query(start, end);
+	}
+
+	/**
+	 * Get the variant at 'chr':'pos' with reference allele 'ref', just as
+	 * VariantPoolHeavy.getVariant does. 'chr' may be given with or without
+	 * the 'chr' prefix, and 'ref' as its bases (e.g., 'A') or as the pool's
+	 * keys write it (e.g., 'A*').
+	 *
+	 * @param chr
+	 * @param pos
+	 * @param ref
+	 * @return the variant or null
+	 */
+	public VariantContext getVariant(String chr, int pos, String ref){
+		return vp.getVariant(ContigAliasMap.normalize(chr, vp.addChr()), pos,
+				ref.endsWith("*") ? ref : ref + "*");
+	}
+
+	/**
+	 * The variants on one contig, sorted by start
+	 */
+	private static class ContigIndex {
+		private VariantContext[] vars;
+		private int[] starts;
+
+		/* The greatest end of vars[0..i] */
+		private int[] maxEnds;
+
+		private ContigIndex(ArrayList<VariantContext> sorted){
+			Collections.sort(sorted, new Comparator<VariantContext>(){
+				@Override
+				public int compare(VariantContext v1, VariantContext v2) {
+					return v1.getStart() < v2.getStart() ? -1 : (v1.getStart() == v2.getStart() ? 0 : 1);
+				}
+			});
+			vars = sorted.toArray(new VariantContext[sorted.size()]);
+			starts = new int[vars.length];
+			maxEnds = new int[vars.length];
+			int maxEnd = 0;
+			for(int i = 0; i < vars.length; i++){
+				starts[i] = vars[i].getStart();
+				maxEnd = Math.max(maxEnd, vars[i].getEnd());
+				maxEnds[i] = maxEnd;
+			}
+		}
+
+		private List<VariantContext> query(int start, int end){
+			/* Variants before 'first' all end before 'start', and
+			 * variants from 'last' on all start after 'end'
+			 */
+			int first = firstAtLeast(maxEnds, start);
+			int last = firstAtLeast(starts, end + 1);
+			ArrayList<VariantContext> result = new ArrayList<VariantContext>(Math.max(last - first, 0));
+			for(int i = first; i < last; i++){
+				if(vars[i].getEnd() >= start){
+					result.add(vars[i]);
+				}
+			}
+			return result;
+		}
+
+		/**
+		 * @return the index of the first value >= 'value' in the sorted
+		 * 'values', or values.length if there is none
+		 */
+		private static int firstAtLeast(int[] values, int value){
+			int low = 0, high = values.length;
+			while(low < high){
+				int mid = (low + high) >>> 1;
+				if(values[mid] < value){
+					low = mid + 1;
+				}
+				else{
+					high = mid;
+				}
+			}
+			return low;
+		}
+	}
+}
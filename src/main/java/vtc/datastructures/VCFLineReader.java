@@ -0,0 +1,203 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * @author markebbert
+ *
+ *	Reads the lines of a plain or block-compressed (bgzip) VCF, giving the
+ *	offset of each line so it can be read again later with seek. Offsets
+ *	are byte offsets in plain files and BGZF virtual offsets in
+ *	block-compressed files. Not safe for more than one thread at once.
+ */
+public class VCFLineReader {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private File file;
+
+	/* Block-compressed files */
+	private BlockCompressedInputStream bgzf;
+	private boolean started = false;
+
+	/* Plain files */
+	private RandomAccessFile raf;
+	private byte[] buffer;
+	private long bufferStart = 0;
+	private int bufferLength = 0, bufferPos = 0;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * @param file
+	 * @throws IOException if the file is gzipped but not block-compressed
+	 */
+	public VCFLineReader(File file) throws IOException{
+		this.file = file;
+		if(isBlockCompressed(file)){
+			bgzf = new BlockCompressedInputStream(file);
+		}
+		else if(isGzipped(file)){
+			throw new IOException(file.getPath() + " is gzipped but not block-compressed." +
+					" Compress it with bgzip to read it by offset.");
+		}
+		else{
+			raf = new RandomAccessFile(file, "r");
+			buffer = new byte[BUFFER_SIZE];
+		}
+	}
+
+	/**
+	 * @param file
+	 * @return whether 'file' can be read by offset (i.e., it is not gzipped,
+	 * or is block-compressed)
+	 * @throws IOException
+	 */
+	public static boolean canRead(File file) throws IOException{
+		return isBlockCompressed(file) || !isGzipped(file);
+	}
+
+	private static boolean isBlockCompressed(File file) throws IOException{
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try{
+			return BlockCompressedInputStream.isValidFile(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static boolean isGzipped(File file) throws IOException{
+		InputStream in = new FileInputStream(file);
+		try{
+			return in.read() == 0x1f && in.read() == 0x8b;
+		} finally {
+			in.close();
+		}
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * @return the offset of the next line
+	 */
+	public long getOffset(){
+		if(bgzf != null){
+			return started ? bgzf.getFilePointer() : 0;
+		}
+		return bufferStart + bufferPos;
+	}
+
+	/**
+	 * Read lines from 'offset', as returned by getOffset
+	 * @param offset
+	 * @throws IOException
+	 */
+	public void seek(long offset) throws IOException{
+		if(bgzf != null){
+			bgzf.seek(offset);
+			started = true;
+		}
+		else if(offset >= bufferStart && offset <= bufferStart + bufferLength){
+			bufferPos = (int) (offset - bufferStart);
+		}
+		else{
+			bufferStart = offset;
+			bufferLength = 0;
+			bufferPos = 0;
+		}
+	}
+
+	/**
+	 * @return the next line without its line terminator, or null at the end
+	 * of the file
+	 * @throws IOException
+	 */
+	public String readLine() throws IOException{
+		if(bgzf != null){
+			started = true;
+			return bgzf.readLine();
+		}
+
+		ByteArrayOutputStream line = null;
+		while(true){
+			if(bufferPos == bufferLength && !fill()){
+				if(line == null){
+					return null;
+				}
+				return toLine(line.toByteArray(), 0, line.size());
+			}
+			int start = bufferPos;
+			while(bufferPos < bufferLength && buffer[bufferPos] != '\n'){
+				bufferPos++;
+			}
+			if(bufferPos < bufferLength){
+				/* Found the end of the line */
+				bufferPos++;
+				if(line == null){
+					return toLine(buffer, start, bufferPos - 1 - start);
+				}
+				line.write(buffer, start, bufferPos - 1 - start);
+				return toLine(line.toByteArray(), 0, line.size());
+			}
+			if(line == null){
+				line = new ByteArrayOutputStream();
+			}
+			line.write(buffer, start, bufferPos - start);
+		}
+	}
+
+	/**
+	 * Read the bytes after the buffer into the buffer
+	 * @return false at the end of the file
+	 */
+	private boolean fill() throws IOException{
+		bufferStart += bufferLength;
+		bufferPos = 0;
+		bufferLength = 0;
+		raf.seek(bufferStart);
+		int n = raf.read(buffer, 0, buffer.length);
+		if(n <= 0){
+			return false;
+		}
+		bufferLength = n;
+		return true;
+	}
+
+	private static String toLine(byte[] bytes, int start, int length) throws IOException{
+		if(length > 0 && bytes[start + length - 1] == '\r'){
+			length--;
+		}
+		return new String(bytes, start, length, "UTF-8");
+	}
+
+	public File getFile(){
+		return file;
+	}
+
+	public void close() throws IOException{
+		if(bgzf != null){
+			bgzf.close();
+		}
+		else{
+			raf.close();
+		}
+	}
+}
@@ -0,0 +1,405 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.tribble.AbstractFeatureReader;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.log4j.Logger;
+
+/**
+ * @author markebbert
+ *
+ *	External merge sort for VCFs that are too large to sort in memory. Records
+ *	are read as raw lines and buffered until the memory budget is used. Each
+ *	full buffer is sorted and spilled to a block-compressed temporary file, and
+ *	the spill files are then merged (at most MAX_MERGE_FILES at a time) into a
+ *	single sorted, block-compressed VCF. Records at the same position keep
+ *	their original order.
+ *
+ *	Contigs are ordered by the sequence dictionary, if one is given, otherwise
+ *	by the VCF's '##contig' lines. Contigs missing from both are ordered
+ *	naturally after the others. A leading 'chr' is ignored.
+ */
+public class VCFSorter {
+
+	private static Logger logger = Logger.getLogger(VCFSorter.class);
+
+	public static final long DEFAULT_MAX_MEMORY = 512L * 1024 * 1024;
+
+	/* The most spill files read at once when merging */
+	private static final int MAX_MERGE_FILES = 64;
+
+	/* Rough per-record cost beyond the characters in the line */
+	private static final int RECORD_OVERHEAD = 64;
+
+	private static final Pattern CONTIG_PATTERN = Pattern.compile("^##contig=<.*?ID=([^,>]+)");
+
+	private SAMSequenceDictionary dict;
+	private long maxMemory;
+	private File tmpDir;
+
+	private ArrayList<File> sortedFiles;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * @param dict the contig order to sort by. If null, each VCF's '##contig' lines are used.
+	 * @param maxMemory the approximate number of bytes of records held in memory at once
+	 * @param tmpDir directory for the spill files and sorted VCFs
+	 * @throws InvalidInputFileException
+	 */
+	public VCFSorter(SAMSequenceDictionary dict, long maxMemory, File tmpDir) throws InvalidInputFileException{
+		if(!tmpDir.isDirectory() || !tmpDir.canWrite()){
+			throw new InvalidInputFileException("Cannot write temporary files to " + tmpDir.getPath());
+		}
+		this.dict = dict;
+		this.maxMemory = maxMemory;
+		this.tmpDir = tmpDir;
+		this.sortedFiles = new ArrayList<File>();
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Return 'vcf' if it is already sorted. Otherwise sort it into a temporary
+	 * file and return that. Temporary files are removed by deleteSortedFiles().
+	 * @param vcf
+	 * @return
+	 * @throws IOException
+	 */
+	public File ensureSorted(File vcf) throws IOException{
+		if(isSorted(vcf)){
+			return vcf;
+		}
+		logger.info(vcf.getPath() + " is not sorted. Sorting into " + tmpDir.getPath() + "...");
+		File sorted = File.createTempFile("vtc_sorted_", ".vcf.gz", tmpDir);
+		sortedFiles.add(sorted);
+		sort(vcf, sorted);
+		return sorted;
+	}
+
+	/**
+	 * Delete every temporary sorted VCF created by ensureSorted()
+	 */
+	public void deleteSortedFiles(){
+		for(File f : sortedFiles){
+			if(!f.delete() && f.exists()){
+				logger.warn("Could not delete temporary file " + f.getPath());
+			}
+		}
+		sortedFiles.clear();
+	}
+
+	/**
+	 * Test whether the records in 'vcf' are in order
+	 * @param vcf
+	 * @return
+	 * @throws IOException
+	 */
+	public boolean isSorted(File vcf) throws IOException{
+		BufferedReader reader = openReader(vcf);
+		try{
+			ArrayList<String> header = new ArrayList<String>();
+			String line = readHeader(reader, header);
+			RecordComparator comparator = new RecordComparator(getContigOrder(header));
+			SortRecord prev = null, curr;
+			for(; line != null; line = reader.readLine()){
+				if(line.length() == 0){
+					continue;
+				}
+				curr = new SortRecord(line, null, 0);
+				if(prev != null && comparator.compare(curr, prev) < 0){
+					return false;
+				}
+				prev = curr;
+			}
+			return true;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Sort 'in' into 'out'. 'out' is always block compressed, so it should end with '.gz'.
+	 * @param in
+	 * @param out
+	 * @throws IOException
+	 */
+	public void sort(File in, File out) throws IOException{
+		ArrayList<String> header = new ArrayList<String>();
+		ArrayList<File> spills = new ArrayList<File>(), merged = new ArrayList<File>();
+		RecordComparator comparator;
+		try{
+			BufferedReader reader = openReader(in);
+			try{
+				String line = readHeader(reader, header);
+				comparator = new RecordComparator(getContigOrder(header));
+
+				ArrayList<SortRecord> buffer = new ArrayList<SortRecord>();
+				long bufferSize = 0, index = 0;
+				for(; line != null; line = reader.readLine()){
+					if(line.length() == 0){
+						continue;
+					}
+					buffer.add(new SortRecord(line, line, index++));
+					bufferSize += 2L * line.length() + RECORD_OVERHEAD;
+					if(bufferSize >= maxMemory){
+						spills.add(spill(buffer, comparator));
+						buffer.clear();
+						bufferSize = 0;
+					}
+				}
+
+				/* Everything fit in memory, so write it directly */
+				if(spills.isEmpty()){
+					Collections.sort(buffer, comparator);
+					writeRecords(buffer, header, out);
+					return;
+				}
+				if(!buffer.isEmpty()){
+					spills.add(spill(buffer, comparator));
+				}
+			} finally {
+				reader.close();
+			}
+
+			logger.info("Merging " + spills.size() + " sorted spill files...");
+
+			/* Keep the number of open files bounded */
+			while(spills.size() > MAX_MERGE_FILES){
+				merged = new ArrayList<File>();
+				for(int i = 0; i < spills.size(); i += MAX_MERGE_FILES){
+					List<File> group = spills.subList(i, Math.min(i + MAX_MERGE_FILES, spills.size()));
+					File spill = File.createTempFile("vtc_spill_", ".gz", tmpDir);
+					merged.add(spill);
+					mergeSpills(group, null, spill, comparator);
+					deleteFiles(group);
+				}
+				spills = merged;
+			}
+			mergeSpills(spills, header, out, comparator);
+		} finally {
+			deleteFiles(spills);
+			deleteFiles(merged);
+		}
+	}
+
+	/**
+	 * Sort the buffer and write it to a temporary file
+	 */
+	private File spill(ArrayList<SortRecord> buffer, RecordComparator comparator) throws IOException{
+		Collections.sort(buffer, comparator);
+		File spill = File.createTempFile("vtc_spill_", ".gz", tmpDir);
+		writeRecords(buffer, null, spill);
+		return spill;
+	}
+
+	private void writeRecords(List<SortRecord> records, List<String> header, File out) throws IOException{
+		BufferedWriter writer = openWriter(out);
+		try{
+			if(header != null){
+				for(String h : header){
+					writer.write(h);
+					writer.newLine();
+				}
+			}
+			for(SortRecord r : records){
+				writer.write(r.line);
+				writer.newLine();
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Merge sorted spill files with a priority queue. Ties go to the earlier
+	 * spill, which holds the earlier records, so the sort is stable.
+	 */
+	private void mergeSpills(List<File> spills, List<String> header, File out, RecordComparator comparator) throws IOException{
+		ArrayList<BufferedReader> readers = new ArrayList<BufferedReader>();
+		PriorityQueue<SortRecord> queue = new PriorityQueue<SortRecord>(spills.size(), comparator);
+		BufferedWriter writer = null;
+		try{
+			String line;
+			for(int i = 0; i < spills.size(); i++){
+				readers.add(openReader(spills.get(i)));
+				line = readers.get(i).readLine();
+				if(line != null){
+					queue.add(new SortRecord(line, line, i));
+				}
+			}
+
+			writer = openWriter(out);
+			if(header != null){
+				for(String h : header){
+					writer.write(h);
+					writer.newLine();
+				}
+			}
+
+			SortRecord r;
+			while((r = queue.poll()) != null){
+				writer.write(r.line);
+				writer.newLine();
+				line = readers.get((int) r.index).readLine();
+				if(line != null){
+					queue.add(new SortRecord(line, line, r.index));
+				}
+			}
+		} finally {
+			for(BufferedReader reader : readers){
+				reader.close();
+			}
+			if(writer != null){
+				writer.close();
+			}
+		}
+	}
+
+	private void deleteFiles(List<File> files){
+		for(File f : files){
+			if(!f.delete() && f.exists()){
+				logger.warn("Could not delete temporary file " + f.getPath());
+			}
+		}
+	}
+
+	/**
+	 * Read the header lines into 'header' and return the first record line
+	 */
+	private String readHeader(BufferedReader reader, List<String> header) throws IOException{
+		String line;
+		while((line = reader.readLine()) != null && line.startsWith("#")){
+			header.add(line);
+		}
+		return line;
+	}
+
+	/**
+	 * Map each contig (without 'chr') to its position in the dictionary or,
+	 * if there is no dictionary, in the header's '##contig' lines
+	 */
+	private HashMap<String, Integer> getContigOrder(List<String> header){
+		HashMap<String, Integer> order = new HashMap<String, Integer>();
+		if(dict != null){
+			for(SAMSequenceRecord seq : dict.getSequences()){
+				order.put(ContigAliasMap.normalize(seq.getSequenceName(), false), seq.getSequenceIndex());
+			}
+			return order;
+		}
+		Matcher m;
+		for(String line : header){
+			m = CONTIG_PATTERN.matcher(line);
+			if(m.find()){
+				String contig = ContigAliasMap.normalize(m.group(1), false);
+				if(!order.containsKey(contig)){
+					order.put(contig, order.size());
+				}
+			}
+		}
+		return order;
+	}
+
+	private static BufferedReader openReader(File file) throws IOException{
+		InputStream is = new FileInputStream(file);
+		if(AbstractFeatureReader.hasBlockCompressedExtension(file)){
+			is = new GZIPInputStream(is);
+		}
+		return new BufferedReader(new InputStreamReader(is));
+	}
+
+	private static BufferedWriter openWriter(File file) throws IOException{
+		return new BufferedWriter(new OutputStreamWriter(new BlockCompressedOutputStream(file)));
+	}
+
+
+	/**
+	 * A record's sort key. 'index' keeps records at the same position in
+	 * their original order. When merging it is the spill the record came from.
+	 */
+	private static class SortRecord {
+		private String contig;
+		private int pos;
+		private String line;
+		private long index;
+
+		private SortRecord(String record, String line, long index){
+			int tab1 = record.indexOf('\t');
+			int tab2 = record.indexOf('\t', tab1 + 1);
+			if(tab1 < 0 || tab2 < 0){
+				throw new IllegalArgumentException("Invalid VCF record: " + record);
+			}
+			this.contig = ContigAliasMap.normalize(record.substring(0, tab1), false);
+			this.pos = Integer.parseInt(record.substring(tab1 + 1, tab2));
+			this.line = line;
+			this.index = index;
+		}
+	}
+
+	private static class RecordComparator implements Comparator<SortRecord> {
+		private HashMap<String, Integer> contigOrder;
+		private NaturalOrderComparator naturalOrder = new NaturalOrderComparator();
+
+		private RecordComparator(HashMap<String, Integer> contigOrder){
+			this.contigOrder = contigOrder;
+		}
+
+		public int compare(SortRecord r1, SortRecord r2){
+			int c = compareContigs(r1.contig, r2.contig);
+			if(c != 0){
+				return c;
+			}
+			if(r1.pos != r2.pos){
+				return r1.pos < r2.pos ? -1 : 1;
+			}
+			return r1.index < r2.index ? -1 : (r1.index == r2.index ? 0 : 1);
+		}
+
+		private int compareContigs(String c1, String c2){
+			if(c1.equals(c2)){
+				return 0;
+			}
+			Integer i1 = contigOrder.get(c1), i2 = contigOrder.get(c2);
+			if(i1 != null && i2 != null){
+				return i1 < i2 ? -1 : 1;
+			}
+			else if(i1 != null){
+				return -1;
+			}
+			else if(i2 != null){
+				return 1;
+			}
+			return naturalOrder.compare(c1, c2);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author markebbert
+ *
+ *	A dictionary of the values that repeat across the records of a pool:
+ *	contigs, FILTER values, INFO keys, sample names and alleles. Each distinct
+ *	value is kept once and records the pool builds itself (on another
+ *	contig, or read back after spilling) refer to that copy, rather than
+ *	carrying their own. Records read from a file share what the codec can
+ *	hand out while decoding (see ContigAliasCodec).
+ *
+ *	Record IDs are not interned. They are unique within a pool (apart from the
+ *	missing value '.', which htsjdk already shares), so an entry for each one
+ *	would cost more than it saves.
+ */
+public class VariantDictionary {
+
+	/* Longer values, e.g., indel alleles, rarely repeat. Keeping them would
+	 * grow the dictionary with every new indel, so they aren't interned.
+	 */
+	public static final int MAX_INTERNED_LENGTH = 16;
+
+	private HashMap<String, String> strings;
+	private HashMap<Allele, Allele> alleles;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	public VariantDictionary(){
+		this.strings = new HashMap<String, String>();
+		this.alleles = new HashMap<Allele, Allele>();
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	/**
+	 * The number of distinct values in this dictionary
+	 * @return
+	 */
+	public int size(){
+		return strings.size() + alleles.size();
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Get the dictionary's copy of 's', adding it if this is the first time
+	 * it was seen
+	 * @param s
+	 * @return
+	 */
+	public String intern(String s){
+		if(s == null){
+			return null;
+		}
+		String interned = strings.get(s);
+		if(interned == null){
+			strings.put(s, s);
+			return s;
+		}
+		return interned;
+	}
+
+	/**
+	 * Get the dictionary's copy of 'a', adding it if this is the first time
+	 * it was seen. Reference and alternate alleles with the same bases are
+	 * different values. Alleles longer than MAX_INTERNED_LENGTH are returned
+	 * as they are.
+	 * @param a
+	 * @return
+	 */
+	public Allele intern(Allele a){
+		if(a.length() > MAX_INTERNED_LENGTH){
+			return a;
+		}
+		Allele interned = alleles.get(a);
+		if(interned == null){
+			alleles.put(a, a);
+			return a;
+		}
+		return interned;
+	}
+
+	/**
+	 * Return 'var' on contig 'chr'. 'var' itself is returned if it is already
+	 * on 'chr': rebuilding each record just to share its alleles and INFO keys
+	 * would create a second record for every one read, so pools share contigs
+	 * as records are decoded instead (see ContigAliasCodec).
+	 * Records that must move to another contig are rebuilt with the
+	 * dictionary's contig, alleles, FILTER values and INFO keys. Genotypes are
+	 * left untouched so lazily parsed genotypes stay unparsed.
+	 *
+	 * @param var
+	 * @param chr the contig to use, e.g. after adding or removing 'chr'
+	 * @return
+	 */
+	public VariantContext intern(VariantContext var, String chr){
+		if(chr.equals(var.getChr())){
+			return var;
+		}
+
+		List<Allele> varAlleles = var.getAlleles();
+		ArrayList<Allele> internedAlleles = new ArrayList<Allele>(varAlleles.size());
+		for(Allele a : varAlleles){
+			internedAlleles.add(intern(a));
+		}
+
+		VariantContextBuilder vcBuilder = new VariantContextBuilder(var);
+		vcBuilder.chr(intern(chr));
+		vcBuilder.alleles(internedAlleles);
+		if(var.filtersWereApplied()){
+			LinkedHashSet<String> internedFilters = new LinkedHashSet<String>();
+			for(String filter : var.getFilters()){
+				internedFilters.add(intern(filter));
+			}
+			vcBuilder.filters(internedFilters);
+		}
+
+		Map<String, Object> attributes = var.getAttributes();
+		LinkedHashMap<String, Object> internedAttributes = new LinkedHashMap<String, Object>(attributes.size() * 2);
+		for(Map.Entry<String, Object> e : attributes.entrySet()){
+			internedAttributes.put(intern(e.getKey()), e.getValue());
+		}
+		vcBuilder.attributes(internedAttributes);
+		return vcBuilder.make();
+	}
+}
@@ -0,0 +1,414 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * @author markebbert
+ *
+ *	An index of the records in a VCF by contig and position, giving the
+ *	offset of each record (see VCFLineReader), so single records can be
+ *	read without reading the file. The index is built once and written
+ *	next to the VCF as '<vcf>.vki'. It is rebuilt if the VCF's length or
+ *	modification time changes. The entries are memory-mapped rather than
+ *	read, so opening the index of a large file is cheap and only the pages
+ *	searched are read from disk.
+ *
+ *	The file holds a preamble (magic number, the VCF's length and
+ *	modification time, the offset of the first record and the offset of
+ *	the contig table), the entries of each contig sorted by position (an
+ *	int position and a long offset each), and the contig table (name,
+ *	number of entries and offset of the first entry, in file order).
+ *
+ *	Safe for many threads to read at once.
+ */
+public class VariantKeyIndex {
+
+	private static Logger logger = Logger.getLogger(VariantKeyIndex.class);
+
+	public static final String EXTENSION = ".vki";
+
+	private static final int MAGIC = 0x564B4931; // "VKI1"
+	private static final int PREAMBLE_BYTES = 4 + 8 + 8 + 8 + 8;
+	private static final int ENTRY_BYTES = 4 + 8;
+
+	private File vcf;
+	private long firstRecordOffset;
+	private LinkedHashMap<String, ContigEntries> contigs;
+	private int size;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	private VariantKeyIndex(File vcf, File indexFile) throws IOException{
+		this.vcf = vcf;
+		this.contigs = new LinkedHashMap<String, ContigEntries>();
+
+		RandomAccessFile raf = new RandomAccessFile(indexFile, "r");
+		try{
+			FileChannel channel = raf.getChannel();
+			raf.seek(PREAMBLE_BYTES - 16);
+			firstRecordOffset = raf.readLong();
+			long tableOffset = raf.readLong();
+
+			DataInputStream table = new DataInputStream(new FileInputStream(raf.getFD()));
+			raf.seek(tableOffset);
+			int nContigs = table.readInt();
+			for(int i = 0; i < nContigs; i++){
+				String name = table.readUTF();
+				int count = table.readInt();
+				long start = table.readLong();
+				MappedByteBuffer entries = channel.map(FileChannel.MapMode.READ_ONLY, start,
+						(long) count * ENTRY_BYTES);
+				contigs.put(name, new ContigEntries(entries, count));
+				size += count;
+			}
+		} finally {
+			/* The mappings stay valid after the file is closed */
+			raf.close();
+		}
+	}
+
+	/**
+	 * Open the index of 'vcf', building it first if it does not exist or is
+	 * out of date
+	 *
+	 * @param vcf
+	 * @return
+	 * @throws IOException
+	 */
+	public static VariantKeyIndex load(File vcf) throws IOException{
+		File indexFile = getIndexFile(vcf);
+		if(!isCurrent(vcf, indexFile)){
+			build(vcf, indexFile);
+		}
+		return new VariantKeyIndex(vcf, indexFile);
+	}
+
+	/**
+	 * The index file for 'vcf'. Indexes of VCFs in directories that cannot
+	 * be written are kept in the temporary directory.
+	 * @param vcf
+	 * @return
+	 */
+	public static File getIndexFile(File vcf){
+		File indexFile = new File(vcf.getPath() + EXTENSION);
+		File dir = vcf.getAbsoluteFile().getParentFile();
+		if(indexFile.exists() || dir.canWrite()){
+			return indexFile;
+		}
+		return new File(System.getProperty("java.io.tmpdir"), vcf.getName() + "_" +
+				Integer.toHexString(vcf.getAbsolutePath().hashCode()) + EXTENSION);
+	}
+
+	/**
+	 * Whether 'indexFile' indexes the current contents of 'vcf'
+	 */
+	private static boolean isCurrent(File vcf, File indexFile) throws IOException{
+		if(!indexFile.isFile() || indexFile.length() < PREAMBLE_BYTES){
+			return false;
+		}
+		DataInputStream in = new DataInputStream(new FileInputStream(indexFile));
+		try{
+			return in.readInt() == MAGIC && in.readLong() == vcf.length()
+					&& in.readLong() == vcf.lastModified();
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Index every record in 'vcf' and write the index to 'indexFile'. The
+	 * index is written to a temporary file first, so readers never see a
+	 * partial index.
+	 *
+	 * @param vcf
+	 * @param indexFile
+	 * @throws IOException
+	 */
+	public static void build(File vcf, File indexFile) throws IOException{
+		logger.info("Indexing " + vcf.getPath());
+
+		long length = vcf.length(), lastModified = vcf.lastModified();
+		LinkedHashMap<String, EntryList> entries = new LinkedHashMap<String, EntryList>();
+		long firstRecordOffset = -1;
+
+		VCFLineReader reader = new VCFLineReader(vcf);
+		try{
+			long offset = reader.getOffset();
+			String line;
+			EntryList contigEntries = null;
+			String contig = null;
+			while((line = reader.readLine()) != null){
+				if(line.length() > 0 && line.charAt(0) != '#'){
+					if(firstRecordOffset < 0){
+						firstRecordOffset = offset;
+					}
+					int tab1 = line.indexOf('\t');
+					int tab2 = line.indexOf('\t', tab1 + 1);
+					if(tab1 < 0 || tab2 < 0){
+						throw new IOException("Invalid VCF record in " + vcf.getPath() + ": " + line);
+					}
+					if(contig == null || !line.regionMatches(0, contig, 0, tab1) || contig.length() != tab1){
+						contig = line.substring(0, tab1);
+						contigEntries = entries.get(contig);
+						if(contigEntries == null){
+							contigEntries = new EntryList();
+							entries.put(contig, contigEntries);
+						}
+					}
+					contigEntries.add(Integer.parseInt(line.substring(tab1 + 1, tab2)), offset);
+				}
+				offset = reader.getOffset();
+			}
+		} finally {
+			reader.close();
+		}
+
+		File tmp = new File(indexFile.getPath() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+		ArrayList<Long> starts = new ArrayList<Long>();
+		long tableOffset = PREAMBLE_BYTES;
+		try{
+			out.writeInt(MAGIC);
+			out.writeLong(length);
+			out.writeLong(lastModified);
+			out.writeLong(firstRecordOffset);
+			out.writeLong(0); // contig table offset, written below
+			for(EntryList list : entries.values()){
+				list.sort();
+				starts.add(tableOffset);
+				for(int i = 0; i < list.size; i++){
+					out.writeInt(list.positions[i]);
+					out.writeLong(list.offsets[i]);
+				}
+				tableOffset += (long) list.size * ENTRY_BYTES;
+			}
+			out.writeInt(entries.size());
+			int i = 0;
+			for(String contig : entries.keySet()){
+				out.writeUTF(contig);
+				out.writeInt(entries.get(contig).size);
+				out.writeLong(starts.get(i++));
+			}
+		} finally {
+			out.close();
+		}
+
+		RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+		try{
+			raf.seek(PREAMBLE_BYTES - 8);
+			raf.writeLong(tableOffset);
+		} finally {
+			raf.close();
+		}
+
+		if(!tmp.renameTo(indexFile)){
+			indexFile.delete();
+			if(!tmp.renameTo(indexFile)){
+				tmp.delete();
+				throw new IOException("Could not write " + indexFile.getPath());
+			}
+		}
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	public File getVCF(){
+		return vcf;
+	}
+
+	/**
+	 * @return the number of records indexed
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * @param contig the contig as named in the VCF
+	 * @return the number of records on 'contig'
+	 */
+	public int size(String contig){
+		ContigEntries entries = contigs.get(contig);
+		return entries == null ? 0 : entries.count;
+	}
+
+	/**
+	 * @return the contigs as named in the VCF, in the order they first
+	 * appear
+	 */
+	public ArrayList<String> getContigs(){
+		return new ArrayList<String>(contigs.keySet());
+	}
+
+	/**
+	 * @param contig the contig as named in the VCF
+	 * @return the position of the last record on 'contig', or 0 if there
+	 * are none
+	 */
+	public int getLastPosition(String contig){
+		ContigEntries entries = contigs.get(contig);
+		return entries == null || entries.count == 0 ? 0 : entries.getPosition(entries.count - 1);
+	}
+
+	/**
+	 * @return the offset of the first record, or -1 if there are none
+	 */
+	public long getFirstRecordOffset(){
+		return firstRecordOffset;
+	}
+
+	/**
+	 * @param contig the contig as named in the VCF
+	 * @param from
+	 * @param to
+	 * @return the number of records on 'contig' starting from 'from' to 'to'
+	 * (inclusive)
+	 */
+	public int count(String contig, int from, int to){
+		ContigEntries entries = contigs.get(contig);
+		if(entries == null || to < from){
+			return 0;
+		}
+		return entries.firstAfter(to) - entries.firstAtLeast(from);
+	}
+
+	/**
+	 * Get the offsets of the records on 'contig' starting from 'from' to
+	 * 'to' (inclusive), in order of position
+	 *
+	 * @param contig the contig as named in the VCF
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	public long[] getOffsets(String contig, int from, int to){
+		ContigEntries entries = contigs.get(contig);
+		if(entries == null || to < from){
+			return new long[0];
+		}
+		int first = entries.firstAtLeast(from);
+		int last = entries.firstAfter(to);
+		long[] offsets = new long[last - first];
+		for(int i = first; i < last; i++){
+			offsets[i - first] = entries.getOffset(i);
+		}
+		return offsets;
+	}
+
+	/**
+	 * The entries of one contig, sorted by position
+	 */
+	private static class ContigEntries {
+		private ByteBuffer entries;
+		private int count;
+
+		private ContigEntries(ByteBuffer entries, int count){
+			this.entries = entries;
+			this.count = count;
+		}
+
+		private int getPosition(int i){
+			return entries.getInt(i * ENTRY_BYTES);
+		}
+
+		private long getOffset(int i){
+			return entries.getLong(i * ENTRY_BYTES + 4);
+		}
+
+		/**
+		 * @return the first entry after 'pos', or count if there is none
+		 */
+		private int firstAfter(int pos){
+			return pos == Integer.MAX_VALUE ? count : firstAtLeast(pos + 1);
+		}
+
+		/**
+		 * @return the first entry at or after 'pos', or count if there is none
+		 */
+		private int firstAtLeast(int pos){
+			int low = 0, high = count;
+			while(low < high){
+				int mid = (low + high) >>> 1;
+				if(getPosition(mid) < pos){
+					low = mid + 1;
+				}
+				else{
+					high = mid;
+				}
+			}
+			return low;
+		}
+	}
+
+	/**
+	 * The entries of one contig while building an index
+	 */
+	private static class EntryList {
+		private int[] positions = new int[1024];
+		private long[] offsets = new long[1024];
+		private int size = 0;
+		private boolean sorted = true;
+
+		private void add(int pos, long offset){
+			if(size == positions.length){
+				positions = Arrays.copyOf(positions, size * 2);
+				offsets = Arrays.copyOf(offsets, size * 2);
+			}
+			if(size > 0 && pos < positions[size - 1]){
+				sorted = false;
+			}
+			positions[size] = pos;
+			offsets[size] = offset;
+			size++;
+		}
+
+		/**
+		 * Sort by position, keeping records at the same position in file order
+		 */
+		private void sort(){
+			if(sorted){
+				return;
+			}
+			long[] order = new long[size];
+			for(int i = 0; i < size; i++){
+				order[i] = ((long) positions[i] << 32) | i;
+			}
+			Arrays.sort(order);
+			int[] sortedPositions = new int[size];
+			long[] sortedOffsets = new long[size];
+			for(int i = 0; i < size; i++){
+				int index = (int) (order[i] & 0xffffffffL);
+				sortedPositions[i] = positions[index];
+				sortedOffsets[i] = offsets[index];
+			}
+			positions = sortedPositions;
+			offsets = sortedOffsets;
+			sorted = true;
+		}
+	}
+}
@@ -8,6 +8,7 @@ import htsjdk.variant.vcf.VCFHeader;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.TreeSet;
 
 /**
@@ -16,7 +17,47 @@ import java.util.TreeSet;
  */
 public interface VariantPool extends Pool{
 	
+	/**
+	 * Read the next record, as a single cursor shared by every caller.
+	 * Returns null at the end. Pools held in memory or indexed start over on
+	 * the next call. Use iterator() to read the pool more than once at a
+	 * time.
+	 */
 	public VariantContext getNextVar() throws IOException;
+
+	/**
+	 * @return a new iterator over every record, in the pool's order
+	 * @throws IOException
+	 */
+	public VariantPoolIterator iterator() throws IOException;
+
+	/**
+	 * @param range the records to read, by start, or null for every record
+	 * @return a new iterator over the records starting in 'range', in the
+	 * pool's order
+	 * @throws IOException
+	 */
+	public VariantPoolIterator iterator(RegionList.Region range) throws IOException;
+
+	/**
+	 * @return every contig this pool may hold records on, in natural order,
+	 * with the last position a record may start at (Integer.MAX_VALUE if it
+	 * is not known). Empty if the contigs are not known without reading the
+	 * whole pool.
+	 * @throws IOException
+	 */
+	public LinkedHashMap<String, Integer> getContigExtents() throws IOException;
+
+	/**
+	 * Records are read as they are stored, which may leave out the samples
+	 * without a call (see VariantPoolHeavy.setSparseGenotypes). Use this
+	 * before reading every sample's genotype.
+	 * 
+	 * @param var a record from this pool
+	 * @return 'var' with a genotype for every sample in this pool
+	 */
+	public VariantContext withAllGenotypes(VariantContext var);
+
 	public TreeSet<String> getSamples();
 	public VCFHeader getHeader();
 	public String getPoolID();
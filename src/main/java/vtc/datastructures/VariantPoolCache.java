@@ -0,0 +1,29 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * @author markebbert
+ *
+ *	A source of loaded VariantPoolHeavy objects, so processes that run many
+ *	jobs on the same files read each file once. See VTCSession.setPoolCache.
+ */
+public interface VariantPoolCache {
+
+	/**
+	 * Get the variants in 'file' as a VariantPoolHeavy named 'poolID'
+	 * 
+	 * @param file
+	 * @param poolID
+	 * @param addChr
+	 * @return the pool, or null if the cache cannot provide it (e.g., the
+	 * current session restricts pools to regions). The caller should then
+	 * read the file itself.
+	 * @throws IOException
+	 */
+	public VariantPoolHeavy getVariantPool(File file, String poolID, boolean addChr) throws IOException;
+}
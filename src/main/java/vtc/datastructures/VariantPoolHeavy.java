@@ -1,6 +1,7 @@
 package vtc.datastructures;
 
 import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
 import htsjdk.samtools.reference.IndexedFastaSequenceFile;
 import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.Genotype;
@@ -11,6 +12,7 @@ import htsjdk.variant.variantcontext.VariantContextBuilder;
 import htsjdk.variant.variantcontext.writer.Options;
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import htsjdk.variant.variantcontext.writer.VariantContextWriterFactory;
+import htsjdk.variant.vcf.VCFFilterHeaderLine;
 import htsjdk.variant.vcf.VCFFormatHeaderLine;
 import htsjdk.variant.vcf.VCFHeader;
 import htsjdk.variant.vcf.VCFHeaderLine;
@@ -27,13 +29,16 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.regex.Matcher;
@@ -41,6 +46,7 @@ import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
 
+import vtc.VTCSession;
 import vtc.tools.utilitybelt.UtilityBelt;
 import vtc.tools.varstats.AltType;
 
@@ -70,7 +76,7 @@ public class VariantPoolHeavy extends AbstractVariantPool{
 	private TreeSet<String> contigs;
 	
 	private String currVarKey;
-	private Iterator<String> varKeyIter;
+	private VariantIterator varKeyIter;
 
 	private Boolean hasGenotypeData;
 	
@@ -82,6 +88,32 @@ public class VariantPoolHeavy extends AbstractVariantPool{
 	 * the set of variants read into this object.
 	 */
 	private boolean vcfFileFullyParsed = false;
+	
+	/* Pools with sparse genotypes only store called genotypes. Every other
+	 * sample is an implicit NO_CALL, filled in from 'noCallGenotypes'
+	 * (one shared Genotype per sample) by withAllGenotypes.
+	 */
+	private boolean sparseGenotypes = false;
+	private HashMap<String, Genotype> noCallGenotypes;
+	
+	/* Pools with compressed records keep only the most recently added
+	 * records decoded. The rest are held in memory as deflated blocks of
+	 * about BLOCK_BYTES each, and decoded as needed.
+	 */
+	public static final long BLOCK_BYTES = 64 * 1024;
+	private static final long COMPRESSED_BUFFER_BYTES = 4 * 1024 * 1024;
+	private boolean compressedRecords;
+	
+	/* Pools with a memory budget spill their records to disk once the
+	 * estimated size of the records held in memory exceeds the budget.
+	 * A budget of 0 means no limit. The session's defaults apply to every
+	 * new pool.
+	 */
+	private long memoryBudget;
+	private File spillDir;
+	private long memoryUsed;
+	private VariantSpillStore spillStore;
+	private int numVarRecords;
 
 	
 	/****************************************************
@@ -96,6 +128,11 @@ public class VariantPoolHeavy extends AbstractVariantPool{
 	public VariantPoolHeavy(boolean addChr, String poolID) throws IOException{
 		super(addChr, poolID);
 		this.init();
+		
+		/* There is no file to parse, so getNextVar should iterate
+		 * over the variants added to this pool.
+		 */
+		this.vcfFileFullyParsed = true;
 	}
 
 	public VariantPoolHeavy(VariantPoolHeavy vp) throws IOException{
@@ -121,6 +158,59 @@ public class VariantPoolHeavy extends AbstractVariantPool{
 		this.init();
 		this.parseVCF(this.getFile().getPath(), this.requireIndex());
 	}
+	
+	/**
+	 * Read 'file' with its own memory budget and record compression rather
+	 * than the session's defaults. See setMemoryBudget and
+	 * setCompressedRecords.
+	 * 
+	 * @param file
+	 * @param poolID
+	 * @param addChr
+	 * @param memoryBudget
+	 * @param spillDir
+	 * @param compressedRecords
+	 * @throws IOException
+	 */
+	public VariantPoolHeavy(File file, String poolID, boolean addChr, long memoryBudget,
+			File spillDir, boolean compressedRecords) throws IOException{
+		super(file, poolID, false, addChr);
+		this.init();
+		this.setMemoryBudget(memoryBudget, spillDir);
+		this.setCompressedRecords(compressedRecords);
+		this.parseVCF(this.getFile().getPath(), this.requireIndex());
+	}
+	
+	/**
+	 * Create a VariantPool named 'poolID' that shares the variants, header
+	 * and samples of 'vp' rather than reading the file again. Used to hand
+	 * out a loaded pool to many jobs. Neither pool may be changed afterward.
+	 * 'vp' must hold all of its variants in memory.
+	 * 
+	 * @param vp
+	 * @param poolID
+	 * @throws IOException
+	 */
+	public VariantPoolHeavy(VariantPoolHeavy vp, String poolID) throws IOException{
+		super(vp.addChr(), poolID);
+		if(vp.spillStore != null){
+			throw new IllegalArgumentException("Cannot share a VariantPool that has spilled" +
+					" or compressed its variants: " + vp.getPoolID());
+		}
+		this.init();
+		this.hMap = vp.hMap;
+		this.hMapChrPos = vp.hMapChrPos;
+		this.contigs = vp.contigs;
+		this.numVarRecords = vp.numVarRecords;
+		this.sparseGenotypes = vp.sparseGenotypes;
+		this.potentialMatchingIndelAlleles = vp.potentialMatchingIndelAlleles;
+		this.potentialMatchingIndelRecords = vp.potentialMatchingIndelRecords;
+		this.setContigAliases(vp.getContigAliases());
+		this.setFile(vp.getFile());
+		this.setHeader(vp.getHeader());
+		this.addSamples(vp.getSamples());
+		this.vcfFileFullyParsed = true;
+	}
 
 //	private void init(File file, String poolID, boolean requireIndex, boolean addChr) throws IOException{
 //		init(addChr, poolID);
@@ -133,6 +223,13 @@ public class VariantPoolHeavy extends AbstractVariantPool{
 		this.hMap = new HashMap<String, VariantContext>();
 		this.hMapChrPos = new HashMap<String, HashMap<String,VariantContext>>();
 		this.contigs = new TreeSet<String>();
+		VTCSession session = VTCSession.current();
+		this.setMemoryBudget(session.getDefaultMemoryBudget(), session.getDefaultSpillDir());
+		this.compressedRecords = session.getDefaultCompressedRecords();
+		this.setKeepRawLines(session.keepsRawLines(this.getPoolID()));
+		
+		/* Records are created with this pool's contig names while parsing */
+		this.setContigAliases(new ContigAliasMap(this.addChr()));
 	}
 	
 	
@@ -156,7 +253,23 @@ public class VariantPoolHeavy extends AbstractVariantPool{
 	}
 	
 	private HashMap<String, VariantContext> getVariantsByChrPos(String chr, int pos){
-		return hMapChrPos.get(chr + ":" + Integer.toString(pos));
+		HashMap<String, VariantContext> vars = hMapChrPos.get(chr + ":" + Integer.toString(pos));
+		if(spillStore == null){
+			return vars;
+		}
+
+		/* Records still in memory are newer than any spilled copy */
+		HashMap<String, VariantContext> spilled;
+		try {
+			spilled = spillStore.getByChrPos(chr, pos);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read spilled variants for pool " + this.getPoolID() +
+					": " + e.getMessage());
+		}
+		if(vars != null){
+			spilled.putAll(vars);
+		}
+		return spilled.isEmpty() ? null : spilled;
 	}
 
 	/**
@@ -165,7 +278,36 @@ public class VariantPoolHeavy extends AbstractVariantPool{
 	 * @return Either a VariantContext object or null
 	 */
 	public VariantContext getVariant(String key){
-		return this.hMap.get(key);
+		return getStoredVariant(key);
+	}
+	
+	/**
+	 * Get the stored variant for 'key', reading it back from disk if
+	 * it has been spilled.
+	 * @param key
+	 * @return
+	 */
+	private VariantContext getStoredVariant(String key){
+		VariantContext var = this.hMap.get(key);
+		if(var != null || spillStore == null){
+			return var;
+		}
+		
+		/* Keys are 'chr:pos:ref'. Contigs may contain ':', so parse from the right. */
+		int refStart = key.lastIndexOf(':');
+		int posStart = key.lastIndexOf(':', refStart - 1);
+		if(refStart < 0 || posStart < 0){
+			return null;
+		}
+		try {
+			return spillStore.get(key.substring(0, posStart),
+					Integer.parseInt(key.substring(posStart + 1, refStart)), key);
+		} catch (NumberFormatException e) {
+			return null;
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read spilled variants for pool " + this.getPoolID() +
+					": " + e.getMessage());
+		}
 	}
 
 	/**
@@ -173,7 +315,51 @@ public class VariantPoolHeavy extends AbstractVariantPool{
 	 * @return
 	 */
 	public int getNumVarRecords(){
-		return hMap.size();
+		return numVarRecords;
+	}
+	
+	/**
+	 * Whether any records have been spilled to disk
+	 * @return
+	 */
+	public boolean hasSpilled(){
+		return spillStore != null && !spillStore.inMemory();
+	}
+	
+	/**
+	 * Whether records are kept compressed in memory
+	 * @return
+	 */
+	public boolean hasCompressedRecords(){
+		return compressedRecords;
+	}
+	
+	/**
+	 * The size of the compressed (or spilled) records, in bytes
+	 * @return
+	 */
+	public long getStoredBytes(){
+		return spillStore == null ? 0 : spillStore.getStoredBytes();
+	}
+	
+	/**
+	 * The estimated number of bytes this pool holds in memory
+	 * @return
+	 */
+	public long getEstimatedBytes(){
+		long bytes = 0;
+		for(VariantContext var : hMap.values()){
+			bytes += VariantSpillStore.estimateSize(var);
+		}
+		return bytes + getStoredBytes();
+	}
+	
+	/**
+	 * Whether variants are stored with only their called genotypes
+	 * @return
+	 */
+	public boolean hasSparseGenotypes(){
+		return this.sparseGenotypes;
 	}
 	
 	public TreeSet<String> getContigs(){
@@ -181,15 +367,13 @@ public class VariantPoolHeavy extends AbstractVariantPool{
 	}
 	
 	/**
-	 * Return an Iterator<String> object to an ordered key set for 
-	 * the variants. The keys are formatted as 'chr:pos' and ordered 'naturally'.
+	 * Return an iterator over the variant keys in order. The keys are
+	 * formatted as 'chr:pos:ref' and ordered 'naturally'.
 	 * @return
 	 */
-	private Iterator<String> getVariantIterator(){
+	private VariantIterator getVariantIterator(){
 //		return this.tMap.keySet().iterator();
-		ArrayList<String> keys = new ArrayList<String>(this.hMap.keySet());
-		Collections.sort(keys, new NaturalOrderComparator());
-		return keys.iterator();
+		return new VariantIterator();
 	}	
 	
 	public VariantContext getNextVar() throws IOException{
@@ -213,9 +397,12 @@ public class VariantPoolHeavy extends AbstractVariantPool{
 		}
 
 		else if(vcfFileFullyParsed){
+			if(varKeyIter == null){
+				varKeyIter = this.getVariantIterator();
+			}
 			if(varKeyIter.hasNext()){
 				currVarKey = varKeyIter.next();
-				currVar = this.getVariant(currVarKey);
+				currVar = varKeyIter.current();
 				return currVar;
 			}
 		}
@@ -230,14 +417,15 @@ public class VariantPoolHeavy extends AbstractVariantPool{
 	public boolean hasGenotypeData(){
 
 		if(this.hasGenotypeData == null){
-			Iterator<String> it = this.getVariantIterator();
+			VariantIterator it = this.getVariantIterator();
 
 			if(!it.hasNext()){
 				/* The set is empty. Return false. */
 				return false;
 			}
 
-			VariantContext vc = this.getVariant(it.next());
+			it.next();
+			VariantContext vc = withAllGenotypes(it.current());
 			if(vc.hasGenotypes()){
 				this.hasGenotypeData = true;
 			}
@@ -352,6 +540,77 @@ public class VariantPoolHeavy extends AbstractVariantPool{
 		this.potentialMatchingIndelRecords = count;
 	}
 	
+	/**
+	 * Store only the called genotypes for each variant. Samples in this
+	 * VariantPool without a genotype are treated as NO_CALL. Variants are
+	 * read (e.g., by getVariant or getNextVar) as they are stored, and the
+	 * NO_CALLs are only filled in when the pool is printed or by
+	 * withAllGenotypes.
+	 * 
+	 * @param sparse
+	 */
+	public void setSparseGenotypes(boolean sparse){
+		this.sparseGenotypes = sparse;
+	}
+	
+	/**
+	 * Limit the memory used by this VariantPool's records. Once the estimated
+	 * size of the records in memory exceeds 'bytes', they are written to
+	 * partition files in 'tmpDir' and read back in as needed.
+	 * 
+	 * @param bytes the budget in bytes, or 0 for no limit
+	 * @param tmpDir directory for the spilled records. Uses the system's
+	 * temporary directory if null.
+	 */
+	public void setMemoryBudget(long bytes, File tmpDir){
+		this.memoryBudget = bytes;
+		this.spillDir = tmpDir;
+	}
+	
+	/**
+	 * Keep this VariantPool's records compressed in memory. Takes precedence
+	 * over a memory budget. Must be set before any variants are added.
+	 * 
+	 * @param compressed
+	 */
+	public void setCompressedRecords(boolean compressed){
+		this.compressedRecords = compressed;
+	}
+	
+	/**
+	 * Keep the records compressed for every VariantPoolHeavy created in the
+	 * current session after this call. See setCompressedRecords.
+	 * 
+	 * @param compressed
+	 */
+	public static void setDefaultCompressedRecords(boolean compressed){
+		VTCSession.current().setDefaultCompressedRecords(compressed);
+	}
+	
+	/**
+	 * Keep each record's line for the VariantPoolHeavys with these IDs
+	 * created in the current session after this call, so their unchanged
+	 * records are copied when written. The lines take memory on top of the
+	 * records, so only give pools whose records can be written unchanged.
+	 * See setKeepRawLines.
+	 * 
+	 * @param poolIDs
+	 */
+	public static void setRawLinePoolIDs(Collection<String> poolIDs){
+		VTCSession.current().setRawLinePoolIDs(poolIDs);
+	}
+	
+	/**
+	 * Set the memory budget for every VariantPoolHeavy created in the current
+	 * session after this call. See setMemoryBudget.
+	 * 
+	 * @param bytes the budget in bytes, or 0 for no limit
+	 * @param tmpDir
+	 */
+	public static void setDefaultMemoryBudget(long bytes, File tmpDir){
+		VTCSession.current().setDefaultMemoryBudget(bytes, tmpDir);
+	}
+	
 	
 	
 	
@@ -449,13 +708,11 @@ public class VariantPoolHeavy extends AbstractVariantPool{
 	 * @param union
 	 */
 	public void addVariant(VariantContext v, boolean union){
+		/* Update 'chr' for variants that weren't parsed by this pool, if
+		 * needed. Rebuilt variants share repeated values with this pool.
+		 */
+		v = this.getDictionary().intern(v, this.getContigAliases().translate(v.getChr()));
 		String currChr = v.getChr();
-		String newChr = generateChrString(currChr);
-		
-		if(!currChr.equals(newChr)){
-			currChr = newChr;
-			v = buildNewVariantWithChr(newChr, v);
-		}
 
 		this.addContig(currChr);
 		String chrPosRef = currChr + ":" + Integer.toString(v.getStart()) + ":" + v.getReference();
@@ -464,7 +721,7 @@ public class VariantPoolHeavy extends AbstractVariantPool{
 		/* If a variant already exists with this chr:pos:ref,
 		 * ignore subsequent variants and emit warning. 
 		 */
-		if(hMap.containsKey(chrPosRef) && !union){
+		if(!union && getStoredVariant(chrPosRef) != null){
 			/* TODO: Determine how to handle VCFs with multiple records
 			 * at the same location. Sometimes people represent multiple
 			 * alts on different lines. e.g.:
@@ -492,62 +749,151 @@ public class VariantPoolHeavy extends AbstractVariantPool{
 			}
 		}
 		else{
-			hMap.put(chrPosRef, v);
-//			tMap.put(chrPosRef, v);
-			if(!hMapChrPos.containsKey(chrPos)){
-				HashMap<String, VariantContext> newHMap = new HashMap<String, VariantContext>();
-				newHMap.put(chrPosRef, v);
-				hMapChrPos.put(chrPos, newHMap);
-			}
-			else{
-				hMapChrPos.get(chrPos).put(chrPosRef, v);
-			}
+			putVariant(chrPosRef, chrPos, v);
+			
+			/* Any iterator over the variants is now out of date */
+			varKeyIter = null;
 		}
 	}
 	
 	public void updateVariant(String key, VariantContext newVar){
-		hMap.put(key, newVar);
+		putVariant(key, newVar.getChr() + ":" + Integer.toString(newVar.getStart()), newVar);
 //		tMap.put(key, newVar);
 	}
 	
 	/**
-	 * Add or remove 'chr' to chromosome if user requests
-	 * @param chr
-	 * @return
+	 * Store a variant in memory, spilling the records in memory to disk
+	 * if they exceed the memory budget.
+	 * 
+	 * @param chrPosRef
+	 * @param chrPos
+	 * @param v
+	 */
+	private void putVariant(String chrPosRef, String chrPos, VariantContext v){
+		VariantContext old = hMap.get(chrPosRef);
+		if(old != null){
+			memoryUsed -= VariantSpillStore.estimateSize(old);
+		}
+		else if(spillStore == null || getStoredVariant(chrPosRef) == null){
+			numVarRecords++;
+		}
+		hMap.put(chrPosRef, v);
+//		tMap.put(chrPosRef, v);
+		if(!hMapChrPos.containsKey(chrPos)){
+			HashMap<String, VariantContext> newHMap = new HashMap<String, VariantContext>();
+			newHMap.put(chrPosRef, v);
+			hMapChrPos.put(chrPos, newHMap);
+		}
+		else{
+			hMapChrPos.get(chrPos).put(chrPosRef, v);
+		}
+		
+		long budget = compressedRecords ? COMPRESSED_BUFFER_BYTES : memoryBudget;
+		if(budget > 0){
+			memoryUsed += VariantSpillStore.estimateSize(v);
+			if(memoryUsed > budget){
+				spill();
+			}
+		}
+	}
+	
+	/**
+	 * Move every decoded record in memory to the compressed blocks, or to
+	 * disk if this pool has a memory budget
 	 */
-	private String generateChrString(String chr){
-		if(this.addChr()){
-			if(!chr.toLowerCase().startsWith("chr")){
-				return "chr" + chr;
+	private void spill(){
+		try {
+			if(spillStore == null && compressedRecords){
+				spillStore = new VariantSpillStore(BLOCK_BYTES, this.getDictionary());
+			}
+			else if(spillStore == null){
+				File tmpDir = spillDir == null ? new File(System.getProperty("java.io.tmpdir")) : spillDir;
+				
+				/* Each spill is written in partitions of up to an eighth of the budget */
+				spillStore = new VariantSpillStore(tmpDir, Math.max(memoryBudget / 8, 1), this.getDictionary());
 			}
+			spillStore.spill(hMap);
+		} catch (IOException e) {
+			throw new RuntimeException("Could not spill variants for pool " + this.getPoolID() +
+					" to disk: " + e.getMessage());
 		}
-		else if(chr.toLowerCase().startsWith("chr")){
-			return chr.substring(3);
+		hMap.clear();
+		hMapChrPos.clear();
+		memoryUsed = 0;
+	}
+	
+	/**
+	 * Delete any records this VariantPool has spilled to disk. The
+	 * pool must not be used afterward.
+	 */
+	public void deleteSpilledVariants(){
+		if(spillStore != null){
+			spillStore.delete();
 		}
-		return chr;
 	}
 	
 	/**
-	 * Build a new variant with the updated 'chr'
+	 * Split this VariantPool into one VariantPool per contig. Each part has
+	 * the same poolID, samples and header as this pool, so set operations
+	 * treat it just like this pool. A part is created for every contig in
+	 * 'contigs', even those without variants in this pool. Variants on any
+	 * other contig are left out. The variants are shared, not copied.
 	 * 
-	 * @param chr
-	 * @param var
-	 * @return
+	 * @param contigs
+	 * @return the parts by contig
+	 * @throws IOException
 	 */
-	private VariantContext buildNewVariantWithChr(String chr, VariantContext var){
+	public HashMap<String, VariantPoolHeavy> splitByContig(Collection<String> contigs) throws IOException{
+		HashMap<String, VariantPoolHeavy> parts = new HashMap<String, VariantPoolHeavy>();
+		VariantPoolHeavy part;
+		for(String contig : contigs){
+			part = new VariantPoolHeavy(this.addChr(), this.getPoolID());
+			part.setFile(this.getFile());
+			part.setHeader(this.getHeader());
+			part.addSamples(this.getSamples());
+			part.setSparseGenotypes(this.sparseGenotypes);
+			parts.put(contig, part);
+		}
 		
-		VariantContextBuilder vcBuilder = new VariantContextBuilder();
-		vcBuilder.alleles(var.getAlleles());
-		vcBuilder.attributes(var.getAttributes());
-		vcBuilder.chr(chr);
-		vcBuilder.filters(var.getFilters());
-		vcBuilder.genotypes(var.getGenotypes());
-		vcBuilder.id(var.getID());
-		vcBuilder.log10PError(var.getLog10PError());
-		vcBuilder.source(var.getSource());
-		vcBuilder.start(var.getStart());
-		vcBuilder.stop(var.getEnd());
-		return vcBuilder.make();
+		VariantIterator it = getVariantIterator();
+		String key;
+		VariantContext var;
+		while(it.hasNext()){
+			key = it.next();
+			var = it.current();
+			part = parts.get(var.getChr());
+			if(part != null){
+				part.addStoredVariant(key, var);
+			}
+		}
+		return parts;
+	}
+	
+	/**
+	 * Add every variant in 'vp' to this pool as it is stored in 'vp'.
+	 * Variants already in this pool are replaced. Used to join pools
+	 * holding different contigs.
+	 * 
+	 * @param vp
+	 */
+	public void addVariants(VariantPoolHeavy vp){
+		VariantIterator it = vp.getVariantIterator();
+		while(it.hasNext()){
+			addStoredVariant(it.next(), it.current());
+		}
+	}
+	
+	/**
+	 * Add a variant from another pool, whose contig and key already
+	 * follow this pool's naming
+	 * 
+	 * @param key
+	 * @param v
+	 */
+	private void addStoredVariant(String key, VariantContext v){
+		this.addContig(v.getChr());
+		putVariant(key, v.getChr() + ":" + Integer.toString(v.getStart()), v);
+		varKeyIter = null;
 	}
 	
 	/**
@@ -580,6 +926,49 @@ public class VariantPoolHeavy extends AbstractVariantPool{
 //		return vcBuilder.make();
 //	}
 	
+	/**
+	 * Add a NO_CALL genotype for each sample in this VariantPool missing
+	 * from 'var'. Only applies to pools with sparse genotypes.
+	 * 
+	 * @param var
+	 * @return
+	 */
+	@Override
+	public VariantContext withAllGenotypes(VariantContext var){
+		if(!sparseGenotypes || var == null || var.getNSamples() == this.getSamples().size()){
+			return var;
+		}
+		GenotypesContext genos = GenotypesContext.copy(var.getGenotypes());
+		for(String sample : this.getSamples()){
+			if(!var.hasGenotype(sample)){
+				genos.add(getNoCallGenotype(sample));
+			}
+		}
+		return new VariantContextBuilder(var).genotypes(genos).make();
+	}
+	
+	/**
+	 * Get the shared NO_CALL genotype for 'sample'. Genotypes are immutable,
+	 * so a single object per sample is used for every variant.
+	 * 
+	 * @param sample
+	 * @return
+	 */
+	private synchronized Genotype getNoCallGenotype(String sample){
+		if(noCallGenotypes == null){
+			noCallGenotypes = new HashMap<String, Genotype>();
+		}
+		Genotype geno = noCallGenotypes.get(sample);
+		if(geno == null){
+			ArrayList<Allele> alleles = new ArrayList<Allele>();
+			alleles.add(Allele.NO_CALL);
+			alleles.add(Allele.NO_CALL);
+			geno = new GenotypeBuilder(sample, alleles).make();
+			noCallGenotypes.put(sample, geno);
+		}
+		return geno;
+	}
+	
 	/**
 	 * Change the sample names for this VariantPool. The newSampleNames
 	 * must be in the same order as they are in the file.
@@ -594,14 +983,14 @@ public class VariantPoolHeavy extends AbstractVariantPool{
         newSamples.addSamples(new TreeSet<String>(newSampleNames));
 		this.setSamples(newSamples);
 		
-		Iterator<String> varIT = this.getVariantIterator();
+		VariantIterator varIT = this.getVariantIterator();
 		VariantContext currVar;
 		String varKey;
 		GenotypesContext gcs;
 		ArrayList<Genotype> newGenos;
 		while(varIT.hasNext()){
 			varKey = varIT.next();
-			currVar = this.getVariant(varKey);
+			currVar = withAllGenotypes(varIT.current());
 			gcs = currVar.getGenotypes();
 			newGenos = new ArrayList<Genotype>();
 			for(int i = 0; i < gcs.size(); i++){
@@ -773,7 +1162,14 @@ public class VariantPoolHeavy extends AbstractVariantPool{
 					") does not have the appropriate dictionary file. Please use"
 					+ " Picard's CreateSequenceDictionary.jar to generate this file.");
 		}
-		VariantContextWriter writer = VariantContextWriterFactory.create(file, dict, es);
+		/* VCFs copy the lines of records that are unchanged since they were read */
+		VariantContextWriter writer;
+		if(VariantContextWriterFactory.isBCFOutput(file)){
+			writer = VariantContextWriterFactory.create(file, dict, es);
+		}
+		else{
+			writer = new PassthroughVCFWriter(file, dict, es);
+		}
 		
 		if(vp.getHeader() == null){
 			vp.generateBasicHeader(dict, vp.getSamples());
@@ -782,10 +1178,11 @@ public class VariantPoolHeavy extends AbstractVariantPool{
 		writer.writeHeader(vp.getHeader());
 		
 		boolean rewrite = false;
-		Iterator<String> it = vp.getVariantIterator();
+		VariantIterator it = vp.getVariantIterator();
 		VariantContext vc;
 		while(it.hasNext()){
-			vc = vp.getVariant(it.next());
+			it.next();
+			vc = vp.withAllGenotypes(it.current());
 			
 			/* Write variant to file. 'writer' will throw an IllegalStateException
 			 * if a variant has annotations that are not in the header. If this
@@ -869,6 +1266,9 @@ public class VariantPoolHeavy extends AbstractVariantPool{
 		else if("FORMAT".equals(lineType)){
 			vp.getHeader().addMetaDataLine(new VCFFormatHeaderLine(missingKey, 1, VCFHeaderLineType.String, description));
 		}
+		else if("FILTER".equals(lineType)){
+			vp.getHeader().addMetaDataLine(new VCFFilterHeaderLine(missingKey, description));
+		}
 		else{
 			throw new RuntimeException("Could not determine missing header line type." +
 					"Something is very wrong! Original message: " + e.getMessage());
@@ -969,4 +1369,308 @@ public class VariantPoolHeavy extends AbstractVariantPool{
 		return null;
 	}
 	
+	
+	/**
+	 * Iterate over the stored variants in key order, without disturbing
+	 * getNextVar. Iterators may be used on many threads at once, as long as
+	 * no variants are added to the pool meanwhile.
+	 */
+	@Override
+	public VariantPoolIterator iterator(final RegionList.Region range) throws IOException{
+		final VariantIterator it = new VariantIterator(range == null ? null
+				: ContigAliasMap.normalize(range.getChr(), this.addChr()));
+		return new VariantPoolIterator(){
+			private VariantContext next = advance();
+			
+			private VariantContext advance(){
+				VariantContext var;
+				while(it.hasNext()){
+					it.next();
+					var = it.current();
+					if(range == null || (var.getStart() >= range.getStart() && var.getStart() <= range.getEnd())){
+						return var;
+					}
+					
+					/* Keys on a contig are in order of position */
+					if(var.getStart() > range.getEnd()){
+						break;
+					}
+				}
+				try {
+					it.close();
+				} catch (IOException e) {
+					logger.warn("Could not close spilled variants for pool " + getPoolID() + ": " + e.getMessage());
+				}
+				return null;
+			}
+			
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+			
+			@Override
+			public VariantContext next() {
+				if(next == null){
+					throw new NoSuchElementException();
+				}
+				VariantContext var = next;
+				next = advance();
+				return var;
+			}
+			
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+			
+			@Override
+			public void close() throws IOException {
+				it.close();
+				next = null;
+			}
+		};
+	}
+	
+	/**
+	 * The last position of each contig is that of its last variant in
+	 * memory, or else its length in the header
+	 */
+	@Override
+	public LinkedHashMap<String, Integer> getContigExtents() throws IOException{
+		HashMap<String, Integer> lengths = new HashMap<String, Integer>();
+		SAMSequenceDictionary dict = this.getHeader() == null ? null : this.getHeader().getSequenceDictionary();
+		if(dict != null){
+			for(SAMSequenceRecord seq : dict.getSequences()){
+				if(seq.getSequenceLength() > 0){
+					lengths.put(ContigAliasMap.normalize(seq.getSequenceName(), this.addChr()), seq.getSequenceLength());
+				}
+			}
+		}
+		HashMap<String, Integer> lastStarts = new HashMap<String, Integer>();
+		if(spillStore == null){
+			Integer last;
+			for(VariantContext var : hMap.values()){
+				last = lastStarts.get(var.getChr());
+				if(last == null || var.getStart() > last){
+					lastStarts.put(var.getChr(), var.getStart());
+				}
+			}
+		}
+		
+		TreeSet<String> sorted = new TreeSet<String>(new NaturalOrderComparator());
+		sorted.addAll(this.getContigs());
+		LinkedHashMap<String, Integer> extents = new LinkedHashMap<String, Integer>();
+		for(String contig : sorted){
+			if(lastStarts.containsKey(contig)){
+				extents.put(contig, lastStarts.get(contig));
+			}
+			else if(lengths.containsKey(contig)){
+				extents.put(contig, lengths.get(contig));
+			}
+			else{
+				extents.put(contig, Integer.MAX_VALUE);
+			}
+		}
+		return extents;
+	}
+	
+	/**
+	 * Iterates over the variant keys in order. Without spilled records, all
+	 * keys are sorted in memory. Once records have been spilled, each contig's
+	 * spilled partitions are merged with the records in memory. If a key was
+	 * spilled more than once, the newest copy is used.
+	 * 
+	 * @author markebbert
+	 *
+	 */
+	private class VariantIterator implements Iterator<String>{
+		
+		private NaturalOrderComparator naturalOrder = new NaturalOrderComparator();
+		private Iterator<String> contigIter;
+		private HashMap<String, ArrayList<String>> memKeysByContig;
+		
+		/* One source per spilled partition (oldest first) followed by memory */
+		private ArrayList<VariantSpillStore.PartitionReader> readers;
+		private ArrayList<Boolean> readerHasNext;
+		private Iterator<String> memKeys;
+		private String memKey;
+		
+		private String nextKey, currKey;
+		private VariantContext nextVar, currVar;
+		
+		private VariantIterator(){
+			this(null);
+		}
+		
+		/**
+		 * @param onlyContig iterate over only this contig, or null for all
+		 */
+		private VariantIterator(String onlyContig){
+			if(spillStore == null){
+				ArrayList<String> keys;
+				if(onlyContig == null){
+					keys = new ArrayList<String>(hMap.keySet());
+				}
+				else{
+					keys = new ArrayList<String>();
+					for(String key : hMap.keySet()){
+						if(hMap.get(key).getChr().equals(onlyContig)){
+							keys.add(key);
+						}
+					}
+				}
+				Collections.sort(keys, naturalOrder);
+				memKeys = keys.iterator();
+				memKey = memKeys.hasNext() ? memKeys.next() : null;
+				readers = new ArrayList<VariantSpillStore.PartitionReader>();
+				readerHasNext = new ArrayList<Boolean>();
+				contigIter = new ArrayList<String>().iterator();
+			}
+			else{
+				memKeysByContig = new HashMap<String, ArrayList<String>>();
+				ArrayList<String> keys;
+				for(String key : hMap.keySet()){
+					String contig = hMap.get(key).getChr();
+					if(onlyContig != null && !onlyContig.equals(contig)){
+						continue;
+					}
+					keys = memKeysByContig.get(contig);
+					if(keys == null){
+						keys = new ArrayList<String>();
+						memKeysByContig.put(contig, keys);
+					}
+					keys.add(key);
+				}
+				
+				TreeSet<String> allContigs = new TreeSet<String>(naturalOrder);
+				allContigs.addAll(memKeysByContig.keySet());
+				allContigs.addAll(spillStore.getContigs());
+				if(onlyContig != null){
+					allContigs.retainAll(Collections.singleton(onlyContig));
+				}
+				contigIter = allContigs.iterator();
+				memKey = null;
+				readers = new ArrayList<VariantSpillStore.PartitionReader>();
+				readerHasNext = new ArrayList<Boolean>();
+			}
+			advance();
+		}
+		
+		/**
+		 * Find the next key, moving to the next contig when the current one is done
+		 */
+		private void advance(){
+			try {
+				while(true){
+					nextKey = null;
+					nextVar = null;
+					
+					/* Find the smallest key. Later sources are newer and win ties. */
+					int newest = -1;
+					for(int i = 0; i < readers.size(); i++){
+						if(readerHasNext.get(i) && (nextKey == null
+								|| naturalOrder.compare(readers.get(i).getKey(), nextKey) <= 0)){
+							nextKey = readers.get(i).getKey();
+							newest = i;
+						}
+					}
+					if(memKey != null && (nextKey == null || naturalOrder.compare(memKey, nextKey) <= 0)){
+						nextKey = memKey;
+						newest = readers.size();
+					}
+					
+					if(nextKey != null){
+						if(newest == readers.size()){
+							
+							/* Memory may have been spilled since this iterator started */
+							nextVar = getStoredVariant(nextKey);
+						}
+						else{
+							nextVar = readers.get(newest).getVariant();
+						}
+						
+						/* Move every source past this key */
+						String key = nextKey;
+						for(int i = 0; i < readers.size(); i++){
+							if(readerHasNext.get(i) && readers.get(i).getKey().equals(key)){
+								readerHasNext.set(i, readers.get(i).next());
+							}
+						}
+						if(key.equals(memKey)){
+							memKey = memKeys.hasNext() ? memKeys.next() : null;
+						}
+						return;
+					}
+					
+					if(!contigIter.hasNext()){
+						return;
+					}
+					startContig(contigIter.next());
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Could not read spilled variants for pool " + getPoolID() +
+						": " + e.getMessage());
+			}
+		}
+		
+		private void startContig(String contig) throws IOException{
+			readers = spillStore.getReaders(contig);
+			readerHasNext = new ArrayList<Boolean>();
+			for(VariantSpillStore.PartitionReader reader : readers){
+				readerHasNext.add(reader.next());
+			}
+			ArrayList<String> keys = memKeysByContig.get(contig);
+			if(keys == null){
+				keys = new ArrayList<String>();
+			}
+			Collections.sort(keys, naturalOrder);
+			memKeys = keys.iterator();
+			memKey = memKeys.hasNext() ? memKeys.next() : null;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return nextKey != null;
+		}
+
+		@Override
+		public String next() {
+			if(nextKey == null){
+				throw new NoSuchElementException();
+			}
+			currKey = nextKey;
+			currVar = nextVar;
+			advance();
+			return currKey;
+		}
+		
+		/**
+		 * The variant for the key last returned by next(), as it is stored
+		 * @return
+		 */
+		public VariantContext current(){
+			return currVar;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+		
+		/**
+		 * Close the spilled partitions still being read
+		 * @throws IOException
+		 */
+		private void close() throws IOException{
+			for(int i = 0; i < readers.size(); i++){
+				if(readerHasNext.get(i)){
+					readers.get(i).close();
+					readerHasNext.set(i, false);
+				}
+			}
+			nextKey = null;
+		}
+	}
+
 }
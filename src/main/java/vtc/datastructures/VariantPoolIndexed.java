@@ -0,0 +1,579 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import htsjdk.tribble.readers.LineIteratorImpl;
+import htsjdk.tribble.readers.LineReaderUtil;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+
+import vtc.VTCSession;
+import vtc.tools.utilitybelt.UtilityBelt;
+import vtc.tools.varstats.AltType;
+
+/**
+ * @author markebbert
+ *
+ *	A VariantPool that reads its records from the VCF only when they are
+ *	asked for, using the file's VariantKeyIndex, rather than holding them
+ *	all in memory. getVariant and getOverlappingIndel read just the records
+ *	at the positions they look at, and recently read records are kept in a
+ *	small cache. An intersect that looks up a few thousand keys in a very
+ *	large file only reads those records. getNextVar reads the whole file in
+ *	the same order as VariantPoolHeavy.
+ *
+ *	The pool is read-only. The VCF must be plain or block-compressed (bgzip).
+ */
+public class VariantPoolIndexed extends VariantPoolHeavy {
+
+	private static Logger logger = Logger.getLogger(VariantPoolIndexed.class);
+
+	/* Number of decoded records kept for repeated lookups */
+	public static final int CACHE_RECORDS = 4096;
+
+	private VariantKeyIndex index;
+	private ContigAliasCodec codec;
+	private VCFLineReader reader;
+	private LinkedHashMap<Long, VariantContext> cache;
+
+	/* This pool's contig names and the file's name for each */
+	private HashMap<String, String> fileContigs;
+
+	/* Only this contig (as named in the file) is in the pool, or null for all */
+	private String onlyContig;
+
+	/* The header lines, to create a codec for each iterator */
+	private String headerText;
+
+	/* The iterator behind getNextVar */
+	private VariantPoolIterator cursor;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	public VariantPoolIndexed(File file, String poolID, boolean addChr) throws IOException{
+		this(file, poolID, addChr, null);
+	}
+
+	/**
+	 * @param inputString 'poolID=path' or 'path'
+	 * @param addChr
+	 * @throws InvalidInputFileException
+	 * @throws IOException
+	 */
+	public VariantPoolIndexed(String inputString, boolean addChr) throws InvalidInputFileException, IOException{
+		this(new File(parseInputFile(inputString)), parseInputPoolID(inputString), addChr, null);
+	}
+
+	private VariantPoolIndexed(File file, String poolID, boolean addChr, String onlyContig) throws IOException{
+		super(addChr, poolID);
+		if(onlyContig == null){
+			logger.info("Creating new indexed VariantPool from " + file.getName() + " with poolID " + poolID);
+		}
+		this.setFile(file);
+		this.onlyContig = onlyContig;
+		this.index = VariantKeyIndex.load(file);
+		this.readHeader();
+		this.codec = newCodec();
+
+		this.fileContigs = new HashMap<String, String>();
+		for(String contig : index.getContigs()){
+			if(onlyContig == null || onlyContig.equals(contig)){
+				fileContigs.put(this.getContigAliases().translate(contig), contig);
+			}
+		}
+
+		this.cache = new LinkedHashMap<Long, VariantContext>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, VariantContext> eldest){
+				return size() > CACHE_RECORDS;
+			}
+		};
+	}
+
+	private static String parseInputFile(String inputString) throws InvalidInputFileException{
+		String[] inputVals = inputString.split("=");
+		if(inputVals.length > 2){
+			throw new InvalidInputFileException("Invalid input file specified: " + inputString);
+		}
+		return inputVals[inputVals.length - 1];
+	}
+
+	private static String parseInputPoolID(String inputString){
+		String[] inputVals = inputString.split("=");
+		return inputVals.length == 2 ? inputVals[0] : generatePoolID(SupportedFileType.VCF);
+	}
+
+	/**
+	 * Read the header and samples
+	 * @throws IOException
+	 */
+	private void readHeader() throws IOException{
+		StringBuilder lines = new StringBuilder();
+		VCFLineReader headerReader = new VCFLineReader(this.getFile());
+		try{
+			String line;
+			while((line = headerReader.readLine()) != null && line.startsWith("#")){
+				lines.append(line).append('\n');
+			}
+		} finally {
+			headerReader.close();
+		}
+		this.headerText = lines.toString();
+		VCFHeader header = (VCFHeader) new VCFCodec().readActualHeader(new LineIteratorImpl(
+				LineReaderUtil.fromStringReader(new StringReader(headerText))));
+		this.getContigAliases().addContigs(header);
+		this.setHeader(header);
+		this.addSamples(new TreeSet<String>(header.getGenotypeSamples()));
+	}
+
+	/**
+	 * A codec for this pool's records. Codecs can only decode on one thread
+	 * at a time.
+	 */
+	private ContigAliasCodec newCodec(){
+		ContigAliasCodec newCodec = new ContigAliasCodec(this.getContigAliases());
+		newCodec.readActualHeader(new LineIteratorImpl(
+				LineReaderUtil.fromStringReader(new StringReader(headerText))));
+		return newCodec;
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	public VariantKeyIndex getIndex(){
+		return index;
+	}
+
+	@Override
+	public VariantContext getVariant(String key){
+		/* Keys are 'chr:pos:ref'. Contigs may contain ':', so parse from the right. */
+		int refStart = key.lastIndexOf(':');
+		int posStart = key.lastIndexOf(':', refStart - 1);
+		if(refStart < 0 || posStart < 0){
+			return null;
+		}
+		int pos;
+		try{
+			pos = Integer.parseInt(key.substring(posStart + 1, refStart));
+		} catch (NumberFormatException e){
+			return null;
+		}
+		for(VariantContext var : getVariants(key.substring(0, posStart), pos, pos)){
+			if(key.equals(buildKey(var))){
+				return var;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Test if any variants in this pool overlap within +/- indelLength,
+	 * just as VariantPoolHeavy.getOverlappingIndel does, reading only the
+	 * records in that range.
+	 */
+	@Override
+	public VariantContext getOverlappingIndel(String chr, int pos, int indelLength, AltType type){
+		int currIndelLength;
+		Allele ref;
+		for(VariantContext var : getVariants(chr, pos - indelLength, pos + indelLength)){
+			ref = var.getReference();
+			for(Allele alt : var.getAlternateAlleles()){
+				currIndelLength = ref.length() > alt.length() ? ref.length() : alt.length(); // length is the longer of the two
+				if(UtilityBelt.determineAltType(ref, alt) == type
+						&& currIndelLength == indelLength){
+					return var;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get the variants in this pool starting at 'from' to 'to' (inclusive)
+	 * on 'chr', in order of position. Only the first record for each key is
+	 * kept, as VariantPoolHeavy does.
+	 *
+	 * @param chr the contig as named by this pool
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	private synchronized List<VariantContext> getVariants(String chr, int from, int to){
+		String contig = fileContigs.get(chr);
+		if(contig == null){
+			return Collections.emptyList();
+		}
+		long[] offsets = index.getOffsets(contig, from, to);
+		ArrayList<VariantContext> vars = new ArrayList<VariantContext>(offsets.length);
+		try{
+			if(reader == null && offsets.length > 0){
+				reader = new VCFLineReader(this.getFile());
+			}
+			for(long offset : offsets){
+				VariantContext var = cache.get(offset);
+				if(var == null){
+					var = readVariant(reader, codec, offset);
+					cache.put(offset, var);
+				}
+				vars.add(var);
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read variants for pool " + this.getPoolID() +
+					" from " + this.getFile().getPath() + ": " + e.getMessage());
+		}
+		return keepFirstInRegions(vars);
+	}
+
+	/**
+	 * Read and decode the record at 'offset'
+	 */
+	private static VariantContext readVariant(VCFLineReader lineReader, ContigAliasCodec lineCodec,
+			long offset) throws IOException{
+		if(lineReader.getOffset() != offset){
+			lineReader.seek(offset);
+		}
+		String line = lineReader.readLine();
+		if(line == null){
+			throw new IOException("No record at offset " + offset + ". Was the file changed?");
+		}
+		return lineCodec.decode(line);
+	}
+
+	/**
+	 * Drop variants outside this pool's regions and later records with the
+	 * same key as an earlier one
+	 */
+	private List<VariantContext> keepFirstInRegions(List<VariantContext> vars){
+		RegionList regions = this.getRegions();
+		LinkedHashMap<String, VariantContext> kept = new LinkedHashMap<String, VariantContext>();
+		String key;
+		for(VariantContext var : vars){
+			if(regions != null && !regions.overlaps(var.getChr(), var.getStart(), var.getEnd())){
+				continue;
+			}
+			key = buildKey(var);
+			if(!kept.containsKey(key)){
+				kept.put(key, var);
+			}
+			else{
+				logger.error("Found separate variant records with the same Chr, pos, and ref. Ignoring " +
+						"subsequent variants at: " + var.getChr() + ":" + var.getStart());
+			}
+		}
+		return new ArrayList<VariantContext>(kept.values());
+	}
+
+	private static String buildKey(VariantContext var){
+		return var.getChr() + ":" + Integer.toString(var.getStart()) + ":" + var.getReference();
+	}
+
+	/**
+	 * The number of records in this pool. With regions, this counts the
+	 * records starting in the regions.
+	 */
+	@Override
+	public int getNumVarRecords(){
+		int count = 0;
+		RegionList regions = this.getRegions();
+		for(String contig : fileContigs.values()){
+			if(regions == null){
+				count += index.size(contig);
+			}
+			else{
+				count += countInRegions(contig, regions);
+			}
+		}
+		return count;
+	}
+
+	private int countInRegions(String contig, RegionList regions){
+		int count = 0;
+		for(RegionList.Region region : regions.getRegions()){
+			if(ContigAliasMap.normalize(region.getChr(), false).equals(
+					ContigAliasMap.normalize(contig, false))){
+				count += index.count(contig, region.getStart(), region.getEnd());
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public TreeSet<String> getContigs(){
+		TreeSet<String> contigs = new TreeSet<String>();
+		RegionList regions = this.getRegions();
+		for(String contig : fileContigs.keySet()){
+			if(regions == null || countInRegions(fileContigs.get(contig), regions) > 0){
+				contigs.add(contig);
+			}
+		}
+		return contigs;
+	}
+
+	@Override
+	public boolean hasGenotypeData(){
+		return this.getHeader().hasGenotypingData();
+	}
+
+	/**
+	 * Nothing is held in memory but the cached records
+	 */
+	@Override
+	public long getEstimatedBytes(){
+		return 0;
+	}
+
+	/**
+	 * Iterate over the variants in the same order as VariantPoolHeavy
+	 * (contigs and keys in natural order). Returns null at the end and
+	 * starts over on the next call.
+	 */
+	@Override
+	public synchronized VariantContext getNextVar() throws IOException{
+		if(cursor == null){
+			cursor = iterator();
+		}
+		if(cursor.hasNext()){
+			return cursor.next();
+		}
+		cursor.close();
+		cursor = null;
+		return null;
+	}
+
+	/**
+	 * Iterate over the variants in the same order as getNextVar. Each
+	 * iterator reads the file with its own reader.
+	 */
+	@Override
+	public VariantPoolIterator iterator(RegionList.Region range) throws IOException{
+		return new IndexedIterator(range);
+	}
+
+	/**
+	 * The last position of each contig comes from the index
+	 */
+	@Override
+	public LinkedHashMap<String, Integer> getContigExtents() throws IOException{
+		TreeSet<String> contigs = new TreeSet<String>(new NaturalOrderComparator());
+		contigs.addAll(this.getContigs());
+		LinkedHashMap<String, Integer> extents = new LinkedHashMap<String, Integer>();
+		for(String contig : contigs){
+			extents.put(contig, index.getLastPosition(fileContigs.get(contig)));
+		}
+		return extents;
+	}
+
+	/**
+	 * Reads the records of a range of the index in order, position by
+	 * position, sorting the records at each position by key
+	 */
+	private class IndexedIterator implements VariantPoolIterator {
+		private NaturalOrderComparator naturalOrder = new NaturalOrderComparator();
+		private RegionList.Region range;
+		private VCFLineReader lineReader;
+		private ContigAliasCodec lineCodec;
+		private ArrayList<String> contigs;
+		private int contig = -1;
+		private long[] offsets = new long[0];
+		private int offset = 0;
+		private VariantContext nextVar;
+		private ArrayList<VariantContext> vars = new ArrayList<VariantContext>();
+		private int var = 0;
+
+		private IndexedIterator(RegionList.Region range) throws IOException{
+			this.range = range;
+			this.contigs = new ArrayList<String>();
+			if(range == null){
+				TreeSet<String> sorted = new TreeSet<String>(naturalOrder);
+				sorted.addAll(getContigs());
+				for(String c : sorted){
+					contigs.add(fileContigs.get(c));
+				}
+			}
+			else if(fileContigs.containsKey(ContigAliasMap.normalize(range.getChr(), addChr()))){
+				contigs.add(fileContigs.get(ContigAliasMap.normalize(range.getChr(), addChr())));
+			}
+			this.lineReader = new VCFLineReader(getFile());
+			this.lineCodec = newCodec();
+		}
+
+		@Override
+		public boolean hasNext() {
+			try {
+				while(lineReader != null && var == vars.size()){
+					if(!readNextPosition()){
+						close();
+					}
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Could not read variants for pool " + getPoolID() +
+						" from " + getFile().getPath() + ": " + e.getMessage());
+			}
+			return var < vars.size();
+		}
+
+		@Override
+		public VariantContext next() {
+			if(!hasNext()){
+				throw new NoSuchElementException();
+			}
+			return vars.get(var++);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(lineReader != null){
+				lineReader.close();
+				lineReader = null;
+			}
+		}
+
+		/**
+		 * Read the records at the next position into vars, sorted by key
+		 * @return false when there are no more records
+		 * @throws IOException
+		 */
+		private boolean readNextPosition() throws IOException{
+			ArrayList<VariantContext> atPosition = new ArrayList<VariantContext>();
+			if(nextVar != null){
+				atPosition.add(nextVar);
+				nextVar = null;
+			}
+			while(atPosition.isEmpty() && offset == offsets.length){
+				if(++contig == contigs.size()){
+					return false;
+				}
+				offsets = range == null ? index.getOffsets(contigs.get(contig), 0, Integer.MAX_VALUE)
+						: index.getOffsets(contigs.get(contig), range.getStart(), range.getEnd());
+				offset = 0;
+			}
+			while(offset < offsets.length){
+				VariantContext v = readVariant(lineReader, lineCodec, offsets[offset++]);
+				if(!atPosition.isEmpty() && v.getStart() != atPosition.get(0).getStart()){
+					nextVar = v;
+					break;
+				}
+				atPosition.add(v);
+			}
+
+			vars = new ArrayList<VariantContext>(keepFirstInRegions(atPosition));
+			Collections.sort(vars, new Comparator<VariantContext>(){
+				@Override
+				public int compare(VariantContext v1, VariantContext v2) {
+					return naturalOrder.compare(buildKey(v1), buildKey(v2));
+				}
+			});
+			var = 0;
+			return true;
+		}
+	}
+
+
+
+	/****************************************************
+	 * Setters
+	 */
+
+	/**
+	 * Read input VCFs as VariantPoolIndexed objects rather than loading them,
+	 * for every input pool created in the current session after this call
+	 *
+	 * @param indexed
+	 */
+	public static void setDefaultIndexedPools(boolean indexed){
+		VTCSession.current().setDefaultIndexedPools(indexed);
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Split this pool into a pool for each of 'contigs'. Each part reads
+	 * its own records, so the parts may be used on different threads.
+	 */
+	@Override
+	public HashMap<String, VariantPoolHeavy> splitByContig(Collection<String> contigs) throws IOException{
+		HashMap<String, VariantPoolHeavy> parts = new HashMap<String, VariantPoolHeavy>();
+		VariantPoolIndexed part;
+		for(String contig : contigs){
+			String fileContig = fileContigs.get(contig);
+			part = new VariantPoolIndexed(this.getFile(), this.getPoolID(), this.addChr(),
+					fileContig == null ? "" : fileContig);
+			part.setRegions(this.getRegions());
+			parts.put(contig, part);
+		}
+		return parts;
+	}
+
+	@Override
+	public void addVariant(VariantContext v, boolean union){
+		throw new UnsupportedOperationException("Indexed VariantPools are read-only: " + this.getPoolID());
+	}
+
+	@Override
+	public void updateVariant(String key, VariantContext newVar){
+		throw new UnsupportedOperationException("Indexed VariantPools are read-only: " + this.getPoolID());
+	}
+
+	@Override
+	public void addVariants(VariantPoolHeavy vp){
+		throw new UnsupportedOperationException("Indexed VariantPools are read-only: " + this.getPoolID());
+	}
+
+	@Override
+	public void changeSampleNames(ArrayList<String> newSampleNames){
+		throw new UnsupportedOperationException("Indexed VariantPools are read-only: " + this.getPoolID());
+	}
+
+	/**
+	 * Close the files this pool reads from. They are opened again if more
+	 * records are read.
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException{
+		if(reader != null){
+			reader.close();
+			reader = null;
+		}
+		if(cursor != null){
+			cursor.close();
+			cursor = null;
+		}
+		cache.clear();
+	}
+}
@@ -0,0 +1,19 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * @author markebbert
+ *
+ *	An iterator over the records of a VariantPool with its own position and
+ *	its own file handles, so any number may be used at once, on any threads.
+ *	Close iterators that are not read to the end.
+ */
+public interface VariantPoolIterator extends Iterator<VariantContext>, Closeable {
+}
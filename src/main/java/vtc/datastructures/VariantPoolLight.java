@@ -31,7 +31,7 @@ public class VariantPoolLight extends AbstractVariantPool {
 	public VariantPoolLight(File file, String poolID, boolean requireIndex,
 			boolean addChr) throws IOException {
 		super(file, poolID, requireIndex, addChr);
-		// TODO Auto-generated constructor stub
+		addChrWhileParsing();
 	}
 
 	/**
@@ -44,7 +44,17 @@ public class VariantPoolLight extends AbstractVariantPool {
 	public VariantPoolLight(String inputString, boolean requireIndex,
 			boolean addChr) throws InvalidInputFileException, IOException {
 		super(inputString, requireIndex, addChr);
-		// TODO Auto-generated constructor stub
+		addChrWhileParsing();
+	}
+
+	/**
+	 * Records are created with 'chr' added while parsing. Contigs are left
+	 * as they are in the file otherwise.
+	 */
+	private void addChrWhileParsing(){
+		if(this.addChr()){
+			this.setContigAliases(new ContigAliasMap(true));
+		}
 	}
 
 }
@@ -0,0 +1,77 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * @author markebbert
+ *
+ *	Publishes the records of a VariantPool, in the pool's order. Each
+ *	subscriber reads the pool with its own iterator. The pool may also be
+ *	the result of a set operation, which is then performed on the Executor
+ *	when a subscriber first requests records.
+ */
+public class VariantPoolPublisher extends IteratorPublisher<VariantContext> {
+
+	private Callable<? extends VariantPool> source;
+	private RegionList.Region range;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * Publish every record in 'vp'
+	 * @param vp
+	 * @param executor
+	 */
+	public VariantPoolPublisher(VariantPool vp, Executor executor){
+		this(vp, null, executor);
+	}
+
+	/**
+	 * Publish the records starting in 'range'
+	 * @param vp
+	 * @param range the records to publish, or null for every record
+	 * @param executor
+	 */
+	public VariantPoolPublisher(final VariantPool vp, RegionList.Region range, Executor executor){
+		super(executor);
+		this.source = new Callable<VariantPool>(){
+			@Override
+			public VariantPool call() throws Exception {
+				return vp;
+			}
+		};
+		this.range = range;
+	}
+
+	/**
+	 * Publish the records of the pool 'source' returns, e.g., the result of
+	 * SetOperator.performIntersect. 'source' is called for each subscriber.
+	 * @param source
+	 * @param executor
+	 */
+	public VariantPoolPublisher(Callable<? extends VariantPool> source, Executor executor){
+		super(executor);
+		this.source = source;
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	@Override
+	protected Iterator<VariantContext> open() throws Exception {
+		return source.call().iterator(range);
+	}
+}
@@ -0,0 +1,205 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * @author markebbert
+ *
+ *	A part of a VariantPool, as contigs or position ranges, that can be
+ *	split into smaller parts to read on separate threads. Each part reads
+ *	the pool with its own iterators, so the parts can be read at once, and
+ *	reading the parts in order gives the pool's records in order.
+ */
+public class VariantPoolSpliterator {
+
+	private VariantPool vp;
+
+	/* The ranges in this part, in order. A single null range is the whole
+	 * pool, for pools that do not know their contigs without reading. */
+	private ArrayList<RegionList.Region> ranges;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * A spliterator over the whole pool
+	 * @param vp
+	 * @throws IOException
+	 */
+	public VariantPoolSpliterator(VariantPool vp) throws IOException{
+		this.vp = vp;
+		this.ranges = new ArrayList<RegionList.Region>();
+		for(Map.Entry<String, Integer> extent : vp.getContigExtents().entrySet()){
+			ranges.add(new RegionList.Region(extent.getKey(), 1, extent.getValue()));
+		}
+		if(ranges.isEmpty()){
+			ranges.add(null);
+		}
+	}
+
+	private VariantPoolSpliterator(VariantPool vp, List<RegionList.Region> ranges){
+		this.vp = vp;
+		this.ranges = new ArrayList<RegionList.Region>(ranges);
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	public VariantPool getVariantPool(){
+		return vp;
+	}
+
+	/**
+	 * @return the ranges in this part, in order. A single null range is the
+	 * whole pool.
+	 */
+	public List<RegionList.Region> getRanges(){
+		return Collections.unmodifiableList(ranges);
+	}
+
+	/**
+	 * @return the number of positions in this part, or Long.MAX_VALUE if it
+	 * is not known
+	 */
+	public long estimateSize(){
+		long size = 0;
+		for(RegionList.Region range : ranges){
+			if(range == null || range.getEnd() == Integer.MAX_VALUE){
+				return Long.MAX_VALUE;
+			}
+			size += (long) range.getEnd() - range.getStart() + 1;
+		}
+		return size;
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Split off the first half of this part, by contig when it has more than
+	 * one, otherwise by position. This part keeps the rest.
+	 * @return the first half, or null if this part cannot be split
+	 */
+	public VariantPoolSpliterator trySplit(){
+		if(ranges.size() > 1){
+			List<RegionList.Region> first = ranges.subList(0, ranges.size() / 2);
+			VariantPoolSpliterator prefix = new VariantPoolSpliterator(vp, first);
+			first.clear();
+			return prefix;
+		}
+
+		RegionList.Region range = ranges.get(0);
+		if(range == null || range.getEnd() == Integer.MAX_VALUE || range.getEnd() <= range.getStart()){
+			return null;
+		}
+		int mid = range.getStart() + (range.getEnd() - range.getStart()) / 2;
+		ranges.set(0, new RegionList.Region(range.getChr(), mid + 1, range.getEnd()));
+		ArrayList<RegionList.Region> first = new ArrayList<RegionList.Region>();
+		first.add(new RegionList.Region(range.getChr(), range.getStart(), mid));
+		return new VariantPoolSpliterator(vp, first);
+	}
+
+	/**
+	 * Split this part into up to 'parts' parts, splitting the largest part
+	 * each time. This part becomes the last of them.
+	 * @param parts
+	 * @return the parts, in order
+	 */
+	public List<VariantPoolSpliterator> split(int parts){
+		ArrayList<VariantPoolSpliterator> split = new ArrayList<VariantPoolSpliterator>();
+		split.add(this);
+		ArrayList<VariantPoolSpliterator> unsplittable = new ArrayList<VariantPoolSpliterator>();
+		while(split.size() < parts && unsplittable.size() < split.size()){
+			int largest = -1;
+			for(int i = 0; i < split.size(); i++){
+				if(!unsplittable.contains(split.get(i)) && (largest < 0 ||
+						split.get(i).estimateSize() > split.get(largest).estimateSize())){
+					largest = i;
+				}
+			}
+			VariantPoolSpliterator prefix = split.get(largest).trySplit();
+			if(prefix == null){
+				unsplittable.add(split.get(largest));
+			}
+			else{
+				split.add(largest, prefix);
+			}
+		}
+		return split;
+	}
+
+	/**
+	 * @return a new iterator over the records in this part, in order
+	 */
+	public VariantPoolIterator iterator(){
+		return new VariantPoolIterator(){
+			private int range = 0;
+			private VariantPoolIterator rangeIter;
+
+			@Override
+			public boolean hasNext() {
+				try {
+					while(rangeIter == null || !rangeIter.hasNext()){
+						if(rangeIter != null){
+							rangeIter.close();
+							rangeIter = null;
+						}
+						if(range == ranges.size()){
+							return false;
+						}
+						rangeIter = vp.iterator(ranges.get(range++));
+					}
+				} catch (IOException e) {
+					throw new RuntimeException("Could not read variants for pool " +
+							vp.getPoolID() + ": " + e.getMessage());
+				}
+				return true;
+			}
+
+			@Override
+			public VariantContext next() {
+				if(!hasNext()){
+					throw new NoSuchElementException();
+				}
+				return rangeIter.next();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public void close() throws IOException {
+				if(rangeIter != null){
+					rangeIter.close();
+					rangeIter = null;
+				}
+				range = ranges.size();
+			}
+		};
+	}
+
+	@Override
+	public String toString(){
+		return ranges.get(0) == null ? "all" : ranges.toString();
+	}
+}
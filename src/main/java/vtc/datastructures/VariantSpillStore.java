@@ -0,0 +1,922 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypeBuilder;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.log4j.Logger;
+
+/**
+ * @author markebbert
+ *
+ *	Holds the records a VariantPoolHeavy has moved out of its in-memory map,
+ *	either because it exceeded its memory budget (spilled to disk) or because
+ *	it keeps its records compressed (blocks held in memory). Records are
+ *	grouped by contig, sorted by key ('chr:pos:ref') and written to partitions
+ *	of about 'partitionBytes' of encoded data each, in a compact binary
+ *	encoding. Each partition is a run of chunks of about CHUNK_BYTES, deflated
+ *	separately.
+ *
+ *	For each partition, only its boundaries, each record's position and
+ *	place in the chunks, and its key hashes (sorted) are kept in memory,
+ *	about 24 bytes a record. Lookups binary search those arrays, inflate one
+ *	chunk, and decode only the records asked for. The most recently used
+ *	chunks are kept inflated. Iteration streams the partitions of a contig
+ *	in key order.
+ *
+ *	A key may be spilled more than once if it was updated after a spill. The
+ *	newest partition holding a key wins.
+ */
+public class VariantSpillStore {
+
+	private static Logger logger = Logger.getLogger(VariantSpillStore.class);
+
+	/* Encoded bytes in each separately deflated chunk. Lookups inflate one chunk. */
+	private static final int CHUNK_BYTES = 16 * 1024;
+
+	/* The most chunks kept inflated at once */
+	private static final int MAX_CACHED_CHUNKS = 64;
+
+	/* Attribute value types */
+	private static final byte NULL = 0, STRING = 1, INTEGER = 2, DOUBLE = 3, BOOLEAN = 4, LIST = 5;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private File tmpDir;
+	private long partitionBytes;
+	private long storedBytes;
+	private VariantDictionary dictionary;
+
+	private HashMap<String, ArrayList<Partition>> partitionsByContig;
+	private int nPartitions;
+	private LinkedHashMap<Long, byte[]> cachedChunks;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * Keep the partitions in memory as compressed blocks
+	 * @param partitionBytes approximate size of each partition's encoded records
+	 * @param dictionary shares repeated values between decoded records
+	 */
+	public VariantSpillStore(long partitionBytes, VariantDictionary dictionary){
+		this(null, partitionBytes, dictionary);
+	}
+
+	/**
+	 * @param tmpDir directory for the partition files, or null to keep the
+	 * partitions in memory
+	 * @param partitionBytes approximate size of each partition's encoded records
+	 * @param dictionary shares repeated values between decoded records
+	 */
+	public VariantSpillStore(File tmpDir, long partitionBytes, VariantDictionary dictionary){
+		this.tmpDir = tmpDir;
+		this.partitionBytes = partitionBytes;
+		this.dictionary = dictionary;
+		this.partitionsByContig = new HashMap<String, ArrayList<Partition>>();
+		this.cachedChunks = new LinkedHashMap<Long, byte[]>(16, 0.75f, true);
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	/**
+	 * Return the contigs with spilled records
+	 * @return
+	 */
+	public ArrayList<String> getContigs(){
+		return new ArrayList<String>(partitionsByContig.keySet());
+	}
+
+	/**
+	 * Whether the partitions are held in memory rather than on disk
+	 * @return
+	 */
+	public boolean inMemory(){
+		return tmpDir == null;
+	}
+
+	/**
+	 * The compressed size of every partition, in bytes
+	 * @return
+	 */
+	public long getStoredBytes(){
+		return storedBytes;
+	}
+
+	/**
+	 * Get the newest spilled record for 'key' or null
+	 * @param chr
+	 * @param pos
+	 * @param key
+	 * @return
+	 * @throws IOException
+	 */
+	public VariantContext get(String chr, int pos, String key) throws IOException{
+		ArrayList<Partition> parts = partitionsByContig.get(chr);
+		if(parts == null){
+			return null;
+		}
+		long hash = keyHash(key);
+		Partition p;
+		DataInputStream in;
+		for(int i = parts.size() - 1; i >= 0; i--){
+			p = parts.get(i);
+			if(!p.covers(pos)){
+				continue;
+			}
+
+			/* Different keys may share a hash, so check each record's key */
+			for(int h = lowerBound(p.hashes, hash); h < p.count && p.hashes[h] == hash; h++){
+				in = openRecord(p, p.hashRecords[h]);
+				if(readString(in).equals(key)){
+					return readVariant(in);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get every spilled record at chr:pos, keyed by 'chr:pos:ref'
+	 * @param chr
+	 * @param pos
+	 * @return
+	 * @throws IOException
+	 */
+	public HashMap<String, VariantContext> getByChrPos(String chr, int pos) throws IOException{
+		HashMap<String, VariantContext> vars = new HashMap<String, VariantContext>();
+		ArrayList<Partition> parts = partitionsByContig.get(chr);
+		if(parts == null){
+			return vars;
+		}
+
+		/* Newer partitions are read last, so their copies win */
+		DataInputStream in;
+		for(Partition p : parts){
+			if(!p.covers(pos)){
+				continue;
+			}
+			for(int r = lowerBound(p.positions, pos); r < p.count && p.positions[r] == pos; r++){
+				in = openRecord(p, r);
+				vars.put(readString(in), readVariant(in));
+			}
+		}
+		return vars;
+	}
+
+	/**
+	 * Get a reader for each spilled partition of 'chr', oldest first. Each
+	 * reader returns the partition's records in key order.
+	 * @param chr
+	 * @return
+	 * @throws IOException
+	 */
+	public ArrayList<PartitionReader> getReaders(String chr) throws IOException{
+		ArrayList<PartitionReader> readers = new ArrayList<PartitionReader>();
+		ArrayList<Partition> parts = partitionsByContig.get(chr);
+		if(parts != null){
+			for(Partition p : parts){
+				readers.add(new PartitionReader(p));
+			}
+		}
+		return readers;
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Write 'records' to disk, grouped by contig and sorted by key
+	 * @param records keys are 'chr:pos:ref'
+	 * @throws IOException
+	 */
+	public void spill(Map<String, VariantContext> records) throws IOException{
+		HashMap<String, ArrayList<String>> keysByContig = new HashMap<String, ArrayList<String>>();
+		ArrayList<String> keys;
+		String contig;
+		for(Map.Entry<String, VariantContext> e : records.entrySet()){
+			contig = e.getValue().getChr();
+			keys = keysByContig.get(contig);
+			if(keys == null){
+				keys = new ArrayList<String>();
+				keysByContig.put(contig, keys);
+			}
+			keys.add(e.getKey());
+		}
+
+		/* Natural order compares positions as numbers, so the records of a
+		 * partition are also sorted by position.
+		 */
+		NaturalOrderComparator naturalOrder = new NaturalOrderComparator();
+		for(String c : keysByContig.keySet()){
+			keys = keysByContig.get(c);
+			Collections.sort(keys, naturalOrder);
+			writePartitions(c, keys, records);
+		}
+		if(!inMemory()){
+			logger.info("Spilled " + records.size() + " variant records to " + tmpDir.getPath());
+		}
+	}
+
+	/**
+	 * A rough estimate of the memory used by a record, in bytes
+	 * @param var
+	 * @return
+	 */
+	public static long estimateSize(VariantContext var){
+		long size = 200 + 64 * var.getNAlleles() + 48 * var.getAttributes().size();
+		if(var.hasGenotypes()){
+			size += 96 * var.getNSamples();
+		}
+		if(var instanceof RawVariantContext){
+			size += 2 * ((RawVariantContext) var).getLine().length();
+		}
+		return size;
+	}
+
+	/**
+	 * Delete every partition
+	 */
+	public void delete(){
+		for(ArrayList<Partition> parts : partitionsByContig.values()){
+			for(Partition p : parts){
+				if(p.file != null && !p.file.delete() && p.file.exists()){
+					logger.warn("Could not delete temporary file " + p.file.getPath());
+				}
+			}
+		}
+		partitionsByContig.clear();
+		cachedChunks.clear();
+		storedBytes = 0;
+	}
+
+	/**
+	 * Write the records for 'keys' (sorted) to as many partitions as needed
+	 */
+	private void writePartitions(String contig, List<String> keys, Map<String, VariantContext> records) throws IOException{
+		ArrayList<Partition> parts = partitionsByContig.get(contig);
+		if(parts == null){
+			parts = new ArrayList<Partition>();
+			partitionsByContig.put(contig, parts);
+		}
+
+		PartitionWriter writer = null;
+		try{
+			for(String key : keys){
+				if(writer == null){
+					writer = new PartitionWriter(contig);
+				}
+				writer.add(key, records.get(key));
+				if(writer.encodedBytes() >= partitionBytes){
+					parts.add(writer.close());
+					writer = null;
+				}
+			}
+			if(writer != null){
+				parts.add(writer.close());
+				writer = null;
+			}
+		} finally {
+			if(writer != null){
+				writer.abort();
+			}
+		}
+	}
+
+	/**
+	 * Open record 'r' of a partition, inflating its chunk if it isn't cached
+	 */
+	private DataInputStream openRecord(Partition p, int r) throws IOException{
+		Long id = ((long) p.id << 32) | p.chunks[r];
+		byte[] chunk = cachedChunks.get(id);
+		if(chunk == null){
+			InputStream in = p.openChunk(p.chunks[r]);
+			try{
+				chunk = readChunk(in, p, p.chunks[r]);
+			} finally {
+				in.close();
+			}
+			if(cachedChunks.size() >= MAX_CACHED_CHUNKS){
+				cachedChunks.remove(cachedChunks.keySet().iterator().next());
+			}
+			cachedChunks.put(id, chunk);
+		}
+		return new DataInputStream(new ByteArrayInputStream(chunk, p.offsets[r], chunk.length - p.offsets[r]));
+	}
+
+	/**
+	 * Read and inflate chunk 'c' of a partition. 'in' must be at the start of the chunk.
+	 */
+	private static byte[] readChunk(InputStream in, Partition p, int c) throws IOException{
+		byte[] compressed = new byte[(int) (p.chunkOffsets[c + 1] - p.chunkOffsets[c])];
+		new DataInputStream(in).readFully(compressed);
+		byte[] chunk = new byte[p.chunkSizes[c]];
+		DataInputStream inflater = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed)));
+		try{
+			inflater.readFully(chunk);
+		} finally {
+			inflater.close();
+		}
+		return chunk;
+	}
+
+	/**
+	 * A 64-bit FNV-1a hash of a key, so few keys in a partition share a hash
+	 */
+	private static long keyHash(String key){
+		long hash = 0xcbf29ce484222325L;
+		for(int i = 0; i < key.length(); i++){
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * The first index in 'values' (sorted) holding at least 'value'
+	 */
+	private static int lowerBound(long[] values, long value){
+		int low = 0, high = values.length;
+		while(low < high){
+			int mid = (low + high) >>> 1;
+			if(values[mid] < value){
+				low = mid + 1;
+			}
+			else{
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private static int lowerBound(int[] values, int value){
+		int low = 0, high = values.length;
+		while(low < high){
+			int mid = (low + high) >>> 1;
+			if(values[mid] < value){
+				low = mid + 1;
+			}
+			else{
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+
+
+	/****************************************************
+	 * Binary encoding
+	 */
+
+	private static void writeVariant(DataOutputStream out, VariantContext var) throws IOException{
+		writeString(out, var.getChr());
+		out.writeInt(var.getStart());
+		out.writeInt(var.getEnd());
+		writeNullableString(out, var.getSource());
+		writeNullableString(out, var.getID());
+		out.writeDouble(var.getLog10PError());
+
+		if(var.filtersWereApplied()){
+			out.writeInt(var.getFilters().size());
+			for(String filter : var.getFilters()){
+				writeString(out, filter);
+			}
+		}
+		else{
+			out.writeInt(-1);
+		}
+
+		List<Allele> alleles = var.getAlleles();
+		out.writeInt(alleles.size());
+		for(Allele a : alleles){
+			writeAllele(out, a);
+		}
+
+		writeAttributes(out, var.getAttributes());
+
+		out.writeInt(var.getGenotypes().size());
+		for(Genotype geno : var.getGenotypes()){
+			writeString(out, geno.getSampleName());
+			out.writeInt(geno.getPloidy());
+			for(Allele a : geno.getAlleles()){
+				int index = alleles.indexOf(a);
+				out.writeInt(index);
+				if(index < 0){
+					writeAllele(out, a);
+				}
+			}
+			out.writeBoolean(geno.isPhased());
+			out.writeInt(geno.hasGQ() ? geno.getGQ() : -1);
+			out.writeInt(geno.hasDP() ? geno.getDP() : -1);
+			writeIntArray(out, geno.getAD());
+			writeIntArray(out, geno.getPL());
+			writeNullableString(out, geno.getFilters());
+			writeAttributes(out, geno.getExtendedAttributes());
+		}
+	}
+
+	/**
+	 * Decode a record. Repeated values are shared through the dictionary.
+	 */
+	private VariantContext readVariant(DataInputStream in) throws IOException{
+		VariantContextBuilder vcBuilder = new VariantContextBuilder();
+		vcBuilder.chr(dictionary.intern(readString(in)));
+		vcBuilder.start(in.readInt());
+		vcBuilder.stop(in.readInt());
+		vcBuilder.source(readNullableString(in));
+		vcBuilder.id(readNullableString(in));
+		vcBuilder.log10PError(in.readDouble());
+
+		int nFilters = in.readInt();
+		if(nFilters < 0){
+			vcBuilder.unfiltered();
+		}
+		else{
+			LinkedHashSet<String> filters = new LinkedHashSet<String>();
+			for(int i = 0; i < nFilters; i++){
+				filters.add(dictionary.intern(readString(in)));
+			}
+			vcBuilder.filters(filters);
+		}
+
+		int nAlleles = in.readInt();
+		ArrayList<Allele> alleles = new ArrayList<Allele>(nAlleles);
+		for(int i = 0; i < nAlleles; i++){
+			alleles.add(readAllele(in));
+		}
+		vcBuilder.alleles(alleles);
+		vcBuilder.attributes(readAttributes(in));
+
+		int nGenos = in.readInt();
+		ArrayList<Genotype> genos = new ArrayList<Genotype>(nGenos);
+		GenotypeBuilder gb;
+		for(int i = 0; i < nGenos; i++){
+			gb = new GenotypeBuilder(dictionary.intern(readString(in)));
+			int ploidy = in.readInt();
+			ArrayList<Allele> genoAlleles = new ArrayList<Allele>(ploidy);
+			for(int j = 0; j < ploidy; j++){
+				int index = in.readInt();
+				genoAlleles.add(index < 0 ? readAllele(in) : alleles.get(index));
+			}
+			gb.alleles(genoAlleles);
+			gb.phased(in.readBoolean());
+			int gq = in.readInt(), dp = in.readInt();
+			if(gq >= 0) gb.GQ(gq);
+			if(dp >= 0) gb.DP(dp);
+			int[] ad = readIntArray(in), pl = readIntArray(in);
+			if(ad != null) gb.AD(ad);
+			if(pl != null) gb.PL(pl);
+			String filters = readNullableString(in);
+			if(filters != null) gb.filter(dictionary.intern(filters));
+			gb.attributes(readAttributes(in));
+			genos.add(gb.make());
+		}
+		vcBuilder.genotypes(genos);
+		return vcBuilder.make();
+	}
+
+	private static void writeAllele(DataOutputStream out, Allele a) throws IOException{
+		out.writeBoolean(a.isReference());
+		
+		/* NO_CALL has no bases, so its display string is empty */
+		writeString(out, a.isNoCall() ? Allele.NO_CALL_STRING : a.getDisplayString());
+	}
+
+	private Allele readAllele(DataInputStream in) throws IOException{
+		boolean isRef = in.readBoolean();
+		return dictionary.intern(Allele.create(readString(in), isRef));
+	}
+
+	/**
+	 * Strings are written as their length and UTF-8 bytes. Unlike writeUTF,
+	 * this allows strings longer than 64KB, such as long INFO values.
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException{
+		byte[] bytes = s.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException{
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	private static void writeNullableString(DataOutputStream out, String s) throws IOException{
+		out.writeBoolean(s != null);
+		if(s != null){
+			writeString(out, s);
+		}
+	}
+
+	private static String readNullableString(DataInputStream in) throws IOException{
+		return in.readBoolean() ? readString(in) : null;
+	}
+
+	private static void writeIntArray(DataOutputStream out, int[] values) throws IOException{
+		if(values == null){
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(values.length);
+		for(int v : values){
+			out.writeInt(v);
+		}
+	}
+
+	private static int[] readIntArray(DataInputStream in) throws IOException{
+		int n = in.readInt();
+		if(n < 0){
+			return null;
+		}
+		int[] values = new int[n];
+		for(int i = 0; i < n; i++){
+			values[i] = in.readInt();
+		}
+		return values;
+	}
+
+	private static void writeAttributes(DataOutputStream out, Map<String, Object> attributes) throws IOException{
+		out.writeInt(attributes.size());
+		for(Map.Entry<String, Object> e : attributes.entrySet()){
+			writeString(out, e.getKey());
+			writeValue(out, e.getValue());
+		}
+	}
+
+	private LinkedHashMap<String, Object> readAttributes(DataInputStream in) throws IOException{
+		int n = in.readInt();
+		LinkedHashMap<String, Object> attributes = new LinkedHashMap<String, Object>(n * 2);
+		for(int i = 0; i < n; i++){
+			attributes.put(dictionary.intern(readString(in)), readValue(in));
+		}
+		return attributes;
+	}
+
+	/**
+	 * Attribute values are usually strings (or lists of strings) straight from
+	 * the VCF. Other types are kept when they are simple, otherwise stored as
+	 * their string value.
+	 */
+	private static void writeValue(DataOutputStream out, Object value) throws IOException{
+		if(value == null){
+			out.writeByte(NULL);
+		}
+		else if(value instanceof Integer){
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) value);
+		}
+		else if(value instanceof Double){
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		}
+		else if(value instanceof Boolean){
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		}
+		else if(value instanceof List){
+			List<?> values = (List<?>) value;
+			out.writeByte(LIST);
+			out.writeInt(values.size());
+			for(Object v : values){
+				writeValue(out, v);
+			}
+		}
+		else{
+			out.writeByte(STRING);
+			writeString(out, value.toString());
+		}
+	}
+
+	private static Object readValue(DataInputStream in) throws IOException{
+		byte type = in.readByte();
+		switch(type){
+		case NULL:
+			return null;
+		case INTEGER:
+			return in.readInt();
+		case DOUBLE:
+			return in.readDouble();
+		case BOOLEAN:
+			return in.readBoolean();
+		case LIST:
+			int n = in.readInt();
+			ArrayList<Object> values = new ArrayList<Object>(n);
+			for(int i = 0; i < n; i++){
+				values.add(readValue(in));
+			}
+			return values;
+		case STRING:
+			return readString(in);
+		default:
+			throw new IOException("Corrupt spill file. Unknown attribute type: " + type);
+		}
+	}
+
+
+
+	/****************************************************
+	 * Partitions
+	 */
+
+	/**
+	 * A spilled partition. Its boundaries and record index are kept in memory.
+	 */
+	private static class Partition {
+		private String contig;
+		private File file;
+		private byte[] data;
+		private int id, count;
+		private int minPos = Integer.MAX_VALUE, maxPos = Integer.MIN_VALUE;
+
+		/* Where each chunk starts, compressed, plus the end of the last one,
+		 * and each chunk's size once inflated */
+		private long[] chunkOffsets;
+		private int[] chunkSizes;
+
+		/* For each record, in key order: its position, its chunk, and where
+		 * it starts in the inflated chunk */
+		private int[] positions, chunks, offsets;
+
+		/* Every record's key hash, sorted, and the record it belongs to */
+		private long[] hashes;
+		private int[] hashRecords;
+
+		private Partition(String contig, File file, int id){
+			this.contig = contig;
+			this.file = file;
+			this.id = id;
+		}
+
+		private void include(int pos){
+			minPos = Math.min(minPos, pos);
+			maxPos = Math.max(maxPos, pos);
+		}
+
+		private boolean covers(int pos){
+			return pos >= minPos && pos <= maxPos;
+		}
+
+		private InputStream open() throws IOException{
+			if(file == null){
+				return new ByteArrayInputStream(data);
+			}
+			return new BufferedInputStream(new FileInputStream(file));
+		}
+
+		/**
+		 * Open the partition at the start of chunk 'c'
+		 */
+		private InputStream openChunk(int c) throws IOException{
+			int length = (int) (chunkOffsets[c + 1] - chunkOffsets[c]);
+			if(file == null){
+				return new ByteArrayInputStream(data, (int) chunkOffsets[c], length);
+			}
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try{
+				byte[] compressed = new byte[length];
+				raf.seek(chunkOffsets[c]);
+				raf.readFully(compressed);
+				return new ByteArrayInputStream(compressed);
+			} finally {
+				raf.close();
+			}
+		}
+
+		/**
+		 * Sort the key hashes, keeping the record each belongs to
+		 */
+		private void sortHashes(final long[] recordHashes){
+			Integer[] order = new Integer[count];
+			for(int r = 0; r < count; r++){
+				order[r] = r;
+			}
+			Arrays.sort(order, new Comparator<Integer>(){
+				@Override
+				public int compare(Integer r1, Integer r2){
+					long h1 = recordHashes[r1], h2 = recordHashes[r2];
+					return h1 < h2 ? -1 : (h1 == h2 ? 0 : 1);
+				}
+			});
+			hashes = new long[count];
+			hashRecords = new int[count];
+			for(int i = 0; i < count; i++){
+				hashRecords[i] = order[i];
+				hashes[i] = recordHashes[order[i]];
+			}
+		}
+
+		@Override
+		public String toString(){
+			return contig + ":" + minPos + "-" + maxPos + " (" + count + " records, partition " + id + ")";
+		}
+	}
+
+	/**
+	 * Writes one partition, a chunk at a time, and builds its record index
+	 */
+	private class PartitionWriter {
+		private Partition p;
+		private OutputStream out;
+		private ByteArrayOutputStream block;
+		private long written, encoded;
+
+		private ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+		private DataOutputStream chunkOut = new DataOutputStream(chunk);
+		private long[] chunkOffsets = new long[16];
+		private int[] chunkSizes = new int[16];
+		private int nChunks = 0;
+
+		private int[] positions = new int[256], chunks = new int[256], offsets = new int[256];
+		private long[] hashes = new long[256];
+
+		private PartitionWriter(String contig) throws IOException{
+			if(inMemory()){
+				p = new Partition(contig, null, nPartitions++);
+				block = new ByteArrayOutputStream();
+				out = block;
+			}
+			else{
+				File file = File.createTempFile("vtc_pool_", ".part", tmpDir);
+				file.deleteOnExit();
+				p = new Partition(contig, file, nPartitions++);
+				out = new BufferedOutputStream(new FileOutputStream(file));
+			}
+		}
+
+		/**
+		 * Encoded (uncompressed) bytes written so far
+		 */
+		private long encodedBytes(){
+			return encoded + chunk.size();
+		}
+
+		private void add(String key, VariantContext var) throws IOException{
+			int r = p.count;
+			if(r == positions.length){
+				positions = Arrays.copyOf(positions, r * 2);
+				chunks = Arrays.copyOf(chunks, r * 2);
+				offsets = Arrays.copyOf(offsets, r * 2);
+				hashes = Arrays.copyOf(hashes, r * 2);
+			}
+			positions[r] = var.getStart();
+			chunks[r] = nChunks;
+			offsets[r] = chunk.size();
+			hashes[r] = keyHash(key);
+			writeString(chunkOut, key);
+			writeVariant(chunkOut, var);
+			p.include(var.getStart());
+			p.count++;
+
+			if(chunk.size() >= CHUNK_BYTES){
+				writeChunk();
+			}
+		}
+
+		private void writeChunk() throws IOException{
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+			DeflaterOutputStream deflater = new DeflaterOutputStream(compressed);
+			chunk.writeTo(deflater);
+			deflater.close();
+
+			if(nChunks + 1 >= chunkOffsets.length){
+				chunkOffsets = Arrays.copyOf(chunkOffsets, chunkOffsets.length * 2);
+				chunkSizes = Arrays.copyOf(chunkSizes, chunkSizes.length * 2);
+			}
+			chunkOffsets[nChunks] = written;
+			chunkSizes[nChunks] = chunk.size();
+			nChunks++;
+			compressed.writeTo(out);
+			written += compressed.size();
+			encoded += chunk.size();
+			chunk.reset();
+		}
+
+		private Partition close() throws IOException{
+			if(chunk.size() > 0){
+				writeChunk();
+			}
+			out.close();
+			out = null;
+			if(p.file == null){
+				p.data = block.toByteArray();
+				storedBytes += p.data.length;
+			}
+			else{
+				storedBytes += p.file.length();
+			}
+
+			chunkOffsets[nChunks] = written;
+			p.chunkOffsets = Arrays.copyOf(chunkOffsets, nChunks + 1);
+			p.chunkSizes = Arrays.copyOf(chunkSizes, nChunks);
+			p.positions = Arrays.copyOf(positions, p.count);
+			p.chunks = Arrays.copyOf(chunks, p.count);
+			p.offsets = Arrays.copyOf(offsets, p.count);
+			p.sortHashes(hashes);
+			return p;
+		}
+
+		private void abort() throws IOException{
+			if(out != null){
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Streams the records of a partition in key order
+	 */
+	public class PartitionReader {
+		private Partition p;
+		private InputStream in;
+		private int record = 0, chunkIndex = -1;
+		private DataInputStream chunkIn;
+		private String key;
+		private VariantContext var;
+
+		private PartitionReader(Partition p) throws IOException{
+			this.p = p;
+			this.in = p.open();
+		}
+
+		/**
+		 * Advance to the next record. Closes the partition after the last one.
+		 * @return false if there are no more records
+		 * @throws IOException
+		 */
+		public boolean next() throws IOException{
+			if(record == p.count){
+				close();
+				return false;
+			}
+			try{
+				if(p.chunks[record] != chunkIndex){
+					chunkIndex = p.chunks[record];
+					chunkIn = new DataInputStream(new ByteArrayInputStream(readChunk(in, p, chunkIndex)));
+				}
+				key = readString(chunkIn);
+				var = readVariant(chunkIn);
+			} catch (EOFException e){
+				close();
+				throw new IOException("Spill file ended early: " + e.getMessage());
+			}
+			record++;
+			return true;
+		}
+
+		public String getKey(){
+			return key;
+		}
+
+		public VariantContext getVariant(){
+			return var;
+		}
+
+		public void close() throws IOException{
+			in.close();
+		}
+	}
+}
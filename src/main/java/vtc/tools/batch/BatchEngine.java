@@ -0,0 +1,120 @@
+/**
+ *
+ */
+package vtc.tools.batch;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import org.apache.log4j.Logger;
+
+import vtc.Engine;
+import vtc.tools.utilitybelt.UtilityBelt;
+
+/**
+ * @author markebbert
+ *
+ */
+public class BatchEngine implements Engine {
+
+    private static Logger         logger = Logger.getLogger(BatchEngine.class);
+
+    private ArgumentParser        parser;
+
+    private Namespace             parsedArgs;
+
+    public BatchEngine(String[] args) {
+        init(args);
+    }
+
+    private void init(String[] args) {
+
+        long maxMB = Runtime.getRuntime().maxMemory() / (1024 * 1024);
+
+        parser = ArgumentParsers.newArgumentParser("Batch");
+        parser.description("Batch (BA) runs the SetOperator and VarStats jobs in a manifest" +
+        		" in a single JVM. Each input file is read once and shared by the jobs" +
+        		" that use it. Each job's output is written to its own log, and the" +
+        		" status and run time of every job to " + BatchRunner.SUMMARY_FILE + ".");
+        parser.defaultHelp(true); // Add default values to help menu
+
+        parser.addArgument("-m", "--manifest")
+        		.dest("MANIFEST")
+        		.type(String.class)
+        		.required(true)
+        		.help("File with one job per line, written as on the command line (e.g.," +
+        				" 'SO -i a.vcf b.vcf -s u[v1:v2] -o u.vcf'). Blank lines and lines" +
+        				" starting with '#' are skipped.");
+
+        parser.addArgument("-d", "--out-dir")
+        		.dest("OUT_DIR")
+        		.type(String.class)
+        		.setDefault(".")
+        		.help("Directory for the jobs' logs and the summary.");
+
+        parser.addArgument("--jobs")
+        		.dest("JOBS")
+        		.type(Integer.class)
+        		.setDefault(Runtime.getRuntime().availableProcessors())
+        		.help("Maximum number of jobs run at once.");
+
+        parser.addArgument("--job-memory")
+        		.dest("JOB_MEMORY")
+        		.type(Long.class)
+        		.setDefault(maxMB / 2)
+        		.help("Approximate memory (in MB) for the running jobs. A job starts only" +
+        				" if its estimated memory fits, unless no other job is running." +
+        				" Defaults to half the maximum heap.");
+
+        parser.addArgument("--cache-memory")
+        		.dest("CACHE_MEMORY")
+        		.type(Long.class)
+        		.setDefault(maxMB / 2)
+        		.help("Approximate memory (in MB) for keeping input files between jobs." +
+        				" Defaults to half the maximum heap.");
+
+        try {
+            parsedArgs = parser.parseArgs(args);
+        } catch (ArgumentParserException e) {
+            parser.handleError(e);
+            UtilityBelt.exit(1);
+        }
+    }
+
+    /**
+     * Run the manifest's jobs and exit with status 1 if any failed
+     */
+    public void runBatch() {
+    	try {
+    		int jobs = parsedArgs.getInt("JOBS");
+    		long jobMemory = parsedArgs.getLong("JOB_MEMORY");
+    		long cacheMemory = parsedArgs.getLong("CACHE_MEMORY");
+    		if (jobs < 1 || jobMemory < 0 || cacheMemory < 0) {
+    			throw new ArgumentParserException("--jobs must be at least 1 and memory" +
+    					" cannot be negative.", parser);
+    		}
+
+    		BatchRunner batch = new BatchRunner(new File(parsedArgs.getString("MANIFEST")),
+    				new File(parsedArgs.getString("OUT_DIR")), jobs,
+    				jobMemory * 1024 * 1024, cacheMemory * 1024 * 1024);
+    		batch.run();
+    		if (batch.getFailedJobs() > 0) {
+    			UtilityBelt.exit(1);
+    		}
+
+    	} catch (ArgumentParserException e) {
+    		UtilityBelt.printErrorUsageHelpAndExit(parser, logger, e);
+    	} catch (BatchException e) {
+    		UtilityBelt.printErrorUsageAndExit(parser, logger, e);
+    	} catch (IOException e) {
+    		UtilityBelt.printErrorUsageAndExit(parser, logger, e);
+    	} catch (InterruptedException e) {
+    		UtilityBelt.printErrorUsageAndExit(parser, logger, e);
+    	}
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ *
+ */
+package vtc.tools.batch;
+
+/**
+ * @author markebbert
+ *
+ */
+public class BatchException extends Exception {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = 4410826512790358153L;
+
+	public BatchException(String message){
+		super(message);
+	}
+}
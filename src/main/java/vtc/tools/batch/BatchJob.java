@@ -0,0 +1,119 @@
+/**
+ *
+ */
+package vtc.tools.batch;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import vtc.datastructures.PoolPlanner;
+
+/**
+ * @author markebbert
+ *
+ *	A job from a batch manifest: its command line, the input files it
+ *	reads, its estimated memory use and, once run, its status and timing.
+ */
+public class BatchJob {
+
+	private String name;
+	private ArrayList<String> args;
+	private TreeSet<String> inputs;
+	private long estimatedBytes;
+
+	private int status = -1;
+	private long startMillis, endMillis;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * @param name
+	 * @param args the job's command line, starting with the tool
+	 */
+	public BatchJob(String name, List<String> args){
+		this.name = name;
+		this.args = new ArrayList<String>(args);
+		this.inputs = findInputs(args);
+		this.estimatedBytes = 0;
+		for(String input : inputs){
+			estimatedBytes += PoolPlanner.estimateHeapBytes(new File(input));
+		}
+	}
+
+	/**
+	 * The files given with -i or --input, without their IDs
+	 *
+	 * @param args
+	 * @return
+	 */
+	private static TreeSet<String> findInputs(List<String> args){
+		TreeSet<String> inputs = new TreeSet<String>();
+		boolean input = false;
+		for(String arg : args){
+			if(arg.startsWith("-") && arg.length() > 1 && !Character.isDigit(arg.charAt(1))){
+				input = arg.equals("-i") || arg.equals("--input");
+			}
+			else if(input){
+				String path = arg.indexOf('=') < 0 ? arg : arg.substring(arg.indexOf('=') + 1);
+				inputs.add(new File(path).getAbsolutePath());
+			}
+		}
+		return inputs;
+	}
+
+
+
+	/****************************************************
+	 * Getters/Setters
+	 */
+
+	public String getName(){
+		return name;
+	}
+
+	public ArrayList<String> getArgs(){
+		return args;
+	}
+
+	public TreeSet<String> getInputs(){
+		return inputs;
+	}
+
+	public long getEstimatedBytes(){
+		return estimatedBytes;
+	}
+
+	public int getStatus(){
+		return status;
+	}
+
+	public long getStartMillis(){
+		return startMillis;
+	}
+
+	public long getEndMillis(){
+		return endMillis;
+	}
+
+	public void setRun(int status, long startMillis, long endMillis){
+		this.status = status;
+		this.startMillis = startMillis;
+		this.endMillis = endMillis;
+	}
+
+	public String getCommandLine(){
+		StringBuilder sb = new StringBuilder();
+		for(String arg : args){
+			if(sb.length() > 0){
+				sb.append(" ");
+			}
+			sb.append(arg);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,297 @@
+/**
+ *
+ */
+package vtc.tools.batch;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.log4j.Logger;
+
+import vtc.KnownTools;
+import vtc.tools.daemon.JobRunner;
+import vtc.tools.daemon.PoolCache;
+
+/**
+ * @author markebbert
+ *
+ *	Runs the jobs in a batch manifest in this JVM. Jobs that read the same
+ *	inputs are run one after another and share the VariantPools in a
+ *	PoolCache, so each input is read once while it stays in the cache. Up
+ *	to 'threads' jobs run at once, as long as the estimated memory of the
+ *	running jobs fits the budget (a job larger than the budget runs alone).
+ *	Each job's output and errors are written to '<job>.log' in the output
+ *	directory, along with a summary of every job's status and timing.
+ *
+ *	The manifest has one job per line, written as it would be on the
+ *	command line (e.g., 'SO -i a.vcf b.vcf -s u[v1:v2] -o u.vcf'). Blank
+ *	lines and lines starting with '#' are skipped.
+ */
+public class BatchRunner {
+
+	private static Logger logger = Logger.getLogger(BatchRunner.class);
+
+	public static final String SUMMARY_FILE = "batch_summary.txt";
+
+	private ArrayList<BatchJob> jobs;
+	private File outDir;
+	private int threads;
+	private long memoryBudget;
+	private PoolCache cache;
+	private JobRunner runner;
+
+	private int running = 0;
+	private long memoryInUse = 0;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * @param manifest
+	 * @param outDir where each job's log and the summary are written
+	 * @param threads the number of jobs run at once
+	 * @param memoryBudget the estimated bytes the running jobs may use
+	 * @param cacheBytes the estimated bytes of VariantPools to cache
+	 * @throws IOException
+	 * @throws BatchException
+	 */
+	public BatchRunner(File manifest, File outDir, int threads, long memoryBudget,
+			long cacheBytes) throws IOException, BatchException{
+		this.jobs = readManifest(manifest);
+		this.outDir = outDir;
+		this.threads = threads;
+		this.memoryBudget = memoryBudget;
+		this.cache = new PoolCache(cacheBytes);
+		this.runner = new JobRunner(cache);
+	}
+
+	/**
+	 * Read the jobs in 'manifest'
+	 *
+	 * @param manifest
+	 * @return the jobs, in manifest order
+	 * @throws IOException
+	 * @throws BatchException if a line does not start with a tool
+	 */
+	public static ArrayList<BatchJob> readManifest(File manifest) throws IOException, BatchException{
+		ArrayList<BatchJob> jobs = new ArrayList<BatchJob>();
+		BufferedReader reader = new BufferedReader(new FileReader(manifest));
+		try{
+			String line;
+			int lineNum = 0;
+			while((line = reader.readLine()) != null){
+				lineNum++;
+				line = line.trim();
+				if(line.isEmpty() || line.startsWith("#")){
+					continue;
+				}
+				String[] args = line.split("\\s+");
+				if(!isTool(args[0])){
+					throw new BatchException("Line " + lineNum + " of " + manifest.getPath() +
+							" does not start with a tool: " + args[0]);
+				}
+				jobs.add(new BatchJob("job" + (jobs.size() + 1), Arrays.asList(args)));
+			}
+		} finally {
+			reader.close();
+		}
+		return jobs;
+	}
+
+	private static boolean isTool(String name){
+		for(KnownTools t : KnownTools.values()){
+			if(t.permittedCommandsContain(name)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	public ArrayList<BatchJob> getJobs(){
+		return jobs;
+	}
+
+	public PoolCache getCache(){
+		return cache;
+	}
+
+	/**
+	 * @return the number of jobs that did not finish with status 0
+	 */
+	public int getFailedJobs(){
+		int failed = 0;
+		for(BatchJob job : jobs){
+			if(job.getStatus() != 0){
+				failed++;
+			}
+		}
+		return failed;
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Run every job and write the summary
+	 *
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public void run() throws IOException, InterruptedException{
+		outDir.mkdirs();
+
+		/* Group jobs with the same inputs, so they find them in the cache */
+		LinkedList<BatchJob> pending = new LinkedList<BatchJob>(jobs);
+		Collections.sort(pending, new Comparator<BatchJob>(){
+			@Override
+			public int compare(BatchJob j1, BatchJob j2) {
+				return j1.getInputs().toString().compareTo(j2.getInputs().toString());
+			}
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		long start = System.currentTimeMillis();
+		try{
+			while(!pending.isEmpty()){
+				final BatchJob job = nextJob(pending);
+				executor.execute(new Runnable(){
+					@Override
+					public void run() {
+						runJob(job);
+					}
+				});
+			}
+			synchronized(this){
+				while(running > 0){
+					wait();
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+		writeSummary(start, System.currentTimeMillis());
+	}
+
+	/**
+	 * Wait for a free thread, then take the first pending job that fits in
+	 * the memory left
+	 *
+	 * @param pending
+	 * @return
+	 * @throws InterruptedException
+	 */
+	private synchronized BatchJob nextJob(LinkedList<BatchJob> pending) throws InterruptedException{
+		while(true){
+			if(running < threads){
+				Iterator<BatchJob> it = pending.iterator();
+				while(it.hasNext()){
+					BatchJob job = it.next();
+					if(running == 0 || memoryInUse + job.getEstimatedBytes() <= memoryBudget){
+						it.remove();
+						running++;
+						memoryInUse += job.getEstimatedBytes();
+						return job;
+					}
+				}
+			}
+			wait();
+		}
+	}
+
+	private void runJob(BatchJob job){
+		long start = System.currentTimeMillis();
+		int status;
+		OutputStream log = null;
+		try{
+			log = new BufferedOutputStream(new FileOutputStream(new File(outDir, job.getName() + ".log")));
+			status = runner.run(job.getArgs(), log, log);
+		} catch (IOException e){
+			logger.error("Could not write the log for " + job.getName() + ": " + e.getMessage());
+			status = 1;
+		} finally {
+			if(log != null){
+				try {
+					log.close();
+				} catch (IOException e) {
+					logger.warn("Could not close the log for " + job.getName() + ": " + e.getMessage());
+				}
+			}
+		}
+		job.setRun(status, start, System.currentTimeMillis());
+		logger.info(job.getName() + " finished with status " + status);
+
+		synchronized(this){
+			running--;
+			memoryInUse -= job.getEstimatedBytes();
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Write each job's status and timing, in manifest order, and print the
+	 * totals
+	 *
+	 * @param start
+	 * @param end
+	 * @throws IOException
+	 */
+	private void writeSummary(long start, long end) throws IOException{
+		TreeSet<String> inputs = new TreeSet<String>();
+		int inputRefs = 0;
+		for(BatchJob job : jobs){
+			inputs.addAll(job.getInputs());
+			inputRefs += job.getInputs().size();
+		}
+
+		String totals = "Jobs: " + jobs.size() + " (" + getFailedJobs() + " failed)\n" +
+				"Time: " + seconds(end - start) + " seconds\n" +
+				"Inputs: " + inputs.size() + " files used " + inputRefs + " times, read " +
+				cache.getMisses() + " times";
+
+		PrintWriter writer = new PrintWriter(new File(outDir, SUMMARY_FILE));
+		try{
+			writer.println("# " + totals.replace("\n", "\n# "));
+			writer.println("Job\tStatus\tStart (s)\tTime (s)\tEstimated memory (MB)\tCommand");
+			for(BatchJob job : jobs){
+				writer.println(job.getName() + "\t" + job.getStatus() + "\t" +
+						seconds(job.getStartMillis() - start) + "\t" +
+						seconds(job.getEndMillis() - job.getStartMillis()) + "\t" +
+						job.getEstimatedBytes() / (1024 * 1024) + "\t" + job.getCommandLine());
+			}
+		} finally {
+			writer.close();
+		}
+		System.out.println("\n" + totals);
+		System.out.println("Summary written to " + new File(outDir, SUMMARY_FILE).getPath());
+	}
+
+	private static String seconds(long millis){
+		return String.format("%.2f", millis / 1000.0);
+	}
+}
@@ -0,0 +1,156 @@
+/**
+ *
+ */
+package vtc.tools.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+
+/**
+ * @author markebbert
+ *
+ *	Sends jobs to a VTCDaemon on this machine and copies their output back
+ *	as it is written. Each request starts with the token from the daemon's
+ *	token file, so only users who can read the file can run jobs.
+ */
+public class DaemonClient {
+
+	private int port;
+	private File tokenFile;
+
+	/**
+	 * Connect to the daemon on 'port' with the default token file for the port
+	 * @param port
+	 */
+	public DaemonClient(int port){
+		this(port, null);
+	}
+
+	/**
+	 * @param port
+	 * @param tokenFile the daemon's token file, or null for the default token
+	 * file for the port
+	 */
+	public DaemonClient(int port, File tokenFile){
+		this.port = port;
+		this.tokenFile = tokenFile == null ? VTCDaemon.getDefaultTokenFile(port) : tokenFile;
+	}
+
+	/**
+	 * Run a job on the daemon
+	 *
+	 * @param args the job's command line, starting with the tool
+	 * @param cwd the directory relative paths in 'args' are relative to
+	 * @param out receives the job's standard output
+	 * @param err receives the job's standard error
+	 * @return the job's exit status
+	 * @throws IOException
+	 * @throws DaemonException
+	 */
+	public int submit(List<String> args, File cwd, OutputStream out, OutputStream err) throws IOException, DaemonException{
+		String token = readToken();
+		Socket socket = connect();
+		try{
+			DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			request.writeUTF(token);
+			request.writeUTF(VTCDaemon.JOB);
+			request.writeUTF(cwd.getAbsolutePath());
+			request.writeInt(args.size());
+			for(String arg : args){
+				request.writeUTF(arg);
+			}
+			request.flush();
+			return readReply(new DataInputStream(new BufferedInputStream(socket.getInputStream())), out, err);
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Ask the daemon to stop once its running jobs finish
+	 *
+	 * @throws IOException
+	 * @throws DaemonException
+	 */
+	public void shutdown() throws IOException, DaemonException{
+		String token = readToken();
+		Socket socket = connect();
+		try{
+			DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			request.writeUTF(token);
+			request.writeUTF(VTCDaemon.SHUTDOWN);
+			request.flush();
+			if(readReply(new DataInputStream(new BufferedInputStream(socket.getInputStream())), null, null) != 0){
+				throw new DaemonException("The daemon refused to shut down. Check the token file "
+						+ tokenFile.getPath() + ".");
+			}
+		} finally {
+			socket.close();
+		}
+	}
+
+	private String readToken() throws IOException, DaemonException{
+		try{
+			return VTCDaemon.readToken(tokenFile);
+		} catch (FileNotFoundException e){
+			throw new DaemonException("Could not read the daemon's token file " + tokenFile.getPath()
+					+ ". Is a VTC daemon running on port " + port + " as this user?");
+		}
+	}
+
+	private Socket connect() throws IOException, DaemonException{
+		try{
+			return new Socket(InetAddress.getByName(null), port);
+		} catch (ConnectException e){
+			throw new DaemonException("No VTC daemon is listening on port " + port + ".");
+		}
+	}
+
+	/**
+	 * Copy output frames to 'out' and 'err' until the exit status arrives
+	 *
+	 * @return the exit status
+	 */
+	private int readReply(DataInputStream in, OutputStream out, OutputStream err) throws IOException, DaemonException{
+		byte[] buffer = new byte[8192];
+		try{
+			while(true){
+				byte type = in.readByte();
+				if(type == VTCDaemon.EXIT){
+					if(out != null){
+						out.flush();
+					}
+					if(err != null){
+						err.flush();
+					}
+					return in.readInt();
+				}
+				if(type != VTCDaemon.OUT && type != VTCDaemon.ERR){
+					throw new DaemonException("Unexpected reply from the daemon.");
+				}
+				int len = in.readInt();
+				if(buffer.length < len){
+					buffer = new byte[len];
+				}
+				in.readFully(buffer, 0, len);
+				OutputStream os = type == VTCDaemon.OUT ? out : err;
+				if(os != null){
+					os.write(buffer, 0, len);
+				}
+			}
+		} catch (EOFException e){
+			throw new DaemonException("The daemon closed the connection before the job finished.");
+		}
+	}
+}
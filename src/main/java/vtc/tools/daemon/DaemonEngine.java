@@ -0,0 +1,102 @@
+/**
+ *
+ */
+package vtc.tools.daemon;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import org.apache.log4j.Logger;
+
+import vtc.Engine;
+import vtc.tools.utilitybelt.UtilityBelt;
+
+/**
+ * @author markebbert
+ *
+ */
+public class DaemonEngine implements Engine {
+
+    private static Logger         logger = Logger.getLogger(DaemonEngine.class);
+
+    private ArgumentParser        parser;
+
+    private Namespace             parsedArgs;
+
+    public DaemonEngine(String[] args) {
+        init(args);
+    }
+
+    private void init(String[] args) {
+
+        parser = ArgumentParsers.newArgumentParser("Daemon");
+        parser.description("Daemon (DM) keeps VTC running and runs the jobs sent to it with" +
+        		" Submit (SU). Input files read by one job are kept in memory for the jobs" +
+        		" that follow, so they are not read again unless they change.");
+        parser.defaultHelp(true); // Add default values to help menu
+
+        parser.addArgument("--port")
+        		.dest("PORT")
+        		.type(Integer.class)
+        		.setDefault(VTCDaemon.DEFAULT_PORT)
+        		.help("Port to listen on. Only connections from this machine are accepted.");
+
+        parser.addArgument("--token-file")
+        		.dest("TOKEN_FILE")
+        		.type(String.class)
+        		.help("File to write the token jobs must be sent with. Only your user can read it." +
+        				" Defaults to '.vtc/daemon-<port>.token' in your home directory.");
+
+        parser.addArgument("--cache-memory")
+        		.dest("CACHE_MEMORY")
+        		.type(Long.class)
+        		.setDefault(Runtime.getRuntime().maxMemory() / 2 / (1024 * 1024))
+        		.help("Approximate memory (in MB) for keeping input files. The least recently" +
+        				" used files are dropped first. Defaults to half the maximum heap.");
+
+        parser.addArgument("--jobs")
+        		.dest("JOBS")
+        		.type(Integer.class)
+        		.setDefault(Runtime.getRuntime().availableProcessors())
+        		.help("Number of jobs run at once.");
+
+        try {
+            parsedArgs = parser.parseArgs(args);
+        } catch (ArgumentParserException e) {
+            parser.handleError(e);
+            UtilityBelt.exit(1);
+        }
+    }
+
+    /**
+     * Run jobs until shut down
+     */
+    public void serve() {
+    	try {
+    		int jobs = parsedArgs.getInt("JOBS");
+    		long cacheMemory = parsedArgs.getLong("CACHE_MEMORY");
+    		if (jobs < 1 || cacheMemory < 0) {
+    			throw new ArgumentParserException("--jobs must be at least 1 and --cache-memory" +
+    					" cannot be negative.", parser);
+    		}
+
+    		String tokenFile = parsedArgs.getString("TOKEN_FILE");
+    		VTCDaemon daemon = new VTCDaemon(parsedArgs.getInt("PORT"), cacheMemory * 1024 * 1024, jobs,
+    				tokenFile == null ? null : new File(tokenFile));
+    		daemon.serve();
+
+    	} catch (ArgumentParserException e) {
+    		UtilityBelt.printErrorUsageHelpAndExit(parser, logger, e);
+    	} catch (IOException e) {
+    		UtilityBelt.printErrorUsageAndExit(parser, logger, e);
+    	} catch (Exception e) {
+    		logger.error("Caught unexpected exception, something is very wrong!");
+    		e.printStackTrace();
+    	}
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ *
+ */
+package vtc.tools.daemon;
+
+/**
+ * @author markebbert
+ *
+ */
+public class DaemonException extends Exception {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = -6127304711926853390L;
+
+	public DaemonException(String message){
+		super(message);
+	}
+}
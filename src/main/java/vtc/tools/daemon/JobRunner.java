@@ -0,0 +1,108 @@
+/**
+ *
+ */
+package vtc.tools.daemon;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import vtc.JobExitException;
+import vtc.KnownTools;
+import vtc.VTCEngine;
+import vtc.VTCSession;
+import vtc.datastructures.VariantPoolCache;
+
+/**
+ * @author markebbert
+ *
+ *	Runs VTC jobs in this JVM, each in its own VTCSession and with its own
+ *	standard output and error. Jobs read their inputs through 'cache', and
+ *	a job that fails ends with its exit status rather than exiting the JVM.
+ *	Safe to use from many threads at once.
+ */
+public class JobRunner {
+
+	private static Logger logger = Logger.getLogger(JobRunner.class);
+
+	private static ThreadOutputStream threadOut, threadErr;
+
+	private VariantPoolCache cache;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	public JobRunner(VariantPoolCache cache){
+		this.cache = cache;
+		installOutputStreams();
+	}
+
+	/**
+	 * Route System.out and System.err through streams that each job can
+	 * point at its own destination
+	 */
+	private static synchronized void installOutputStreams(){
+		if(threadOut == null){
+			threadOut = new ThreadOutputStream(System.out);
+			threadErr = new ThreadOutputStream(System.err);
+			System.setOut(new PrintStream(threadOut, true));
+			System.setErr(new PrintStream(threadErr, true));
+		}
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Run a job in its own session, sending its output to 'out' and 'err'.
+	 * Tools that run jobs themselves (i.e., Daemon, Submit and Batch) cannot
+	 * be run this way.
+	 *
+	 * @param args the job's command line, starting with the tool
+	 * @param out
+	 * @param err
+	 * @return the job's exit status
+	 */
+	public int run(List<String> args, OutputStream out, OutputStream err){
+
+		VTCSession session = new VTCSession();
+		session.setExitOnError(false);
+		session.setPoolCache(cache);
+
+		threadOut.setTarget(out);
+		threadErr.setTarget(err);
+		try{
+			if(!args.isEmpty() && runsJobs(args.get(0))){
+				System.err.println("\nERROR: " + args.get(0) + " cannot be run as a job.\n");
+				return 1;
+			}
+			logger.info("Running job: " + args);
+			VTCEngine.run(args.toArray(new String[args.size()]), session);
+			return 0;
+		} catch (JobExitException e){
+			return e.getStatus();
+		} catch (Throwable t){
+			logger.error("Job failed: " + args);
+			t.printStackTrace();
+			return 1;
+		} finally {
+			System.out.flush();
+			System.err.flush();
+			threadOut.clearTarget();
+			threadErr.clearTarget();
+		}
+	}
+
+	private static boolean runsJobs(String tool){
+		return KnownTools.DAEMON.permittedCommandsContain(tool)
+				|| KnownTools.SUBMIT.permittedCommandsContain(tool)
+				|| KnownTools.BATCH.permittedCommandsContain(tool);
+	}
+}
@@ -0,0 +1,214 @@
+/**
+ *
+ */
+package vtc.tools.daemon;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.log4j.Logger;
+
+import vtc.VTCSession;
+import vtc.datastructures.SupportedFileType;
+import vtc.datastructures.VariantPoolCache;
+import vtc.datastructures.VariantPoolHeavy;
+
+/**
+ * @author markebbert
+ *
+ *	Keeps the VariantPoolHeavy objects read by earlier jobs, keyed by the
+ *	file's path, modification time and length, so a changed file is read
+ *	again. Each job gets its own VariantPoolHeavy sharing the cached
+ *	variants. The least recently used pools are dropped once the estimated
+ *	size of the cached pools exceeds the budget. A file requested by several
+ *	jobs at once is read once.
+ *
+ *	Only whole files read into memory are cached. Jobs restricted to regions
+ *	or with a memory budget or compressed records read the file themselves.
+ */
+public class PoolCache implements VariantPoolCache {
+
+	private static Logger logger = Logger.getLogger(PoolCache.class);
+
+	private long budget;
+	private long cachedBytes = 0;
+	private LinkedHashMap<String, CachedPool> pools =
+			new LinkedHashMap<String, CachedPool>(16, 0.75f, true);
+	private HashMap<String, FutureTask<VariantPoolHeavy>> loading =
+			new HashMap<String, FutureTask<VariantPoolHeavy>>();
+	private int hits = 0, misses = 0;
+
+	/* Cached pools are read in their own session, so their IDs and
+	 * defaults don't come from the job that first asked for them
+	 */
+	private VTCSession cacheSession = new VTCSession();
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * @param budget the estimated number of bytes to cache
+	 */
+	public PoolCache(long budget){
+		this.budget = budget;
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	public synchronized int getHits(){
+		return hits;
+	}
+
+	public synchronized int getMisses(){
+		return misses;
+	}
+
+	public synchronized int size(){
+		return pools.size();
+	}
+
+	public synchronized long getCachedBytes(){
+		return cachedBytes;
+	}
+
+	@Override
+	public VariantPoolHeavy getVariantPool(File file, String poolID, final boolean addChr) throws IOException {
+
+		VTCSession session = VTCSession.current();
+		if(session.getDefaultRegions() != null || session.getDefaultMemoryBudget() > 0
+				|| session.getDefaultCompressedRecords() || session.getDefaultIndexedPools()
+				|| !file.isFile()){
+			return null;
+		}
+
+		final File canonical = file.getCanonicalFile();
+		String key = canonical.getPath() + "\t" + canonical.lastModified() + "\t"
+				+ canonical.length() + "\t" + addChr;
+
+		VariantPoolHeavy cached = null;
+		FutureTask<VariantPoolHeavy> task = null;
+		boolean load = false;
+		synchronized(this){
+			CachedPool cp = pools.get(key);
+			if(cp != null){
+				hits++;
+				cached = cp.pool;
+			}
+			else{
+				task = loading.get(key);
+				if(task == null){
+					misses++;
+					load = true;
+					task = new FutureTask<VariantPoolHeavy>(new Callable<VariantPoolHeavy>(){
+						@Override
+						public VariantPoolHeavy call() throws IOException {
+							VTCSession previous = VTCSession.enter(cacheSession);
+							try{
+								return new VariantPoolHeavy(canonical,
+										cacheSession.generatePoolID(SupportedFileType.VCF), addChr);
+							} finally {
+								VTCSession.exit(previous);
+							}
+						}
+					});
+					loading.put(key, task);
+				}
+				else{
+					/* Another job is reading it */
+					hits++;
+				}
+			}
+		}
+
+		if(cached == null){
+			if(load){
+				task.run();
+			}
+			try {
+				cached = task.get();
+			} catch (InterruptedException e) {
+				throw new IOException("Interrupted while reading " + file.getPath(), e);
+			} catch (ExecutionException e) {
+				if(load){
+					synchronized(this){
+						loading.remove(key);
+					}
+				}
+				if(e.getCause() instanceof IOException){
+					throw (IOException) e.getCause();
+				}
+				if(e.getCause() instanceof RuntimeException){
+					throw (RuntimeException) e.getCause();
+				}
+				if(e.getCause() instanceof Error){
+					throw (Error) e.getCause();
+				}
+				throw new IOException(e.getCause());
+			}
+			if(load){
+				add(key, canonical, cached);
+			}
+		}
+		return new VariantPoolHeavy(cached, poolID);
+	}
+
+	/**
+	 * Cache 'vp', dropping older versions of the same file and then the
+	 * least recently used pools until the cache fits the budget
+	 *
+	 * @param key
+	 * @param file
+	 * @param vp
+	 */
+	private synchronized void add(String key, File file, VariantPoolHeavy vp){
+		loading.remove(key);
+
+		Iterator<Map.Entry<String, CachedPool>> it = pools.entrySet().iterator();
+		while(it.hasNext()){
+			Map.Entry<String, CachedPool> e = it.next();
+			if(e.getKey().startsWith(file.getPath() + "\t")){
+				cachedBytes -= e.getValue().bytes;
+				it.remove();
+			}
+		}
+
+		long bytes = vp.getEstimatedBytes();
+		if(bytes > budget){
+			logger.info(file.getPath() + " is larger than the cache. It will not be cached.");
+			return;
+		}
+		pools.put(key, new CachedPool(vp, bytes));
+		cachedBytes += bytes;
+
+		it = pools.entrySet().iterator();
+		while(cachedBytes > budget && it.hasNext()){
+			Map.Entry<String, CachedPool> e = it.next();
+			logger.info("Dropping " + e.getValue().pool.getFile().getPath() + " from the cache.");
+			cachedBytes -= e.getValue().bytes;
+			it.remove();
+		}
+	}
+
+	private static class CachedPool {
+		private VariantPoolHeavy pool;
+		private long bytes;
+
+		private CachedPool(VariantPoolHeavy pool, long bytes){
+			this.pool = pool;
+			this.bytes = bytes;
+		}
+	}
+}
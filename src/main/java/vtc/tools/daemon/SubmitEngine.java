@@ -0,0 +1,112 @@
+/**
+ *
+ */
+package vtc.tools.daemon;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import org.apache.log4j.Logger;
+
+import vtc.Engine;
+import vtc.KnownTools;
+import vtc.tools.utilitybelt.UtilityBelt;
+
+/**
+ * @author markebbert
+ *
+ */
+public class SubmitEngine implements Engine {
+
+    private static Logger         logger = Logger.getLogger(SubmitEngine.class);
+
+    private ArgumentParser        parser;
+
+    private Namespace             parsedArgs;
+    private List<String>          jobArgs;
+
+    public SubmitEngine(String[] args) {
+        init(args);
+    }
+
+    private void init(String[] args) {
+
+        parser = ArgumentParsers.newArgumentParser("Submit");
+        parser.description("Submit (SU) runs a job on a running Daemon (DM) and prints the" +
+        		" job's output. The job is given just as it would be on the command line.");
+        parser.usage("java -jar vtc.jar Submit [options] [ToolName [tool options]]");
+        parser.defaultHelp(true); // Add default values to help menu
+
+        parser.addArgument("--port")
+        		.dest("PORT")
+        		.type(Integer.class)
+        		.setDefault(VTCDaemon.DEFAULT_PORT)
+        		.help("Port the daemon listens on.");
+
+        parser.addArgument("--token-file")
+        		.dest("TOKEN_FILE")
+        		.type(String.class)
+        		.help("The daemon's token file, as given to Daemon (DM)." +
+        				" Defaults to '.vtc/daemon-<port>.token' in your home directory.");
+
+        parser.addArgument("--shutdown")
+        		.dest("SHUTDOWN")
+        		.action(Arguments.storeTrue())
+        		.help("Stop the daemon once its running jobs finish.");
+
+        try {
+            /* Everything from the tool name on is the job */
+            int toolIndex = args.length;
+            for (int i = 0; i < args.length && toolIndex == args.length; i++) {
+            	for (KnownTools t : KnownTools.values()) {
+            		if (t.permittedCommandsContain(args[i])) {
+            			toolIndex = i;
+            		}
+            	}
+            }
+            parsedArgs = parser.parseArgs(Arrays.copyOfRange(args, 0, toolIndex));
+            jobArgs = new ArrayList<String>(Arrays.asList(args).subList(toolIndex, args.length));
+            if (jobArgs.isEmpty() && !parsedArgs.getBoolean("SHUTDOWN")) {
+            	throw new ArgumentParserException("Specify the job to run, starting with the" +
+            			" tool's name.", parser);
+            }
+        } catch (ArgumentParserException e) {
+            parser.handleError(e);
+            UtilityBelt.exit(1);
+        }
+    }
+
+    /**
+     * Send the job to the daemon and exit with the job's status
+     */
+    public void submit() {
+    	try {
+    		String tokenFile = parsedArgs.getString("TOKEN_FILE");
+    		DaemonClient client = new DaemonClient(parsedArgs.getInt("PORT"),
+    				tokenFile == null ? null : new File(tokenFile));
+    		if (!jobArgs.isEmpty()) {
+    			int status = client.submit(jobArgs, new File("."), System.out, System.err);
+    			if (status != 0) {
+    				UtilityBelt.exit(status);
+    			}
+    		}
+    		if (parsedArgs.getBoolean("SHUTDOWN")) {
+    			client.shutdown();
+    		}
+
+    	} catch (DaemonException e) {
+    		UtilityBelt.printErrorUsageAndExit(parser, logger, e);
+    	} catch (IOException e) {
+    		UtilityBelt.printErrorUsageAndExit(parser, logger, e);
+    	}
+    }
+}
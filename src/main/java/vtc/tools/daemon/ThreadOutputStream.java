@@ -0,0 +1,60 @@
+/**
+ *
+ */
+package vtc.tools.daemon;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * @author markebbert
+ *
+ *	An OutputStream that writes to the stream set by the current thread, or
+ *	the default stream if it set none. Threads inherit the stream of the
+ *	thread that created them. Installed as System.out and System.err, this
+ *	sends each job's output to its own client.
+ */
+public class ThreadOutputStream extends OutputStream {
+
+	private OutputStream defaultStream;
+	private InheritableThreadLocal<OutputStream> target = new InheritableThreadLocal<OutputStream>();
+
+	public ThreadOutputStream(OutputStream defaultStream){
+		this.defaultStream = defaultStream;
+	}
+
+	/**
+	 * Send this thread's output (and that of threads it creates) to 'os'
+	 * @param os
+	 */
+	public void setTarget(OutputStream os){
+		target.set(os);
+	}
+
+	/**
+	 * Send this thread's output to the default stream again
+	 */
+	public void clearTarget(){
+		target.remove();
+	}
+
+	private OutputStream current(){
+		OutputStream os = target.get();
+		return os == null ? defaultStream : os;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		current().write(b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		current().write(b, off, len);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		current().flush();
+	}
+}
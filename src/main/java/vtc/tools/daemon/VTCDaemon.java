@@ -0,0 +1,428 @@
+/**
+ *
+ */
+package vtc.tools.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+
+/**
+ * @author markebbert
+ *
+ *	A long-running VTC process that runs jobs sent by DaemonClient over a
+ *	socket on the loopback interface. Jobs use the same arguments as the
+ *	command line and run at most 'jobs' at a time, each in its own
+ *	VTCSession. The VariantPools they read are kept in a PoolCache, so later
+ *	jobs on the same files skip reading them. Each job's standard output and
+ *	error are sent back to its client as they are written, followed by the
+ *	job's exit status.
+ *
+ *	Any local user can connect to the port, so the daemon writes a random
+ *	token to a file only its own user can read, and only runs requests that
+ *	start with that token. Requests without it are refused.
+ *
+ *	A request is the token, the request type (JOB or SHUTDOWN), the client's
+ *	working directory and the job's arguments. The reply is a series of frames: a
+ *	frame type (OUT, ERR or EXIT) followed by the length and bytes of the
+ *	output, or the exit status.
+ */
+public class VTCDaemon {
+
+	private static Logger logger = Logger.getLogger(VTCDaemon.class);
+
+	public static final int DEFAULT_PORT = 7340;
+
+	public static final String JOB = "JOB";
+	public static final String SHUTDOWN = "SHUTDOWN";
+
+	public static final byte EXIT = 0;
+	public static final byte OUT = 1;
+	public static final byte ERR = 2;
+
+	private static final String TOKEN_CHARSET = "US-ASCII";
+
+	private ServerSocket server;
+	private File tokenFile;
+	private String token;
+	private ExecutorService executor;
+	private PoolCache cache;
+	private JobRunner runner;
+	private volatile boolean running = true;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * Listen for jobs on 'port' (0 for any free port), with the token in the
+	 * default token file for the port
+	 *
+	 * @param port
+	 * @param cacheBytes the estimated number of bytes of VariantPools to cache
+	 * @param jobs the number of jobs run at once
+	 * @throws IOException
+	 */
+	public VTCDaemon(int port, long cacheBytes, int jobs) throws IOException{
+		this(port, cacheBytes, jobs, null);
+	}
+
+	/**
+	 * Listen for jobs on 'port' (0 for any free port)
+	 *
+	 * @param port
+	 * @param cacheBytes the estimated number of bytes of VariantPools to cache
+	 * @param jobs the number of jobs run at once
+	 * @param tokenFile where to write the token clients must send, or null
+	 * for the default token file for the port
+	 * @throws IOException if the socket or the token file can't be created
+	 */
+	public VTCDaemon(int port, long cacheBytes, int jobs, File tokenFile) throws IOException{
+		this.server = new ServerSocket(port, 50, InetAddress.getByName(null));
+		this.tokenFile = tokenFile == null ? getDefaultTokenFile(getPort()) : tokenFile;
+		this.token = generateToken();
+		try{
+			writeToken(this.tokenFile, token);
+		} catch (IOException e){
+			server.close();
+			throw e;
+		}
+		this.executor = Executors.newFixedThreadPool(jobs);
+		this.cache = new PoolCache(cacheBytes);
+		this.runner = new JobRunner(cache);
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	public int getPort(){
+		return server.getLocalPort();
+	}
+
+	public PoolCache getCache(){
+		return cache;
+	}
+
+	public File getTokenFile(){
+		return tokenFile;
+	}
+
+	/**
+	 * The token file used for a daemon on 'port' unless another is given:
+	 * '.vtc/daemon-<port>.token' in the user's home directory
+	 *
+	 * @param port
+	 * @return
+	 */
+	public static File getDefaultTokenFile(int port){
+		return new File(new File(System.getProperty("user.home"), ".vtc"), "daemon-" + port + ".token");
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Accept jobs until the daemon is shut down, then wait for the running
+	 * jobs to finish
+	 *
+	 * @throws IOException
+	 */
+	public void serve() throws IOException{
+		logger.info("Listening for jobs on port " + getPort());
+		try{
+			while(running){
+				final Socket socket;
+				try{
+					socket = server.accept();
+				} catch (SocketException e){
+					if(!running){
+						break;
+					}
+					throw e;
+				}
+				executor.execute(new Runnable(){
+					@Override
+					public void run() {
+						handle(socket);
+					}
+				});
+			}
+		} finally {
+			shutdown();
+			executor.shutdown();
+			try {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Stop accepting jobs
+	 */
+	public void shutdown(){
+		running = false;
+		try {
+			server.close();
+		} catch (IOException e) {
+			logger.warn("Could not close the daemon's socket: " + e.getMessage());
+		}
+		if(tokenFile.exists() && !tokenFile.delete()){
+			logger.warn("Could not delete the token file " + tokenFile.getPath());
+		}
+	}
+
+	/**
+	 * Read the token from a daemon's token file
+	 *
+	 * @param tokenFile
+	 * @return
+	 * @throws IOException
+	 */
+	public static String readToken(File tokenFile) throws IOException{
+		BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(tokenFile), TOKEN_CHARSET));
+		try{
+			String token = reader.readLine();
+			if(token == null){
+				throw new IOException("The token file " + tokenFile.getPath() + " is empty.");
+			}
+			return token.trim();
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Read a request from 'socket', run it and send back the results
+	 *
+	 * @param socket
+	 */
+	private void handle(Socket socket){
+		try{
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+			/* Refuse anyone who couldn't read the token file */
+			if(!MessageDigest.isEqual(token.getBytes(TOKEN_CHARSET), in.readUTF().getBytes(TOKEN_CHARSET))){
+				logger.warn("Refused a request without the daemon's token");
+				new FrameOutputStream(out, ERR).write(("Request refused: it did not have the token in "
+						+ tokenFile.getPath() + "\n").getBytes(TOKEN_CHARSET));
+				out.writeByte(EXIT);
+				out.writeInt(1);
+				out.flush();
+				return;
+			}
+
+			String request = in.readUTF();
+			int status;
+			if(SHUTDOWN.equals(request)){
+				logger.info("Shutting down");
+				status = 0;
+				shutdown();
+			}
+			else if(JOB.equals(request)){
+				File cwd = new File(in.readUTF());
+				int n = in.readInt();
+				ArrayList<String> args = new ArrayList<String>(n);
+				for(int i = 0; i < n; i++){
+					args.add(in.readUTF());
+				}
+				status = runner.run(resolvePaths(args, cwd),
+						new FrameOutputStream(out, OUT), new FrameOutputStream(out, ERR));
+			}
+			else{
+				throw new IOException("Unknown request: " + request);
+			}
+
+			synchronized(out){
+				out.writeByte(EXIT);
+				out.writeInt(status);
+				out.flush();
+			}
+		} catch (IOException e){
+			logger.error("Could not complete a request: " + e.getMessage());
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				logger.warn("Could not close connection: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * A random token that can't be guessed, in hex
+	 */
+	private static String generateToken(){
+		byte[] bytes = new byte[32];
+		new SecureRandom().nextBytes(bytes);
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for(byte b : bytes){
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Write 'token' to a new 'tokenFile' that only its owner can read or
+	 * write. The file is restricted before the token is written.
+	 *
+	 * @param tokenFile
+	 * @param token
+	 * @throws IOException if the file can't be created or restricted
+	 */
+	private static void writeToken(File tokenFile, String token) throws IOException{
+		File dir = tokenFile.getAbsoluteFile().getParentFile();
+		if(!dir.exists()){
+			if(!dir.mkdirs() || !restrictToOwner(dir) || !dir.setExecutable(true, true)){
+				throw new IOException("Could not create the directory " + dir.getPath()
+						+ " for the daemon's token file.");
+			}
+		}
+
+		/* Start from a new file so no one else can have it open already */
+		if(tokenFile.exists() && !tokenFile.delete()){
+			throw new IOException("Could not replace the token file " + tokenFile.getPath());
+		}
+		if(!tokenFile.createNewFile() || !restrictToOwner(tokenFile)){
+			tokenFile.delete();
+			throw new IOException("Could not create the token file " + tokenFile.getPath()
+					+ " readable by its owner only.");
+		}
+		Writer writer = new OutputStreamWriter(new FileOutputStream(tokenFile), TOKEN_CHARSET);
+		try{
+			writer.write(token);
+			writer.write('\n');
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Let only the owner of 'file' read and write it
+	 *
+	 * @param file
+	 * @return false if the permissions could not be set
+	 */
+	private static boolean restrictToOwner(File file){
+		return file.setReadable(false, false) && file.setWritable(false, false)
+				&& file.setExecutable(false, false)
+				&& file.setReadable(true, true) && file.setWritable(true, true);
+	}
+
+	/**
+	 * Jobs run in the daemon's working directory, so give existing files
+	 * (or the path in 'id=path') and output paths relative to the client's
+	 * working directory absolute paths
+	 *
+	 * @param args
+	 * @param cwd the client's working directory
+	 * @return
+	 */
+	private static List<String> resolvePaths(List<String> args, File cwd){
+		ArrayList<String> resolved = new ArrayList<String>(args.size());
+		String option = null;
+		for(String arg : args){
+			if(arg.startsWith("-") && arg.length() > 1 && !Character.isDigit(arg.charAt(1))){
+				option = arg;
+				resolved.add(arg);
+				continue;
+			}
+			int eq = arg.indexOf('=');
+			if(isPathOption(option)){
+				arg = resolve(arg, cwd);
+				option = null;
+			}
+			else if(new File(cwd, arg).exists()){
+				arg = resolve(arg, cwd);
+			}
+			else if(eq > 0 && new File(cwd, arg.substring(eq + 1)).exists()){
+				arg = arg.substring(0, eq + 1) + resolve(arg.substring(eq + 1), cwd);
+			}
+			resolved.add(arg);
+		}
+		return resolved;
+	}
+
+	/**
+	 * Options whose value is a path that need not exist yet
+	 */
+	private static boolean isPathOption(String option){
+		return "-o".equals(option) || "--out".equals(option)
+				|| "-T".equals(option) || "--tmp-dir".equals(option)
+				|| "-C".equals(option) || "--catalog".equals(option)
+				|| "--shard-results".equals(option);
+	}
+
+	private static String resolve(String path, File cwd){
+		File file = new File(path);
+		return file.isAbsolute() ? path : new File(cwd, path).getPath();
+	}
+
+	/**
+	 * Sends everything written to it to the client as frames of one type
+	 */
+	private static class FrameOutputStream extends OutputStream {
+		private DataOutputStream out;
+		private byte type;
+
+		private FrameOutputStream(DataOutputStream out, byte type){
+			this.out = out;
+			this.type = type;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[]{(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			synchronized(out){
+				out.writeByte(type);
+				out.writeInt(len);
+				out.write(b, off, len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			synchronized(out){
+				out.flush();
+			}
+		}
+	}
+}
@@ -0,0 +1,60 @@
+/**
+ *
+ */
+package vtc.tools.query;
+
+import java.util.Arrays;
+
+/**
+ * @author markebbert
+ *
+ *	The latencies of the most recent queries, for reporting percentiles.
+ *	Safe for many threads to use at once.
+ */
+public class LatencyStats {
+
+	private long[] nanos;
+	private int next = 0;
+	private long count = 0;
+
+	/**
+	 * @param window the number of most recent latencies kept
+	 */
+	public LatencyStats(int window){
+		this.nanos = new long[window];
+	}
+
+	public synchronized void record(long latencyNanos){
+		nanos[next] = latencyNanos;
+		next = (next + 1) % nanos.length;
+		count++;
+	}
+
+	/**
+	 * @return the number of latencies recorded, including those no longer
+	 * kept
+	 */
+	public synchronized long getCount(){
+		return count;
+	}
+
+	/**
+	 * The latency that 'percentile' percent of the kept latencies are at
+	 * or below
+	 *
+	 * @param percentile e.g., 99
+	 * @return the latency in milliseconds, or 0 if none were recorded
+	 */
+	public double getPercentileMillis(double percentile){
+		long[] sorted;
+		synchronized(this){
+			sorted = Arrays.copyOf(nanos, (int) Math.min(count, nanos.length));
+		}
+		if(sorted.length == 0){
+			return 0;
+		}
+		Arrays.sort(sorted);
+		int rank = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(rank, sorted.length - 1))] / 1e6;
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ *
+ */
+package vtc.tools.query;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.TreeMap;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import org.apache.log4j.Logger;
+
+import vtc.Engine;
+import vtc.datastructures.InvalidInputFileException;
+import vtc.datastructures.VariantPoolHeavy;
+import vtc.tools.setoperator.operation.InvalidOperationException;
+import vtc.tools.utilitybelt.UtilityBelt;
+
+/**
+ * @author markebbert
+ *
+ */
+public class QueryEngine implements Engine {
+
+    private static Logger         logger = Logger.getLogger(QueryEngine.class);
+
+    private ArgumentParser        parser;
+
+    private Namespace             parsedArgs;
+
+    public QueryEngine(String[] args) {
+        init(args);
+    }
+
+    private void init(String[] args) {
+
+        parser = ArgumentParsers.newArgumentParser("RegionQuery");
+        parser.description("Region Query (RQ) keeps VCFs in memory and answers queries for" +
+        		" the variants in a region, or a single variant, over HTTP on this machine." +
+        		" Replies are JSON. Use GET /region?pool=ID&region=chr:start-end," +
+        		" /variant?pool=ID&key=chr:pos:ref (add '&genotypes=true' for each sample's" +
+        		" genotype), /pools, and /stats for the number of queries and their" +
+        		" latency percentiles in milliseconds.");
+        parser.defaultHelp(true); // Add default values to help menu
+
+        parser.addArgument("-i", "--input")
+                .nargs("+")
+                .dest("VCF")
+                .required(true)
+                .type(String.class)
+                .help("Specify a VCF input file. Multiple files may be " +
+                		"specified at once. An ID may be provided for the input file " +
+                		"as follows: '--input fId=input.vcf fId2=input2.vcf', where " +
+                		"'fId' and 'fId2' are the new IDs. If IDs " +
+                		"are excluded, IDs will be assigned as 'v1', " +
+                		"'v2', etc.");
+
+        parser.addArgument("--port")
+        		.dest("PORT")
+        		.type(Integer.class)
+        		.setDefault(QueryServer.DEFAULT_PORT)
+        		.help("Port to listen on. Only connections from this machine are accepted.");
+
+        parser.addArgument("--threads")
+        		.dest("THREADS")
+        		.type(Integer.class)
+        		.setDefault(Runtime.getRuntime().availableProcessors())
+        		.help("Number of queries answered at once.");
+
+        try {
+            parsedArgs = parser.parseArgs(args);
+        } catch (ArgumentParserException e) {
+            parser.handleError(e);
+            UtilityBelt.exit(1);
+        }
+    }
+
+    /**
+     * Load the inputs and answer queries until the JVM is stopped
+     */
+    public void serve() {
+    	try {
+    		int threads = parsedArgs.getInt("THREADS");
+    		if (threads < 1) {
+    			throw new ArgumentParserException("--threads must be at least 1.", parser);
+    		}
+
+    		List<String> vcfArgs = parsedArgs.getList("VCF");
+    		TreeMap<String, VariantPoolHeavy> pools = UtilityBelt.createHeavyVariantPools(vcfArgs, false);
+    		final QueryServer server = new QueryServer(parsedArgs.getInt("PORT"), pools, threads);
+    		Runtime.getRuntime().addShutdownHook(new Thread(){
+    			@Override
+    			public void run() {
+    				LatencyStats latency = server.getLatency();
+    				logger.info("Answered " + latency.getCount() + " queries. p99 latency: " +
+    						latency.getPercentileMillis(99) + " ms");
+    			}
+    		});
+    		server.start();
+
+    	} catch (ArgumentParserException e) {
+    		UtilityBelt.printErrorUsageHelpAndExit(parser, logger, e);
+    	} catch (InvalidInputFileException e) {
+    		UtilityBelt.printErrorUsageAndExit(parser, logger, e);
+    	} catch (InvalidOperationException e) {
+    		UtilityBelt.printErrorUsageAndExit(parser, logger, e);
+    	} catch (IOException e) {
+    		UtilityBelt.printErrorUsageAndExit(parser, logger, e);
+    	}
+    }
+}
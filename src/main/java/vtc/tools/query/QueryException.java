@@ -0,0 +1,28 @@
+/**
+ *
+ */
+package vtc.tools.query;
+
+/**
+ * @author markebbert
+ *
+ *	A query that cannot be answered, with the HTTP status to reply with
+ */
+public class QueryException extends Exception {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = -2285161307146120743L;
+
+	private int status;
+
+	public QueryException(String message, int status){
+		super(message);
+		this.status = status;
+	}
+
+	public int getStatus(){
+		return status;
+	}
+}
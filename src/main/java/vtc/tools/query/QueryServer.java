@@ -0,0 +1,330 @@
+/**
+ *
+ */
+package vtc.tools.query;
+
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import vtc.datastructures.InvalidInputFileException;
+import vtc.datastructures.RegionList;
+import vtc.datastructures.RegionList.Region;
+import vtc.datastructures.SortedVariantIndex;
+import vtc.datastructures.VariantPoolHeavy;
+import vtc.tools.varstats.VariantPoolSummarizer;
+import vtc.tools.varstats.VariantRecordSummary;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @author markebbert
+ *
+ *	Answers queries about VariantPools kept in memory over HTTP on the
+ *	loopback interface. Each pool is indexed by a SortedVariantIndex.
+ *	Replies are JSON, with each variant described by
+ *	VariantRecordSummary.toJSON.
+ *
+ *	GET /region?pool=ID&region=chr:start-end[&genotypes=true]
+ *		The variants overlapping the region.
+ *	GET /variant?pool=ID&key=chr:pos:ref[&genotypes=true]
+ *		The variant with the key, as VariantPoolHeavy.getVariant finds it.
+ *	GET /pools
+ *		The pools and their number of variants.
+ *	GET /stats
+ *		The number of queries and their latency percentiles (ms).
+ *
+ *	'pool' may be left out when only one pool is loaded.
+ */
+public class QueryServer {
+
+	private static Logger logger = Logger.getLogger(QueryServer.class);
+
+	public static final int DEFAULT_PORT = 7341;
+
+	private HttpServer server;
+	private ExecutorService executor;
+	private TreeMap<String, SortedVariantIndex> indexes;
+	private LatencyStats latency = new LatencyStats(100000);
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * Index 'pools' and listen on 'port' (0 for any free port)
+	 *
+	 * @param port
+	 * @param pools by pool ID
+	 * @param threads the number of queries answered at once
+	 * @throws IOException
+	 */
+	public QueryServer(int port, TreeMap<String, VariantPoolHeavy> pools, int threads) throws IOException{
+		indexes = new TreeMap<String, SortedVariantIndex>();
+		for(String poolID : pools.keySet()){
+			logger.info("Indexing " + poolID);
+			indexes.put(poolID, new SortedVariantIndex(pools.get(poolID)));
+		}
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getByName(null), port), 0);
+		server.createContext("/region", new RegionHandler());
+		server.createContext("/variant", new VariantHandler());
+		server.createContext("/pools", new PoolsHandler());
+		server.createContext("/stats", new StatsHandler());
+		executor = Executors.newFixedThreadPool(threads);
+		server.setExecutor(executor);
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	public int getPort(){
+		return server.getAddress().getPort();
+	}
+
+	public LatencyStats getLatency(){
+		return latency;
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	public void start(){
+		server.start();
+		logger.info("Answering queries on port " + getPort());
+	}
+
+	/**
+	 * Stop answering queries
+	 */
+	public void stop(){
+		server.stop(0);
+		executor.shutdown();
+	}
+
+	private SortedVariantIndex getIndex(Map<String, String> params) throws QueryException{
+		String poolID = params.get("pool");
+		if(poolID == null){
+			if(indexes.size() != 1){
+				throw new QueryException("Specify the pool: one of " + indexes.keySet(), 400);
+			}
+			return indexes.firstEntry().getValue();
+		}
+		SortedVariantIndex index = indexes.get(poolID);
+		if(index == null){
+			throw new QueryException("No such pool: " + poolID, 404);
+		}
+		return index;
+	}
+
+	private static String getRequired(Map<String, String> params, String name) throws QueryException{
+		String value = params.get(name);
+		if(value == null){
+			throw new QueryException("Missing parameter: " + name, 400);
+		}
+		return value;
+	}
+
+	/**
+	 * Describe 'var' by its key and VariantRecordSummary.toJSON, one entry
+	 * per alternate allele, and optionally its genotypes
+	 */
+	private static JSONObject toJSON(VariantContext var, boolean genotypes) throws JSONException{
+		VariantRecordSummary vrs = VariantPoolSummarizer.collectVariantStatistics(var);
+		JSONObject json = new JSONObject();
+		json.put("key", var.getChr() + ":" + var.getStart() + ":" + var.getReference().getBaseString());
+		json.put("id", var.getID());
+		json.put("alts", new JSONArray(vrs.toJSON()));
+		if(genotypes){
+			JSONObject genos = new JSONObject();
+			for(Genotype geno : var.getGenotypesOrderedByName()){
+				genos.put(geno.getSampleName(), geno.getGenotypeString());
+			}
+			json.put("genotypes", genos);
+		}
+		return json;
+	}
+
+	private static HashMap<String, String> parseQuery(String query) throws UnsupportedEncodingException{
+		HashMap<String, String> params = new HashMap<String, String>();
+		if(query == null){
+			return params;
+		}
+		for(String param : query.split("&")){
+			int eq = param.indexOf('=');
+			if(eq > 0){
+				params.put(URLDecoder.decode(param.substring(0, eq), "UTF-8"),
+						URLDecoder.decode(param.substring(eq + 1), "UTF-8"));
+			}
+		}
+		return params;
+	}
+
+	/**
+	 * Reply to a query with JSON, recording the query's latency
+	 */
+	private abstract class QueryHandler implements HttpHandler {
+
+		private boolean recordLatency;
+
+		private QueryHandler(boolean recordLatency){
+			this.recordLatency = recordLatency;
+		}
+
+		protected abstract JSONObject answer(Map<String, String> params) throws QueryException, JSONException;
+
+		@Override
+		public void handle(HttpExchange exchange) throws IOException {
+			long start = System.nanoTime();
+			int status = 200;
+			String reply;
+			try{
+				if(!"GET".equals(exchange.getRequestMethod())){
+					throw new QueryException("Only GET is supported", 405);
+				}
+				reply = answer(parseQuery(exchange.getRequestURI().getRawQuery())).toString();
+			} catch (QueryException e){
+				status = e.getStatus();
+				reply = "{\"error\":" + JSONObject.quote(e.getMessage()) + "}";
+			} catch (JSONException e){
+				status = 500;
+				reply = "{\"error\":" + JSONObject.quote(e.getMessage()) + "}";
+			} catch (RuntimeException e){
+				logger.error("Could not answer " + exchange.getRequestURI() + ": " + e.getMessage());
+				status = 500;
+				reply = "{\"error\":" + JSONObject.quote(String.valueOf(e.getMessage())) + "}";
+			}
+
+			byte[] bytes = reply.getBytes("UTF-8");
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(status, bytes.length);
+			OutputStream os = exchange.getResponseBody();
+			try{
+				os.write(bytes);
+			} finally {
+				os.close();
+			}
+			if(recordLatency){
+				latency.record(System.nanoTime() - start);
+			}
+		}
+	}
+
+	private class RegionHandler extends QueryHandler {
+		private RegionHandler(){
+			super(true);
+		}
+
+		@Override
+		protected JSONObject answer(Map<String, String> params) throws QueryException, JSONException {
+			SortedVariantIndex index = getIndex(params);
+			String value = getRequired(params, "region");
+			Region region;
+			try {
+				region = RegionList.parseRegion(value);
+			} catch (InvalidInputFileException e) {
+				throw new QueryException(e.getMessage(), 400);
+			}
+			boolean genotypes = "true".equalsIgnoreCase(params.get("genotypes"));
+
+			List<VariantContext> vars = index.query(region.getChr(), region.getStart(), region.getEnd());
+			JSONArray variants = new JSONArray();
+			for(VariantContext var : vars){
+				variants.put(toJSON(var, genotypes));
+			}
+			JSONObject json = new JSONObject();
+			json.put("pool", index.getVariantPool().getPoolID());
+			json.put("region", value);
+			json.put("count", vars.size());
+			json.put("variants", variants);
+			return json;
+		}
+	}
+
+	private class VariantHandler extends QueryHandler {
+		private VariantHandler(){
+			super(true);
+		}
+
+		@Override
+		protected JSONObject answer(Map<String, String> params) throws QueryException, JSONException {
+			SortedVariantIndex index = getIndex(params);
+			String key = getRequired(params, "key");
+			String[] parts = key.split(":");
+			VariantContext var;
+			try{
+				if(parts.length != 3){
+					throw new NumberFormatException();
+				}
+				var = index.getVariant(parts[0], Integer.parseInt(parts[1]), parts[2]);
+			} catch (NumberFormatException e){
+				throw new QueryException("Invalid key (expected chr:pos:ref): " + key, 400);
+			}
+			if(var == null){
+				throw new QueryException("No variant " + key + " in pool " +
+						index.getVariantPool().getPoolID(), 404);
+			}
+			JSONObject json = toJSON(var, "true".equalsIgnoreCase(params.get("genotypes")));
+			json.put("pool", index.getVariantPool().getPoolID());
+			return json;
+		}
+	}
+
+	private class PoolsHandler extends QueryHandler {
+		private PoolsHandler(){
+			super(false);
+		}
+
+		@Override
+		protected JSONObject answer(Map<String, String> params) throws JSONException {
+			JSONObject pools = new JSONObject();
+			for(String poolID : indexes.keySet()){
+				pools.put(poolID, indexes.get(poolID).size());
+			}
+			JSONObject json = new JSONObject();
+			json.put("pools", pools);
+			return json;
+		}
+	}
+
+	private class StatsHandler extends QueryHandler {
+		private StatsHandler(){
+			super(false);
+		}
+
+		@Override
+		protected JSONObject answer(Map<String, String> params) throws JSONException {
+			JSONObject json = new JSONObject();
+			json.put("queries", latency.getCount());
+			json.put("p50Millis", latency.getPercentileMillis(50));
+			json.put("p99Millis", latency.getPercentileMillis(99));
+			return json;
+		}
+	}
+}
@@ -0,0 +1,238 @@
+/**
+ *
+ */
+package vtc.tools.setoperator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import vtc.datastructures.NaturalOrderComparator;
+import vtc.datastructures.VariantPoolHeavy;
+import vtc.tools.setoperator.operation.ComplementOperation;
+import vtc.tools.setoperator.operation.IntersectOperation;
+import vtc.tools.setoperator.operation.InvalidOperationException;
+import vtc.tools.setoperator.operation.Operation;
+import vtc.tools.setoperator.operation.UnionOperation;
+
+/**
+ * @author markebbert
+ *
+ *	Perform set operations one contig at a time, in parallel. Every input
+ *	VariantPool is split by contig, and the operation runs on each contig's
+ *	parts on a fixed pool of threads. Variants on different contigs never
+ *	match, so the results are joined (in contig order) into a single
+ *	VariantPool equal to the one SetOperator builds, with the potential
+ *	matching indel counts summed across contigs.
+ */
+public class ParallelSetOperator {
+
+	private static Logger logger = Logger.getLogger(ParallelSetOperator.class);
+
+	private int threads;
+	private boolean verbose;
+	private boolean addChr;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * @param threads the number of contigs processed at once
+	 * @param verbose
+	 * @param addChr
+	 */
+	public ParallelSetOperator(int threads, boolean verbose, boolean addChr){
+		this.threads = threads;
+		this.verbose = verbose;
+		this.addChr = addChr;
+	}
+
+
+
+	/****************************************************
+	 * Set operations
+	 */
+
+	/**
+	 * See SetOperator.performComplement
+	 */
+	public VariantPoolHeavy performComplement(final ComplementOperation op,
+			ArrayList<VariantPoolHeavy> variantPools, final ComplementType type)
+					throws InvalidOperationException, IOException{
+		return perform(op, variantPools, new ContigOperation(){
+			@Override
+			public VariantPoolHeavy perform(SetOperator so, ArrayList<VariantPoolHeavy> contigVPs)
+					throws InvalidOperationException, IOException {
+				return so.performComplement(op, contigVPs, type);
+			}
+		});
+	}
+
+	/**
+	 * See SetOperator.performIntersect. MATCH_SAMPLE intersects write a single
+	 * statistics file for the whole operation, so they are not split.
+	 */
+	public VariantPoolHeavy performIntersect(final IntersectOperation op,
+			ArrayList<VariantPoolHeavy> variantPools, final IntersectType type, final String outFilePath)
+					throws InvalidOperationException, IOException{
+		if(type == IntersectType.MATCH_SAMPLE){
+			logger.info("Intersect type " + type.getCommand() + " is not split by contig. Running on one thread.");
+			return new SetOperator(verbose, addChr).performIntersect(op, variantPools, type, outFilePath);
+		}
+		return perform(op, variantPools, new ContigOperation(){
+			@Override
+			public VariantPoolHeavy perform(SetOperator so, ArrayList<VariantPoolHeavy> contigVPs)
+					throws InvalidOperationException, IOException {
+				return so.performIntersect(op, contigVPs, type, outFilePath);
+			}
+		});
+	}
+
+	/**
+	 * See SetOperator.performUnion
+	 */
+	public VariantPoolHeavy performUnion(final UnionOperation op,
+			ArrayList<VariantPoolHeavy> variantPools, final boolean forceUniqueNames)
+					throws InvalidOperationException, IOException{
+		return perform(op, variantPools, new ContigOperation(){
+			@Override
+			public VariantPoolHeavy perform(SetOperator so, ArrayList<VariantPoolHeavy> contigVPs)
+					throws InvalidOperationException, IOException {
+				return so.performUnion(op, contigVPs, forceUniqueNames);
+			}
+		});
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Split the VariantPools by contig, run 'contigOp' on each contig's parts
+	 * and join the results.
+	 *
+	 * @param op
+	 * @param variantPools
+	 * @param contigOp
+	 * @return
+	 * @throws InvalidOperationException
+	 * @throws IOException
+	 */
+	private VariantPoolHeavy perform(Operation op, ArrayList<VariantPoolHeavy> variantPools,
+			final ContigOperation contigOp) throws InvalidOperationException, IOException{
+
+		TreeSet<String> contigs = new TreeSet<String>(new NaturalOrderComparator());
+		for(VariantPoolHeavy vp : variantPools){
+			contigs.addAll(vp.getContigs());
+		}
+		if(threads < 2 || contigs.size() < 2){
+			return contigOp.perform(new SetOperator(verbose, addChr), variantPools);
+		}
+
+		/* Split each pool by contig, keeping the pools' order for each contig */
+		HashMap<String, ArrayList<VariantPoolHeavy>> contigVPs = new HashMap<String, ArrayList<VariantPoolHeavy>>();
+		for(String contig : contigs){
+			contigVPs.put(contig, new ArrayList<VariantPoolHeavy>());
+		}
+		HashMap<String, VariantPoolHeavy> parts;
+		for(VariantPoolHeavy vp : variantPools){
+			parts = vp.splitByContig(contigs);
+			for(String contig : contigs){
+				contigVPs.get(contig).add(parts.get(contig));
+			}
+		}
+
+		logger.info("Performing " + op.getOperationID() + " on " + contigs.size() + " contigs with " +
+				Math.min(threads, contigs.size()) + " threads...");
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, contigs.size()));
+		ArrayList<Future<VariantPoolHeavy>> results = new ArrayList<Future<VariantPoolHeavy>>();
+		try{
+			for(String contig : contigs){
+				final ArrayList<VariantPoolHeavy> vps = contigVPs.get(contig);
+
+				/* SetOperator is not thread-safe, so each contig gets its own */
+				results.add(executor.submit(new Callable<VariantPoolHeavy>(){
+					@Override
+					public VariantPoolHeavy call() throws Exception {
+						return contigOp.perform(new SetOperator(verbose, addChr), vps);
+					}
+				}));
+			}
+
+			/* Join the results in contig order */
+			VariantPoolHeavy result = new VariantPoolHeavy(addChr, op.getOperationID());
+			result.setFile(new File(op.getOperationID()));
+			int potentialMatchingIndelAlleles = 0;
+			int potentialMatchingIndelRecords = 0;
+			VariantPoolHeavy contigResult;
+			for(Future<VariantPoolHeavy> future : results){
+				contigResult = getResult(future);
+				result.addSamples(contigResult.getSamples());
+				result.setSparseGenotypes(contigResult.hasSparseGenotypes());
+				result.addVariants(contigResult);
+				potentialMatchingIndelAlleles += contigResult.getPotentialMatchingIndelAlleles();
+				potentialMatchingIndelRecords += contigResult.getPotentialMatchingIndelRecords();
+				contigResult.deleteSpilledVariants();
+			}
+			result.setPotentialMatchingIndelAlleles(potentialMatchingIndelAlleles);
+			result.setPotentialMatchingIndelRecords(potentialMatchingIndelRecords);
+			return result;
+		} finally {
+			executor.shutdownNow();
+			for(ArrayList<VariantPoolHeavy> vps : contigVPs.values()){
+				for(VariantPoolHeavy vp : vps){
+					vp.deleteSpilledVariants();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wait for a contig's result, rethrowing whatever the operation threw
+	 */
+	private VariantPoolHeavy getResult(Future<VariantPoolHeavy> future)
+			throws InvalidOperationException, IOException{
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a set operation to finish.");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof InvalidOperationException){
+				throw (InvalidOperationException) cause;
+			}
+			if(cause instanceof IOException){
+				throw (IOException) cause;
+			}
+			if(cause instanceof RuntimeException){
+				throw (RuntimeException) cause;
+			}
+			if(cause instanceof Error){
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	/**
+	 * A set operation on the parts of each VariantPool for one contig
+	 */
+	private interface ContigOperation {
+		public VariantPoolHeavy perform(SetOperator so, ArrayList<VariantPoolHeavy> contigVPs)
+				throws InvalidOperationException, IOException;
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ *
+ */
+package vtc.tools.setoperator;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collection;
+
+import vtc.datastructures.VariantPoolHeavy;
+import vtc.tools.utilitybelt.UtilityBelt;
+import vtc.tools.varstats.AltType;
+
+/**
+ * @author markebbert
+ *
+ *	Counters for the result of a set operation. Used by SetOperator's
+ *	count-only mode so the same membership and genotype decisions can
+ *	be made without building the resulting VariantContexts or pool.
+ */
+public class SetOperationCounts implements Serializable {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 4719383202954622177L;
+
+	private String operationID;
+	private int records, alleles, snvAlleles, indelAlleles, otherAlleles;
+	private int potentialMatchingIndelAlleles, potentialMatchingIndelRecords;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	public SetOperationCounts(String operationID){
+		this.operationID = operationID;
+	}
+
+	/**
+	 * Count an existing VariantPool so it can be reported alongside
+	 * count-only results
+	 * @param vp
+	 * @throws IOException
+	 */
+	public SetOperationCounts(VariantPoolHeavy vp) throws IOException{
+		this(vp.getPoolID());
+		VariantContext var;
+		while((var = vp.getNextVar()) != null){
+			addVariant(var.getReference(), var.getAlternateAlleles());
+		}
+		addPotentialMatchingIndels(vp.getPotentialMatchingIndelAlleles(), vp.getPotentialMatchingIndelRecords());
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	public String getOperationID(){
+		return this.operationID;
+	}
+
+	public int getNumVarRecords(){
+		return this.records;
+	}
+
+	public int getNumAlleles(){
+		return this.alleles;
+	}
+
+	public int getNumSNVAlleles(){
+		return this.snvAlleles;
+	}
+
+	public int getNumIndelAlleles(){
+		return this.indelAlleles;
+	}
+
+	public int getNumOtherAlleles(){
+		return this.otherAlleles;
+	}
+
+	public int getPotentialMatchingIndelAlleles(){
+		return this.potentialMatchingIndelAlleles;
+	}
+
+	public int getPotentialMatchingIndelRecords(){
+		return this.potentialMatchingIndelRecords;
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Count a single variant record that would have been added to the result.
+	 * Reference alleles in 'alts' are ignored.
+	 * @param ref
+	 * @param alts
+	 */
+	public void addVariant(Allele ref, Collection<Allele> alts){
+		records++;
+		for(Allele a : alts){
+			if(a.isReference()){
+				continue;
+			}
+			alleles++;
+			if(a.isSymbolic() || a.isNoCall() || ref.isSymbolic() || ref.equals(a, true)){
+				otherAlleles++;
+				continue;
+			}
+			AltType type = UtilityBelt.determineAltType(ref, a);
+			if(type == AltType.SNV){
+				snvAlleles++;
+			}
+			else if(UtilityBelt.altTypeIsIndel(type)){
+				indelAlleles++;
+			}
+			else{
+				otherAlleles++;
+			}
+		}
+	}
+
+	public void addPotentialMatchingIndels(int alleleCount, int recordCount){
+		potentialMatchingIndelAlleles += alleleCount;
+		potentialMatchingIndelRecords += recordCount;
+	}
+
+	/**
+	 * Add the counts for the same operation over other variants (e.g.,
+	 * other contigs)
+	 * @param counts
+	 */
+	public void add(SetOperationCounts counts){
+		records += counts.getNumVarRecords();
+		alleles += counts.getNumAlleles();
+		snvAlleles += counts.getNumSNVAlleles();
+		indelAlleles += counts.getNumIndelAlleles();
+		otherAlleles += counts.getNumOtherAlleles();
+		addPotentialMatchingIndels(counts.getPotentialMatchingIndelAlleles(),
+				counts.getPotentialMatchingIndelRecords());
+	}
+}
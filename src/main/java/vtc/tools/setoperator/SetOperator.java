@@ -9,6 +9,10 @@ import htsjdk.variant.variantcontext.GenotypeBuilder;
 import htsjdk.variant.variantcontext.GenotypesContext;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.vcf.VCFFormatHeaderLine;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderLineType;
+import htsjdk.variant.vcf.VCFUtils;
 
 import java.io.File;
 import java.io.FileWriter;
@@ -93,6 +97,48 @@ public class SetOperator {
 	
 	
 	
+	/****************************************************
+	 * Headers
+	 */
+	
+	/**
+	 * Give 'result' a header merged from the headers of the VariantPools it
+	 * was built from. If the headers cannot be merged, 'result' keeps its
+	 * header and a basic header will be generated when it is printed.
+	 * @param result
+	 * @param variantPools
+	 * @return false if the headers could not be merged
+	 */
+	public static boolean setMergedHeader(VariantPoolHeavy result, List<VariantPoolHeavy> variantPools){
+		ArrayList<VCFHeader> headers = new ArrayList<VCFHeader>();
+		for(VariantPoolHeavy vp : variantPools){
+			headers.add(vp.getHeader());
+		}
+		
+		VCFHeader header;
+		try{
+			header = new VCFHeader(VCFUtils.smartMergeHeaders(headers, true), result.getSamples());
+		} catch (IllegalStateException e){
+			logger.warn("Could not merge headers from VariantPools for " + result.getPoolID() + "\tContinuing...");
+			return false;
+		}
+		
+		/* If the resulting data has genotype data but the header does not
+		 * specify such, add the appropriate format header line
+		 */
+		if(result.hasGenotypeData() && !header.hasGenotypingData()){
+			logger.warn("Resulting variant pool (" + result.getPoolID() + ") has genotype data but the" +
+					" header does not include the appropriate line. Adding and continuing...");
+			header.addMetaDataLine(new VCFFormatHeaderLine("GT", 1, VCFHeaderLineType.String, "Genotype"));
+		}
+		result.setHeader(header);
+		return true;
+	}
+	
+	
+	
+	
+	
 	/****************************************************
 	 * Complement logic
 	 */
@@ -145,6 +191,58 @@ public class SetOperator {
 		return complement;
 	}
 	
+	/**
+	 * Count the result of a complement across all specified VariantPools without
+	 * building the resulting VariantPool. Subtractions happen in order (e.g.
+	 * 'A-B-C'), just like performComplement.
+	 * 
+	 * @param op
+	 * @param variantPools
+	 * @param type
+	 * @return
+	 * @throws InvalidOperationException
+	 * @throws IOException
+	 */
+	public SetOperationCounts countComplement(ComplementOperation op,
+			ArrayList<VariantPoolHeavy> variantPools, ComplementType type) throws InvalidOperationException, IOException{
+
+		ArrayList<VariantPoolHeavy> vpsInOrder = new ArrayList<VariantPoolHeavy>();
+		for(String vpID : op.getAllPoolIDs()){
+			for(VariantPoolHeavy vp : variantPools){
+				if(vp.getPoolID().equals(vpID)){
+					vpsInOrder.add(vp);
+				}
+			}
+		}
+
+		VariantPoolHeavy vp1 = vpsInOrder.get(0);
+		SetOperationCounts counts = new SetOperationCounts(op.getOperationID());
+		
+		/* A variant survives 'A-B-C' if it survives each subtraction in turn. As with
+		 * performComplement, only the last subtraction's potential indel matches are
+		 * reported, and only for variants that survived the earlier ones.
+		 */
+		SetOperationCounts lastFuzzyCounts = new SetOperationCounts(op.getOperationID());
+		SetOperationCounts fuzzyCounts;
+		VariantContext var1;
+		String currVarKey;
+		boolean keep;
+		while((var1 = vp1.getNextVar()) != null){
+			currVarKey = generateVarKey(var1);
+			keep = true;
+			for(int i = 1; i < vpsInOrder.size() && keep; i++){
+				fuzzyCounts = i == vpsInOrder.size() - 1 ? lastFuzzyCounts : null;
+				keep = complementKeepsVariant(op, currVarKey, vp1, vpsInOrder.get(i), type, fuzzyCounts);
+			}
+			if(keep){
+				counts.addVariant(var1.getReference(), var1.getAlternateAlleles());
+			}
+		}
+		counts.addPotentialMatchingIndels(lastFuzzyCounts.getPotentialMatchingIndelAlleles(),
+				lastFuzzyCounts.getPotentialMatchingIndelRecords());
+		return counts;
+	}
+	
 	/**
 	 * Perform A complement B (A - B)
 	 * TODO: Write good description
@@ -161,94 +259,106 @@ public class SetOperator {
 		VariantPoolHeavy complement = new VariantPoolHeavy(addChr(), op.getOperationID());
 		complement.setFile(new File(op.getOperationID()));
 //		complement.setPoolID(operationID);	
-		complement.addSamples(op.getSamplePool(vp1.getPoolID()).getSamples());
+		TreeSet<String> samples = op.getSamplePool(vp1.getPoolID()).getSamples();
+		complement.addSamples(samples);
 		
 //		Iterator<String> it = vp1.getVariantIterator();
 		String currVarKey;
-		LinkedHashSet<Allele> allAlleles;
-		VariantContext var1 = null, var2 = null;
-		boolean keep = false;
-		
-		/* Track the number of indels that may be the same
-		 * but aligned differently.
-		 * 
-		 * potentialMatchingIndelAlleles: The number of alleles that
-		 * may overlap. This will count all alternate alleles in
-		 * a record
-		 * 
-		 * potentialMatchinIndelRecords: The number of variant
-		 * records (i.e. lines) in a VariantPool that may overlap
-		 */
-		int potentialMatchingIndelAlleles = 0;
-		int potentialMatchingIndelRecords = 0;
+		VariantContext var1 = null;
+		SetOperationCounts fuzzyCounts = new SetOperationCounts(op.getOperationID());
 		
 		/* Iterate over variants in vp1. If found in vp2,
 		 * subtract from vp1
 		 */
 //		while(it.hasNext()){
 		while((var1 = vp1.getNextVar()) != null){
-			keep = false;
-			allAlleles = new LinkedHashSet<Allele>();
 			
 //			currVarKey = it.next();
 			currVarKey = generateVarKey(var1);
 			
-			/* Check if variant found in vp2 */
-			var2 = vp2.getVariant(currVarKey);
-			if(var2 != null){
-				var1 = vp1.getVariant(currVarKey);
-				
-				if(type == ComplementType.ALT){
-					ArrayList<VariantPoolHeavy> vps = new ArrayList<VariantPoolHeavy>();
-					vps.add(vp1);
-					vps.add(vp2);
-					if(!allVariantPoolsContainVariant(vps, currVarKey, op.getOperationID())){
-						keep = true;
-					}
-					else{
-						if(verbose()){
-							String s = "Not all variant pools contained variant.";
-							emitExcludedVariantWarning(s, currVarKey, op.getOperationID(), null);
-						}
-					}
-				}
-				else if(!subtractByGenotype(var1.getAlternateAlleles(), var1.getGenotypes(), var2.getGenotypes(), type, currVarKey, op.getOperationID())){
-					keep = true;
+			if(complementKeepsVariant(op, currVarKey, vp1, vp2, type, fuzzyCounts)){
+				var1 = vp1.withAllGenotypes(vp1.getVariant(currVarKey));
+	
+				/* Add var1 as it is if the complement has the same samples.
+				 * Otherwise, build the VariantContext and add to the VariantPool */
+				if(hasSameSamples(var1, samples)){
+					complement.addVariant(var1, false);
 				}
-			}
-			else{
-				/* Not found in vp2, so add to complement */
-				keep = true;
-				
-				/* If this variant is an indel, check if there are
-				 * overlapping indels that may match but align differently.
-				 */
-				var1 = vp1.getVariant(currVarKey);
-				if(var1.isIndel() || var1.isMixed()){ // At least one alternate is an indel
-//					System.out.println("var: " + var1.getChr() + ":" + var1.getStart() + ":"
-//						+ var1.getReference() + ":" + var1.getAlternateAlleles());
-					int matches = vp2.getOverlappingIndelAlleleCount(var1);
-					if(matches > 0){
-						potentialMatchingIndelAlleles += matches;
-						potentialMatchingIndelRecords++;
-					}
+				else{
+					complement.addVariant(buildVariant(var1,
+							new LinkedHashSet<Allele>(var1.getAlleles()),
+							new ArrayList<Genotype>(var1.getGenotypes())), false);
 				}
 			}
-			
-			if(keep){
-				var1 = vp1.getVariant(currVarKey);
-				allAlleles.addAll(var1.getAlternateAlleles());
+		}
+		
+		complement.setPotentialMatchingIndelAlleles(fuzzyCounts.getPotentialMatchingIndelAlleles());
+		complement.setPotentialMatchingIndelRecords(fuzzyCounts.getPotentialMatchingIndelRecords());
+		return complement;
+	}
 	
-				/* Build the VariantContext and add to the VariantPool */
-				complement.addVariant(buildVariant(var1,
-						new LinkedHashSet<Allele>(var1.getAlleles()),
-						new ArrayList<Genotype>(var1.getGenotypes())), false);			
+	/**
+	 * Determine whether the variant at 'currVarKey' in vp1 is kept in vp1 - vp2.
+	 * 
+	 * Also tracks the number of indels that may be the same
+	 * but aligned differently in 'fuzzyCounts' (if not null).
+	 * 
+	 * potentialMatchingIndelAlleles: The number of alleles that
+	 * may overlap. This will count all alternate alleles in
+	 * a record
+	 * 
+	 * potentialMatchinIndelRecords: The number of variant
+	 * records (i.e. lines) in a VariantPool that may overlap
+	 * 
+	 * @param op
+	 * @param currVarKey
+	 * @param vp1
+	 * @param vp2
+	 * @param type
+	 * @param fuzzyCounts
+	 * @return
+	 * @throws InvalidOperationException
+	 */
+	private boolean complementKeepsVariant(ComplementOperation op, String currVarKey, VariantPoolHeavy vp1,
+			VariantPoolHeavy vp2, ComplementType type, SetOperationCounts fuzzyCounts) throws InvalidOperationException{
+
+		VariantContext var1 = vp1.getVariant(currVarKey);
+		
+		/* Check if variant found in vp2 */
+		VariantContext var2 = vp2.getVariant(currVarKey);
+		if(var2 != null){
+			
+			if(type == ComplementType.ALT){
+				ArrayList<VariantPoolHeavy> vps = new ArrayList<VariantPoolHeavy>();
+				vps.add(vp1);
+				vps.add(vp2);
+				if(!allVariantPoolsContainVariant(vps, currVarKey, op.getOperationID())){
+					return true;
+				}
+				if(verbose()){
+					String s = "Not all variant pools contained variant.";
+					emitExcludedVariantWarning(s, currVarKey, op.getOperationID(), null);
+				}
+				return false;
 			}
+			return !subtractByGenotype(var1.getAlternateAlleles(), vp1.withAllGenotypes(var1).getGenotypes(),
+					vp2.withAllGenotypes(var2).getGenotypes(), type, currVarKey, op.getOperationID());
 		}
 		
-		complement.setPotentialMatchingIndelAlleles(potentialMatchingIndelAlleles);
-		complement.setPotentialMatchingIndelRecords(potentialMatchingIndelRecords);
-		return complement;
+		/* Not found in vp2, so add to complement.
+		 * 
+		 * If this variant is an indel, check if there are
+		 * overlapping indels that may match but align differently.
+		 */
+		if(fuzzyCounts != null && (var1.isIndel() || var1.isMixed())){ // At least one alternate is an indel
+//			System.out.println("var: " + var1.getChr() + ":" + var1.getStart() + ":"
+//				+ var1.getReference() + ":" + var1.getAlternateAlleles());
+			int matches = vp2.getOverlappingIndelAlleleCount(var1);
+			if(matches > 0){
+				fuzzyCounts.addPotentialMatchingIndels(matches, 1);
+			}
+		}
+		return true;
 	}
 	
 	/**
@@ -381,6 +491,34 @@ public class SetOperator {
 	 */
 	public VariantPoolHeavy performIntersect(IntersectOperation op,
 			ArrayList<VariantPoolHeavy> variantPools, IntersectType type, String outFilePath) throws InvalidOperationException, IOException{
+		return intersect(op, variantPools, type, outFilePath, null);
+	}
+	
+	/**
+	 * Count the variants that intersect without building the resulting VariantPool.
+	 * 
+	 * @param op
+	 * @param variantPools
+	 * @param type
+	 * @param outFilePath
+	 * @return
+	 * @throws InvalidOperationException
+	 * @throws IOException
+	 */
+	public SetOperationCounts countIntersect(IntersectOperation op,
+			ArrayList<VariantPoolHeavy> variantPools, IntersectType type, String outFilePath) throws InvalidOperationException, IOException{
+		SetOperationCounts counts = new SetOperationCounts(op.getOperationID());
+		intersect(op, variantPools, type, outFilePath, counts);
+		return counts;
+	}
+	
+	/**
+	 * Perform the intersect. If 'counts' is not null, only count the variants
+	 * that intersect and return null instead of a VariantPool.
+	 */
+	private VariantPoolHeavy intersect(IntersectOperation op,
+			ArrayList<VariantPoolHeavy> variantPools, IntersectType type, String outFilePath,
+			SetOperationCounts counts) throws InvalidOperationException, IOException{
 		
 		if(type == null){
 			throw new RuntimeException("Received null IntersectType in \'performIntersect.\' Something is very wrong!");
@@ -393,14 +531,17 @@ public class SetOperator {
 			throw new RuntimeException("Unable to identify the smallest VariantPool. Something is very wrong.");
 		}
 
-		VariantPoolHeavy intersection = new VariantPoolHeavy(addChr(), op.getOperationID());
-		intersection.setFile(new File(op.getOperationID()));
-//		intersection.setPoolID(op.getOperationID());
+		VariantPoolHeavy intersection = null;
+		if(counts == null){
+			intersection = new VariantPoolHeavy(addChr(), op.getOperationID());
+			intersection.setFile(new File(op.getOperationID()));
+//			intersection.setPoolID(op.getOperationID());
 
-		/* Add all samples from each VariantPool involved in the intersection */
-		for(VariantPoolHeavy vp : variantPools){
-//			intersection.addSamples(vp.getSamples());
-			intersection.addSamples(op.getSamplePool(vp.getPoolID()).getSamples());
+			/* Add all samples from each VariantPool involved in the intersection */
+			for(VariantPoolHeavy vp : variantPools){
+//				intersection.addSamples(vp.getSamples());
+				intersection.addSamples(op.getSamplePool(vp.getPoolID()).getSamples());
+			}
 		}
 
 //		Iterator<String> it = smallest.getVariantIterator();
@@ -462,8 +603,12 @@ public class SetOperator {
 					}
 					allAlleles.addAll(var.getAlternateAlleles());
 					
-					/* Check that the genotypes exist. If they don't create 'NO_CALL' genotypes */
-					genotypes.addAll(getCorrectGenotypes(var, op.getSamplePool(vp.getPoolID()).getSamples()));
+					/* Check that the genotypes exist. If they don't create 'NO_CALL' genotypes.
+					 * They are only needed for the result, so skip them when counting. */
+					if(counts == null){
+						genotypes.addAll(getCorrectGenotypes(vp.withAllGenotypes(var),
+								op.getSamplePool(vp.getPoolID()).getSamples()));
+					}
 				}
 			}
 			else{
@@ -479,7 +624,7 @@ public class SetOperator {
 					sampleGenotypes = new HashMap<String, Genotype>();
 					for(VariantPoolHeavy vp : variantPools){
 						
-						var = vp.getVariant(currVarKey);
+						var = vp.withAllGenotypes(vp.getVariant(currVarKey));
 						allAlleles.addAll(var.getAlternateAlleles());
 						
 	
@@ -561,13 +706,18 @@ public class SetOperator {
 			// If all VariantPools contain var and they intersect by IntersectTypes, add it to the new pool
 			if(intersects && var != null){
 				
-				/* add Ref allele */
-				allAlleles.add(var.getReference());
-
-				// Build the VariantContext and add to the VariantPool
-				intersection.addVariant(buildVariant(var, allAlleles, genotypes), false);
-				if(intersection.getNumVarRecords() > 1 && intersection.getNumVarRecords() % 100 == 0)
-					System.out.print("Added " + nf.format(intersection.getNumVarRecords()) + " variant records to intersection.\r");
+				if(counts != null){
+					counts.addVariant(var.getReference(), allAlleles);
+				}
+				else{
+					/* add Ref allele */
+					allAlleles.add(var.getReference());
+	
+					// Build the VariantContext and add to the VariantPool
+					intersection.addVariant(buildVariant(var, allAlleles, genotypes), false);
+					if(intersection.getNumVarRecords() > 1 && intersection.getNumVarRecords() % 100 == 0)
+						System.out.print("Added " + nf.format(intersection.getNumVarRecords()) + " variant records to intersection.\r");
+				}
 			}
 			
 			if(matchSampleFile != null && var != null){
@@ -586,6 +736,10 @@ public class SetOperator {
 		if(matchSampleFile != null)
 			matchSampleFile.close();
 		
+		if(counts != null){
+			counts.addPotentialMatchingIndels(potentialMatchingIndelAlleles, potentialMatchingIndelRecords);
+			return null;
+		}
 		intersection.setPotentialMatchingIndelRecords(potentialMatchingIndelRecords);
 		intersection.setPotentialMatchingIndelAlleles(potentialMatchingIndelAlleles);
 		return intersection;
@@ -773,7 +927,7 @@ public class SetOperator {
 
 			/* if tmpVar != null, just continue. It matched perfectly */
 			if(tmpVar != null){
-				matches.add(tmpVar);
+				matches.add(vp.withAllGenotypes(tmpVar));
 				continue;
 			}
 			
@@ -788,7 +942,7 @@ public class SetOperator {
 				indelLength = ref.length() > alt.length() ? ref.length() : alt.length(); // length is the longer of the two
 				tmpVar = vp.getOverlappingIndel(var.getChr(), var.getStart(), indelLength, type);
 				if(tmpVar != null){
-					matches.add(tmpVar);
+					matches.add(vp.withAllGenotypes(tmpVar));
 					break;
 				}
 			}
@@ -954,13 +1108,37 @@ public class SetOperator {
 	 * @throws IOException 
 	 */
 	public VariantPoolHeavy performUnion(UnionOperation op, ArrayList<VariantPoolHeavy> variantPools, boolean forceUniqueNames) throws InvalidOperationException, IOException{
+		return union(op, variantPools, forceUniqueNames, null);
+	}
+	
+	/**
+	 * Count the variants in a union without building the resulting VariantPool
+	 * @param op
+	 * @param variantPools
+	 * @param forceUniqueNames
+	 * @return
+	 * @throws InvalidOperationException
+	 * @throws IOException
+	 */
+	public SetOperationCounts countUnion(UnionOperation op, ArrayList<VariantPoolHeavy> variantPools, boolean forceUniqueNames) throws InvalidOperationException, IOException{
+		SetOperationCounts counts = new SetOperationCounts(op.getOperationID());
+		union(op, variantPools, forceUniqueNames, counts);
+		return counts;
+	}
+	
+	/**
+	 * Perform the union. If 'counts' is not null, only count the variants
+	 * in the union and return null instead of a VariantPool.
+	 */
+	private VariantPoolHeavy union(UnionOperation op, ArrayList<VariantPoolHeavy> variantPools,
+			boolean forceUniqueNames, SetOperationCounts counts) throws InvalidOperationException, IOException{
 		
 		/*
 		 * TODO: Add verbose information
 		 */
 
 		String currVarKey;
-		VariantContext var, var2;
+		VariantContext var, var2, fullVar;
 		HashSet<String> processedVarKeys = new HashSet<String>();
 		HashMap<Integer, String> fuzzyMatches = new HashMap<Integer, String>();
 //		Iterator<String> it;
@@ -970,21 +1148,30 @@ public class SetOperator {
 		int potentialMatchingIndelRecords = 0;
 		HashMap<String,TreeSet<String>> uniqueNames = null;
 		
-		VariantPoolHeavy union = new VariantPoolHeavy(addChr(), op.getOperationID());
-		union.setFile(new File(op.getOperationID()));
-//		union.setPoolID(op.getOperationID());
+		VariantPoolHeavy union = null;
+		boolean counted;
+		if(counts == null){
+			union = new VariantPoolHeavy(addChr(), op.getOperationID());
+			union.setFile(new File(op.getOperationID()));
+//			union.setPoolID(op.getOperationID());
 
-		/* Add all samples from each VariantPool involved in the intersection */
-		if(forceUniqueNames){
-			uniqueNames = generateUniqueSampleNames(variantPools, op);
-			for(VariantPoolHeavy vp : variantPools){
-				// TODO: All SamplePool manipulations should happen in the VariantPool! Otherwise they get out of sync!
-				union.addSamples(uniqueNames.get(vp.getPoolID()));
+			/* Only store called genotypes. Samples without data at a given
+			 * variant are implicit NO_CALLs that the pool fills in on output.
+			 */
+			union.setSparseGenotypes(true);
+
+			/* Add all samples from each VariantPool involved in the intersection */
+			if(forceUniqueNames){
+				uniqueNames = generateUniqueSampleNames(variantPools, op);
+				for(VariantPoolHeavy vp : variantPools){
+					// TODO: All SamplePool manipulations should happen in the VariantPool! Otherwise they get out of sync!
+					union.addSamples(uniqueNames.get(vp.getPoolID()));
+				}
 			}
-		}
-		else{
-			for(VariantPoolHeavy vp : variantPools){
-				union.addSamples(op.getSamplePool(vp.getPoolID()).getSamples());
+			else{
+				for(VariantPoolHeavy vp : variantPools){
+					union.addSamples(op.getSamplePool(vp.getPoolID()).getSamples());
+				}
 			}
 		}
 		
@@ -1010,18 +1197,25 @@ public class SetOperator {
 				 */
 				if(!processedVarKeys.contains(currVarKey)){
 					processedVarKeys.add(currVarKey);
+					counted = false;
+					
+					/* Genotypes are renamed and compared sample by sample */
+					fullVar = vp.withAllGenotypes(var);
 	
 					/* Get variant and loop over the other VariantPools
 					 * and add the samples to the new VariantPool
 					 */
 //					var = vp.getVariant(currVarKey);
 
-					/* Check that the genotypes exist. If they don't create 'NO_CALL' genotypes */
-					if(forceUniqueNames){
-						genotypes.addAll(getCorrectGenotypes(var, uniqueNames.get(vp.getPoolID())));
-					}
-					else{
-						genotypes.addAll(getCorrectGenotypes(var, op.getSamplePool(vp.getPoolID()).getSamples()));
+					/* Check that the genotypes exist. If they don't create 'NO_CALL' genotypes.
+					 * They are only needed for the result, so skip them when counting. */
+					if(counts == null){
+						if(forceUniqueNames){
+							genotypes.addAll(getCorrectGenotypes(fullVar, uniqueNames.get(vp.getPoolID()), false));
+						}
+						else{
+							genotypes.addAll(getCorrectGenotypes(fullVar, op.getSamplePool(vp.getPoolID()).getSamples(), false));
+						}
 					}
 					alleles.addAll(var.getAlleles());
 					
@@ -1031,7 +1225,17 @@ public class SetOperator {
                      * VariantPool). This is essentially just extracting the samples from the file
 					 */
 					if(variantPools.size() == 1){
-						union.addVariant(buildVariant(var, alleles, genotypes), true);
+						if(counts != null){
+							counts.addVariant(var.getReference(), alleles);
+						}
+						else if(!forceUniqueNames && genotypes.size() == var.getNSamples()
+								&& hasSameSamples(var, op.getSamplePool(vp.getPoolID()).getSamples())){
+							/* Every genotype is kept as it is, so is the variant */
+							union.addVariant(var, true);
+						}
+						else{
+							union.addVariant(buildVariant(var, alleles, genotypes), true);
+						}
 						continue;
 					}
 				
@@ -1049,26 +1253,27 @@ public class SetOperator {
 						
 						
 						if(var2 != null){
+							var2 = vp2.withAllGenotypes(var2);
 	
-							if(!forceUniqueNames && hasMatchingSampleWithDifferentGenotype(var, var2, currVarKey, op.getOperationID())){
+							if(!forceUniqueNames && hasMatchingSampleWithDifferentGenotype(fullVar, var2, currVarKey, op.getOperationID())){
 								break;
 							}
 							
 							/* Check that the genotypes exist. If they don't, create 'NO_CALL' genotypes */
-							if(forceUniqueNames){
-								genotypes.addAll(getCorrectGenotypes(var2, uniqueNames.get(vp2.getPoolID())));
-							}
-							else{
-								genotypes.addAll(getCorrectGenotypes(var2, op.getSamplePool(vp2.getPoolID()).getSamples()));
+							if(counts == null){
+								if(forceUniqueNames){
+									genotypes.addAll(getCorrectGenotypes(var2, uniqueNames.get(vp2.getPoolID()), false));
+								}
+								else{
+									genotypes.addAll(getCorrectGenotypes(var2, op.getSamplePool(vp2.getPoolID()).getSamples(), false));
+								}
 							}
 							alleles.addAll(var2.getAlleles());
 						}
 						else{
-							/* Generate NO_CALL genotypes for samples that we don't have data for. And verify
-							 * we don't overwrite an existing genotype. Probably only useful for unions where
-							 * we might get the same sample in multiple variant pools.
+							/* Samples we don't have data for are left out. The union
+							 * pool treats them as NO_CALL.
 							 */
-							genotypes.addAll(generateNoCallGenotypesForSamples(vp.getSamples(), vp2.getSamples()));
 							
 							/* If var1 is an INDEL, check if there is a fuzzy match */
 							if(!varOverlapsFuzzyMatch(var, fuzzyMatches)
@@ -1085,12 +1290,25 @@ public class SetOperator {
 								}
 							}
 						}
-						union.addVariant(buildVariant(var, alleles, genotypes), true);
+						if(counts == null){
+							union.addVariant(buildVariant(var, alleles, genotypes), true);
+						}
+						counted = true;
+					}
+					
+					/* The union keeps a single record per key, so count it once
+					 * with every allele collected across the VariantPools */
+					if(counts != null && counted){
+						counts.addVariant(var.getReference(), alleles);
 					}
 				}
 				count++;
 			}
 		}
+		if(counts != null){
+			counts.addPotentialMatchingIndels(potentialMatchingIndelAlleles, potentialMatchingIndelRecords);
+			return null;
+		}
 		union.setPotentialMatchingIndelAlleles(potentialMatchingIndelAlleles);
 		union.setPotentialMatchingIndelRecords(potentialMatchingIndelRecords);
 		return union;
@@ -1120,28 +1338,6 @@ public class SetOperator {
 		return false;
 	}
 	
-	/**
-	 * Generate NO_CALL genotypes for samples that we don't have data for. And verify
-	 * we don't overwrite an existing genotype. Probably only useful for unions where
-	 * we might get the same sample in multiple variant pools.
-	 * @param samples
-	 * @return
-	 */
-	private ArrayList<Genotype> generateNoCallGenotypesForSamples(TreeSet<String> var1Samples, TreeSet<String> var2Samples){
-		
-		ArrayList<Genotype> genotypes = new ArrayList<Genotype>();
-		for(String s : var2Samples){
-			
-			/* If var2 has the same samples, don't
-			 * overwrite genotypes from var1.
-			 */
-			if(!var1Samples.contains(s)){
-				genotypes.add(generateGenotypeForSample(s, Allele.NO_CALL, Allele.NO_CALL));
-			}
-		}
-		return genotypes;
-	}
-	
 	/**
 	 * Test whether a similar variant is recorded in fuzzyMatches. fuzzyMatches uses
 	 * the variant position as the key and 'chr:varLength' as the value. If there is
@@ -1311,6 +1507,19 @@ public class SetOperator {
 	 * @return
 	 */
 	private ArrayList<Genotype> getCorrectGenotypes(VariantContext var, TreeSet<String> samples){
+		return getCorrectGenotypes(var, samples, true);
+	}
+	
+	/**
+	 * Determine whether the variant has genotypes (not missing). If missing and
+	 * 'includeNoCalls' is true, create NO_CALL genotypes. Pools with sparse
+	 * genotypes don't need them. Otherwise just return the existing genotypes.
+	 * @param var
+	 * @param samples
+	 * @param includeNoCalls
+	 * @return
+	 */
+	private ArrayList<Genotype> getCorrectGenotypes(VariantContext var, TreeSet<String> samples, boolean includeNoCalls){
 		/* TODO: Test that the treeset and var are sorting sample names and genotypes identically.
 		 * Should be because they both use default sorting methods.
 		 */
@@ -1318,6 +1527,9 @@ public class SetOperator {
 		/* Check that the genotypes exist. If they don't create 'NO_CALL' genotypes */
 		if(var.getGenotypes().size() > 0 && !var.getGenotypes().get(0).isAvailable()){
 
+			if(!includeNoCalls){
+				return new ArrayList<Genotype>();
+			}
 			return generateNoCallGenotypesForSamples(samples);
 		}
 		else{
@@ -1384,6 +1596,19 @@ public class SetOperator {
 	}
 
 	
+	/**
+	 * Determine whether 'var' has genotypes for exactly 'samples'. If so, a
+	 * result with those samples can add 'var' as it is, which keeps the line
+	 * it was read from (see RawVariantContext).
+	 * 
+	 * @param var
+	 * @param samples
+	 * @return
+	 */
+	private boolean hasSameSamples(VariantContext var, TreeSet<String> samples){
+		return var.getSampleNames().equals(samples);
+	}
+
 	/**
 	 * Iterate over alleles in the genotype and verify if any
 	 * are the Ref allele
@@ -3,11 +3,9 @@
  */
 package vtc.tools.setoperator;
 
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.reference.IndexedFastaSequenceFile;
 import htsjdk.tribble.TribbleException;
-import htsjdk.variant.vcf.VCFFormatHeaderLine;
-import htsjdk.variant.vcf.VCFHeader;
-import htsjdk.variant.vcf.VCFHeaderLineType;
-import htsjdk.variant.vcf.VCFUtils;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -18,6 +16,8 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
 
 import net.sourceforge.argparse4j.ArgumentParsers;
 import net.sourceforge.argparse4j.impl.Arguments;
@@ -30,15 +30,22 @@ import net.sourceforge.argparse4j.inf.Namespace;
 import org.apache.log4j.Logger;
 
 import vtc.Engine;
+import vtc.datastructures.AbstractVariantPool;
 import vtc.datastructures.InvalidInputFileException;
+import vtc.datastructures.PoolPlanner;
+import vtc.datastructures.RegionList;
 import vtc.datastructures.SupportedFileType;
+import vtc.datastructures.VCFSorter;
 import vtc.datastructures.VariantPoolHeavy;
+import vtc.datastructures.VariantPoolIndexed;
+import vtc.datastructures.VariantPoolLight;
 import vtc.tools.setoperator.operation.ComplementOperation;
 import vtc.tools.setoperator.operation.IntersectOperation;
 import vtc.tools.setoperator.operation.InvalidOperationException;
 import vtc.tools.setoperator.operation.Operation;
 import vtc.tools.setoperator.operation.OperationFactory;
 import vtc.tools.setoperator.operation.UnionOperation;
+import vtc.tools.shard.ShardResults;
 import vtc.tools.utilitybelt.UtilityBelt;
 import vtc.tools.varstats.VariantPoolSummarizer;
 import vtc.tools.varstats.VariantPoolSummary;
@@ -51,9 +58,11 @@ public class SetOperatorEngine implements Engine {
 
     private static Logger         logger = Logger.getLogger(SetOperatorEngine.class);
 
-    private static ArgumentParser parser;
+    private ArgumentParser        parser;
     
     private Namespace             parsedArgs;
+    private int                   threads = 1;
+    private ShardResults          shardResults = new ShardResults();
 
     public SetOperatorEngine(String[] args) {
         init(args);
@@ -87,6 +96,21 @@ public class SetOperatorEngine implements Engine {
         		.help("Automagically performs the intersect, union, and both complements " +
         				"between two input files.  You could use the -g and/or -c command to define the"
         				+ " type of intersect and complements that you would like to perform.");
+        operation
+        		.addArgument("--venn")
+        		.dest("VENN")
+        		.action(Arguments.storeTrue())
+        		.help("Count the variant alleles in every overlap (Venn region) between any" +
+        				" number of input files in a single pass. Input files must be sorted." +
+        				" Prints a table with one row per non-empty region.");
+        operation
+        		.addArgument("--tiered-union")
+        		.dest("TIERED_UNION")
+        		.action(Arguments.storeTrue())
+        		.help("Union all input files while keeping memory and open files bounded," +
+        				" for unions of many (e.g. thousands of) files. Files are merged in" +
+        				" groups of --merge-width into sorted temporary files, which are merged" +
+        				" the same way until one group is left. Input files must be sorted.");
         operation
                 .addArgument("-s", "--set-operation")
                 .nargs("+")
@@ -148,6 +172,100 @@ public class SetOperatorEngine implements Engine {
         				" duplicate names will have the file name appended to" +
         				" the sample name.");
 
+        operationOptions
+        		.addArgument("--split-by-type")
+        		.dest("SPLIT_TYPE")
+        		.action(Arguments.storeTrue())
+        		.help("Split --venn counts by variant type (SNV, INDEL, or OTHER).");
+
+        operationOptions
+        		.addArgument("--split-by-genotype")
+        		.dest("SPLIT_GENO")
+        		.action(Arguments.storeTrue())
+        		.help("Split --venn counts by the genotypes of the samples carrying the" +
+        				" allele (HET, HOMO_ALT, MIXED, or NO_GENOTYPE).");
+
+        operationOptions
+        		.addArgument("-k", "--merge-width")
+        		.dest("MERGE_WIDTH")
+        		.type(Integer.class)
+        		.setDefault(TieredUnion.DEFAULT_MERGE_WIDTH)
+        		.help("Number of files merged at once by --tiered-union. This is also" +
+        				" the most files open at once.");
+
+        operationOptions
+        		.addArgument("-T", "--tmp-dir")
+        		.dest("TMP_DIR")
+        		.type(String.class)
+        		.setDefault(System.getProperty("java.io.tmpdir"))
+        		.help("Directory for temporary files, such as --tiered-union runs and" +
+        				" sorted copies of unsorted input files.");
+
+        operationOptions
+        		.addArgument("--sort-memory")
+        		.dest("SORT_MEMORY")
+        		.type(Integer.class)
+        		.setDefault((int) (VCFSorter.DEFAULT_MAX_MEMORY / (1024 * 1024)))
+        		.help("Memory (in MB) used to sort unsorted input files for --venn and" +
+        				" --tiered-union. Larger files are sorted on disk in --tmp-dir.");
+
+        operationOptions
+        		.addArgument("--regions")
+        		.nargs("+")
+        		.dest("REGIONS")
+        		.type(String.class)
+        		.help("Only use variants overlapping these regions. Regions may be given" +
+        				" as 'chr:start-end', 'chr:pos', or 'chr', separated by spaces or" +
+        				" commas, or as BED files. Indexed inputs (tabix or tribble) are" +
+        				" queried directly; other inputs are read in full and filtered.");
+
+        operationOptions
+        		.addArgument("--memory-budget")
+        		.dest("MEMORY_BUDGET")
+        		.type(Integer.class)
+        		.setDefault(0)
+        		.help("Memory (in MB) for the variants held by each input and result pool." +
+        				" Variants beyond this are spilled to disk in --tmp-dir and read back" +
+        				" as needed. Default is no limit.");
+
+        operationOptions
+        		.addArgument("--compress-records")
+        		.dest("COMPRESS_RECORDS")
+        		.action(Arguments.storeTrue())
+        		.help("Keep the variants of each input and result pool in compressed" +
+        				" blocks in memory, decoding them as needed. Slower, but holds" +
+        				" several times more variants in the same memory.");
+
+        operationOptions
+        		.addArgument("--indexed")
+        		.dest("INDEXED")
+        		.action(Arguments.storeTrue())
+        		.help("Read variants from the input files as they are needed rather than" +
+        				" loading the inputs into memory. Each input is indexed once (next" +
+        				" to the file, as '.vki'). Best for intersects and complements" +
+        				" against very large files. Inputs must be plain or bgzipped.");
+
+        operationOptions
+        		.addArgument("--pool-backend")
+        		.dest("POOL_BACKEND")
+        		.type(String.class)
+        		.choices(PoolPlanner.getBackendChoices())
+        		.setDefault(PoolPlanner.AUTO)
+        		.help("How to hold the input files. By default, a backend is chosen for" +
+        				" each input from its size, whether it can be indexed, and the" +
+        				" memory available; the choice is logged. 'heavy' holds every variant" +
+        				" in memory, 'compressed' holds them in compressed blocks, 'spilled'" +
+        				" spills them to --tmp-dir, and 'indexed' reads them from the file as" +
+        				" needed (see --indexed).");
+
+        operationOptions
+        		.addArgument("--threads")
+        		.dest("THREADS")
+        		.type(Integer.class)
+        		.setDefault(1)
+        		.help("Number of threads for set operations. Each operation is split by" +
+        				" contig and the contigs are processed in parallel. Default is 1.");
+
         output.addArgument("-o", "--out")
         		.dest("OUT").setDefault("variant_list.out.vcf")
         		.help("Specify the final output file name except when using.");
@@ -182,6 +300,21 @@ public class SetOperatorEngine implements Engine {
                 		" to satisfy requirements. This is not the recommended solution, but can be useful if" +
                 		" necessary. If false, missing header lines will be ignored.");
 
+        output.addArgument("-n", "--count-only")
+        		.dest("COUNT_ONLY")
+        		.action(Arguments.storeTrue())
+        		.help("Only count the results of each operation (records, alleles, SNVs, INDELs," +
+        				" and potential fuzzy matches) and print them as a table. No resulting" +
+        				" variants are built and no output files are written. Results referenced" +
+        				" by later --set-operation operations are still built.");
+
+        output.addArgument("--venn-vcfs")
+        		.dest("VENN_VCFS")
+        		.action(Arguments.storeTrue())
+        		.help("Write a VCF for each non-empty --venn region (e.g. 'venn_fId1_fId3.vcf')" +
+        				" to the directory of --out. Records are taken from the first input" +
+        				" file in the region.");
+
         output.addArgument("-v", "--verbose")
         		.dest("VERBOSE")
         		.action(Arguments.storeTrue())
@@ -192,12 +325,25 @@ public class SetOperatorEngine implements Engine {
         		.action(Arguments.storeTrue())
         		.help("Add 'chr' to chromosome (e.g. 'chr20' instead of '20')");
 
+        output.addArgument("--shard-results")
+        		.dest("SHARD_RESULTS")
+        		.type(String.class)
+        		.help("Write the counts behind the printed tables to this file, so the" +
+        				" tables can be printed for a job split into shards (see the Shard tool).");
+
+        output.addArgument("--merge-shard-results")
+        		.nargs("+")
+        		.dest("MERGE_SHARD_RESULTS")
+        		.type(String.class)
+        		.help("Add up the --shard-results files from each shard and print the" +
+        				" tables for the whole job instead of reading the input files.");
+
         try {
             parsedArgs = parser.parseArgs(args);
 //            logger.info(parsedArgs);
         } catch (ArgumentParserException e) {
             parser.handleError(e);
-            System.exit(1);
+            UtilityBelt.exit(1);
         }
     }
 
@@ -265,18 +411,78 @@ public class SetOperatorEngine implements Engine {
             boolean addChr = parsedArgs.getBoolean("CHR");
             boolean compare = parsedArgs.getBoolean("COMPARE");
             boolean forceUniqueNames = parsedArgs.getBoolean("UNIQUE");
+            boolean venn = parsedArgs.getBoolean("VENN");
+            boolean countOnly = parsedArgs.getBoolean("COUNT_ONLY");
+            boolean tieredUnion = parsedArgs.getBoolean("TIERED_UNION");
+
+            int memoryBudget = parsedArgs.getInt("MEMORY_BUDGET");
+            if (memoryBudget < 0) {
+            	throw new ArgumentParserException("--memory-budget cannot be negative.", parser);
+            }
+            VariantPoolHeavy.setDefaultMemoryBudget(memoryBudget * 1024L * 1024L,
+            		new File(parsedArgs.getString("TMP_DIR")));
+            VariantPoolHeavy.setDefaultCompressedRecords(parsedArgs.getBoolean("COMPRESS_RECORDS"));
+
+            /* Keep the input lines of pools whose records can be copied unchanged to the output VCF */
+            VariantPoolHeavy.setRawLinePoolIDs(!countOnly && outputFormat == SupportedFileType.VCF && operations != null
+            		? OperationFactory.getPassthroughPoolIDs(operations) : new TreeSet<String>());
+            VariantPoolIndexed.setDefaultIndexedPools(parsedArgs.getBoolean("INDEXED"));
+            PoolPlanner.setDefaultBackend(parsedArgs.getString("POOL_BACKEND"));
+            threads = parsedArgs.getInt("THREADS");
+            if (threads < 1) {
+            	throw new ArgumentParserException("--threads must be at least 1.", parser);
+            }
+            List<String> regions = parsedArgs.getList("REGIONS");
+            AbstractVariantPool.setDefaultRegions(regions == null ? null : RegionList.parse(regions));
+
+            List<String> mergeShardResults = parsedArgs.getList("MERGE_SHARD_RESULTS");
+            String shardResultsFile = parsedArgs.getString("SHARD_RESULTS");
+            if ((mergeShardResults != null || shardResultsFile != null) && (tieredUnion || venn)) {
+            	throw new ArgumentParserException("--tiered-union and --venn cannot be split into" +
+            			" shards.", parser);
+            }
+            if (mergeShardResults != null) {
+            	printShardResults(ShardResults.read(mergeShardResults), compare, countOnly);
+            	return;
+            }
 
-            if (compare) {
+            if (tieredUnion) {
+            	if (forceUniqueNames) {
+            		throw new ArgumentParserException("--treat-sample-names-as-unique cannot be used" +
+            				" with --tiered-union.", parser);
+            	}
+            	TieredUnion union = new TieredUnion(parsedArgs.getInt("MERGE_WIDTH"),
+            			new File(parsedArgs.getString("TMP_DIR")), refGenome, addChr);
+            	union.setSortMemory(getSortMemory());
+            	union.union(vcfArgs, outFile);
+            } else if (venn) {
+            	performVennCount(vcfArgs, parsedArgs.getBoolean("SPLIT_TYPE"), parsedArgs.getBoolean("SPLIT_GENO"),
+            			parsedArgs.getBoolean("VENN_VCFS") ? outFile : null, refGenome,
+            			new File(parsedArgs.getString("TMP_DIR")), addChr);
+            } else if (compare) {
                 if (vcfArgs.size() > 2) {
                     throw new InvalidOperationException("Error: cannot perform auto comparison on more " + "than two input files.");
                 }
-                performComparison(vcfArgs, verbose, addChr, complementType, intersectType,
-                		outputFormat, outFile, refGenome, repairHeader, forceUniqueNames);
+                if (countOnly) {
+                	countComparison(vcfArgs, verbose, addChr, complementType, intersectType, outFile, forceUniqueNames);
+                } else {
+                	performComparison(vcfArgs, verbose, addChr, complementType, intersectType,
+                			outputFormat, outFile, refGenome, repairHeader, forceUniqueNames);
+                }
+            } else if (countOnly) {
+            	TreeMap<String, SetOperationCounts> counts = countOperations(vcfArgs, operations, verbose,
+            			addChr, complementType, intersectType, outFile, forceUniqueNames);
+            	shardResults.setCounts(counts);
+            	printCountTable(counts);
             } else {
                 performOperations(vcfArgs, null, operations, verbose, addChr, complementType,
                 		intersectType, printIntermediateFiles, outputFormat, outFile, refGenome, repairHeader, forceUniqueNames);
             }
 
+            if (shardResultsFile != null) {
+            	shardResults.write(new File(shardResultsFile));
+            }
+
         } catch (NumberFormatException e) {
         	InvalidInputFileException ie = new InvalidInputFileException("Java through a NumberFormatException. " +
         			"Expected numeric value." + " May be an invalid annotation value. The original" +
@@ -298,6 +504,71 @@ public class SetOperatorEngine implements Engine {
         }
     }
 
+    /**
+     * Memory budget for sorting unsorted input files, in bytes
+     * @return
+     * @throws ArgumentParserException
+     */
+    private long getSortMemory() throws ArgumentParserException {
+    	int sortMemory = parsedArgs.getInt("SORT_MEMORY");
+    	if (sortMemory < 1) {
+    		throw new ArgumentParserException("--sort-memory must be at least 1 MB.", parser);
+    	}
+    	return sortMemory * 1024L * 1024L;
+    }
+
+    /**
+     * Count the variant alleles in every overlap between the input files in a
+     * single merge pass and print the table. If 'outFile' is not null, a VCF
+     * for each region is written to its directory. Unsorted input files are
+     * sorted into 'tmpDir' first.
+     * 
+     * @param vcfArgs
+     * @param splitByType
+     * @param splitByGenotype
+     * @param outFile
+     * @param refGenome
+     * @param tmpDir
+     * @param addChr
+     * @throws InvalidInputFileException
+     * @throws IOException
+     * @throws ArgumentParserException
+     */
+    private void performVennCount(List<String> vcfArgs, boolean splitByType, boolean splitByGenotype,
+    		File outFile, File refGenome, File tmpDir, boolean addChr) throws InvalidInputFileException, IOException, ArgumentParserException {
+
+        SAMSequenceDictionary dict = new IndexedFastaSequenceFile(refGenome).getSequenceDictionary();
+        if (dict == null) {
+        	throw new FileNotFoundException("The reference sequence specified ("
+        			+ refGenome.getAbsolutePath() +
+        			") does not have the appropriate dictionary file. Please use"
+        			+ " Picard's CreateSequenceDictionary.jar to generate this file.");
+        }
+        VCFSorter sorter = new VCFSorter(dict, getSortMemory(), tmpDir);
+
+        try {
+        	/* Keep the pools in the order they were given on the command line */
+        	ArrayList<VariantPoolLight> orderedVPs = new ArrayList<VariantPoolLight>();
+        	VariantPoolLight vp;
+        	for (String vcfArg : vcfArgs) {
+        		vp = new VariantPoolLight(vcfArg, false, addChr);
+        		vp.setFile(sorter.ensureSorted(vp.getFile()));
+        		orderedVPs.add(vp);
+        	}
+
+        	VennCounter counter = new VennCounter(orderedVPs, splitByType, splitByGenotype);
+        	counter.setSequenceDictionary(dict);
+        	if (outFile != null) {
+        		File dir = outFile.getAbsoluteFile().getParentFile();
+        		counter.writeRegionVCFs(dir, refGenome);
+        	}
+        	counter.count();
+        	counter.printVennTable();
+        } finally {
+        	sorter.deleteSortedFiles();
+        }
+    }
+
     /**
      * Given two input files, perform an intersect and both possible
      * complements. Then print out summaries for each.
@@ -348,15 +619,189 @@ public class SetOperatorEngine implements Engine {
         		complement2Outfile, refGenome, repairHeader, forceUniqueNames);
 
         /* Print table showing results of intersect, union, and complements */
-        printComparisonTable(resultingVPs);
+        TreeMap<String, SetOperationCounts> resultingCounts = new TreeMap<String, SetOperationCounts>();
+        for (VariantPoolHeavy vp : resultingVPs.values()) {
+        	resultingCounts.put(vp.getPoolID(), new SetOperationCounts(vp));
+        }
+        printComparisonTable(resultingCounts);
 
         /* Print summary tables for each operation */
         HashMap<String, VariantPoolSummary> vpSummaries = VariantPoolSummarizer.summarizeVariantPools(resultingVPs);
+        shardResults.setCounts(resultingCounts);
+        shardResults.setSummaries(vpSummaries);
 //        VariantPoolSummarizer.printSummary(vpSummaries, false);
         VariantPoolSummarizer.PrintSide_by_Side(vpSummaries);
 //        new VarStats(resultingVPs, null, false, true, false);
     }
 
+    /**
+     * Count the intersect, union, and both complements between two input
+     * files without building any of the resulting VariantPools.
+     * 
+     * @param vcfArgs
+     * @param verbose
+     * @param addChr
+     * @param complementType
+     * @param intersectType
+     * @param outFile
+     * @param forceUniqueNames
+     * @throws InvalidInputFileException
+     * @throws InvalidOperationException
+     * @throws IOException
+     */
+    private void countComparison(List<String> vcfArgs, boolean verbose, boolean addChr,
+    		ComplementType complementType, IntersectType intersectType, File outFile, boolean forceUniqueNames)
+            throws InvalidInputFileException, InvalidOperationException, IOException {
+
+        TreeMap<String, VariantPoolHeavy> allVPs = UtilityBelt.createHeavyVariantPools(vcfArgs, addChr);
+        ArrayList<String> allVPIDs = new ArrayList<String>(allVPs.keySet());
+
+        ArrayList<String> operations = new ArrayList<String>();
+        operations.add("intersect=i[" + allVPIDs.get(0) + ":" + allVPIDs.get(1) + "]");
+        operations.add("union=u[" + allVPIDs.get(0) + ":" + allVPIDs.get(1) + "]");
+        operations.add("AcompB=c[" + allVPIDs.get(0) + ":" + allVPIDs.get(1) + "]");
+        operations.add("BcompA=c[" + allVPIDs.get(1) + ":" + allVPIDs.get(0) + "]");
+
+        TreeMap<String, SetOperationCounts> counts = countOperations(allVPs, operations, verbose, addChr,
+        		complementType, intersectType, outFile, forceUniqueNames);
+        shardResults.setCounts(counts);
+        printComparisonTable(counts);
+    }
+
+    /**
+     * Print the tables for a job split into shards, from the results of
+     * every shard added together
+     * 
+     * @param results
+     * @param compare
+     * @param countOnly
+     */
+    private void printShardResults(ShardResults results, boolean compare, boolean countOnly) {
+    	if (compare) {
+    		printComparisonTable(results.getCounts());
+    		if (!countOnly) {
+    			VariantPoolSummarizer.PrintSide_by_Side(results.getSummaries());
+    		}
+    	} else if (countOnly) {
+    		printCountTable(results.getCounts());
+    	}
+    }
+
+    /**
+     * Count the results of operations defined on the command line. If a later
+     * operation refers to an earlier operation's ID, the earlier result must
+     * exist as a VariantPool, so it is built as usual and then counted.
+     * 
+     * @param vcfArgs
+     * @param operations
+     * @param verbose
+     * @param addChr
+     * @param complementType
+     * @param intersectType
+     * @param outFile
+     * @param forceUniqueNames
+     * @return
+     * @throws InvalidInputFileException
+     * @throws InvalidOperationException
+     * @throws IOException
+     */
+    private TreeMap<String, SetOperationCounts> countOperations(List<String> vcfArgs, List<String> operations,
+    		boolean verbose, boolean addChr, ComplementType complementType, IntersectType intersectType,
+    		File outFile, boolean forceUniqueNames)
+    				throws InvalidInputFileException, InvalidOperationException, IOException {
+        return countOperations(UtilityBelt.createHeavyVariantPools(vcfArgs, addChr), operations, verbose,
+        		addChr, complementType, intersectType, outFile, forceUniqueNames);
+    }
+
+    private TreeMap<String, SetOperationCounts> countOperations(TreeMap<String, VariantPoolHeavy> allVPs,
+    		List<String> operations, boolean verbose, boolean addChr, ComplementType complementType,
+    		IntersectType intersectType, File outFile, boolean forceUniqueNames)
+    				throws InvalidInputFileException, InvalidOperationException, IOException {
+
+        TreeMap<String, SetOperationCounts> resultingCounts = new TreeMap<String, SetOperationCounts>();
+        ArrayList<VariantPoolHeavy> associatedVPs;
+        VariantPoolHeavy result;
+        SetOperationCounts counts;
+        Operator o;
+        for (int i = 0; i < operations.size(); i++) {
+        	Operation op = OperationFactory.createOperation(operations.get(i), allVPs);
+            SetOperator so = new SetOperator(verbose, addChr);
+            associatedVPs = UtilityBelt.getAssociatedVariantPoolsAsArrayList(op, allVPs);
+            o = op.getOperator();
+
+            if (isReferencedLater(op.getOperationID(), operations, i)) {
+            	if (o == Operator.COMPLEMENT) {
+            		System.out.println("\nPerforming complement...");
+            		result = so.performComplement((ComplementOperation) op, associatedVPs, complementType);
+            	} else if (o == Operator.INTERSECT) {
+            		System.out.println("\nPerforming intersect...");
+            		result = so.performIntersect((IntersectOperation) op, associatedVPs, intersectType, outFile.getCanonicalPath());
+            	} else if (o == Operator.UNION) {
+            		System.out.println("\nPerforming union...");
+            		result = so.performUnion((UnionOperation) op, associatedVPs, forceUniqueNames);
+            	} else {
+            		throw new RuntimeException("Something is very wrong! Received an invalid operator: " + o);
+            	}
+            	allVPs.put(result.getPoolID(), result);
+            	counts = new SetOperationCounts(result);
+            }
+            else if (o == Operator.COMPLEMENT) {
+            	System.out.println("\nCounting complement...");
+            	counts = so.countComplement((ComplementOperation) op, associatedVPs, complementType);
+            } else if (o == Operator.INTERSECT) {
+            	System.out.println("\nCounting intersect...");
+            	counts = so.countIntersect((IntersectOperation) op, associatedVPs, intersectType, outFile.getCanonicalPath());
+            } else if (o == Operator.UNION) {
+            	System.out.println("\nCounting union...");
+            	counts = so.countUnion((UnionOperation) op, associatedVPs, forceUniqueNames);
+            } else {
+            	throw new RuntimeException("Something is very wrong! Received an invalid operator: " + o);
+            }
+            resultingCounts.put(op.getOperationID(), counts);
+        }
+        return resultingCounts;
+    }
+
+    /**
+     * Determine whether any operation after 'index' uses 'operationID' as an input
+     */
+    private boolean isReferencedLater(String operationID, List<String> operations, int index) {
+    	Pattern p = Pattern.compile("[\\[:]" + Pattern.quote(operationID) + "[\\[\\]:]");
+    	for (int i = index + 1; i < operations.size(); i++) {
+    		if (p.matcher(operations.get(i)).find()) {
+    			return true;
+    		}
+    	}
+    	return false;
+    }
+
+    /**
+     * Print the counts for each operation
+     * 
+     * @param resultingCounts
+     */
+    private void printCountTable(TreeMap<String, SetOperationCounts> resultingCounts) {
+        String newLine = System.getProperty("line.separator");
+        String border = "+------------------+--------------+--------------+--------------+--------------+--------------+-----------------+";
+        String leftAlignFormat = "| %-16s | %12d | %12d | %12d | %12d | %12d | %15d |" + newLine;
+
+        System.out.format("\n=====================================================" + newLine);
+        System.out.format("                                                     " + newLine);
+        System.out.format("                 Summary of counts                   " + newLine);
+        System.out.format("                                                     " + newLine);
+        System.out.format("=====================================================" + newLine + newLine);
+
+        System.out.format(border + newLine);
+        System.out.format("|    Operation     |    n Vars    |  n Alleles   |    n SNVs    |   n INDELs   |   n Other    | n Fuzzy Matches |" + newLine);
+        System.out.format(border + newLine);
+        for (SetOperationCounts counts : resultingCounts.values()) {
+        	System.out.format(leftAlignFormat, counts.getOperationID(), counts.getNumVarRecords(),
+        			counts.getNumAlleles(), counts.getNumSNVAlleles(), counts.getNumIndelAlleles(),
+        			counts.getNumOtherAlleles(), counts.getPotentialMatchingIndelAlleles());
+        }
+        System.out.format(border + newLine);
+    }
+
     /**
      * Perform operations defined on the command line
      * 
@@ -392,15 +837,13 @@ public class SetOperatorEngine implements Engine {
 //        ArrayList<Operation> ops = UtilityBelt.createOperations(operations, allVPs);
 
         ArrayList<VariantPoolHeavy> associatedVPs;
-        ArrayList<VCFHeader> associatedVPHeaders;
         VariantPoolHeavy result = null;
         Operator o;
         String intermediateOut, canonicalPath;
-        VCFHeader header;
 //        for (Operation op : ops) {
         for (String oper : operations) {
         	Operation op = OperationFactory.createOperation(oper, allVPs);
-            SetOperator so = new SetOperator(verbose, addChr);
+            ParallelSetOperator so = new ParallelSetOperator(threads, verbose, addChr);
             associatedVPs = UtilityBelt.getAssociatedVariantPoolsAsArrayList(op, allVPs);
             result = null;
 
@@ -419,36 +862,15 @@ public class SetOperatorEngine implements Engine {
             }
 
             if (result != null) {
-                associatedVPHeaders = getHeaders(associatedVPs);
-
                 /*
                  * Try to merge headers between the original VCFs and use for
                  * the resulting VariantPool header. If unsuccessful, emit
                  * warning and continue. A basic header will be generated when
                  * printed to file.
                  */
-                try {
-                    header = new VCFHeader(VCFUtils.smartMergeHeaders(associatedVPHeaders, true), result.getSamples());
-
-                    /*
-                     * If the resulting data has genotype data but the header
-                     * does not specify such, add the appropriate format header
-                     * line
-                     */
-                    if (result.hasGenotypeData() && !header.hasGenotypingData()) {
-                        String s = "Resulting variant pool (" + op.getOperationID() + ") has genotype " + "data but the header does not include the appropriate line. Adding and continuing...";
-                        logger.warn(s);
-                        System.out.println(s);
-
-                        header.addMetaDataLine(new VCFFormatHeaderLine("GT", 1, VCFHeaderLineType.String, "Genotype"));
-                    }
-
-                    result.setHeader(header);
-                } catch (IllegalStateException e) {
-                    String s = "Could not merge headers from VariantPools in operation: ";
-                    String c = "Continuing...";
-                    logger.warn(s + op.toString() + "\t" + c);
-                    System.out.println("Warning: " + s + "\n" + c);
+                if (!SetOperator.setMergedHeader(result, associatedVPs)) {
+                    System.out.println("Warning: Could not merge headers from VariantPools in operation: " +
+                    		"\nContinuing...");
                 }
 
                 /*
@@ -502,18 +924,18 @@ public class SetOperatorEngine implements Engine {
     /**
      * Print the resulting comparison table
      * 
-     * @param resultingVPs
+     * @param resultingCounts
      */
-    private void printComparisonTable(TreeMap<String, VariantPoolHeavy> resultingVPs) {
-        Iterator<String> it = resultingVPs.keySet().iterator();
+    private void printComparisonTable(TreeMap<String, SetOperationCounts> resultingCounts) {
+        Iterator<String> it = resultingCounts.keySet().iterator();
 
         String poolID;
         int acompbCount = 0, bcompaCount = 0, intersectCount = 0, unionCount = 0,
         	acompbFuzCount = 0, bcompaFuzCount = 0, intersectFuzCount = 0, unionFuzCount = 0;
-        VariantPoolHeavy result;
+        SetOperationCounts result;
         while (it.hasNext()) {
             poolID = it.next();
-            result = resultingVPs.get(poolID);
+            result = resultingCounts.get(poolID);
             if ("AcompB".equals(poolID)) {
                 acompbCount = result.getNumVarRecords();
                 acompbFuzCount = result.getPotentialMatchingIndelAlleles();
@@ -567,22 +989,6 @@ public class SetOperatorEngine implements Engine {
 
     }
     
-
-    /**
-     * Get VCFHeaders from the list of VariantPools.
-     * 
-     * @param vps
-     * @return
-     */
-    private ArrayList<VCFHeader> getHeaders(ArrayList<VariantPoolHeavy> vps) {
-
-        ArrayList<VCFHeader> headers = new ArrayList<VCFHeader>();
-        for (VariantPoolHeavy vp : vps) {
-            headers.add(vp.getHeader());
-        }
-        return headers;
-    }
-
     /**
      * Build a string to dynamically provide allowable input options for
      * IntersectType
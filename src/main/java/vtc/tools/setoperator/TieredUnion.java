@@ -0,0 +1,419 @@
+/**
+ *
+ */
+package vtc.tools.setoperator;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.variantcontext.writer.VariantContextWriterFactory;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFUtils;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+
+import vtc.datastructures.ContigAliasMap;
+import vtc.datastructures.InvalidInputFileException;
+import vtc.datastructures.NaturalOrderComparator;
+import vtc.datastructures.VCFSorter;
+import vtc.datastructures.VariantPoolLight;
+
+/**
+ * @author markebbert
+ *
+ *	Union any number of sorted VCFs while keeping memory and open file handles
+ *	bounded. Inputs are merged in tiers of 'mergeWidth' files. Each group in a
+ *	tier is streamed into a sorted, block-compressed temporary run, and the runs
+ *	are merged the same way until one group is left, which is written to the
+ *	output file. At most 'mergeWidth' inputs are open at once. Unsorted inputs
+ *	are sorted into temporary files first.
+ *
+ *	Records at the same position and reference allele are merged into one
+ *	record with every alternate allele and every called genotype. Samples
+ *	without a call are left out and written as NO_CALLs. As with other unions,
+ *	a record is excluded if a sample has different genotypes in two inputs.
+ */
+public class TieredUnion {
+
+	private static Logger logger = Logger.getLogger(TieredUnion.class);
+
+	public static final int DEFAULT_MERGE_WIDTH = 64;
+
+	private int mergeWidth;
+	private File tmpDir;
+	private boolean addChr;
+	private SAMSequenceDictionary dict;
+
+	private HashMap<String, Integer> contigOrder;
+	private NaturalOrderComparator naturalOrder;
+
+	private VCFSorter sorter;
+	private ArrayList<File> openRuns;
+	private int excludedRecords;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * @param mergeWidth number of files merged at once
+	 * @param tmpDir directory for the temporary runs
+	 * @param refDict reference genome with a sequence dictionary
+	 * @param addChr
+	 * @throws InvalidInputFileException
+	 * @throws FileNotFoundException
+	 */
+	public TieredUnion(int mergeWidth, File tmpDir, File refDict, boolean addChr) throws InvalidInputFileException, FileNotFoundException{
+		if(mergeWidth < 2){
+			throw new InvalidInputFileException("Must merge at least two files at a time.");
+		}
+		if(!tmpDir.isDirectory() || !tmpDir.canWrite()){
+			throw new InvalidInputFileException("Cannot write temporary files to " + tmpDir.getPath());
+		}
+		this.mergeWidth = mergeWidth;
+		this.tmpDir = tmpDir;
+		this.addChr = addChr;
+		this.dict = new IndexedFastaSequenceFile(refDict).getSequenceDictionary();
+		if(dict == null){
+			throw new FileNotFoundException("The reference sequence specified ("
+					+ refDict.getAbsolutePath() +
+					") does not have the appropriate dictionary file. Please use"
+					+ " Picard's CreateSequenceDictionary.jar to generate this file.");
+		}
+		this.naturalOrder = new NaturalOrderComparator();
+		this.sorter = new VCFSorter(dict, VCFSorter.DEFAULT_MAX_MEMORY, tmpDir);
+		this.openRuns = new ArrayList<File>();
+		initContigOrder();
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	/**
+	 * The number of merged records excluded because a sample had
+	 * different genotypes in two inputs
+	 * @return
+	 */
+	public int getExcludedRecords(){
+		return this.excludedRecords;
+	}
+
+
+
+	/****************************************************
+	 * Setters
+	 */
+
+	/**
+	 * Set the memory budget used to sort unsorted inputs
+	 * @param maxMemory approximate bytes of records held in memory
+	 * @throws InvalidInputFileException
+	 */
+	public void setSortMemory(long maxMemory) throws InvalidInputFileException{
+		this.sorter = new VCFSorter(dict, maxMemory, tmpDir);
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Union the inputs (formatted as for --input, e.g. 'fId=input.vcf') into 'outFile'
+	 * @param inputs
+	 * @param outFile
+	 * @throws IOException
+	 * @throws InvalidInputFileException
+	 */
+	public void union(List<String> inputs, File outFile) throws IOException, InvalidInputFileException{
+		excludedRecords = 0;
+		try{
+			if(inputs.size() <= mergeWidth){
+				merge(openInputs(inputs), outFile);
+			}
+			else{
+				mergeInTiers(inputs, outFile);
+			}
+		} finally {
+			deleteRuns(new ArrayList<File>(openRuns));
+			sorter.deleteSortedFiles();
+		}
+
+		if(excludedRecords > 0){
+			logger.warn(excludedRecords + " merged records were excluded because a sample had different genotypes in two inputs.");
+		}
+	}
+
+	private void mergeInTiers(List<String> inputs, File outFile) throws IOException, InvalidInputFileException{
+
+		/* The first tier reads the inputs */
+		logger.info("Merging " + inputs.size() + " files in groups of " + mergeWidth + "...");
+		ArrayList<File> runs = new ArrayList<File>();
+		for(int i = 0; i < inputs.size(); i += mergeWidth){
+			runs.add(mergeToRun(openInputs(inputs.subList(i, Math.min(i + mergeWidth, inputs.size())))));
+			sorter.deleteSortedFiles();
+		}
+
+		/* Later tiers read the runs from the tier before */
+		ArrayList<File> nextRuns;
+		List<File> group;
+		while(runs.size() > mergeWidth){
+			logger.info("Merging " + runs.size() + " temporary runs in groups of " + mergeWidth + "...");
+			nextRuns = new ArrayList<File>();
+			for(int i = 0; i < runs.size(); i += mergeWidth){
+				group = runs.subList(i, Math.min(i + mergeWidth, runs.size()));
+				nextRuns.add(mergeToRun(openRuns(group)));
+				deleteRuns(group);
+			}
+			runs = nextRuns;
+		}
+		merge(openRuns(runs), outFile);
+	}
+
+	private ArrayList<VariantPoolLight> openInputs(List<String> inputs) throws InvalidInputFileException, IOException{
+		ArrayList<VariantPoolLight> pools = new ArrayList<VariantPoolLight>();
+		VariantPoolLight vp;
+		for(String input : inputs){
+			vp = new VariantPoolLight(input, false, addChr);
+
+			/* Nothing has been read yet, so the pool can still switch to a sorted copy */
+			vp.setFile(sorter.ensureSorted(vp.getFile()));
+			pools.add(vp);
+		}
+		return pools;
+	}
+
+	private ArrayList<VariantPoolLight> openRuns(List<File> runs) throws IOException{
+		ArrayList<VariantPoolLight> pools = new ArrayList<VariantPoolLight>();
+		for(File run : runs){
+			pools.add(new VariantPoolLight(run, run.getName(), false, addChr));
+		}
+		return pools;
+	}
+
+	private File mergeToRun(ArrayList<VariantPoolLight> pools) throws IOException, InvalidInputFileException{
+		File run = File.createTempFile("vtc_union_", ".vcf.gz", tmpDir);
+		openRuns.add(run);
+		merge(pools, run);
+		return run;
+	}
+
+	private void deleteRuns(List<File> runs){
+		for(File run : runs){
+			if(!run.delete() && run.exists()){
+				logger.warn("Could not delete temporary file " + run.getPath());
+			}
+		}
+		openRuns.removeAll(runs);
+	}
+
+	/**
+	 * Walk the pools in parallel, grouping records at the same locus, and
+	 * write the union of each locus to 'out'
+	 * @param pools
+	 * @param out
+	 * @throws IOException
+	 * @throws InvalidInputFileException
+	 */
+	private void merge(ArrayList<VariantPoolLight> pools, File out) throws IOException, InvalidInputFileException{
+		int nPools = pools.size();
+		VariantContext[] currVars = new VariantContext[nPools];
+		ArrayList<VCFHeader> headers = new ArrayList<VCFHeader>();
+		TreeSet<String> samples = new TreeSet<String>();
+		for(int i = 0; i < nPools; i++){
+			currVars[i] = pools.get(i).getNextVar();
+			VCFHeader header = pools.get(i).getHeader();
+			headers.add(header);
+			samples.addAll(header.getGenotypeSamples());
+		}
+
+		VariantContextWriter writer = createWriter(out);
+		writer.writeHeader(new VCFHeader(VCFUtils.smartMergeHeaders(headers, false), samples));
+
+		VariantContext minVar, var;
+		ArrayList<VariantContext> locusVars = new ArrayList<VariantContext>();
+		try{
+			while(true){
+
+				/* Find the smallest locus among the pools */
+				minVar = null;
+				for(VariantContext v : currVars){
+					if(v != null && (minVar == null || compareLoci(v, minVar) < 0)){
+						minVar = v;
+					}
+				}
+				if(minVar == null){
+					break;
+				}
+
+				/* Collect every record at that locus, in pool order */
+				locusVars.clear();
+				for(int i = 0; i < nPools; i++){
+					while(currVars[i] != null && compareLoci(currVars[i], minVar) == 0){
+						var = currVars[i];
+						locusVars.add(var);
+						currVars[i] = pools.get(i).getNextVar();
+						if(currVars[i] != null && compareLoci(currVars[i], var) < 0){
+							throw new InvalidInputFileException("Input file " + pools.get(i).getFile().getPath()
+									+ " is not sorted. Found " + currVars[i].getChr() + ":" + currVars[i].getStart()
+									+ " after " + var.getChr() + ":" + var.getStart() + ".");
+						}
+					}
+				}
+
+				for(VariantContext merged : mergeLocus(locusVars)){
+					writer.add(merged);
+				}
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Merge the records at a single locus. Records with the same reference
+	 * allele become one record.
+	 * @param locusVars
+	 * @return
+	 */
+	private ArrayList<VariantContext> mergeLocus(ArrayList<VariantContext> locusVars){
+		LinkedHashMap<String, ArrayList<VariantContext>> byRef = new LinkedHashMap<String, ArrayList<VariantContext>>();
+		ArrayList<VariantContext> vars;
+		for(VariantContext v : locusVars){
+			vars = byRef.get(v.getReference().getBaseString());
+			if(vars == null){
+				vars = new ArrayList<VariantContext>();
+				byRef.put(v.getReference().getBaseString(), vars);
+			}
+			vars.add(v);
+		}
+
+		ArrayList<VariantContext> merged = new ArrayList<VariantContext>();
+		VariantContext m;
+		for(ArrayList<VariantContext> refVars : byRef.values()){
+			m = mergeRecords(refVars);
+			if(m != null){
+				merged.add(m);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * Merge records sharing a position and reference allele. Only called
+	 * genotypes are kept. Returns null if a sample has different genotypes.
+	 * @param vars
+	 * @return
+	 */
+	private VariantContext mergeRecords(ArrayList<VariantContext> vars){
+		VariantContext first = vars.get(0);
+		LinkedHashSet<Allele> alleles = new LinkedHashSet<Allele>();
+		LinkedHashMap<String, Genotype> genotypes = new LinkedHashMap<String, Genotype>();
+		Genotype existing;
+		for(VariantContext v : vars){
+			alleles.addAll(v.getAlleles());
+			for(Genotype geno : v.getGenotypes()){
+				if(!geno.isAvailable() || geno.isNoCall()){
+					continue;
+				}
+				existing = genotypes.get(geno.getSampleName());
+				if(existing == null){
+					genotypes.put(geno.getSampleName(), geno);
+				}
+				else if(!existing.sameGenotype(geno)){
+					logger.warn("Sample " + geno.getSampleName() + " has different genotypes at "
+							+ first.getChr() + ":" + first.getStart() + ". Excluding the record.");
+					excludedRecords++;
+					return null;
+				}
+			}
+		}
+
+		String chr = first.getChr();
+		if(addChr && !chr.toLowerCase().startsWith("chr")){
+			chr = "chr" + chr;
+		}
+		VariantContextBuilder vcBuilder = new VariantContextBuilder();
+		vcBuilder.chr(chr);
+		vcBuilder.start(first.getStart());
+		vcBuilder.stop(first.getEnd());
+		vcBuilder.alleles(alleles);
+		vcBuilder.genotypes(genotypes.values());
+		return vcBuilder.make();
+	}
+
+	/**
+	 * Temporary runs and '.gz' outputs are block compressed. Only plain VCFs are indexed.
+	 * @param file
+	 * @return
+	 */
+	private VariantContextWriter createWriter(File file){
+		EnumSet<Options> es;
+		if(VariantContextWriterFactory.isCompressedVcf(file)){
+			es = EnumSet.of(Options.ALLOW_MISSING_FIELDS_IN_HEADER);
+		}
+		else{
+			es = EnumSet.of(Options.INDEX_ON_THE_FLY, Options.ALLOW_MISSING_FIELDS_IN_HEADER);
+		}
+		return VariantContextWriterFactory.create(file, dict, es);
+	}
+
+	/**
+	 * Contigs are ordered as in the reference. Contigs that are not in the
+	 * reference are ordered naturally after those that are.
+	 */
+	private void initContigOrder(){
+		contigOrder = new HashMap<String, Integer>();
+		for(SAMSequenceRecord seq : dict.getSequences()){
+			contigOrder.put(ContigAliasMap.normalize(seq.getSequenceName(), false), seq.getSequenceIndex());
+		}
+	}
+
+	private int compareLoci(VariantContext v1, VariantContext v2){
+		int c = compareContigs(ContigAliasMap.normalize(v1.getChr(), false),
+				ContigAliasMap.normalize(v2.getChr(), false));
+		if(c != 0){
+			return c;
+		}
+		return v1.getStart() < v2.getStart() ? -1 : (v1.getStart() == v2.getStart() ? 0 : 1);
+	}
+
+	private int compareContigs(String c1, String c2){
+		if(c1.equals(c2)){
+			return 0;
+		}
+		Integer i1 = contigOrder.get(c1), i2 = contigOrder.get(c2);
+		if(i1 != null && i2 != null){
+			return i1 < i2 ? -1 : 1;
+		}
+		else if(i1 != null){
+			return -1;
+		}
+		else if(i2 != null){
+			return 1;
+		}
+		return naturalOrder.compare(c1, c2);
+	}
+}
@@ -0,0 +1,550 @@
+/**
+ *
+ */
+package vtc.tools.setoperator;
+
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.reference.IndexedFastaSequenceFile;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.writer.Options;
+import htsjdk.variant.variantcontext.writer.VariantContextWriter;
+import htsjdk.variant.vcf.VCFHeader;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.log4j.Logger;
+
+import vtc.datastructures.ContigAliasMap;
+import vtc.datastructures.InvalidInputFileException;
+import vtc.datastructures.NaturalOrderComparator;
+import vtc.datastructures.PassthroughVCFWriter;
+import vtc.datastructures.VariantPoolLight;
+import vtc.tools.utilitybelt.UtilityBelt;
+import vtc.tools.varstats.AltType;
+
+/**
+ * @author markebbert
+ *
+ *	Count variant alleles in every membership combination (Venn region) across
+ *	N variant pools in a single merge pass. Every pool must be sorted. Each
+ *	alternate allele (chr:pos:ref:alt) is assigned to exactly one region, which
+ *	is represented as a bit mask where bit i is set if pool i contains the allele.
+ *	Counts can optionally be split by variant type (SNV/INDEL/OTHER) and by the
+ *	genotype class of the samples carrying the allele.
+ *
+ *	Unless a sequence dictionary is set, contigs are ordered as in the first
+ *	header with contig lines.
+ */
+public class VennCounter {
+
+	private static Logger logger = Logger.getLogger(VennCounter.class);
+
+	/* Longs are used for the membership masks */
+	public static final int MAX_POOLS = 62;
+
+	public static final String ALL = "ALL";
+	public static final String SNV = "SNV";
+	public static final String INDEL = "INDEL";
+	public static final String OTHER = "OTHER";
+	public static final String HET = "HET";
+	public static final String HOMO_ALT = "HOMO_ALT";
+	public static final String MIXED = "MIXED";
+	public static final String NO_GENOTYPE = "NO_GENOTYPE";
+
+	private ArrayList<VariantPoolLight> pools;
+	private boolean splitByType, splitByGenotype;
+
+	private SAMSequenceDictionary contigDict;
+	private HashMap<String, Integer> contigOrder;
+	private NaturalOrderComparator naturalOrder;
+
+	private TreeMap<Long, TreeMap<String, Integer>> regionCounts;
+	private TreeSet<String> categories;
+
+	/* Per-region VCF output. Only used if the caller asks for it */
+	private File regionVCFDir;
+	private SAMSequenceDictionary regionVCFDict;
+	private HashMap<Long, VariantContextWriter> regionWriters;
+	private HashMap<Long, VariantContext> lastWrittenVar;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	public VennCounter(List<VariantPoolLight> pools, boolean splitByType, boolean splitByGenotype) throws InvalidInputFileException{
+		if(pools.size() > MAX_POOLS){
+			throw new InvalidInputFileException("Cannot count Venn regions for more than " + MAX_POOLS + " input files.");
+		}
+		this.pools = new ArrayList<VariantPoolLight>(pools);
+		this.splitByType = splitByType;
+		this.splitByGenotype = splitByGenotype;
+		this.naturalOrder = new NaturalOrderComparator();
+		this.regionCounts = new TreeMap<Long, TreeMap<String, Integer>>();
+		this.categories = new TreeSet<String>();
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	/**
+	 * Get the counts for every region with at least one allele. Keys are
+	 * region masks and the inner map holds the counts for each category.
+	 * If no split was requested, the only category is 'ALL'.
+	 * @return
+	 */
+	public TreeMap<Long, TreeMap<String, Integer>> getRegionCounts(){
+		return this.regionCounts;
+	}
+
+	/**
+	 * Get the total count for a region (e.g. 'f1' and 'f3' but no others)
+	 * @param mask
+	 * @return
+	 */
+	public int getRegionCount(long mask){
+		TreeMap<String, Integer> counts = regionCounts.get(mask);
+		if(counts == null){
+			return 0;
+		}
+		int total = 0;
+		for(Integer c : counts.values()){
+			total += c;
+		}
+		return total;
+	}
+
+	/**
+	 * Get the mask for the region containing exactly the pools in 'poolIDs'
+	 * @param poolIDs
+	 * @return
+	 */
+	public long getRegionMask(String... poolIDs){
+		long mask = 0;
+		for(String id : poolIDs){
+			for(int i = 0; i < pools.size(); i++){
+				if(pools.get(i).getPoolID().equals(id)){
+					mask |= 1L << i;
+				}
+			}
+		}
+		return mask;
+	}
+
+
+
+	/****************************************************
+	 * Setters
+	 */
+
+	/**
+	 * Order contigs by 'dict' rather than by the input headers
+	 * @param dict
+	 */
+	public void setSequenceDictionary(SAMSequenceDictionary dict){
+		this.contigDict = dict;
+	}
+
+	/**
+	 * Write a VCF for each non-empty region into 'dir'. Records are taken from
+	 * the first pool in the region, so each VCF has that pool's header. Records
+	 * are written as the lines read from that pool, so nothing is reformatted.
+	 * Must be set before counting.
+	 * @param dir
+	 * @param refDict
+	 * @throws FileNotFoundException
+	 */
+	public void writeRegionVCFs(File dir, File refDict) throws FileNotFoundException{
+		SAMSequenceDictionary dict = new IndexedFastaSequenceFile(refDict).getSequenceDictionary();
+		if(dict == null){
+			throw new FileNotFoundException("The reference sequence specified ("
+					+ refDict.getAbsolutePath() +
+					") does not have the appropriate dictionary file. Please use"
+					+ " Picard's CreateSequenceDictionary.jar to generate this file.");
+		}
+		this.regionVCFDir = dir;
+		this.regionVCFDict = dict;
+		this.regionWriters = new HashMap<Long, VariantContextWriter>();
+		this.lastWrittenVar = new HashMap<Long, VariantContext>();
+		for(VariantPoolLight vp : pools){
+			vp.setKeepRawLines(true);
+		}
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Walk all pools in parallel, grouping records at the same locus,
+	 * and count each allele in its region.
+	 * @throws IOException
+	 * @throws InvalidInputFileException
+	 */
+	public void count() throws IOException, InvalidInputFileException{
+		int nPools = pools.size();
+		VariantContext[] currVars = new VariantContext[nPools];
+		for(int i = 0; i < nPools; i++){
+			currVars[i] = pools.get(i).getNextVar();
+		}
+		initContigOrder();
+
+		int recordCount = 0;
+		VariantContext minVar, var;
+		ArrayList<ArrayList<VariantContext>> locusVars = new ArrayList<ArrayList<VariantContext>>();
+		for(int i = 0; i < nPools; i++){
+			locusVars.add(new ArrayList<VariantContext>());
+		}
+
+		while(true){
+
+			/* Find the smallest locus among the pools */
+			minVar = null;
+			for(VariantContext v : currVars){
+				if(v != null && (minVar == null || compareLoci(v, minVar) < 0)){
+					minVar = v;
+				}
+			}
+			if(minVar == null){
+				break;
+			}
+
+			/* Collect every record at that locus from every pool */
+			for(int i = 0; i < nPools; i++){
+				locusVars.get(i).clear();
+				while(currVars[i] != null && compareLoci(currVars[i], minVar) == 0){
+					var = currVars[i];
+					locusVars.get(i).add(var);
+					currVars[i] = pools.get(i).getNextVar();
+					if(currVars[i] != null && compareLoci(currVars[i], var) < 0){
+						throw new InvalidInputFileException("Input file " + pools.get(i).getFile().getPath()
+								+ " is not sorted. Found " + currVars[i].getChr() + ":" + currVars[i].getStart()
+								+ " after " + var.getChr() + ":" + var.getStart() + ".");
+					}
+					recordCount++;
+				}
+			}
+
+			if(recordCount > 1 && recordCount % 10000 == 0) System.out.print("Merged variant records: "
+					+ recordCount + "\r");
+
+			countLocus(locusVars);
+		}
+
+		closeRegionWriters();
+	}
+
+	/**
+	 * Count every allele at a single locus
+	 * @param locusVars the records at this locus, one list per pool
+	 */
+	private void countLocus(ArrayList<ArrayList<VariantContext>> locusVars){
+
+		/* Determine the membership for each allele at this locus */
+		LinkedHashMap<String, Long> alleleMasks = new LinkedHashMap<String, Long>();
+		LinkedHashMap<String, Allele[]> alleles = new LinkedHashMap<String, Allele[]>();
+		String alleleKey;
+		Long mask;
+		for(int i = 0; i < locusVars.size(); i++){
+			for(VariantContext v : locusVars.get(i)){
+				for(Allele alt : v.getAlternateAlleles()){
+					alleleKey = v.getReference().getBaseString() + ":" + alt.getDisplayString();
+					mask = alleleMasks.get(alleleKey);
+					alleleMasks.put(alleleKey, (mask == null ? 0L : mask) | (1L << i));
+					if(!alleles.containsKey(alleleKey)){
+						alleles.put(alleleKey, new Allele[]{v.getReference(), alt});
+					}
+				}
+			}
+		}
+
+		String category;
+		for(String key : alleleMasks.keySet()){
+			mask = alleleMasks.get(key);
+			Allele[] refAlt = alleles.get(key);
+			category = getCategory(refAlt[0], refAlt[1], mask, locusVars);
+			categories.add(category);
+
+			TreeMap<String, Integer> counts = regionCounts.get(mask);
+			if(counts == null){
+				counts = new TreeMap<String, Integer>();
+				regionCounts.put(mask, counts);
+			}
+			Integer c = counts.get(category);
+			counts.put(category, c == null ? 1 : c + 1);
+
+			if(regionWriters != null){
+				writeRegionVar(mask, refAlt[0], refAlt[1], locusVars);
+			}
+		}
+	}
+
+	/**
+	 * Build the category string for an allele (e.g. 'SNV' or 'INDEL/HET')
+	 */
+	private String getCategory(Allele ref, Allele alt, long mask, ArrayList<ArrayList<VariantContext>> locusVars){
+		if(!splitByType && !splitByGenotype){
+			return ALL;
+		}
+		StringBuilder sb = new StringBuilder();
+		if(splitByType){
+			sb.append(getTypeClass(ref, alt));
+		}
+		if(splitByGenotype){
+			if(sb.length() > 0){
+				sb.append("/");
+			}
+			sb.append(getGenotypeClass(ref, alt, mask, locusVars));
+		}
+		return sb.toString();
+	}
+
+	private String getTypeClass(Allele ref, Allele alt){
+		if(alt.isSymbolic() || ref.isSymbolic()){
+			return OTHER;
+		}
+		AltType type = UtilityBelt.determineAltType(ref, alt);
+		if(type == AltType.SNV){
+			return SNV;
+		}
+		else if(UtilityBelt.altTypeIsIndel(type)){
+			return INDEL;
+		}
+		return OTHER;
+	}
+
+	/**
+	 * Determine whether the samples carrying 'alt' in the member pools are
+	 * all heterozygous, all homozygous for the alt, a mix, or absent.
+	 */
+	private String getGenotypeClass(Allele ref, Allele alt, long mask, ArrayList<ArrayList<VariantContext>> locusVars){
+		boolean het = false, homoAlt = false;
+		for(int i = 0; i < locusVars.size(); i++){
+			if((mask & (1L << i)) == 0){
+				continue;
+			}
+			for(VariantContext v : locusVars.get(i)){
+				if(!v.getReference().equals(ref) || !v.hasAlternateAllele(alt)){
+					continue;
+				}
+				for(Genotype geno : v.getGenotypes()){
+					if(geno.countAllele(alt) == 0){
+						continue;
+					}
+					if(geno.isHomVar()){
+						homoAlt = true;
+					}
+					else{
+						het = true;
+					}
+				}
+			}
+		}
+		if(het && homoAlt){
+			return MIXED;
+		}
+		else if(het){
+			return HET;
+		}
+		else if(homoAlt){
+			return HOMO_ALT;
+		}
+		return NO_GENOTYPE;
+	}
+
+	/**
+	 * Write the record carrying this allele from the first pool in the region.
+	 * A record is only written once per region even if several of its alleles
+	 * fall in the same region.
+	 */
+	private void writeRegionVar(long mask, Allele ref, Allele alt, ArrayList<ArrayList<VariantContext>> locusVars){
+		int firstPool = Long.numberOfTrailingZeros(mask);
+		for(VariantContext v : locusVars.get(firstPool)){
+			if(v.getReference().equals(ref) && v.hasAlternateAllele(alt)){
+				if(lastWrittenVar.get(mask) == v){
+					return;
+				}
+				getRegionWriter(mask).add(v);
+				lastWrittenVar.put(mask, v);
+				return;
+			}
+		}
+	}
+
+	private VariantContextWriter getRegionWriter(long mask){
+		VariantContextWriter writer = regionWriters.get(mask);
+		if(writer == null){
+			File file = new File(regionVCFDir, "venn_" + getRegionName(mask, "_") + ".vcf");
+			logger.info("Writing Venn region to " + file.getPath());
+			writer = new PassthroughVCFWriter(file, regionVCFDict,
+					EnumSet.of(Options.INDEX_ON_THE_FLY, Options.ALLOW_MISSING_FIELDS_IN_HEADER));
+			VCFHeader header = pools.get(Long.numberOfTrailingZeros(mask)).getHeader();
+			writer.writeHeader(header);
+			regionWriters.put(mask, writer);
+		}
+		return writer;
+	}
+
+	private void closeRegionWriters(){
+		if(regionWriters == null){
+			return;
+		}
+		for(VariantContextWriter writer : regionWriters.values()){
+			writer.close();
+		}
+	}
+
+	/**
+	 * Contig order is taken from the sequence dictionary, if set, or the first
+	 * header with contig lines. Contigs that are not in either are ordered
+	 * naturally after those that are.
+	 */
+	private void initContigOrder(){
+		contigOrder = new HashMap<String, Integer>();
+		if(contigDict != null){
+			for(SAMSequenceRecord seq : contigDict.getSequences()){
+				contigOrder.put(ContigAliasMap.normalize(seq.getSequenceName(), false), seq.getSequenceIndex());
+			}
+			return;
+		}
+		for(VariantPoolLight vp : pools){
+			VCFHeader header = vp.getHeader();
+			if(header != null && header.getSequenceDictionary() != null
+					&& !header.getSequenceDictionary().isEmpty()){
+				for(SAMSequenceRecord seq : header.getSequenceDictionary().getSequences()){
+					contigOrder.put(ContigAliasMap.normalize(seq.getSequenceName(), false), seq.getSequenceIndex());
+				}
+				return;
+			}
+		}
+	}
+
+	private int compareLoci(VariantContext v1, VariantContext v2){
+		int c = compareContigs(ContigAliasMap.normalize(v1.getChr(), false),
+				ContigAliasMap.normalize(v2.getChr(), false));
+		if(c != 0){
+			return c;
+		}
+		return v1.getStart() < v2.getStart() ? -1 : (v1.getStart() == v2.getStart() ? 0 : 1);
+	}
+
+	private int compareContigs(String c1, String c2){
+		if(c1.equals(c2)){
+			return 0;
+		}
+		Integer i1 = contigOrder.get(c1), i2 = contigOrder.get(c2);
+		if(i1 != null && i2 != null){
+			return i1 < i2 ? -1 : 1;
+		}
+		else if(i1 != null){
+			return -1;
+		}
+		else if(i2 != null){
+			return 1;
+		}
+		return naturalOrder.compare(c1, c2);
+	}
+
+	/**
+	 * Build a name for a region from its pool IDs (e.g. 'f1&f3')
+	 * @param mask
+	 * @param delim
+	 * @return
+	 */
+	public String getRegionName(long mask, String delim){
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < pools.size(); i++){
+			if((mask & (1L << i)) != 0){
+				if(sb.length() > 0){
+					sb.append(delim);
+				}
+				sb.append(pools.get(i).getPoolID());
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Print a table with one row per non-empty region. Each pool gets
+	 * a column marked with 'x' if the region includes it.
+	 */
+	public void printVennTable(){
+		String newLine = System.getProperty("line.separator");
+
+		System.out.format("\n=====================================================" + newLine);
+		System.out.format("                                                     " + newLine);
+		System.out.format("                 Summary of overlap                  " + newLine);
+		System.out.format("                                                     " + newLine);
+		System.out.format("=====================================================" + newLine + newLine);
+
+		ArrayList<String> cols = new ArrayList<String>();
+		for(VariantPoolLight vp : pools){
+			cols.add(vp.getPoolID());
+		}
+		ArrayList<String> countCols = new ArrayList<String>(categories);
+		if(countCols.size() > 1 || !countCols.contains(ALL)){
+			countCols.remove(ALL);
+			countCols.add("Total");
+		}
+		else{
+			countCols.clear();
+			countCols.add("n Alleles");
+		}
+
+		StringBuilder border = new StringBuilder("+"), header = new StringBuilder("|");
+		for(String col : cols){
+			border.append(repeat('-', col.length() + 2)).append("+");
+			header.append(" ").append(col).append(" |");
+		}
+		for(String col : countCols){
+			border.append(repeat('-', Math.max(col.length(), 10) + 2)).append("+");
+			header.append(String.format(" %" + Math.max(col.length(), 10) + "s |", col));
+		}
+
+		System.out.format(border + newLine + header + newLine + border + newLine);
+		for(Long mask : regionCounts.keySet()){
+			StringBuilder row = new StringBuilder("|");
+			for(int i = 0; i < cols.size(); i++){
+				row.append(String.format(" %-" + cols.get(i).length() + "s |", (mask & (1L << i)) != 0 ? "x" : ""));
+			}
+			TreeMap<String, Integer> counts = regionCounts.get(mask);
+			for(String col : countCols){
+				Integer c;
+				if("Total".equals(col) || "n Alleles".equals(col)){
+					c = getRegionCount(mask);
+				}
+				else{
+					c = counts.get(col);
+				}
+				row.append(String.format(" %" + Math.max(col.length(), 10) + "d |", c == null ? 0 : c));
+			}
+			System.out.format(row + newLine);
+		}
+		System.out.format(border + newLine);
+	}
+
+	private static String repeat(char c, int n){
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < n; i++){
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+}
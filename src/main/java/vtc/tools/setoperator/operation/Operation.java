@@ -3,10 +3,10 @@
  */
 package vtc.tools.setoperator.operation;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.TreeMap;
 
+import vtc.VTCSession;
 import vtc.datastructures.VariantPoolHeavy;
 import vtc.tools.setoperator.Operator;
 
@@ -26,8 +26,6 @@ public abstract class Operation {
 	private String operationString;
 	private String operID;
 	private Operator operator;
-	private static ArrayList<String> usedOperationIDs = new ArrayList<String>();
-	private static ArrayList<String> generatedOperationIDs = new ArrayList<String>();
 //	private Matcher matcher;
 //	private HashMap<String, SamplePool> samplePools;
 
@@ -50,13 +48,13 @@ public abstract class Operation {
 		this.operationString = operationString;
 		
 		if(operID == null){
-			this.operID = generateOperationID();
+			this.operID = VTCSession.current().generateOperationID();
 		}
 		else{
 			this.operID = operID;
 		}
 		
-		addOperationID(this.operID);
+		VTCSession.current().addOperationID(this.operID);
 
 		this.operator = op;
 	}
@@ -143,21 +141,6 @@ public abstract class Operation {
 
 
 	
-	/**
-	 * Generate an operation ID if the user didn't provide one. IDs are generated
-	 * as 's1', 's2', etc.
-	 * @return
-	 */
-	private static String generateOperationID(){
-		String id = "s" + Integer.toString(generatedOperationIDs.size() + 1);
-		generatedOperationIDs.add(id);
-		return id;
-	}
-	
-	private static void addOperationID(String operID){
-		usedOperationIDs.add(operID);
-	}
-	
 	@Override
 	public String toString(){
 		return this.operationString;
@@ -5,7 +5,9 @@ package vtc.tools.setoperator.operation;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -96,6 +98,34 @@ public class OperationFactory {
 		return createProperOperation(operation, operID, operator, samplePoolList);
 	}
 	
+	/**
+	 * Find the pools whose records can be added unchanged to an operation's
+	 * result: the first pool of a complement and the only pool of a union.
+	 * Operations that can't be parsed are skipped; they are reported when
+	 * the operation is created.
+	 * 
+	 * @param operations
+	 * @return the pool IDs
+	 */
+	public static TreeSet<String> getPassthroughPoolIDs(List<String> operations){
+		TreeSet<String> poolIDs = new TreeSet<String>();
+		Pattern p = Pattern.compile("^(\\w)\\[(.+)\\]$");
+		for(String operation : operations){
+			String[] operVals = operation.split("=");
+			Matcher m = p.matcher(operVals[operVals.length - 1]);
+			if(operVals.length > 2 || !m.find()){
+				continue;
+			}
+			String[] samplePools = m.group(2).split(":");
+			Operator operator = Operator.getOperator(m.group(1));
+			if(operator == Operator.COMPLEMENT
+					|| (operator == Operator.UNION && samplePools.length == 1)){
+				poolIDs.add(samplePools[0].split("\\[")[0]);
+			}
+		}
+		return poolIDs;
+	}
+	
 	/**
 	 * This method actually creates the Operation object
 	 * @param operationString
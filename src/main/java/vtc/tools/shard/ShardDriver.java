@@ -0,0 +1,696 @@
+/**
+ *
+ */
+package vtc.tools.shard;
+
+import htsjdk.samtools.util.BlockCompressedInputStream;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.samtools.util.BlockCompressedStreamConstants;
+import htsjdk.samtools.util.IOUtil;
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.tribble.FeatureReader;
+import htsjdk.tribble.Tribble;
+import htsjdk.tribble.index.IndexFactory;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.util.TabixUtils;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFContigHeaderLine;
+import htsjdk.variant.vcf.VCFHeader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+
+import org.apache.log4j.Logger;
+
+import vtc.KnownTools;
+import vtc.datastructures.ContigAliasMap;
+import vtc.datastructures.InvalidInputFileException;
+import vtc.datastructures.NaturalOrderComparator;
+import vtc.datastructures.RegionList;
+import vtc.datastructures.RegionList.Region;
+import vtc.tools.setoperator.SetOperatorEngine;
+import vtc.tools.varstats.VarStatsEngine;
+
+/**
+ * @author markebbert
+ *
+ *	Split a SetOperator or VarStats job into shards by contig and run each
+ *	shard in its own JVM. Contigs are grouped into 'shards' contiguous
+ *	groups of about the same length (or number of records, when the
+ *	headers give no lengths), and each group is passed to its shard as
+ *	--regions. Each shard runs in its own directory, so its output files
+ *	keep the names the job would have used. Variants on different contigs
+ *	never match, so the shards' output files are joined in contig order and
+ *	their --shard-results are added together to print the tables.
+ */
+public class ShardDriver {
+
+	private static Logger logger = Logger.getLogger(ShardDriver.class);
+
+	private KnownTools tool;
+	private int shards, workers;
+	private String workerMemory;
+	private File tmpDir;
+	private boolean keepShards = false;
+
+	private ArrayList<String> jobArgs;
+	private ArrayList<String> inputs;
+	private List<String> userRegions;
+	private String out;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * @param tool SetOperator or VarStats
+	 * @param jobArgs the tool's arguments
+	 * @param shards the number of shards
+	 * @param workers the number of shards run at once
+	 * @param workerMemory each worker's maximum heap (e.g., '8g'), or null
+	 * @param tmpDir where each shard's directory is created
+	 */
+	public ShardDriver(KnownTools tool, List<String> jobArgs, int shards, int workers,
+			String workerMemory, File tmpDir){
+		this.tool = tool;
+		this.shards = shards;
+		this.workers = workers;
+		this.workerMemory = workerMemory;
+		this.tmpDir = tmpDir;
+		parseJobArgs(jobArgs);
+	}
+
+
+
+	/****************************************************
+	 * Setters
+	 */
+
+	public void setKeepShards(boolean keepShards){
+		this.keepShards = keepShards;
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Run the job in shards, join the shards' output files and print the
+	 * tables for the whole job.
+	 *
+	 * @throws InvalidInputFileException
+	 * @throws ArgumentParserException
+	 * @throws ShardException
+	 * @throws IOException
+	 */
+	public void run() throws InvalidInputFileException, ArgumentParserException,
+			ShardException, IOException{
+
+		if(inputs.isEmpty()){
+			throw new InvalidInputFileException("No input files found for the job to split.");
+		}
+
+		RegionList regions = userRegions == null ? null : RegionList.parse(userRegions);
+		TreeMap<String, String> contigs = new TreeMap<String, String>(new NaturalOrderComparator());
+		HashMap<String, Long> weights = new HashMap<String, Long>();
+		readContigs(contigs, weights, regions);
+		if(contigs.isEmpty()){
+			throw new InvalidInputFileException("No contigs found in the input files" +
+					(regions == null ? "." : " for the given regions."));
+		}
+		ArrayList<ArrayList<String>> groups = groupContigs(contigs, weights);
+
+		File workDir = File.createTempFile("vtc_shards_", "", tmpDir);
+		if(!workDir.delete() || !workDir.mkdir()){
+			throw new IOException("Could not create shard directory: " + workDir.getPath());
+		}
+		logger.info("Running " + tool.getName() + " as " + groups.size() + " shards in " + workDir.getPath());
+		System.out.println("Running " + tool.getName() + " as " + groups.size() + " shards with " +
+				Math.min(workers, groups.size()) + " workers...");
+
+		ArrayList<File> shardDirs = new ArrayList<File>();
+		ArrayList<String> results = new ArrayList<String>();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(workers, groups.size()));
+		boolean failed = true;
+		try{
+			ArrayList<Future<Integer>> exits = new ArrayList<Future<Integer>>();
+			for(int i = 0; i < groups.size(); i++){
+				File shardDir = new File(workDir, "shard_" + i);
+				if(!shardDir.mkdir()){
+					throw new IOException("Could not create shard directory: " + shardDir.getPath());
+				}
+				File resultsFile = new File(workDir, "shard_" + i + ".results");
+				shardDirs.add(shardDir);
+				results.add(resultsFile.getPath());
+				exits.add(executor.submit(new Worker(
+						workerCommand(groups.get(i), regions, resultsFile), shardDir,
+						new File(workDir, "shard_" + i + ".log"))));
+			}
+
+			for(int i = 0; i < exits.size(); i++){
+				int exit = getExitValue(exits.get(i));
+				File log = new File(workDir, "shard_" + i + ".log");
+				if(exit != 0 || !new File(results.get(i)).exists()){
+					throw new ShardException("Shard " + i + " (" + groups.get(i).get(0) + "-" +
+							groups.get(i).get(groups.get(i).size() - 1) + ") failed. See " + log.getPath());
+				}
+				logger.info("Shard " + i + " finished.");
+			}
+
+			joinOutputFiles(shardDirs);
+			printTables(results);
+			failed = false;
+		} finally {
+			executor.shutdownNow();
+			if(failed){
+				logger.info("Keeping shard directory: " + workDir.getPath());
+			}
+			else if(!keepShards){
+				delete(workDir);
+			}
+		}
+	}
+
+	/**
+	 * Pick out the inputs, regions and output file from the job's arguments.
+	 * The inputs and other existing files are given absolute paths, since
+	 * each shard runs in its own directory.
+	 *
+	 * @param args
+	 */
+	private void parseJobArgs(List<String> args){
+		jobArgs = new ArrayList<String>();
+		inputs = new ArrayList<String>();
+		String option = null;
+		for(int i = 0; i < args.size(); i++){
+			String arg = args.get(i);
+			if(isOption(arg)){
+				option = arg;
+				if(arg.equals("-o") || arg.equals("--out")){
+					out = i + 1 < args.size() ? args.get(++i) : null;
+					option = null;
+				}
+				else if(arg.equals("--regions")){
+					userRegions = new ArrayList<String>();
+				}
+				else{
+					jobArgs.add(arg);
+				}
+				continue;
+			}
+			if("--regions".equals(option)){
+				userRegions.add(arg);
+				continue;
+			}
+			arg = absolutePath(arg);
+			if("-i".equals(option) || "--input".equals(option)){
+				inputs.add(arg.indexOf('=') < 0 ? arg : arg.substring(arg.indexOf('=') + 1));
+			}
+			jobArgs.add(arg);
+		}
+	}
+
+	private static boolean isOption(String arg){
+		return arg.startsWith("-") && arg.length() > 1 && !Character.isDigit(arg.charAt(1));
+	}
+
+	/**
+	 * Give 'arg' (or the path in 'id=path') an absolute path if it names an
+	 * existing file
+	 */
+	private static String absolutePath(String arg){
+		if(new File(arg).exists()){
+			return new File(arg).getAbsolutePath();
+		}
+		int eq = arg.indexOf('=');
+		if(eq > 0 && new File(arg.substring(eq + 1)).exists()){
+			return arg.substring(0, eq + 1) + new File(arg.substring(eq + 1)).getAbsolutePath();
+		}
+		return arg;
+	}
+
+	/**
+	 * Read the contigs from each input's header, keyed by their normalized
+	 * name. Inputs without contig lines are scanned and their contigs are
+	 * weighed by the number of records instead of their length.
+	 *
+	 * @param contigs
+	 * @param weights
+	 * @param regions contigs without a region are left out, if not null
+	 * @throws IOException
+	 */
+	private void readContigs(TreeMap<String, String> contigs, HashMap<String, Long> weights,
+			RegionList regions) throws IOException{
+		for(String input : inputs){
+			FeatureReader<VariantContext> reader = AbstractFeatureReader.getFeatureReader(input,
+					new VCFCodec(), false);
+			VCFHeader header = (VCFHeader) reader.getHeader();
+			reader.close();
+
+			if(!header.getContigLines().isEmpty()){
+				for(VCFContigHeaderLine line : header.getContigLines()){
+					int length = line.getSAMSequenceRecord().getSequenceLength();
+					addContig(contigs, weights, regions, line.getID(), length > 0 ? length : 1);
+				}
+				continue;
+			}
+
+			HashMap<String, Long> counts = new HashMap<String, Long>();
+			BufferedReader br = IOUtil.openFileForBufferedReading(new File(input));
+			try{
+				String line, chr;
+				Long count;
+				while((line = br.readLine()) != null){
+					if(line.startsWith("#") || line.isEmpty()){
+						continue;
+					}
+					chr = line.indexOf('\t') < 0 ? line : line.substring(0, line.indexOf('\t'));
+					count = counts.get(chr);
+					counts.put(chr, count == null ? 1 : count + 1);
+				}
+			} finally {
+				br.close();
+			}
+			for(String chr : counts.keySet()){
+				addContig(contigs, weights, regions, chr, counts.get(chr));
+			}
+		}
+	}
+
+	private void addContig(TreeMap<String, String> contigs, HashMap<String, Long> weights,
+			RegionList regions, String contig, long weight){
+		if(regions != null && !regions.overlaps(contig, 1, Integer.MAX_VALUE)){
+			return;
+		}
+		String key = ContigAliasMap.normalize(contig, false);
+		if(!contigs.containsKey(key)){
+			contigs.put(key, contig);
+		}
+		Long w = weights.get(key);
+		weights.put(key, w == null ? weight : Math.max(w, weight));
+	}
+
+	/**
+	 * Group the contigs, in order, into at most 'shards' groups of about the
+	 * same weight
+	 *
+	 * @param contigs
+	 * @param weights
+	 * @return the contig names in each group
+	 */
+	private ArrayList<ArrayList<String>> groupContigs(TreeMap<String, String> contigs,
+			HashMap<String, Long> weights){
+		int groupCount = Math.min(shards, contigs.size());
+		double total = 0;
+		for(Long w : weights.values()){
+			total += w;
+		}
+
+		ArrayList<ArrayList<String>> groups = new ArrayList<ArrayList<String>>();
+		ArrayList<String> group = new ArrayList<String>();
+		double cumulative = 0;
+		int contigsLeft = contigs.size();
+		for(String key : contigs.keySet()){
+			group.add(contigs.get(key));
+			cumulative += weights.get(key);
+			contigsLeft--;
+			int groupsLeft = groupCount - groups.size() - 1;
+			if(groupsLeft > 0 && (contigsLeft == groupsLeft
+					|| cumulative >= total * (groups.size() + 1) / groupCount)){
+				groups.add(group);
+				group = new ArrayList<String>();
+			}
+		}
+		groups.add(group);
+		return groups;
+	}
+
+	/**
+	 * Build the command for a shard: the job's arguments, with the shard's
+	 * regions, its output file name and where to write its results.
+	 */
+	private ArrayList<String> workerCommand(ArrayList<String> group, RegionList regions, File resultsFile){
+		ArrayList<String> command = new ArrayList<String>();
+		command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		if(workerMemory != null){
+			command.add("-Xmx" + workerMemory);
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add("vtc.VTCEngine");
+		command.add(tool.getShortCommand());
+		command.addAll(jobArgs);
+		if(out != null){
+			command.add("-o");
+			command.add(new File(out).getName());
+		}
+
+		command.add("--regions");
+		if(regions == null){
+			command.addAll(group);
+		}
+		else{
+			for(Region r : regions.getRegions(group)){
+				command.add(r.toString());
+			}
+		}
+
+		command.add("--shard-results");
+		command.add(resultsFile.getAbsolutePath());
+		return command;
+	}
+
+	/**
+	 * Wait for a shard's process to exit
+	 */
+	private int getExitValue(Future<Integer> exit) throws ShardException, IOException{
+		try {
+			return exit.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ShardException("Interrupted while waiting for the shards to finish.");
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException){
+				throw (IOException) e.getCause();
+			}
+			throw new ShardException("Could not run shard: " + e.getCause().getMessage());
+		}
+	}
+
+	/**
+	 * Join each output file written by the shards, in shard order, into the
+	 * directory the job would have written it to.
+	 *
+	 * @param shardDirs
+	 * @throws IOException
+	 */
+	private void joinOutputFiles(ArrayList<File> shardDirs) throws IOException{
+		File outDir = out == null ? new File(".") : new File(out).getAbsoluteFile().getParentFile();
+		TreeSet<String> names = new TreeSet<String>();
+		for(File shardDir : shardDirs){
+			File[] files = shardDir.listFiles();
+			if(files != null){
+				for(File f : files){
+					if(f.isFile() && !f.getName().endsWith(".log") && !isIndex(f.getName())){
+						names.add(f.getName());
+					}
+				}
+			}
+		}
+
+		ArrayList<File> parts;
+		File joined;
+		for(String name : names){
+			parts = new ArrayList<File>();
+			for(File shardDir : shardDirs){
+				if(new File(shardDir, name).isFile()){
+					parts.add(new File(shardDir, name));
+				}
+			}
+			joined = new File(outDir, name);
+			logger.info("Joining " + parts.size() + " shards into " + joined.getPath());
+			if((name.endsWith(".gz") || name.endsWith(".bgz")) && isBlockCompressed(parts)){
+				joinBlockCompressedVCFs(parts, joined);
+				if(new File(parts.get(0).getPath() + TabixUtils.STANDARD_INDEX_EXTENSION).exists()){
+					IndexFactory.createTabixIndex(joined, new VCFCodec(), TabixFormat.VCF, null)
+							.writeBasedOnFeatureFile(joined);
+				}
+			}
+			else{
+				joinTextFiles(parts, joined, name.endsWith(".vcf") || name.endsWith(".vcf.gz"));
+				if(new File(parts.get(0).getPath() + Tribble.STANDARD_INDEX_EXTENSION).exists()){
+					IndexFactory.createLinearIndex(joined, new VCFCodec()).writeBasedOnFeatureFile(joined);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Indexes are rebuilt for the joined files rather than joined
+	 */
+	private static boolean isIndex(String name){
+		return name.endsWith(TabixUtils.STANDARD_INDEX_EXTENSION)
+				|| name.endsWith(Tribble.STANDARD_INDEX_EXTENSION);
+	}
+
+	private boolean isBlockCompressed(ArrayList<File> parts) throws IOException{
+		for(File part : parts){
+			InputStream in = new BufferedInputStream(new FileInputStream(part));
+			try{
+				if(!BlockCompressedInputStream.isValidFile(in)){
+					return false;
+				}
+			} finally {
+				in.close();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Join text files. Later parts of a VCF lose their header; later parts
+	 * of other files lose their first line if it matches the first part's.
+	 */
+	private void joinTextFiles(ArrayList<File> parts, File joined, boolean vcf) throws IOException{
+		BufferedWriter writer = IOUtil.openFileForBufferedWriting(joined);
+		try{
+			String firstLine = null;
+			for(int i = 0; i < parts.size(); i++){
+				BufferedReader reader = IOUtil.openFileForBufferedReading(parts.get(i));
+				try{
+					String line;
+					boolean first = true;
+					while((line = reader.readLine()) != null){
+						if(i == 0 && first){
+							firstLine = line;
+						}
+						if(i > 0 && (vcf ? line.startsWith("#") : first && line.equals(firstLine))){
+							first = false;
+							continue;
+						}
+						first = false;
+						writer.write(line);
+						writer.newLine();
+					}
+				} finally {
+					reader.close();
+				}
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * Join block-compressed VCFs without recompressing them. Only the block
+	 * holding the end of each later part's header is recompressed (from the
+	 * first record on); every other block is copied as is, and the
+	 * end-of-file block is written once at the end.
+	 */
+	private void joinBlockCompressedVCFs(ArrayList<File> parts, File joined) throws IOException{
+		OutputStream os = new BufferedOutputStream(new FileOutputStream(joined));
+		try{
+			for(int i = 0; i < parts.size(); i++){
+				File part = parts.get(i);
+				long end = dataLength(part);
+				if(i == 0){
+					copyBytes(part, 0, end, os);
+					continue;
+				}
+
+				long pointer = firstRecordPointer(part);
+				if(pointer < 0){
+					continue; // Header only
+				}
+				long address = pointer >>> 16;
+				int offset = (int) (pointer & 0xFFFF);
+
+				RandomAccessFile raf = new RandomAccessFile(part, "r");
+				int blockSize, blockDataSize;
+				try{
+					raf.seek(address + BlockCompressedStreamConstants.BLOCK_LENGTH_OFFSET);
+					blockSize = (raf.read() | (raf.read() << 8)) + 1;
+					raf.seek(address + blockSize - 4);
+					blockDataSize = raf.read() | (raf.read() << 8) | (raf.read() << 16) | (raf.read() << 24);
+				} finally {
+					raf.close();
+				}
+
+				/* Recompress the records at the end of the header's last block */
+				if(offset < blockDataSize){
+					byte[] rest = new byte[blockDataSize - offset];
+					BlockCompressedInputStream in = new BlockCompressedInputStream(part);
+					try{
+						in.seek(pointer);
+						int read = 0, n;
+						while(read < rest.length && (n = in.read(rest, read, rest.length - read)) > 0){
+							read += n;
+						}
+					} finally {
+						in.close();
+					}
+					BlockCompressedOutputStream bgzf = new BlockCompressedOutputStream(os, null);
+					bgzf.write(rest);
+					bgzf.flush();
+				}
+				copyBytes(part, address + blockSize, end, os);
+			}
+			os.write(BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK);
+		} finally {
+			os.close();
+		}
+	}
+
+	/**
+	 * The virtual file pointer of the first record in a block-compressed
+	 * VCF, or -1 if it has none
+	 */
+	private long firstRecordPointer(File part) throws IOException{
+		BlockCompressedInputStream in = new BlockCompressedInputStream(part);
+		try{
+			long pointer = 0;
+			String line;
+			while((line = in.readLine()) != null){
+				if(!line.startsWith("#")){
+					return pointer;
+				}
+				pointer = in.getFilePointer();
+			}
+			return -1;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * The length of a block-compressed file without its end-of-file block
+	 */
+	private long dataLength(File part) throws IOException{
+		byte[] eof = BlockCompressedStreamConstants.EMPTY_GZIP_BLOCK;
+		long length = part.length();
+		if(length < eof.length){
+			return length;
+		}
+		byte[] tail = new byte[eof.length];
+		RandomAccessFile raf = new RandomAccessFile(part, "r");
+		try{
+			raf.seek(length - eof.length);
+			raf.readFully(tail);
+		} finally {
+			raf.close();
+		}
+		return Arrays.equals(tail, eof) ? length - eof.length : length;
+	}
+
+	private void copyBytes(File file, long start, long end, OutputStream os) throws IOException{
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try{
+			raf.seek(start);
+			byte[] buffer = new byte[64 * 1024];
+			long left = end - start;
+			int n;
+			while(left > 0 && (n = raf.read(buffer, 0, (int) Math.min(buffer.length, left))) > 0){
+				os.write(buffer, 0, n);
+				left -= n;
+			}
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Print the tables for the whole job by running the tool on the shards'
+	 * results
+	 */
+	private void printTables(ArrayList<String> results){
+		ArrayList<String> args = new ArrayList<String>(jobArgs);
+		if(out != null){
+			args.add("-o");
+			args.add(out);
+		}
+		args.add("--merge-shard-results");
+		args.addAll(results);
+		String[] argArray = args.toArray(new String[args.size()]);
+
+		if(tool == KnownTools.SET_OPERATOR){
+			new SetOperatorEngine(argArray).operate();
+		}
+		else{
+			new VarStatsEngine(argArray).doStats();
+		}
+	}
+
+	private void delete(File file){
+		File[] files = file.listFiles();
+		if(files != null){
+			for(File f : files){
+				delete(f);
+			}
+		}
+		if(!file.delete()){
+			logger.warn("Could not delete " + file.getPath());
+		}
+	}
+
+	/**
+	 * Run a shard's process, writing its output to 'log'
+	 */
+	private static class Worker implements Callable<Integer> {
+		private List<String> command;
+		private File dir, log;
+
+		public Worker(List<String> command, File dir, File log){
+			this.command = command;
+			this.dir = dir;
+			this.log = log;
+		}
+
+		@Override
+		public Integer call() throws IOException, InterruptedException {
+			ProcessBuilder pb = new ProcessBuilder(command);
+			pb.directory(dir);
+			pb.redirectErrorStream(true);
+			Process p = pb.start();
+			InputStream in = p.getInputStream();
+			OutputStream os = new BufferedOutputStream(new FileOutputStream(log));
+			try{
+				byte[] buffer = new byte[8192];
+				int n;
+				while((n = in.read(buffer)) > 0){
+					os.write(buffer, 0, n);
+				}
+				return p.waitFor();
+			} finally {
+				os.close();
+				in.close();
+				p.destroy();
+			}
+		}
+	}
+}
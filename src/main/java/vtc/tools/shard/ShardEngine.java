@@ -0,0 +1,135 @@
+/**
+ *
+ */
+package vtc.tools.shard;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import org.apache.log4j.Logger;
+
+import vtc.Engine;
+import vtc.KnownTools;
+import vtc.datastructures.InvalidInputFileException;
+import vtc.tools.utilitybelt.UtilityBelt;
+
+/**
+ * @author markebbert
+ *
+ */
+public class ShardEngine implements Engine {
+
+    private static Logger         logger = Logger.getLogger(ShardEngine.class);
+
+    private ArgumentParser        parser;
+
+    private Namespace             parsedArgs;
+    private KnownTools            tool;
+    private List<String>          jobArgs;
+
+    public ShardEngine(String[] args) {
+        init(args);
+    }
+
+    private void init(String[] args) {
+
+        parser = ArgumentParsers.newArgumentParser("Shard");
+        parser.description("Shard (SH) splits a SetOperator or VarStats job by contig into" +
+        		" shards and runs each shard in its own Java process, with its own memory." +
+        		" The shards' output files are joined in contig order and the tables are" +
+        		" printed for the whole job.");
+        parser.usage("java -jar vtc.jar Shard [options] {SetOperator,VarStats} [tool options]");
+        parser.defaultHelp(true); // Add default values to help menu
+
+        parser.addArgument("--shards")
+        		.dest("SHARDS")
+        		.type(Integer.class)
+        		.help("Number of shards. Contigs are grouped into shards of about the same" +
+        				" length. Defaults to --workers.");
+
+        parser.addArgument("--workers")
+        		.dest("WORKERS")
+        		.type(Integer.class)
+        		.setDefault(2)
+        		.help("Number of shards run at once.");
+
+        parser.addArgument("--worker-memory")
+        		.dest("WORKER_MEMORY")
+        		.type(String.class)
+        		.help("Maximum heap for each shard's process (e.g. '8g'). Defaults to" +
+        				" the JVM's default.");
+
+        parser.addArgument("-T", "--tmp-dir")
+        		.dest("TMP_DIR")
+        		.type(String.class)
+        		.setDefault(System.getProperty("java.io.tmpdir"))
+        		.help("Directory for each shard's output and log.");
+
+        parser.addArgument("--keep-shards")
+        		.dest("KEEP_SHARDS")
+        		.action(Arguments.storeTrue())
+        		.help("Keep each shard's output and log after they are joined.");
+
+        try {
+            /* Everything from the tool name on is the job to split */
+            int toolIndex = -1;
+            for (int i = 0; i < args.length && toolIndex < 0; i++) {
+            	if (KnownTools.SET_OPERATOR.permittedCommandsContain(args[i])
+            			|| KnownTools.VAR_STATS.permittedCommandsContain(args[i])) {
+            		toolIndex = i;
+            	}
+            }
+            if (toolIndex < 0) {
+            	parsedArgs = parser.parseArgs(args);
+            	throw new ArgumentParserException("Specify SetOperator or VarStats, followed" +
+            			" by the arguments for the job to split.", parser);
+            }
+            parsedArgs = parser.parseArgs(Arrays.copyOfRange(args, 0, toolIndex));
+            tool = KnownTools.SET_OPERATOR.permittedCommandsContain(args[toolIndex]) ?
+            		KnownTools.SET_OPERATOR : KnownTools.VAR_STATS;
+            jobArgs = new ArrayList<String>(Arrays.asList(args).subList(toolIndex + 1, args.length));
+        } catch (ArgumentParserException e) {
+            parser.handleError(e);
+            UtilityBelt.exit(1);
+        }
+    }
+
+    /**
+     * Run the job in shards and join the results
+     */
+    public void shard() {
+    	try {
+    		int workers = parsedArgs.getInt("WORKERS");
+    		Integer shards = parsedArgs.getInt("SHARDS");
+    		if (shards == null) {
+    			shards = workers;
+    		}
+    		if (workers < 1 || shards < 1) {
+    			throw new ArgumentParserException("--shards and --workers must be at least 1.", parser);
+    		}
+
+    		ShardDriver driver = new ShardDriver(tool, jobArgs, shards, workers,
+    				parsedArgs.getString("WORKER_MEMORY"), new File(parsedArgs.getString("TMP_DIR")));
+    		driver.setKeepShards(parsedArgs.getBoolean("KEEP_SHARDS"));
+    		driver.run();
+
+    	} catch (ArgumentParserException e) {
+    		UtilityBelt.printErrorUsageHelpAndExit(parser, logger, e);
+    	} catch (InvalidInputFileException e) {
+    		UtilityBelt.printErrorUsageAndExit(parser, logger, e);
+    	} catch (ShardException e) {
+    		UtilityBelt.printErrorUsageAndExit(parser, logger, e);
+    	} catch (Exception e) {
+    		logger.error("Caught unexpected exception, something is very wrong!");
+    		e.printStackTrace();
+    	}
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ *
+ */
+package vtc.tools.shard;
+
+/**
+ * @author markebbert
+ *
+ */
+public class ShardException extends Exception{
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = -2975315310632485871L;
+
+	public ShardException(String message){
+		super(message);
+	}
+
+}
@@ -0,0 +1,164 @@
+/**
+ *
+ */
+package vtc.tools.shard;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+import vtc.datastructures.InvalidInputFileException;
+import vtc.tools.setoperator.SetOperationCounts;
+import vtc.tools.varstats.VariantPoolSummary;
+
+/**
+ * @author markebbert
+ *
+ *	The tables a SetOperator or VarStats shard would have printed: set
+ *	operation counts and VariantPool summaries. Each shard writes its
+ *	results to a file, and the results from every shard are added
+ *	together so the tables can be printed for the whole job.
+ */
+public class ShardResults implements Serializable {
+
+	/**
+	 *
+	 */
+	private static final long serialVersionUID = -6287310425830114263L;
+
+	private TreeMap<String, SetOperationCounts> counts;
+	private HashMap<String, VariantPoolSummary> summaries;
+	private HashMap<String, VariantPoolSummary> detailedSummaries;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	public ShardResults(){
+		this.counts = new TreeMap<String, SetOperationCounts>();
+		this.summaries = new HashMap<String, VariantPoolSummary>();
+		this.detailedSummaries = new HashMap<String, VariantPoolSummary>();
+	}
+
+	/**
+	 * Read the results written by each shard and add them together
+	 * @param files
+	 * @return
+	 * @throws InvalidInputFileException
+	 * @throws IOException
+	 */
+	public static ShardResults read(List<String> files) throws InvalidInputFileException, IOException{
+		ShardResults results = new ShardResults();
+		for(String file : files){
+			results.add(read(new File(file)));
+		}
+		return results;
+	}
+
+	private static ShardResults read(File file) throws InvalidInputFileException, IOException{
+		ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try{
+			return (ShardResults) in.readObject();
+		} catch (ClassNotFoundException e){
+			throw new InvalidInputFileException("Invalid shard results file: " + file.getPath());
+		} catch (ClassCastException e){
+			throw new InvalidInputFileException("Invalid shard results file: " + file.getPath());
+		} finally {
+			in.close();
+		}
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	public TreeMap<String, SetOperationCounts> getCounts(){
+		return this.counts;
+	}
+
+	public HashMap<String, VariantPoolSummary> getSummaries(){
+		return this.summaries;
+	}
+
+	public HashMap<String, VariantPoolSummary> getDetailedSummaries(){
+		return this.detailedSummaries;
+	}
+
+
+
+	/****************************************************
+	 * Setters
+	 */
+
+	public void setCounts(TreeMap<String, SetOperationCounts> counts){
+		this.counts = counts;
+	}
+
+	public void setSummaries(HashMap<String, VariantPoolSummary> summaries){
+		this.summaries = summaries;
+	}
+
+	public void setDetailedSummaries(HashMap<String, VariantPoolSummary> detailedSummaries){
+		this.detailedSummaries = detailedSummaries;
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Add the results of another shard to these
+	 * @param results
+	 */
+	public void add(ShardResults results){
+		SetOperationCounts c;
+		for(SetOperationCounts shardCounts : results.getCounts().values()){
+			c = counts.get(shardCounts.getOperationID());
+			if(c == null){
+				c = new SetOperationCounts(shardCounts.getOperationID());
+				counts.put(c.getOperationID(), c);
+			}
+			c.add(shardCounts);
+		}
+		addSummaries(summaries, results.getSummaries());
+		addSummaries(detailedSummaries, results.getDetailedSummaries());
+	}
+
+	private void addSummaries(HashMap<String, VariantPoolSummary> total,
+			HashMap<String, VariantPoolSummary> shardSummaries){
+		VariantPoolSummary s;
+		for(String poolID : shardSummaries.keySet()){
+			s = total.get(poolID);
+			total.put(poolID, s == null ? shardSummaries.get(poolID)
+					: VariantPoolSummary.addRegionSummaries(s, shardSummaries.get(poolID)));
+		}
+	}
+
+	/**
+	 * Write these results to 'file'
+	 * @param file
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException{
+		ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try{
+			out.writeObject(this);
+		} finally {
+			out.close();
+		}
+	}
+}
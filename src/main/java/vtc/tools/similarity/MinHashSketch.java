@@ -0,0 +1,178 @@
+/**
+ *
+ */
+package vtc.tools.similarity;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * @author markebbert
+ *
+ *	A bottom-k MinHash sketch. The sketch keeps the k smallest 63-bit hashes
+ *	of the items added to it. Two sketches estimate the Jaccard similarity of
+ *	their sets, and a single sketch estimates its own cardinality (the 'KMV'
+ *	estimator), so no separate cardinality sketch is needed.
+ */
+public class MinHashSketch {
+
+	private static final double MAX_HASH = Math.pow(2, 63);
+
+	private int k;
+	private TreeSet<Long> building;
+	private long[] hashes;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	public MinHashSketch(int k){
+		if(k < 2){
+			throw new IllegalArgumentException("Sketch size must be at least 2. Got: " + k);
+		}
+		this.k = k;
+		this.building = new TreeSet<Long>();
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	public int getK(){
+		return this.k;
+	}
+
+	/**
+	 * Get the sorted hashes in the sketch
+	 * @return
+	 */
+	public long[] getHashes(){
+		if(hashes == null){
+			hashes = new long[building.size()];
+			int i = 0;
+			for(Long h : building){
+				hashes[i++] = h;
+			}
+		}
+		return hashes;
+	}
+
+	/**
+	 * Estimate the number of distinct items added to this sketch. The count is
+	 * exact if fewer than k items were added.
+	 * @return
+	 */
+	public double estimateCardinality(){
+		return estimateCardinality(getHashes(), k);
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	public void add(String item){
+		addHash(hash(item));
+	}
+
+	public void addHash(long h){
+		if(building.size() < k){
+			building.add(h);
+			hashes = null;
+		}
+		else if(h < building.last() && building.add(h)){
+			building.pollLast();
+			hashes = null;
+		}
+	}
+
+	/**
+	 * Estimate the Jaccard similarity between the sets behind two sketches
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public static double jaccard(MinHashSketch a, MinHashSketch b){
+		int[] shared = new int[1];
+		long[] union = bottomKUnion(a, b, shared);
+		if(union.length == 0){
+			return 0;
+		}
+		return (double) shared[0] / union.length;
+	}
+
+	/**
+	 * Estimate the size of the intersection of the sets behind two sketches
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public static double estimateIntersection(MinHashSketch a, MinHashSketch b){
+		int[] shared = new int[1];
+		long[] union = bottomKUnion(a, b, shared);
+		if(union.length == 0){
+			return 0;
+		}
+		double unionSize = estimateCardinality(union, Math.min(a.getK(), b.getK()));
+		return unionSize * shared[0] / union.length;
+	}
+
+	/**
+	 * Merge the two sketches and return the bottom-k hashes of the union.
+	 * shared[0] is set to the number of those hashes found in both sketches.
+	 */
+	private static long[] bottomKUnion(MinHashSketch a, MinHashSketch b, int[] shared){
+		long[] ha = a.getHashes(), hb = b.getHashes();
+		int k = Math.min(a.getK(), b.getK());
+		long[] union = new long[Math.min(k, ha.length + hb.length)];
+		int i = 0, j = 0, n = 0;
+		shared[0] = 0;
+		while(n < union.length && (i < ha.length || j < hb.length)){
+			if(j >= hb.length || (i < ha.length && ha[i] < hb[j])){
+				union[n++] = ha[i++];
+			}
+			else if(i >= ha.length || hb[j] < ha[i]){
+				union[n++] = hb[j++];
+			}
+			else{
+				union[n++] = ha[i];
+				shared[0]++;
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(union, n);
+	}
+
+	private static double estimateCardinality(long[] sortedHashes, int k){
+		if(sortedHashes.length < k){
+			return sortedHashes.length;
+		}
+		double kth = (sortedHashes[k - 1] + 1) / MAX_HASH;
+		return (k - 1) / kth;
+	}
+
+	/**
+	 * 64-bit FNV-1a followed by a final avalanche mix. The sign bit is
+	 * dropped so hashes sort naturally as longs.
+	 * @param s
+	 * @return
+	 */
+	public static long hash(String s){
+		long h = 0xcbf29ce484222325L;
+		for(int i = 0; i < s.length(); i++){
+			h ^= s.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h >>> 1;
+	}
+}
@@ -0,0 +1,150 @@
+/**
+ *
+ */
+package vtc.tools.similarity;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentGroup;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import org.apache.log4j.Logger;
+
+import vtc.Engine;
+import vtc.datastructures.InvalidInputFileException;
+import vtc.datastructures.VariantPoolLight;
+import vtc.tools.utilitybelt.UtilityBelt;
+
+/**
+ * @author markebbert
+ *
+ */
+public class SimilarityEngine implements Engine {
+
+    private static Logger         logger = Logger.getLogger(SimilarityEngine.class);
+
+    private ArgumentParser        parser;
+
+    private Namespace             parsedArgs;
+
+    public SimilarityEngine(String[] args) {
+        init(args);
+    }
+
+    private void init(String[] args) {
+
+        parser = ArgumentParsers.newArgumentParser("SimilarityMatrix");
+        parser.description("Similarity Matrix (SM) estimates the pairwise Jaccard similarity and" +
+        		" containment between many VCFs (or samples) from MinHash sketches built in" +
+        		" one pass over each file.");
+        parser.defaultHelp(true); // Add default values to help menu
+        ArgumentGroup sketch = parser.addArgumentGroup("sketch arguments");
+        ArgumentGroup output = parser.addArgumentGroup("output arguments");
+
+        parser.addArgument("-i", "--input")
+                .nargs("+")
+                .dest("VCF")
+                .required(true)
+                .type(String.class)
+                .help("Specify a VCF input file. Multiple files may be " +
+                		"specified at once. An ID may be provided for the input file " +
+                		"as follows: '--input fId=input.vcf fId2=input2.vcf', where " +
+                		"'fId' and 'fId2' are the new IDs. If IDs " +
+                		"are excluded, IDs will be assigned as 'v1', " +
+                		"'v2', etc. by default.");
+
+        sketch.addArgument("-k", "--sketch-size")
+        		.dest("SKETCH_SIZE")
+        		.type(Integer.class)
+        		.setDefault(1024)
+        		.help("Number of hashes kept per sketch. Larger sketches are more accurate.");
+
+        sketch.addArgument("-p", "--per-sample")
+        		.dest("PER_SAMPLE")
+        		.action(Arguments.storeTrue())
+        		.help("Sketch each sample (the sites where it carries the alternate allele)" +
+        				" instead of each file. Samples are named 'fId[sId]'.");
+
+        sketch.addArgument("-t", "--threads")
+        		.dest("THREADS")
+        		.type(Integer.class)
+        		.setDefault(Runtime.getRuntime().availableProcessors())
+        		.help("Number of threads used to compute the matrix.");
+
+        sketch.addArgument("-e", "--exact")
+        		.nargs("+")
+        		.dest("EXACT")
+        		.type(String.class)
+        		.help("Compute exact counts for selected pairs (e.g. 'fId1:fId2'" +
+        				" or 'fId1[sId1]:fId2[sId2]') by re-reading their files.");
+
+        output.addArgument("-o", "--out")
+        		.dest("OUT").setDefault("similarity")
+        		.help("Specify the output prefix. Writes '<prefix>.jaccard.tsv' and" +
+        				" '<prefix>.containment.tsv'.");
+
+        try {
+            parsedArgs = parser.parseArgs(args);
+        } catch (ArgumentParserException e) {
+            parser.handleError(e);
+            UtilityBelt.exit(1);
+        }
+    }
+
+    /**
+     * Build the sketches, compute and print the matrices, and run any exact pairs
+     */
+    public void computeSimilarity() {
+
+    	try {
+    		List<String> vcfArgs = parsedArgs.getList("VCF");
+    		int sketchSize = parsedArgs.getInt("SKETCH_SIZE");
+    		int threads = parsedArgs.getInt("THREADS");
+    		if(sketchSize < 2){
+    			throw new ArgumentParserException("Sketch size must be at least 2.", parser);
+    		}
+    		if(threads < 1){
+    			throw new ArgumentParserException("Must use at least one thread.", parser);
+    		}
+
+    		ArrayList<String[]> exactPairs = new ArrayList<String[]>();
+    		if(parsedArgs.getList("EXACT") != null){
+    			exactPairs = SimilarityMatrix.parsePairs(parsedArgs.<String>getList("EXACT"));
+    		}
+
+    		SimilarityMatrix matrix = new SimilarityMatrix(sketchSize, parsedArgs.getBoolean("PER_SAMPLE"));
+    		for(String vcfArg : vcfArgs){
+    			matrix.addVariantPool(new VariantPoolLight(vcfArg, false, false));
+    		}
+
+    		System.out.println("Computing similarity between " + matrix.getSetNames().size() + " variant sets...");
+    		matrix.computeMatrix(threads);
+
+    		String prefix = parsedArgs.getString("OUT");
+    		matrix.printMatrix(matrix.getJaccard(), new File(prefix + ".jaccard.tsv"));
+    		matrix.printMatrix(matrix.getContainment(), new File(prefix + ".containment.tsv"));
+
+    		for(String[] pair : exactPairs){
+    			int[] counts = matrix.exactCounts(pair[0], pair[1]);
+    			int union = counts[0] + counts[1] - counts[2];
+    			System.out.println(String.format(Locale.US, "Exact %s vs %s: %d shared of %d and %d sites. Jaccard: %.4f",
+    					pair[0], pair[1], counts[2], counts[0], counts[1], union == 0 ? 0 : (double) counts[2] / union));
+    		}
+
+    	} catch (ArgumentParserException e) {
+    		UtilityBelt.printErrorUsageHelpAndExit(parser, logger, e);
+    	} catch (InvalidInputFileException e) {
+    		UtilityBelt.printErrorUsageAndExit(parser, logger, e);
+    	} catch (Exception e) {
+    		logger.error("Caught unexpected exception, something is very wrong!");
+    		e.printStackTrace();
+    	}
+    }
+}
@@ -0,0 +1,306 @@
+/**
+ *
+ */
+package vtc.tools.similarity;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+import vtc.datastructures.InvalidInputFileException;
+import vtc.datastructures.VariantPoolLight;
+import vtc.tools.sitecatalog.SiteCatalog;
+
+/**
+ * @author markebbert
+ *
+ *	Estimate the pairwise Jaccard similarity and containment between many
+ *	variant sets. Each VCF is streamed once to build a MinHash sketch of its
+ *	sites (and optionally one per sample, covering the sites where the sample
+ *	carries the alternate allele). The matrix is then computed from the
+ *	sketches alone, one row per task. Exact counts can be computed for
+ *	selected pairs by re-reading their VCFs.
+ *
+ *	Sets are named by their pool ID (e.g. 'fId') or 'fId[sId]' for samples.
+ */
+public class SimilarityMatrix {
+
+	private static Logger logger = Logger.getLogger(SimilarityMatrix.class);
+
+	private int sketchSize;
+	private boolean perSample;
+
+	private LinkedHashMap<String, MinHashSketch> sketches;
+	private LinkedHashMap<String, VariantPoolLight> pools;
+
+	private double[][] jaccard, containment;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * @param sketchSize number of hashes kept per sketch
+	 * @param perSample if true, sketch each sample instead of each VCF
+	 */
+	public SimilarityMatrix(int sketchSize, boolean perSample){
+		this.sketchSize = sketchSize;
+		this.perSample = perSample;
+		this.sketches = new LinkedHashMap<String, MinHashSketch>();
+		this.pools = new LinkedHashMap<String, VariantPoolLight>();
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	public ArrayList<String> getSetNames(){
+		return new ArrayList<String>(sketches.keySet());
+	}
+
+	public MinHashSketch getSketch(String setName){
+		return sketches.get(setName);
+	}
+
+	/**
+	 * Estimated Jaccard similarity. Only available after computeMatrix().
+	 * @return
+	 */
+	public double[][] getJaccard(){
+		return this.jaccard;
+	}
+
+	/**
+	 * Estimated containment, where [i][j] is the fraction of set i found in
+	 * set j. Only available after computeMatrix().
+	 * @return
+	 */
+	public double[][] getContainment(){
+		return this.containment;
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Stream a VCF once and add its sketch(es)
+	 * @param vp
+	 * @throws IOException
+	 */
+	public void addVariantPool(VariantPoolLight vp) throws IOException{
+		logger.info("Sketching " + vp.getFile().getPath());
+		pools.put(vp.getPoolID(), vp);
+
+		NumberFormat nf = NumberFormat.getInstance(Locale.US);
+		MinHashSketch fileSketch = new MinHashSketch(sketchSize);
+		LinkedHashMap<String, MinHashSketch> sampleSketches = null;
+		int recordCount = 0;
+		long h;
+		VariantContext var;
+		while((var = vp.getNextVar()) != null){
+
+			if(recordCount > 1 && recordCount % 100000 == 0) System.out.print("Sketched variant records: "
+            		+ nf.format(recordCount) + "\r");
+
+			if(perSample && sampleSketches == null){
+				sampleSketches = new LinkedHashMap<String, MinHashSketch>();
+				for(String sample : var.getSampleNamesOrderedByName()){
+					sampleSketches.put(sample, new MinHashSketch(sketchSize));
+				}
+			}
+
+			for(Allele alt : var.getAlternateAlleles()){
+				h = MinHashSketch.hash(SiteCatalog.generateSiteKey(var, alt));
+				if(!perSample){
+					fileSketch.addHash(h);
+					continue;
+				}
+				for(Genotype geno : var.getGenotypes()){
+					if(geno.countAllele(alt) > 0){
+						sampleSketches.get(geno.getSampleName()).addHash(h);
+					}
+				}
+			}
+			recordCount++;
+		}
+
+		if(!perSample){
+			sketches.put(vp.getPoolID(), fileSketch);
+		}
+		else if(sampleSketches != null){
+			for(String sample : sampleSketches.keySet()){
+				sketches.put(vp.getPoolID() + "[" + sample + "]", sampleSketches.get(sample));
+			}
+		}
+	}
+
+	/**
+	 * Compute the estimated Jaccard and containment matrices from the
+	 * sketches using 'nThreads' threads. Each row is a separate task.
+	 * @param nThreads
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 */
+	public void computeMatrix(int nThreads) throws InterruptedException, ExecutionException{
+		final ArrayList<MinHashSketch> sk = new ArrayList<MinHashSketch>(sketches.values());
+		final int n = sk.size();
+		jaccard = new double[n][n];
+		containment = new double[n][n];
+
+		final double[] cardinalities = new double[n];
+		for(int i = 0; i < n; i++){
+			cardinalities[i] = sk.get(i).estimateCardinality();
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+		try{
+			ArrayList<Future<?>> rows = new ArrayList<Future<?>>();
+			for(int row = 0; row < n; row++){
+				final int i = row;
+				rows.add(executor.submit(new Runnable(){
+					public void run(){
+						for(int j = i; j < n; j++){
+							if(i == j){
+								jaccard[i][j] = 1;
+								containment[i][j] = 1;
+								continue;
+							}
+							double inter = MinHashSketch.estimateIntersection(sk.get(i), sk.get(j));
+							double jac = MinHashSketch.jaccard(sk.get(i), sk.get(j));
+
+							/* Each cell is written by exactly one task, so no locking is needed */
+							jaccard[i][j] = jac;
+							jaccard[j][i] = jac;
+							containment[i][j] = cardinalities[i] == 0 ? 0 : Math.min(1, inter / cardinalities[i]);
+							containment[j][i] = cardinalities[j] == 0 ? 0 : Math.min(1, inter / cardinalities[j]);
+						}
+					}
+				}));
+			}
+			for(Future<?> f : rows){
+				f.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Count the exact intersection between two sets by re-reading their VCFs.
+	 * Returns {size of set 1, size of set 2, size of the intersection}.
+	 *
+	 * @param set1
+	 * @param set2
+	 * @return
+	 * @throws IOException
+	 * @throws InvalidInputFileException
+	 */
+	public int[] exactCounts(String set1, String set2) throws IOException, InvalidInputFileException{
+		HashSet<String> sites1 = collectSites(set1);
+		HashSet<String> sites2 = collectSites(set2);
+		int inter = 0;
+		for(String site : sites1){
+			if(sites2.contains(site)){
+				inter++;
+			}
+		}
+		return new int[]{sites1.size(), sites2.size(), inter};
+	}
+
+	private HashSet<String> collectSites(String setName) throws IOException, InvalidInputFileException{
+		if(!sketches.containsKey(setName)){
+			throw new InvalidInputFileException("Unknown variant set: " + setName);
+		}
+		String poolID = setName, sample = null;
+		int bracket = setName.indexOf('[');
+		if(bracket > 0){
+			poolID = setName.substring(0, bracket);
+			sample = setName.substring(bracket + 1, setName.length() - 1);
+		}
+		File file = pools.get(poolID).getFile();
+
+		/* Re-read the file with a new pool so the original is untouched */
+		VariantPoolLight vp = new VariantPoolLight(file, poolID + "_exact", false, false);
+		HashSet<String> sites = new HashSet<String>();
+		VariantContext var;
+		while((var = vp.getNextVar()) != null){
+			for(Allele alt : var.getAlternateAlleles()){
+				if(sample != null){
+					Genotype geno = var.getGenotype(sample);
+					if(geno == null || geno.countAllele(alt) == 0){
+						continue;
+					}
+				}
+				sites.add(SiteCatalog.generateSiteKey(var, alt));
+			}
+		}
+		return sites;
+	}
+
+	/**
+	 * Print a matrix as a tab-delimited table with set names as row and column headers
+	 * @param matrix
+	 * @param file
+	 * @throws IOException
+	 */
+	public void printMatrix(double[][] matrix, File file) throws IOException{
+		ArrayList<String> names = getSetNames();
+		PrintWriter writer = new PrintWriter(file);
+		StringBuilder sb = new StringBuilder();
+		for(String name : names){
+			sb.append("\t").append(name);
+		}
+		writer.println(sb.toString());
+		for(int i = 0; i < names.size(); i++){
+			sb = new StringBuilder(names.get(i));
+			for(int j = 0; j < names.size(); j++){
+				sb.append("\t").append(String.format(Locale.US, "%.4f", matrix[i][j]));
+			}
+			writer.println(sb.toString());
+		}
+		writer.close();
+		if(writer.checkError()){
+			throw new IOException("Could not write similarity matrix to " + file.getPath());
+		}
+	}
+
+	/**
+	 * Parse 'set1:set2' pairs for exact counting
+	 * @param pairs
+	 * @return
+	 * @throws InvalidInputFileException
+	 */
+	public static ArrayList<String[]> parsePairs(List<String> pairs) throws InvalidInputFileException{
+		ArrayList<String[]> parsed = new ArrayList<String[]>();
+		for(String pair : pairs){
+			String[] sets = pair.split(":");
+			if(sets.length != 2){
+				throw new InvalidInputFileException("Invalid pair specified: " + pair + ". Expected 'set1:set2'.");
+			}
+			parsed.add(sets);
+		}
+		return parsed;
+	}
+}
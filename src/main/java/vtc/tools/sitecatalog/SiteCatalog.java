@@ -0,0 +1,576 @@
+/**
+ *
+ */
+package vtc.tools.sitecatalog;
+
+import htsjdk.tribble.AbstractFeatureReader;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+import vtc.datastructures.CompressedBitmap;
+import vtc.datastructures.ContigAliasMap;
+import vtc.datastructures.InvalidInputFileException;
+import vtc.datastructures.VariantPoolHeavy;
+import vtc.datastructures.VariantPoolLight;
+
+/**
+ * @author markebbert
+ *
+ *	A persistent catalog of the sites found in many VCFs. Every site (chr:pos:ref:alt)
+ *	gets an ID from a global SiteDictionary and each ingested VCF stores one
+ *	CompressedBitmap with all of its sites plus one bitmap per sample with the sites
+ *	where that sample carries the alternate allele. Site-level intersects, unions and
+ *	complements across any number of VCFs are then bitmap operations. Only the final
+ *	result is hydrated, by reading the source VCFs until its sites are found.
+ *
+ *	The catalog directory holds:
+ *		sites.dict	-- the site dictionary
+ *		catalog.tsv	-- one line per ingested VCF (ID, path, modification time, size, sites, samples)
+ *		bitmaps/	-- one bitmap file per ingested VCF
+ */
+public class SiteCatalog {
+
+	private static Logger logger = Logger.getLogger(SiteCatalog.class);
+
+	private static final String DICTIONARY_FILE = "sites.dict";
+	private static final String MANIFEST_FILE = "catalog.tsv";
+	private static final String BITMAP_DIR = "bitmaps";
+	private static final String BITMAP_EXTENSION = ".bm";
+	private static final String GENERATED_ID_PREFIX = "v";
+
+	// Match on the expected pattern for an operand (e.g. f1 or f1[s1] )
+	private static Pattern operandPattern = Pattern.compile("^(\\w+)(\\[(.+)\\])?$");
+
+	// IDs name the bitmap files, so they are limited to what an operand allows
+	private static Pattern idPattern = Pattern.compile("^\\w+$");
+
+	private File catalogDir;
+	private SiteDictionary dictionary;
+	private LinkedHashMap<String, CatalogEntry> entries;
+	private LinkedHashMap<String, VCFBitmaps> loadedBitmaps;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * Open the catalog in 'catalogDir', creating it if it does not exist
+	 * @param catalogDir
+	 * @throws IOException
+	 */
+	public SiteCatalog(File catalogDir) throws IOException{
+		this.catalogDir = catalogDir;
+		File bitmapDir = new File(catalogDir, BITMAP_DIR);
+		if(!bitmapDir.exists() && !bitmapDir.mkdirs()){
+			throw new IOException("Could not create site catalog directory: " + bitmapDir.getAbsolutePath());
+		}
+		this.dictionary = new SiteDictionary(new File(catalogDir, DICTIONARY_FILE));
+		this.entries = new LinkedHashMap<String, CatalogEntry>();
+		this.loadedBitmaps = new LinkedHashMap<String, VCFBitmaps>();
+		loadManifest();
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	public ArrayList<CatalogEntry> getEntries(){
+		return new ArrayList<CatalogEntry>(entries.values());
+	}
+
+	public CatalogEntry getEntry(String vcfID){
+		return entries.get(vcfID);
+	}
+
+	/**
+	 * Get the entry 'vcf' was ingested as, under any ID
+	 * @param vcf
+	 * @return the entry, or null if 'vcf' is not in the catalog
+	 * @throws IOException
+	 */
+	public CatalogEntry findEntry(File vcf) throws IOException{
+		String path = vcf.getCanonicalPath();
+		for(CatalogEntry entry : entries.values()){
+			if(entry.getPath().equals(path)){
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get the first of 'v1', 'v2', etc. that no entry uses yet
+	 * @return
+	 */
+	public String generateEntryID(){
+		int i = entries.size() + 1;
+		while(entries.containsKey(GENERATED_ID_PREFIX + i)){
+			i++;
+		}
+		return GENERATED_ID_PREFIX + i;
+	}
+
+	public int getNumSites() throws IOException{
+		return dictionary.getNumSites();
+	}
+
+	/**
+	 * Get the bitmap for an operand. Operands are either a VCF ID
+	 * (all sites in that VCF) or 'vcfID[sample]' (the sites where
+	 * the sample carries the alternate allele).
+	 *
+	 * @param operand
+	 * @return
+	 * @throws InvalidInputFileException
+	 * @throws IOException
+	 */
+	public CompressedBitmap getBitmap(String operand) throws InvalidInputFileException, IOException{
+		Matcher m = operandPattern.matcher(operand);
+		if(!m.find()){
+			throw new InvalidInputFileException("Malformed site catalog operand: " + operand);
+		}
+		VCFBitmaps bitmaps = getVCFBitmaps(m.group(1));
+		if(m.group(3) == null){
+			return bitmaps.sites;
+		}
+		CompressedBitmap sampleSites = bitmaps.sampleSites.get(m.group(3));
+		if(sampleSites == null){
+			throw new InvalidInputFileException("Sample '" + m.group(3) + "' does not exist in catalog entry '"
+					+ m.group(1) + "'");
+		}
+		return sampleSites;
+	}
+
+
+
+	/****************************************************
+	 * Ingestion
+	 */
+
+	/**
+	 * Add a VCF to the catalog. If the same file was already ingested under
+	 * this ID and has not been modified since, nothing is done.
+	 *
+	 * @param vcfID letters, digits and '_' only
+	 * @param vcf
+	 * @return the number of sites in the VCF
+	 * @throws IOException
+	 * @throws InvalidInputFileException if 'vcfID' is not a valid ID
+	 */
+	public int ingest(String vcfID, File vcf) throws IOException, InvalidInputFileException{
+		if(!idPattern.matcher(vcfID).matches()){
+			throw new InvalidInputFileException("Invalid site catalog ID '" + vcfID
+					+ "'. IDs may only contain letters, digits and '_'.");
+		}
+		String path = vcf.getCanonicalPath();
+		CatalogEntry existing = entries.get(vcfID);
+		if(existing != null && existing.getPath().equals(path)
+				&& existing.getLastModified() == vcf.lastModified()
+				&& existing.getSize() == vcf.length()){
+			logger.info("Catalog entry '" + vcfID + "' is up to date. Skipping " + vcf.getPath());
+			return existing.getNumSites();
+		}
+		logger.info("Ingesting " + vcf.getPath() + " into site catalog as '" + vcfID + "'");
+
+		NumberFormat nf = NumberFormat.getInstance(Locale.US);
+		VariantPoolLight vp = new VariantPoolLight(vcf, vcfID, false, false);
+		VCFBitmaps bitmaps = new VCFBitmaps();
+		int recordCount = 0, siteID;
+
+		/* The header is read with the first record. Take the samples from
+		 * it so they are all cataloged, even if the file has no records.
+		 */
+		VariantContext var = vp.getNextVar();
+		for(String sample : vp.getHeader().getGenotypeSamples()){
+			bitmaps.sampleSites.put(sample, new CompressedBitmap());
+		}
+		for(; var != null; var = vp.getNextVar()){
+
+			if(recordCount > 1 && recordCount % 100000 == 0) System.out.print("Cataloged variant records: "
+            		+ nf.format(recordCount) + "\r");
+
+			for(Allele alt : var.getAlternateAlleles()){
+				siteID = dictionary.getOrAssignSiteID(generateSiteKey(var, alt));
+				bitmaps.sites.add(siteID);
+
+				for(Genotype geno : var.getGenotypes()){
+					if(geno.countAllele(alt) > 0){
+						bitmaps.sampleSites.get(geno.getSampleName()).add(siteID);
+					}
+				}
+			}
+			recordCount++;
+		}
+
+		/* Save the dictionary first. Bitmaps are useless without it. */
+		dictionary.save();
+		writeBitmaps(vcfID, bitmaps);
+		loadedBitmaps.put(vcfID, bitmaps);
+
+		CatalogEntry entry = new CatalogEntry(vcfID, path, vcf.lastModified(), vcf.length(),
+				bitmaps.sites.getCardinality(), new ArrayList<String>(bitmaps.sampleSites.keySet()));
+		entries.put(vcfID, entry);
+		saveManifest();
+		return entry.getNumSites();
+	}
+
+
+
+	/****************************************************
+	 * Set operations
+	 */
+
+	/**
+	 * Return the sites found in all operands
+	 * @param operands
+	 * @return
+	 * @throws InvalidInputFileException
+	 * @throws IOException
+	 */
+	public CompressedBitmap intersect(List<String> operands) throws InvalidInputFileException, IOException{
+		CompressedBitmap result = getBitmap(operands.get(0));
+		for(int i = 1; i < operands.size(); i++){
+			result = CompressedBitmap.and(result, getBitmap(operands.get(i)));
+		}
+		return result;
+	}
+
+	/**
+	 * Return the sites found in any operand
+	 * @param operands
+	 * @return
+	 * @throws InvalidInputFileException
+	 * @throws IOException
+	 */
+	public CompressedBitmap union(List<String> operands) throws InvalidInputFileException, IOException{
+		CompressedBitmap result = new CompressedBitmap();
+		for(String operand : operands){
+			result = CompressedBitmap.or(result, getBitmap(operand));
+		}
+		return result;
+	}
+
+	/**
+	 * Return the sites in the first operand that are not in any of
+	 * the others (i.e., 'A-B-C' as SetOperator does it).
+	 * @param operands
+	 * @return
+	 * @throws InvalidInputFileException
+	 * @throws IOException
+	 */
+	public CompressedBitmap complement(List<String> operands) throws InvalidInputFileException, IOException{
+		CompressedBitmap result = getBitmap(operands.get(0));
+		for(int i = 1; i < operands.size(); i++){
+			result = CompressedBitmap.andNot(result, getBitmap(operands.get(i)));
+		}
+		return result;
+	}
+
+	/**
+	 * Build a VariantPoolHeavy with every record from the source VCFs that
+	 * has at least one site in 'sites'. Sources are read in order and only
+	 * the first record for a given chr:pos:ref is kept.
+	 *
+	 * Each source is only read until the result's sites that are in it,
+	 * and were not found in an earlier source, have been found. Sources
+	 * with none of them are not read past the header, so an intersect or
+	 * complement only reads its first operand's VCF.
+	 *
+	 * @param sites
+	 * @param operands the operands whose VCFs should be read
+	 * @param poolID
+	 * @return
+	 * @throws InvalidInputFileException
+	 * @throws IOException
+	 */
+	public VariantPoolHeavy hydrate(CompressedBitmap sites, List<String> operands, String poolID)
+			throws InvalidInputFileException, IOException{
+
+		/* Collect the VCFs (in order and without duplicates) behind the operands */
+		ArrayList<String> vcfIDs = new ArrayList<String>();
+		for(String operand : operands){
+			Matcher m = operandPattern.matcher(operand);
+			if(m.find() && !vcfIDs.contains(m.group(1))){
+				vcfIDs.add(m.group(1));
+			}
+		}
+
+		/* Only the result's site keys are read from the dictionary */
+		HashMap<String, Integer> siteKeys = dictionary.getSiteKeys(sites);
+
+		VariantPoolHeavy result = new VariantPoolHeavy(false, poolID);
+		result.setFile(new File(poolID));
+		HashSet<String> hydratedKeys = new HashSet<String>();
+		ArrayList<VCFHeader> headers = new ArrayList<VCFHeader>();
+		TreeSet<String> samples = new TreeSet<String>();
+		CompressedBitmap remaining = sites;
+		VariantContext var;
+		String varKey;
+		for(String vcfID : vcfIDs){
+			CatalogEntry entry = entries.get(vcfID);
+			if(entry == null){
+				throw new InvalidInputFileException("No catalog entry with ID: " + vcfID);
+			}
+			File vcf = new File(entry.getPath());
+			if(!vcf.exists()){
+				throw new InvalidInputFileException("Source VCF for catalog entry '" + vcfID
+						+ "' no longer exists: " + entry.getPath());
+			}
+			if(vcf.lastModified() != entry.getLastModified()){
+				logger.warn("Source VCF for catalog entry '" + vcfID + "' changed since it was"
+						+ " ingested. Re-ingest it to keep the catalog accurate.");
+			}
+
+			/* The result's sites in this VCF that no earlier VCF had */
+			CompressedBitmap vcfSites = getVCFBitmaps(vcfID).sites;
+			CompressedBitmap toFind = CompressedBitmap.and(remaining, vcfSites);
+			int nToFind = toFind.getCardinality();
+			HashSet<Integer> found = new HashSet<Integer>();
+			remaining = CompressedBitmap.andNot(remaining, vcfSites);
+
+			AbstractFeatureReader<VariantContext, ?> reader =
+					AbstractFeatureReader.getFeatureReader(vcf.getPath(), new VCFCodec(), false);
+			try{
+				headers.add((VCFHeader) reader.getHeader());
+				if(nToFind > 0){
+					logger.info("Hydrating catalog result from " + vcf.getPath());
+					Iterator<VariantContext> it = reader.iterator();
+					while(found.size() < nToFind && it.hasNext()){
+						var = it.next();
+						varKey = ContigAliasMap.normalize(var.getChr(), false) + ":" + var.getStart()
+								+ ":" + var.getReference();
+						boolean hydrated = hydratedKeys.contains(varKey);
+						for(Allele alt : var.getAlternateAlleles()){
+							Integer siteID = siteKeys.get(generateSiteKey(var, alt));
+							if(siteID == null){
+								continue;
+							}
+							if(toFind.contains(siteID)){
+								found.add(siteID);
+							}
+							if(!hydrated){
+								/* Decode the genotypes. Undecoded ones are written as
+								 * they were read, without the other VCFs' samples.
+								 */
+								var.getSampleNames();
+								result.addVariant(var, false);
+								hydratedKeys.add(varKey);
+								hydrated = true;
+							}
+						}
+					}
+				}
+			} finally {
+				reader.close();
+			}
+			samples.addAll(entry.getSamples());
+		}
+		result.addSamples(samples);
+		result.setHeader(new VCFHeader(VCFUtils.smartMergeHeaders(headers, true), samples));
+		return result;
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Generate the key for a site. 'chr' is ignored on the contig
+	 * so files using either naming convention share sites.
+	 * @param var
+	 * @param alt
+	 * @return
+	 */
+	public static String generateSiteKey(VariantContext var, Allele alt){
+		return ContigAliasMap.normalize(var.getChr(), false) + ":" + Integer.toString(var.getStart()) + ":"
+				+ var.getReference().getBaseString() + ":" + alt.getDisplayString();
+	}
+
+	private VCFBitmaps getVCFBitmaps(String vcfID) throws InvalidInputFileException, IOException{
+		VCFBitmaps bitmaps = loadedBitmaps.get(vcfID);
+		if(bitmaps == null){
+			if(!entries.containsKey(vcfID)){
+				throw new InvalidInputFileException("No catalog entry with ID: " + vcfID);
+			}
+			bitmaps = readBitmaps(vcfID);
+			loadedBitmaps.put(vcfID, bitmaps);
+		}
+		return bitmaps;
+	}
+
+	private File getBitmapFile(String vcfID){
+		return new File(new File(catalogDir, BITMAP_DIR), vcfID + BITMAP_EXTENSION);
+	}
+
+	private void writeBitmaps(String vcfID, VCFBitmaps bitmaps) throws IOException{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(getBitmapFile(vcfID))));
+		bitmaps.sites.write(out);
+		out.writeInt(bitmaps.sampleSites.size());
+		for(String sample : bitmaps.sampleSites.keySet()){
+			out.writeUTF(sample);
+			bitmaps.sampleSites.get(sample).write(out);
+		}
+		out.close();
+	}
+
+	private VCFBitmaps readBitmaps(String vcfID) throws IOException{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(getBitmapFile(vcfID))));
+		VCFBitmaps bitmaps = new VCFBitmaps();
+		try{
+			bitmaps.sites = CompressedBitmap.read(in);
+			int nSamples = in.readInt();
+			for(int i = 0; i < nSamples; i++){
+				String sample = in.readUTF();
+				bitmaps.sampleSites.put(sample, CompressedBitmap.read(in));
+			}
+		} finally {
+			in.close();
+		}
+		return bitmaps;
+	}
+
+	private void loadManifest() throws IOException{
+		File manifest = new File(catalogDir, MANIFEST_FILE);
+		if(!manifest.exists()){
+			return;
+		}
+		BufferedReader br = new BufferedReader(new FileReader(manifest));
+		String line;
+		while((line = br.readLine()) != null){
+			if(line.length() == 0){
+				continue;
+			}
+			CatalogEntry entry = CatalogEntry.parse(line);
+			entries.put(entry.getID(), entry);
+		}
+		br.close();
+	}
+
+	private void saveManifest() throws IOException{
+		PrintWriter writer = new PrintWriter(new File(catalogDir, MANIFEST_FILE));
+		for(CatalogEntry entry : entries.values()){
+			writer.println(entry.toString());
+		}
+		writer.close();
+		if(writer.checkError()){
+			throw new IOException("Could not write site catalog manifest in " + catalogDir.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * The bitmaps for a single VCF
+	 */
+	private static class VCFBitmaps {
+		CompressedBitmap sites = new CompressedBitmap();
+		TreeMap<String, CompressedBitmap> sampleSites = new TreeMap<String, CompressedBitmap>();
+	}
+
+	/**
+	 * @author markebbert
+	 *
+	 *	A single ingested VCF
+	 */
+	public static class CatalogEntry {
+		private String id, path;
+		private long lastModified, size;
+		private int nSites;
+		private ArrayList<String> samples;
+
+		public CatalogEntry(String id, String path, long lastModified, long size, int nSites,
+				ArrayList<String> samples){
+			this.id = id;
+			this.path = path;
+			this.lastModified = lastModified;
+			this.size = size;
+			this.nSites = nSites;
+			this.samples = samples;
+		}
+
+		public String getID(){
+			return this.id;
+		}
+
+		public String getPath(){
+			return this.path;
+		}
+
+		public long getLastModified(){
+			return this.lastModified;
+		}
+
+		public long getSize(){
+			return this.size;
+		}
+
+		public int getNumSites(){
+			return this.nSites;
+		}
+
+		public ArrayList<String> getSamples(){
+			return this.samples;
+		}
+
+		static CatalogEntry parse(String line) throws IOException{
+			String[] vals = line.split("\t", -1);
+			if(vals.length != 6){
+				throw new IOException("Malformed site catalog manifest line: " + line);
+			}
+			ArrayList<String> samples = new ArrayList<String>();
+			for(String s : vals[5].split(",")){
+				if(s.length() > 0){
+					samples.add(s);
+				}
+			}
+			return new CatalogEntry(vals[0], vals[1], Long.parseLong(vals[2]), Long.parseLong(vals[3]),
+					Integer.parseInt(vals[4]), samples);
+		}
+
+		@Override
+		public String toString(){
+			StringBuilder sb = new StringBuilder();
+			String delim = "";
+			for(String s : samples){
+				sb.append(delim).append(s);
+				delim = ",";
+			}
+			return id + "\t" + path + "\t" + lastModified + "\t" + size + "\t" + nSites + "\t" + sb.toString();
+		}
+	}
+}
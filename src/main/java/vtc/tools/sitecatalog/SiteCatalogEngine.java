@@ -0,0 +1,229 @@
+/**
+ *
+ */
+package vtc.tools.sitecatalog;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentGroup;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.MutuallyExclusiveGroup;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import org.apache.log4j.Logger;
+
+import vtc.Engine;
+import vtc.datastructures.CompressedBitmap;
+import vtc.datastructures.InvalidInputFileException;
+import vtc.datastructures.SupportedFileType;
+import vtc.datastructures.VariantPoolHeavy;
+import vtc.tools.sitecatalog.SiteCatalog.CatalogEntry;
+import vtc.tools.utilitybelt.UtilityBelt;
+
+/**
+ * @author markebbert
+ *
+ */
+public class SiteCatalogEngine implements Engine {
+
+    private static Logger         logger = Logger.getLogger(SiteCatalogEngine.class);
+
+    private ArgumentParser        parser;
+
+    private Namespace             parsedArgs;
+
+    public SiteCatalogEngine(String[] args) {
+        init(args);
+    }
+
+    private void init(String[] args) {
+
+    	String operandDesc = "Operands are catalog IDs (e.g. 'fId') or a single sample" +
+    			" within a catalog entry (e.g. 'fId[sId]'). A sample operand only includes" +
+    			" the sites where that sample carries the alternate allele.";
+
+        parser = ArgumentParsers.newArgumentParser("SiteCatalog");
+        parser.description("Site Catalog (SC) keeps a persistent catalog of the variant sites in" +
+        		" many VCFs so site-level set operations can be answered without reparsing them.");
+        parser.defaultHelp(true); // Add default values to help menu
+        MutuallyExclusiveGroup operation = parser.addMutuallyExclusiveGroup("catalog operation arguments");
+        ArgumentGroup output = parser.addArgumentGroup("output arguments");
+
+        parser.addArgument("-C", "--catalog")
+        		.dest("CATALOG")
+        		.required(true)
+        		.type(String.class)
+        		.help("Specify the catalog directory. It will be created if it does not exist.");
+
+        parser.addArgument("--ingest")
+        		.nargs("+")
+        		.dest("INGEST")
+        		.type(String.class)
+        		.help("Add VCFs to the catalog. An ID may be provided for each file as" +
+        				" follows: '--ingest fId=input.vcf fId2=input2.vcf'. If IDs are excluded," +
+        				" IDs will be assigned as 'v1', 'v2', etc. Files that are already" +
+        				" cataloged and unchanged are skipped.");
+
+        parser.addArgument("-l", "--list")
+        		.dest("LIST")
+        		.action(Arguments.storeTrue())
+        		.help("List the VCFs in the catalog.");
+
+        operation.addArgument("--intersect")
+        		.nargs("+")
+        		.dest("INTERSECT")
+        		.type(String.class)
+        		.help("Output the sites found in all operands. " + operandDesc);
+
+        operation.addArgument("--union")
+        		.nargs("+")
+        		.dest("UNION")
+        		.type(String.class)
+        		.help("Output the sites found in any operand. " + operandDesc);
+
+        operation.addArgument("--complement")
+        		.nargs("+")
+        		.dest("COMPLEMENT")
+        		.type(String.class)
+        		.help("Output the sites in the first operand that are in none of the others. " + operandDesc);
+
+        output.addArgument("-o", "--out")
+        		.dest("OUT").setDefault("variant_list.out.vcf")
+        		.help("Specify the output file name.");
+
+        output.addArgument("-n", "--count-only")
+        		.dest("COUNT_ONLY")
+        		.action(Arguments.storeTrue())
+        		.help("Only report the number of sites in the result. No VCF is written.");
+
+        output.addArgument("-R", "--reference-genome")
+        		.dest("REF")
+        		.type(String.class)
+        		.help("Specify path to the reference genome associated with the data." +
+        				" This is required unless --count-only is used.");
+
+        try {
+            parsedArgs = parser.parseArgs(args);
+        } catch (ArgumentParserException e) {
+            parser.handleError(e);
+            UtilityBelt.exit(1);
+        }
+    }
+
+    /**
+     * Ingest, list, and run the requested site-level operation
+     */
+    public void catalog() {
+
+    	try {
+    		SiteCatalog catalog = new SiteCatalog(new File(parsedArgs.getString("CATALOG")));
+
+    		List<String> ingestArgs = parsedArgs.getList("INGEST");
+    		if(ingestArgs != null){
+    			ingest(catalog, ingestArgs);
+    		}
+
+    		if(parsedArgs.getBoolean("LIST")){
+    			printCatalog(catalog);
+    		}
+
+    		List<String> operands;
+    		CompressedBitmap result;
+    		if((operands = parsedArgs.getList("INTERSECT")) != null){
+    			result = catalog.intersect(operands);
+    		}
+    		else if((operands = parsedArgs.getList("UNION")) != null){
+    			result = catalog.union(operands);
+    		}
+    		else if((operands = parsedArgs.getList("COMPLEMENT")) != null){
+    			result = catalog.complement(operands);
+    		}
+    		else{
+    			if(ingestArgs == null && !parsedArgs.getBoolean("LIST")){
+    				throw new ArgumentParserException("Nothing to do. Specify --ingest, --list, or an operation.", parser);
+    			}
+    			return;
+    		}
+
+    		System.out.println("Sites in result: " + result.getCardinality());
+    		if(parsedArgs.getBoolean("COUNT_ONLY")){
+    			return;
+    		}
+
+    		String refGenomeString = parsedArgs.getString("REF");
+    		if(refGenomeString == null){
+    			throw new ArgumentParserException("No reference genome specified." +
+    					" A reference genome must be provided to write the result VCF", parser);
+    		}
+    		File refGenome = new File(refGenomeString);
+    		if(!refGenome.exists()){
+    			throw new ArgumentParserException(refGenomeString + " not found.", parser);
+    		}
+
+    		String outFile = parsedArgs.getString("OUT");
+    		VariantPoolHeavy vp = catalog.hydrate(result, operands, outFile);
+    		VariantPoolHeavy.printVariantPool(outFile, vp, refGenome, SupportedFileType.VCF, false);
+
+    	} catch (ArgumentParserException e) {
+    		UtilityBelt.printErrorUsageHelpAndExit(parser, logger, e);
+    	} catch (InvalidInputFileException e) {
+    		UtilityBelt.printErrorUsageAndExit(parser, logger, e);
+    	} catch (FileNotFoundException e) {
+    		UtilityBelt.printErrorUsageAndExit(parser, logger, e);
+    	} catch (Exception e) {
+    		logger.error("Caught unexpected exception, something is very wrong!");
+    		e.printStackTrace();
+    	}
+    }
+
+    /**
+     * Ingest each 'fId=path' (or just 'path') argument into the catalog
+     * @param catalog
+     * @param ingestArgs
+     * @throws Exception
+     */
+    private void ingest(SiteCatalog catalog, List<String> ingestArgs) throws Exception{
+    	String[] vals;
+    	String vcfID;
+    	File vcf;
+    	for(String ingestArg : ingestArgs){
+    		vals = ingestArg.split("=");
+    		if(vals.length == 1){
+    			vcfID = null;
+    			vcf = new File(vals[0]);
+    		}
+    		else if(vals.length == 2){
+    			vcfID = vals[0];
+    			vcf = new File(vals[1]);
+    		}
+    		else{
+    			throw new InvalidInputFileException("Invalid input file specified: " + ingestArg);
+    		}
+    		if(!vcf.exists()){
+    			throw new InvalidInputFileException("Input file not found: " + vcf.getPath());
+    		}
+    		if(vcfID == null){
+    			/* Keep the ID the file was cataloged as, so it's skipped if unchanged */
+    			CatalogEntry existing = catalog.findEntry(vcf);
+    			vcfID = existing == null ? catalog.generateEntryID() : existing.getID();
+    		}
+    		int nSites = catalog.ingest(vcfID, vcf);
+    		System.out.println("Cataloged " + vcf.getPath() + " as '" + vcfID + "' (" + nSites + " sites)");
+    	}
+    }
+
+    private void printCatalog(SiteCatalog catalog) throws IOException{
+    	System.out.println("ID\tSites\tSamples\tFile");
+    	for(CatalogEntry entry : catalog.getEntries()){
+    		System.out.println(entry.getID() + "\t" + entry.getNumSites() + "\t"
+    				+ entry.getSamples().size() + "\t" + entry.getPath());
+    	}
+    	System.out.println("Total distinct sites: " + catalog.getNumSites());
+    }
+}
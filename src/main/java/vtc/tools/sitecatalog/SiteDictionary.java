@@ -0,0 +1,201 @@
+/**
+ *
+ */
+package vtc.tools.sitecatalog;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import vtc.datastructures.CompressedBitmap;
+
+/**
+ * @author markebbert
+ *
+ *	A global dictionary assigning every site (chr:pos:ref:alt) a dense integer ID.
+ *	IDs are never reassigned, so bitmaps written against an older dictionary stay
+ *	valid as new VCFs are ingested. The dictionary is stored as one site key per
+ *	line, where the line number is the ID. New sites are appended on save.
+ *
+ *	The file is only loaded into memory when IDs are looked up or assigned.
+ *	Counting sites and finding the keys for a set of IDs read it as a stream.
+ */
+public class SiteDictionary {
+
+	private File file;
+	private HashMap<String, Integer> siteIDs;
+	private ArrayList<String> unsavedSites;
+	private int nSites;
+
+
+	/****************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * Use the dictionary stored in 'file'. If the file does not exist, start
+	 * a new empty dictionary that will be written to 'file' on save. Nothing
+	 * is read until it is needed.
+	 * @param file
+	 */
+	public SiteDictionary(File file){
+		this.file = file;
+		this.unsavedSites = new ArrayList<String>();
+	}
+
+
+
+	/****************************************************
+	 * Getters
+	 */
+
+	/**
+	 * Get the ID for a site key, or -1 if the site has never been ingested.
+	 * @param siteKey
+	 * @return
+	 */
+	public int getSiteID(String siteKey) throws IOException{
+		load();
+		Integer id = siteIDs.get(siteKey);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Get the number of sites, without loading the dictionary if it isn't
+	 * loaded already
+	 * @return
+	 * @throws IOException
+	 */
+	public int getNumSites() throws IOException{
+		if(siteIDs != null){
+			return this.nSites;
+		}
+		int n = 0;
+		if(file.exists()){
+			BufferedReader br = new BufferedReader(new FileReader(file));
+			try{
+				String line;
+				while((line = br.readLine()) != null){
+					if(line.length() > 0){
+						n++;
+					}
+				}
+			} finally {
+				br.close();
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Get the site keys for 'ids', mapped to their IDs. Only those keys are
+	 * kept, so a small set of IDs can be looked up in a large dictionary.
+	 * @param ids
+	 * @return
+	 * @throws IOException
+	 */
+	public HashMap<String, Integer> getSiteKeys(CompressedBitmap ids) throws IOException{
+		HashMap<String, Integer> keys = new HashMap<String, Integer>();
+		if(ids.isEmpty()){
+			return keys;
+		}
+		if(siteIDs != null){
+			for(String siteKey : siteIDs.keySet()){
+				if(ids.contains(siteIDs.get(siteKey))){
+					keys.put(siteKey, siteIDs.get(siteKey));
+				}
+			}
+			return keys;
+		}
+		if(file.exists()){
+			BufferedReader br = new BufferedReader(new FileReader(file));
+			try{
+				String line;
+				int id = 0, nIDs = ids.getCardinality();
+				while((line = br.readLine()) != null && keys.size() < nIDs){
+					if(line.length() > 0){
+						if(ids.contains(id)){
+							keys.put(line, id);
+						}
+						id++;
+					}
+				}
+			} finally {
+				br.close();
+			}
+		}
+		return keys;
+	}
+
+
+
+	/****************************************************
+	 * Useful operations
+	 */
+
+	/**
+	 * Get the ID for a site key, assigning the next free ID if the site is new
+	 * @param siteKey
+	 * @return
+	 */
+	public int getOrAssignSiteID(String siteKey) throws IOException{
+		load();
+		Integer id = siteIDs.get(siteKey);
+		if(id == null){
+			id = nSites++;
+			siteIDs.put(siteKey, id);
+			unsavedSites.add(siteKey);
+		}
+		return id;
+	}
+
+	/**
+	 * Append any newly assigned sites to the dictionary file
+	 * @throws IOException
+	 */
+	public void save() throws IOException{
+		if(unsavedSites.isEmpty()){
+			return;
+		}
+		PrintWriter writer = new PrintWriter(new FileWriter(file, true));
+		for(String site : unsavedSites){
+			writer.println(site);
+		}
+		writer.close();
+		if(writer.checkError()){
+			throw new IOException("Could not write site dictionary: " + file.getAbsolutePath());
+		}
+		unsavedSites.clear();
+	}
+
+	/**
+	 * Read the dictionary into memory, if it isn't already
+	 * @throws IOException
+	 */
+	private void load() throws IOException{
+		if(siteIDs != null){
+			return;
+		}
+		siteIDs = new HashMap<String, Integer>();
+		nSites = 0;
+		if(!file.exists()){
+			return;
+		}
+		BufferedReader br = new BufferedReader(new FileReader(file));
+		try{
+			String line;
+			while((line = br.readLine()) != null){
+				if(line.length() > 0){
+					siteIDs.put(line, nSites++);
+				}
+			}
+		} finally {
+			br.close();
+		}
+	}
+}
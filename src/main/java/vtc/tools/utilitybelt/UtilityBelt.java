@@ -17,12 +17,26 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 
 import org.apache.log4j.Logger;
 
+import vtc.JobExitException;
+import vtc.VTCSession;
+import vtc.datastructures.AbstractVariantPool;
+import vtc.datastructures.AccessPattern;
 import vtc.datastructures.InvalidInputFileException;
+import vtc.datastructures.PoolBackend;
+import vtc.datastructures.PoolBackends;
+import vtc.datastructures.PoolPlanner;
+import vtc.datastructures.SupportedFileType;
+import vtc.datastructures.VariantPoolCache;
 import vtc.datastructures.VariantPoolHeavy;
 import vtc.datastructures.VariantPoolLight;
 import vtc.tools.setoperator.operation.InvalidOperationException;
@@ -61,7 +75,8 @@ public class UtilityBelt {
 	
 	
 	/**
-	 * Will create VariantPoolHeavy objects from command line-provided input file strings and return as ArrayList<VariantPool>
+	 * Will create VariantPoolHeavy objects from command line-provided input file strings and return as ArrayList<VariantPool>.
+	 * The files are read in parallel, one per available processor.
 	 * @param inputFiles
 	 * @return
 	 * @throws InvalidInputFileException
@@ -69,18 +84,86 @@ public class UtilityBelt {
 	 * @throws IOException 
 	 */
 	public static TreeMap<String, VariantPoolHeavy> createHeavyVariantPools(List<String> inputFiles, boolean addChr) throws InvalidInputFileException, InvalidOperationException, IOException{
-		
-		TreeMap<String, VariantPoolHeavy> vpMap = new TreeMap<String, VariantPoolHeavy>();
-		for(Object o : inputFiles){
-			VariantPoolHeavy vp = new VariantPoolHeavy(o.toString(), false, addChr);
-			vpMap.put(vp.getPoolID(), vp);
+		return createHeavyVariantPools(inputFiles, addChr, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Will create VariantPoolHeavy objects from command line-provided input file strings, reading
+	 * at most 'threads' files at once.
+	 * @param inputFiles
+	 * @param addChr
+	 * @param threads
+	 * @return
+	 * @throws InvalidInputFileException
+	 * @throws InvalidOperationException
+	 * @throws IOException
+	 */
+	public static TreeMap<String, VariantPoolHeavy> createHeavyVariantPools(List<String> inputFiles, final boolean addChr,
+			int threads) throws InvalidInputFileException, InvalidOperationException, IOException{
+		final PoolPlanner planner = new PoolPlanner(AccessPattern.LOOKUP, inputFiles.size());
+		return createVariantPools(inputFiles, threads, new PoolLoader<VariantPoolHeavy>(){
+			@Override
+			public VariantPoolHeavy load(String inputString) throws InvalidInputFileException, IOException {
+				String[] inputVals = splitInputString(inputString);
+				File file = new File(inputVals[1]);
+				PoolBackend backend = planner.choose(file);
+				
+				/* Processes that run many jobs keep loaded pools to share */
+				VariantPoolCache cache = VTCSession.current().getPoolCache();
+				if(cache != null && backend == PoolBackends.HEAVY){
+					VariantPoolHeavy vp = cache.getVariantPool(file, inputVals[0], addChr);
+					if(vp != null){
+						return vp;
+					}
+				}
+				return (VariantPoolHeavy) planner.createVariantPool(backend, file, inputVals[0], addChr);
+			}
+		});
+	}
+	
+	/**
+	 * Will create VariantPool objects from command line-provided input file strings, with the
+	 * backend the PoolPlanner chooses for each input and 'pattern'. The files are read in
+	 * parallel, one per available processor.
+	 * @param inputFiles
+	 * @param addChr
+	 * @param pattern
+	 * @return
+	 * @throws InvalidInputFileException
+	 * @throws InvalidOperationException
+	 * @throws IOException
+	 */
+	public static TreeMap<String, AbstractVariantPool> createVariantPools(List<String> inputFiles, final boolean addChr,
+			AccessPattern pattern) throws InvalidInputFileException, InvalidOperationException, IOException{
+		if(pattern == AccessPattern.LOOKUP){
+			return new TreeMap<String, AbstractVariantPool>(createHeavyVariantPools(inputFiles, addChr));
 		}
-		return vpMap;
+		final PoolPlanner planner = new PoolPlanner(pattern, inputFiles.size());
+		return createVariantPools(inputFiles, Runtime.getRuntime().availableProcessors(),
+				new PoolLoader<AbstractVariantPool>(){
+			@Override
+			public AbstractVariantPool load(String inputString) throws InvalidInputFileException, IOException {
+				String[] inputVals = splitInputString(inputString);
+				return planner.createVariantPool(new File(inputVals[1]), inputVals[0], addChr);
+			}
+		});
+	}
+	
+	/**
+	 * Split 'poolID=file'
+	 */
+	private static String[] splitInputString(String inputString) throws InvalidInputFileException{
+		String[] inputVals = inputString.split("=");
+		if(inputVals.length != 2){
+			throw new InvalidInputFileException("Invalid input file specified: " + inputString);
+		}
+		return inputVals;
 	}
 	
 	
 	/**
-	 * Will create VariantPoolLight objects from command line-provided input file strings and return as ArrayList<VariantPool>
+	 * Will create VariantPoolLight objects from command line-provided input file strings and return as ArrayList<VariantPool>.
+	 * The files are opened in parallel, one per available processor.
 	 * @param inputFiles
 	 * @return
 	 * @throws InvalidInputFileException
@@ -88,15 +171,120 @@ public class UtilityBelt {
 	 * @throws IOException 
 	 */
 	public static TreeMap<String, VariantPoolLight> createLightVariantPools(List<String> inputFiles, boolean addChr) throws InvalidInputFileException, InvalidOperationException, IOException{
+		return createLightVariantPools(inputFiles, addChr, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/**
+	 * Will create VariantPoolLight objects from command line-provided input file strings, opening
+	 * at most 'threads' files at once.
+	 * @param inputFiles
+	 * @param addChr
+	 * @param threads
+	 * @return
+	 * @throws InvalidInputFileException
+	 * @throws InvalidOperationException
+	 * @throws IOException
+	 */
+	public static TreeMap<String, VariantPoolLight> createLightVariantPools(List<String> inputFiles, final boolean addChr,
+			int threads) throws InvalidInputFileException, InvalidOperationException, IOException{
+		return createVariantPools(inputFiles, threads, new PoolLoader<VariantPoolLight>(){
+			@Override
+			public VariantPoolLight load(String inputString) throws InvalidInputFileException, IOException {
+				return new VariantPoolLight(inputString, false, addChr);
+			}
+		});
+	}
+	
+	/**
+	 * Load each input on a fixed pool of 'threads' threads. Pool IDs for inputs
+	 * without one are generated up front, in input order, so they are the
+	 * same as when the inputs are read one at a time.
+	 * 
+	 * @param inputFiles
+	 * @param threads
+	 * @param loader
+	 * @return
+	 * @throws InvalidInputFileException
+	 * @throws IOException
+	 */
+	private static <T extends AbstractVariantPool> TreeMap<String, T> createVariantPools(List<String> inputFiles,
+			int threads, final PoolLoader<T> loader) throws InvalidInputFileException, IOException{
 		
-		TreeMap<String, VariantPoolLight> vpMap = new TreeMap<String, VariantPoolLight>();
+		ArrayList<String> inputStrings = new ArrayList<String>();
 		for(Object o : inputFiles){
-			VariantPoolLight vp = new VariantPoolLight(o.toString(), false, addChr);
-			vpMap.put(vp.getPoolID(), vp);
+			String inputString = o.toString();
+			if(!inputString.contains("=")){
+				inputString = AbstractVariantPool.generatePoolID(SupportedFileType.VCF) + "=" + inputString;
+			}
+			inputStrings.add(inputString);
+		}
+		
+		TreeMap<String, T> vpMap = new TreeMap<String, T>();
+		if(threads < 2 || inputStrings.size() < 2){
+			for(String inputString : inputStrings){
+				T vp = loader.load(inputString);
+				vpMap.put(vp.getPoolID(), vp);
+			}
+			return vpMap;
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, inputStrings.size()));
+		try{
+			ArrayList<Future<T>> futures = new ArrayList<Future<T>>();
+			for(final String inputString : inputStrings){
+				futures.add(executor.submit(new Callable<T>(){
+					@Override
+					public T call() throws Exception {
+						return loader.load(inputString);
+					}
+				}));
+			}
+			
+			/* Add the pools in input order, as if they were read one at a time */
+			for(Future<T> future : futures){
+				T vp = getLoadedPool(future);
+				vpMap.put(vp.getPoolID(), vp);
+			}
+		} finally {
+			executor.shutdownNow();
 		}
 		return vpMap;
 	}
 	
+	/**
+	 * Wait for a pool to load, rethrowing whatever its constructor threw
+	 */
+	private static <T> T getLoadedPool(Future<T> future) throws InvalidInputFileException, IOException{
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading input files.");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof InvalidInputFileException){
+				throw (InvalidInputFileException) cause;
+			}
+			if(cause instanceof IOException){
+				throw (IOException) cause;
+			}
+			if(cause instanceof RuntimeException){
+				throw (RuntimeException) cause;
+			}
+			if(cause instanceof Error){
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+	
+	/**
+	 * Creates a VariantPool from an input file string
+	 */
+	private interface PoolLoader<T extends AbstractVariantPool> {
+		public T load(String inputString) throws InvalidInputFileException, IOException;
+	}
+	
 
     /**
      * Extract only VariantPool objects associated with the Operation provided
@@ -293,7 +481,7 @@ public class UtilityBelt {
 	public static void printErrorUsageAndExit(ArgumentParser parser, Logger logger, Exception e){
 		System.err.println("\nERROR: " + e.getMessage() + "\n");
 		parser.printUsage();
-		System.exit(1);
+		exit(1);
 	}
 	
 	/**
@@ -302,7 +490,20 @@ public class UtilityBelt {
 	public static void printUsageHelpAndExit(ArgumentParser parser){
 		parser.printUsage();
 		parser.printHelp();
-		System.exit(1);		
+		exit(1);		
+	}
+	
+	/**
+	 * Exit the JVM with 'status'. If the current session does not own the
+	 * JVM (e.g., a job run by the daemon), end only the job by throwing
+	 * a JobExitException.
+	 * @param status
+	 */
+	public static void exit(int status){
+		if(VTCSession.current().exitOnError()){
+			System.exit(status);
+		}
+		throw new JobExitException(status);
 	}
 	
     /**
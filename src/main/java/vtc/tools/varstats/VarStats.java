@@ -44,8 +44,9 @@ import jsc.tests.H1;
 import org.apache.commons.math3.stat.inference.ChiSquareTest;
 import org.apache.log4j.Logger;
 
+import vtc.datastructures.AbstractVariantPool;
 import vtc.datastructures.VariantPool;
-import vtc.datastructures.VariantPoolLight;
+import vtc.tools.utilitybelt.UtilityBelt;
 
 public class VarStats {
 
@@ -58,7 +59,7 @@ public class VarStats {
 
     // constructors
 
-    public VarStats(TreeMap<String, VariantPoolLight> allVPs, List<String> phenoArgs/*, boolean printMulti, boolean sum, boolean assoc*/) throws IOException {
+    public VarStats(TreeMap<String, ? extends AbstractVariantPool> allVPs, List<String> phenoArgs/*, boolean printMulti, boolean sum, boolean assoc*/) throws IOException {
        /* if (sum)
             IterateAndCount(allVPs, printMulti);
         if (assoc)*/
@@ -71,7 +72,7 @@ public class VarStats {
     // Functions
 
     @SuppressWarnings("unused")
-	public void doAssociation(TreeMap<String, VariantPoolLight> AllVPs, List<String> phenoArgs) throws IOException {
+	public void doAssociation(TreeMap<String, ? extends AbstractVariantPool> AllVPs, List<String> phenoArgs) throws IOException {
 
         if (phenoArgs != null) {
             // Make a structure to read in the phenotype information...
@@ -104,7 +105,7 @@ public class VarStats {
 				    + vp.getPoolID() + ": "
             		+ CasePhenos.size() + " cases, " + ControlPhenos.size() +
             		" controls. Exiting...");
-            	System.exit(1);
+            	UtilityBelt.exit(1);
             }
             else{
             	logger.info("Counts in " + vp.getPoolID() + ": "
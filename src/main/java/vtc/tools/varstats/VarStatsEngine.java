@@ -18,9 +18,12 @@ import net.sourceforge.argparse4j.inf.Namespace;
 import org.apache.log4j.Logger;
 
 import vtc.Engine;
+import vtc.datastructures.AbstractVariantPool;
 import vtc.datastructures.InvalidInputFileException;
+import vtc.datastructures.PoolPlanner;
+import vtc.datastructures.RegionList;
 import vtc.datastructures.VariantPoolHeavy;
-import vtc.datastructures.VariantPoolLight;
+import vtc.tools.shard.ShardResults;
 import vtc.tools.utilitybelt.UtilityBelt;
 
 /**
@@ -31,7 +34,7 @@ public class VarStatsEngine implements Engine {
 
     private static Logger         logger = Logger.getLogger(VarStatsEngine.class);
 
-    private static ArgumentParser parser;
+    private ArgumentParser        parser;
 
     private Namespace             parsedArgs;
 
@@ -62,6 +65,33 @@ public class VarStatsEngine implements Engine {
                 		"'fId' and 'fId2' are the new IDs. If IDs " +
                 		"are excluded, IDs will be assigned as 'v0', " +
                 		"'v1', etc. by default.");
+        parser.addArgument("--regions")
+                .nargs("+")
+                .dest("REGIONS")
+                .type(String.class)
+                .help("Only summarize variants overlapping these regions. Regions may be" +
+                		" given as 'chr:start-end', 'chr:pos', or 'chr', separated by spaces" +
+                		" or commas, or as BED files. Indexed inputs (tabix or tribble) are" +
+                		" queried directly; other inputs are read in full and filtered.");
+        parser.addArgument("--shard-results")
+                .dest("SHARD_RESULTS")
+                .type(String.class)
+                .help("Write the summaries behind the printed tables to this file, so the" +
+                		" tables can be printed for a job split into shards (see the Shard tool).");
+        parser.addArgument("--merge-shard-results")
+                .nargs("+")
+                .dest("MERGE_SHARD_RESULTS")
+                .type(String.class)
+                .help("Add up the --shard-results files from each shard and print the" +
+                		" tables for the whole job instead of reading the input files.");
+        parser.addArgument("--pool-backend")
+                .dest("POOL_BACKEND")
+                .type(String.class)
+                .choices(PoolPlanner.getBackendChoices())
+                .setDefault(PoolPlanner.AUTO)
+                .help("How to hold the input files for the combined detailed summary, which looks up" +
+                		" variants. By default, a backend is chosen for each input from its size and the" +
+                		" memory available. Other summaries always stream the input files.");
         summary.addArgument("-s", "--summary")
 		.dest("SUMMARY")
 		.type(String.class)
@@ -91,7 +121,7 @@ public class VarStatsEngine implements Engine {
             logger.info(parsedArgs);
         } catch (ArgumentParserException e) {
             parser.handleError(e);
-            System.exit(1);
+            UtilityBelt.exit(1);
         }
     }
 
@@ -108,7 +138,7 @@ public class VarStatsEngine implements Engine {
         List<String> phenoArgs = parsedArgs.getList("pheno");
         try {
 
-            TreeMap<String, VariantPoolLight> AllVPs;
+            TreeMap<String, AbstractVariantPool> AllVPs = null;
             boolean sum = false, detailedSummary = false;
             SupportedSummaryTypes  summaryType = null;
             SupportedDetailedSummaryTypes detSumType = null;
@@ -141,33 +171,57 @@ public class VarStatsEngine implements Engine {
             
             HashMap<String, VariantPoolSummary> summaries = new HashMap<String, VariantPoolSummary>();
             
-            AllVPs = UtilityBelt.createLightVariantPools(vcfArgs, true);
+            List<String> mergeShardResults = parsedArgs.getList("MERGE_SHARD_RESULTS");
+            String shardResultsFile = parsedArgs.getString("SHARD_RESULTS");
+            if ((mergeShardResults != null || shardResultsFile != null) && assoc) {
+                throw new ArgumentParserException("--association cannot be split into shards.", parser);
+            }
+            if (mergeShardResults != null) {
+                ShardResults results = ShardResults.read(mergeShardResults);
+                if (sum) {
+                    printSummaries(results.getSummaries(), summaryType);
+                }
+                if (detailedSummary) {
+                    VariantPoolSummarizer.printSummary(results.getDetailedSummaries(), false);
+                }
+                return;
+            }
+            ShardResults shardResults = new ShardResults();
+            
+            List<String> regions = parsedArgs.getList("REGIONS");
+            AbstractVariantPool.setDefaultRegions(regions == null ? null : RegionList.parse(regions));
+            
+            PoolPlanner.setDefaultBackend(parsedArgs.getString("POOL_BACKEND"));
+            
+            /* The combined summary looks up variants, so it needs pools that
+             * support lookups. Those keep one record per chr:pos:ref, so the
+             * other summaries still stream every record in the inputs.
+             */
+            TreeMap<String, VariantPoolHeavy> AllVPsHeavy = null;
+            if (detailedSummary && detSumType == SupportedDetailedSummaryTypes.COMBINED) {
+                AllVPsHeavy = UtilityBelt.createHeavyVariantPools(vcfArgs, true);
+            }
+            if (sum || assoc || (detailedSummary && detSumType == SupportedDetailedSummaryTypes.INDIVIDUAL)) {
+                AllVPs = new TreeMap<String, AbstractVariantPool>(UtilityBelt.createLightVariantPools(vcfArgs, true));
+            }
             if(sum){
             	summaries = VariantPoolSummarizer.summarizeVariantPools(AllVPs);
-            	if(summaryType == SupportedSummaryTypes.SIDE_BY_SIDE)
-            		VariantPoolSummarizer.PrintSide_by_Side(summaries);
-            	else if(summaryType == SupportedSummaryTypes.TABLE)
-            		VariantPoolSummarizer.Print_Columns(summaries);
-            	else if(summaryType == SupportedSummaryTypes.COMBINED){
-            		VariantPoolSummarizer.printSummary(summaries, true);
-            	}
-            	else if(summaryType == SupportedSummaryTypes.INDIVIDUAL){
-            		VariantPoolSummarizer.printSummary(summaries, false);
-            	}
-            	
+            	shardResults.setSummaries(summaries);
+            	printSummaries(summaries, summaryType);
             }
             if(detailedSummary){
             	// generate detailed summary
             	
             	if(detSumType == SupportedDetailedSummaryTypes.COMBINED){
-				    TreeMap<String, VariantPoolHeavy> AllVPsHeavy = UtilityBelt.createHeavyVariantPools(vcfArgs, true);
                     summaries = VariantPoolSummarizer.summarizeVariantPoolsDetailedCombined(AllVPsHeavy,outFileName);
+                    shardResults.setDetailedSummaries(summaries);
             		VariantPoolSummarizer.printSummary(summaries, false);
 //                    String fileName = "unionedVP_detailed_summary.txt";
 //                    printDetailedSummaryToFile(summary, fileName);
             	}
             	else if(detSumType == SupportedDetailedSummaryTypes.INDIVIDUAL){
                     summaries = VariantPoolSummarizer.summarizeVariantPoolsDetailed(AllVPs,outFileName);
+                    shardResults.setDetailedSummaries(summaries);
             		VariantPoolSummarizer.printSummary(summaries, false);
 //                    printDetailedSummariesToFile(detailedSummaries);
             	}
@@ -176,10 +230,15 @@ public class VarStatsEngine implements Engine {
             if(assoc){
             	new VarStats(AllVPs, phenoArgs);
             }
+            if(shardResultsFile != null){
+            	shardResults.write(new File(shardResultsFile));
+            }
             	
             
         } catch (InvalidInputFileException e) {
             UtilityBelt.printErrorUsageHelpAndExit(parser, logger, e);
+        } catch (ArgumentParserException e) {
+            UtilityBelt.printErrorUsageHelpAndExit(parser, logger, e);
         } catch (Exception e) {
             logger.error("Caught unexpected exception, something is very wrong!");
             e.printStackTrace();
@@ -199,6 +258,25 @@ public class VarStatsEngine implements Engine {
 //        }
 //	}
 	
+    /**
+     * Print the summaries in the format given by 'summaryType'
+     * 
+     * @param summaries
+     * @param summaryType
+     */
+    private void printSummaries(HashMap<String, VariantPoolSummary> summaries, SupportedSummaryTypes summaryType) {
+    	if(summaryType == SupportedSummaryTypes.SIDE_BY_SIDE)
+    		VariantPoolSummarizer.PrintSide_by_Side(summaries);
+    	else if(summaryType == SupportedSummaryTypes.TABLE)
+    		VariantPoolSummarizer.Print_Columns(summaries);
+    	else if(summaryType == SupportedSummaryTypes.COMBINED){
+    		VariantPoolSummarizer.printSummary(summaries, true);
+    	}
+    	else if(summaryType == SupportedSummaryTypes.INDIVIDUAL){
+    		VariantPoolSummarizer.printSummary(summaries, false);
+    	}
+    }
+    
 	private static String createSupportedDetailedSummaryTypeString(){
 		StringBuilder sb = new StringBuilder();
 		int count = 1;
@@ -16,6 +16,12 @@ import vtc.datastructures.NaturalOrderComparator;
  *
  */
 public class VariantPoolDetailedSummary extends VariantPoolSummary {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = 6491378025513847902L;
+
 	private static Logger logger = Logger.getLogger(VariantPoolDetailedSummary.class);
 
 	TreeMap<String, VariantRecordSummary> recordSummariesTree;
@@ -25,7 +25,6 @@ import org.apache.log4j.Logger;
 
 import vtc.datastructures.AbstractVariantPool;
 import vtc.datastructures.VariantPoolHeavy;
-import vtc.datastructures.VariantPoolLight;
 import vtc.tools.setoperator.SetOperator;
 import vtc.tools.setoperator.operation.InvalidOperationException;
 import vtc.tools.setoperator.operation.Operation;
@@ -42,12 +41,8 @@ public class VariantPoolSummarizer {
 	private static Logger logger = Logger
 			.getLogger(VariantPoolSummarizer.class);
 
-	private static PrintWriter detailedVariantRecordWriter;
-	private static String detailedSummaryFile;
-
 	public VariantPoolSummarizer() {
-		this.detailedSummaryFile = null;
-		this.detailedVariantRecordWriter = null;
+		return;
 	}
 
 	/**
@@ -61,20 +56,13 @@ public class VariantPoolSummarizer {
 	 * @throws IOException
 	 */
 	public static HashMap<String, VariantPoolSummary> summarizeVariantPoolsDetailed(
-			TreeMap<String, VariantPoolLight> allVPs, String outFile)
+			TreeMap<String, ? extends AbstractVariantPool> allVPs, String outFile)
 			throws InvalidOperationException, IOException {
 
-		if(outFile != null)
-			detailedSummaryFile = outFile;
-		else
-			detailedSummaryFile = null;
-		
-		detailedVariantRecordWriter = null;
-		
 		HashMap<String, VariantPoolSummary> variantPoolSummaries = new HashMap<String, VariantPoolSummary>();
 		VariantPoolSummary vps;
-		for (VariantPoolLight vp : allVPs.values()) {
-			vps = summarizeVariantPoolDetailed(vp);
+		for (AbstractVariantPool vp : allVPs.values()) {
+			vps = summarizeVariantPool(vp, true, outFile);
 			variantPoolSummaries.put(vp.getPoolID(), vps);
 		}
 		return variantPoolSummaries;
@@ -93,14 +81,6 @@ public class VariantPoolSummarizer {
 			TreeMap<String, VariantPoolHeavy> allVPs, String outFile)
 			throws InvalidOperationException, IOException {
 
-		if(outFile != null)
-			detailedSummaryFile = outFile;
-		else
-			detailedSummaryFile = null;
-		
-		
-		detailedVariantRecordWriter = null;
-		
 		HashMap<String,VariantPoolSummary> summary = new HashMap<String, VariantPoolSummary>();
 		ArrayList<VariantPoolHeavy> allVPsList = new ArrayList<VariantPoolHeavy>(
 				allVPs.values());
@@ -123,10 +103,10 @@ public class VariantPoolSummarizer {
 			Operation op = OperationFactory.createOperation(union, allVPs);
 			unionVP = so.performUnion((UnionOperation) op, allVPsList, true);
 			
-			summary.put(op.getOperationID(), summarizeVariantPoolDetailed(unionVP));
+			summary.put(op.getOperationID(), summarizeVariantPool(unionVP, true, outFile));
 			return summary;
 		} else if (allVPsList.size() == 1) {
-			summary.put(allVPsList.get(0).getPoolID(), summarizeVariantPoolDetailed(allVPsList.get(0)));
+			summary.put(allVPsList.get(0).getPoolID(), summarizeVariantPool(allVPsList.get(0), true, outFile));
 			return summary;
 		} else {
 			throw new RuntimeException(
@@ -193,6 +173,22 @@ public class VariantPoolSummarizer {
 	 */
 	public static <T extends AbstractVariantPool> VariantPoolSummary summarizeVariantPool(
 			T vp, boolean printDetailed) throws IOException {
+		return summarizeVariantPool(vp, printDetailed, null);
+	}
+
+	/**
+	 * Summarize statistics in a single VariantPool. Detailed summaries are
+	 * written to '<outFile>_<poolID>_detailed_summary.txt', or to
+	 * '<poolID>_detailed_summary.txt' if 'outFile' is null.
+	 * 
+	 * @param vp
+	 * @param printDetailed
+	 * @param outFile
+	 * @return
+	 * @throws IOException
+	 */
+	private static <T extends AbstractVariantPool> VariantPoolSummary summarizeVariantPool(
+			T vp, boolean printDetailed, String outFile) throws IOException {
 
 		// Iterator<String> varIT = vp.getVariantIterator();
 		// String currVarKey;
@@ -203,14 +199,16 @@ public class VariantPoolSummarizer {
 
 		NumberFormat nf = NumberFormat.getInstance(Locale.US);
 
+		/* Each summary has its own writer, so summaries can run at once */
+		PrintWriter detailedVariantRecordWriter = null;
 		if (printDetailed) {
-			if(detailedSummaryFile == null)
-				detailedSummaryFile = vp.getPoolID() + "_detailed_summary.txt";
+			if(outFile == null)
+				detailedVariantRecordWriter = openDetailedFileForWriting(vp.getPoolID() + "_detailed_summary.txt");
 			else
-				detailedSummaryFile = detailedSummaryFile+"_"+vp.getPoolID() + "_detailed_summary.txt"; 
+				detailedVariantRecordWriter = openDetailedFileForWriting(outFile+"_"+vp.getPoolID() + "_detailed_summary.txt"); 
 		}
 
-		VariantContext var = vp.getNextVar();
+		VariantContext var = vp.withAllGenotypes(vp.getNextVar());
 		while (var != null) {
 			sampleCount = var.getNSamples();
 
@@ -286,10 +284,10 @@ public class VariantPoolSummarizer {
 			}
 
 			if (printDetailed) {
-				printVariantRecordSummaryToFile(vrs);
+				printVariantRecordSummaryToFile(detailedVariantRecordWriter, vrs);
 			}
 
-			var = vp.getNextVar();
+			var = vp.withAllGenotypes(vp.getNextVar());
 		}
 
 		if (printDetailed) {
@@ -656,7 +654,7 @@ public class VariantPoolSummarizer {
 
 	}
 
-	private static void openDetailedFileForWriting(String fileName)
+	private static PrintWriter openDetailedFileForWriting(String fileName)
 			throws FileNotFoundException {
 		logger.info("Writing detailed summary to: " + fileName);
 
@@ -668,22 +666,19 @@ public class VariantPoolSummarizer {
 				+ "Percent_samples_heterozygous_without_ref_allele\t"
 				+ "Percent_samples_hom_ref";
 
-		detailedVariantRecordWriter = new PrintWriter(fileName);
+		PrintWriter detailedVariantRecordWriter = new PrintWriter(fileName);
 		detailedVariantRecordWriter.println(header);
+		return detailedVariantRecordWriter;
 	}
 
 	/**
-	 * Print a single detailed summary to the given file
+	 * Print a single detailed summary to the given writer
 	 * 
-	 * @param summary
-	 * @param fileName
-	 * @throws FileNotFoundException
+	 * @param detailedVariantRecordWriter
+	 * @param varSummary
 	 */
-	private static void printVariantRecordSummaryToFile(
-			VariantRecordSummary varSummary) throws FileNotFoundException {
-		if (detailedVariantRecordWriter == null) {
-			openDetailedFileForWriting(detailedSummaryFile);
-		}
+	private static void printVariantRecordSummaryToFile(PrintWriter detailedVariantRecordWriter,
+			VariantRecordSummary varSummary) {
 		detailedVariantRecordWriter.println(varSummary.toString());
 	}
 
@@ -3,6 +3,7 @@
  */
 package vtc.tools.varstats;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.TreeSet;
 
@@ -12,7 +13,12 @@ import vtc.tools.utilitybelt.UtilityBelt;
  * @author markebbert
  *
  */
-public class VariantPoolSummary {
+public class VariantPoolSummary implements Serializable {
+
+	/**
+	 * 
+	 */
+	private static final long serialVersionUID = -3308126622417880155L;
 
 	private int numSamples;
 	private int numRecords;
@@ -704,6 +710,26 @@ public class VariantPoolSummary {
 
 
 
+	/**
+	 * Add two summaries of the same samples over different regions (e.g.,
+	 * different contigs). Unlike addVariantPoolSummaries, the samples
+	 * are not added together.
+	 * 
+	 * @param vps1
+	 * @param vps2
+	 * @return a new VariantPoolSummary after adding vps1 and vps2 together.
+	 */
+	public static VariantPoolSummary addRegionSummaries(VariantPoolSummary vps1, VariantPoolSummary vps2) {
+		VariantPoolSummary newVPS = addVariantPoolSummaries(vps1, vps2);
+		newVPS.setNumSamples(Math.max(vps1.getNumSamples(), vps2.getNumSamples()));
+		newVPS.setNumVarRecords(vps1.getNumVarRecords() + vps2.getNumVarRecords());
+		return newVPS;
+	}
+	
+	
+	
+	
+	
 	private static int getSmallestInDel(int vps1, int vps2) {
 		if(vps1 > 0){
         	if(vps2 > 0){
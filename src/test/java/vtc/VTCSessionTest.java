@@ -0,0 +1,102 @@
+/**
+ *
+ */
+package vtc;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import rules.OnFail;
+import vtc.datastructures.AbstractVariantPool;
+import vtc.datastructures.RegionList;
+import vtc.datastructures.VariantPoolHeavy;
+import vtc.tools.setoperator.operation.OperationFactory;
+import vtc.tools.utilitybelt.UtilityBelt;
+
+/**
+ * @author markebbert
+ *
+ */
+public class VTCSessionTest {
+
+	public static final String RED = "\u001B[31m";
+	public static final String GREEN = "\u001B[32m";
+	public static final String RESET = "\u001B[0m";
+
+	private static String input = "target/test-classes/multiple_alts.vcf";
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		System.out.println(RED+"========================================================\n"
+				+ "                      VTCSessionTest                    \n"
+				+ "========================================================\n"+RESET);
+	}
+
+	@Rule
+	public OnFail ruleExample = new OnFail();
+
+	/**
+	 * Jobs in their own sessions must not see each other's IDs or defaults
+	 * @throws Exception
+	 */
+	@Test
+	public void testSessionsAreIndependent() throws Exception {
+		System.out.println(GREEN+"\nTest Sessions Are Independent"+RESET);
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try{
+			ArrayList<Future<List<String>>> jobs = new ArrayList<Future<List<String>>>();
+			for(int i = 0; i < 2; i++){
+				jobs.add(executor.submit(new Callable<List<String>>(){
+					@Override
+					public List<String> call() throws Exception {
+						VTCSession previous = VTCSession.enter(new VTCSession());
+						try{
+							AbstractVariantPool.setDefaultRegions(RegionList.parse(Arrays.asList("chr7")));
+							TreeMap<String, VariantPoolHeavy> vps = UtilityBelt.createHeavyVariantPools(
+									Arrays.asList(input, input), false, 2);
+							for(VariantPoolHeavy vp : vps.values()){
+								assertTrue(vp.getContigs().size() == 1);
+							}
+							String opID = OperationFactory.createOperation("u[" + vps.firstKey() + ":" +
+									vps.lastKey() + "]", vps).getOperationID();
+
+							ArrayList<String> ids = new ArrayList<String>(vps.keySet());
+							ids.add(opID);
+							assertTrue(new TreeSet<String>(AbstractVariantPool.getAllPoolIDs()).equals(vps.keySet()));
+							return ids;
+						} finally {
+							VTCSession.exit(previous);
+						}
+					}
+				}));
+			}
+
+			/* Both sessions number their IDs from 1 */
+			List<String> first = jobs.get(0).get();
+			assertTrue(first.equals(jobs.get(1).get()));
+			assertTrue(first.equals(Arrays.asList("v1", "v2", "s1")));
+		} finally {
+			executor.shutdown();
+		}
+
+		/* Nothing leaked into the default session */
+		assertTrue(VTCSession.current().getDefaultRegions() == null);
+		VariantPoolHeavy vp = new VariantPoolHeavy(new File(input), "sessionDefault", false);
+		assertTrue(vp.getContigs().size() > 1);
+	}
+}
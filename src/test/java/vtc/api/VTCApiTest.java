@@ -0,0 +1,157 @@
+/**
+ *
+ */
+package vtc.api;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintWriter;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import rules.OnFail;
+import vtc.VTCEngine;
+import vtc.datastructures.InvalidInputFileException;
+import vtc.datastructures.SupportedFileType;
+import vtc.datastructures.VariantPoolHeavy;
+import vtc.tools.miscSetOperTests.MiscSetOperTest;
+import vtc.tools.setoperator.IntersectType;
+import vtc.tools.setoperator.operation.InvalidOperationException;
+import vtc.tools.utilitybelt.UtilityBelt;
+import vtc.tools.varstats.VariantPoolSummary;
+
+/**
+ * @author markebbert
+ *
+ */
+public class VTCApiTest {
+
+	public static final String RED = "\u001B[31m";
+	public static final String GREEN = "\u001B[32m";
+	public static final String RESET = "\u001B[0m";
+
+	private static String input = "target/test-classes/multiple_alts.vcf";
+	private static String outDir = "target/test-classes/OUTPUT/VTCApi/";
+	private static File half = new File(outDir + "half.vcf");
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		System.out.println(RED+"========================================================\n"
+				+ "                       VTCApiTest                       \n"
+				+ "========================================================\n"+RESET);
+		new File(outDir).mkdirs();
+
+		/* Keep every other record */
+		BufferedReader reader = new BufferedReader(new FileReader(input));
+		PrintWriter writer = new PrintWriter(half);
+		String line;
+		int count = 0;
+		while((line = reader.readLine()) != null){
+			if(line.startsWith("#") || count++ % 2 == 0){
+				writer.println(line);
+			}
+		}
+		reader.close();
+		writer.close();
+	}
+
+	@Rule
+	public OnFail ruleExample = new OnFail();
+
+	/**
+	 * A job run through the API must write the same records as the same job
+	 * run on the command line
+	 * @throws Exception
+	 */
+	@Test
+	public void testSetOperationMatchesCommandLine() throws Exception {
+		System.out.println(GREEN+"\nTest Set Operation Matches Command Line"+RESET);
+
+		String cli = outDir + "cli.vcf";
+		VTCEngine.main(("SO -s apiI=i[api1:api2] -g alt -i api1=" + input + " api2=" + half.getPath() +
+				" -R " + UtilityBelt.getHGREF() + " -o " + cli).split(" "));
+
+		File out = new File(outDir + "api.vcf");
+		SetOperationResult result = new SetOperationJob.Builder()
+				.input("api1", new File(input))
+				.input("api2", half)
+				.intersect("apiI", "api1", "api2")
+				.union("apiU", "apiI", "api1")
+				.intersectType(IntersectType.ALT)
+				.output(out, SupportedFileType.VCF, new File(UtilityBelt.getHGREF()))
+				.build().run();
+
+		/* The last operation is written; every operation's result is returned */
+		assertTrue(result.getResults().keySet().toString().equals("[apiI, apiU]"));
+		VariantPoolHeavy intersect = result.getResult("apiI");
+		assertTrue(intersect.getNumVarRecords() > 0);
+		assertTrue(result.getCounts("apiI").getNumVarRecords() == intersect.getNumVarRecords());
+		assertTrue(result.getResult().getNumVarRecords() ==
+				new VariantPoolHeavy(new File(input), "apiInput", false).getNumVarRecords());
+
+		new SetOperationJob.Builder()
+				.input("api1", new File(input))
+				.input("api2", half)
+				.operation("apiI=i[api1:api2]")
+				.intersectType(IntersectType.ALT)
+				.output(out, SupportedFileType.VCF, new File(UtilityBelt.getHGREF()))
+				.build().run();
+		MiscSetOperTest.test2files(cli, out.getPath());
+	}
+
+	/**
+	 * Failed jobs throw rather than exiting the JVM
+	 * @throws Exception
+	 */
+	@Test
+	public void testFailuresThrow() throws Exception {
+		System.out.println(GREEN+"\nTest Failures Throw"+RESET);
+
+		try{
+			new SetOperationJob.Builder()
+					.input("fail1", new File(input))
+					.input("fail2", half)
+					.intersect("failI", "fail1", "noSuchPool")
+					.build().run();
+			assertTrue(false);
+		} catch (VTCException e){
+			assertTrue(e.getCause() instanceof InvalidOperationException);
+		}
+
+		try{
+			new VarStatsJob.Builder().input(new File(outDir + "noSuchFile.vcf")).build().run();
+			assertTrue(false);
+		} catch (VTCException e){
+			assertTrue(e.getCause() instanceof InvalidInputFileException);
+		}
+
+		try{
+			new SetOperationJob.Builder().input(new File(input)).build();
+			assertTrue(false);
+		} catch (IllegalStateException e){
+			assertTrue(e.getMessage().contains("operation"));
+		}
+	}
+
+	/**
+	 * Summaries are returned rather than printed
+	 * @throws Exception
+	 */
+	@Test
+	public void testVarStatsSummary() throws Exception {
+		System.out.println(GREEN+"\nTest VarStats Summary"+RESET);
+
+		VarStatsResult result = new VarStatsJob.Builder()
+				.input("stats1", new File(input))
+				.input("stats2", half)
+				.build().run();
+		assertTrue(result.getSummaries().size() == 2 && result.getDetailedSummaries().isEmpty());
+		VariantPoolSummary summary = result.getSummaries().get("stats2_" + half.getName());
+		assertTrue(summary.getNumRecords() == new VariantPoolHeavy(half, "statsHalf", true).getNumVarRecords());
+	}
+}
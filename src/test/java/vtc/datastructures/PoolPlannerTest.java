@@ -0,0 +1,166 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import rules.OnFail;
+import vtc.VTCSession;
+import vtc.tools.utilitybelt.UtilityBelt;
+
+/**
+ * @author markebbert
+ *
+ */
+public class PoolPlannerTest {
+
+	public static final String RED = "\u001B[31m";
+	public static final String GREEN = "\u001B[32m";
+	public static final String RESET = "\u001B[0m";
+
+	private static String input = "target/test-classes/multiple_alts.vcf";
+	private static String outDir = "target/test-classes/OUTPUT/PoolPlanner/";
+
+	private VTCSession previous;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		System.out.println(RED+"========================================================\n"
+				+ "                     PoolPlannerTest                    \n"
+				+ "========================================================\n"+RESET);
+		new File(outDir).mkdirs();
+	}
+
+	@Before
+	public void setUp(){
+		previous = VTCSession.enter(new VTCSession());
+	}
+
+	@After
+	public void tearDown(){
+		VTCSession.exit(previous);
+	}
+
+	@Rule
+	public OnFail ruleExample = new OnFail();
+
+	@Test
+	public void testChoosesByAccessPattern() throws Exception {
+		System.out.println(GREEN+"\nTest Chooses By Access Pattern"+RESET);
+
+		File file = new File(input);
+		assertTrue(new PoolPlanner(AccessPattern.SEQUENTIAL, 1).choose(file) == PoolBackends.STREAMING);
+		assertTrue(new PoolPlanner(AccessPattern.LOOKUP, 1).choose(file) == PoolBackends.HEAVY);
+
+		TreeMap<String, AbstractVariantPool> vps = UtilityBelt.createVariantPools(
+				Arrays.asList(input), false, AccessPattern.SEQUENTIAL);
+		assertTrue(vps.firstEntry().getValue() instanceof VariantPoolLight);
+	}
+
+	@Test
+	public void testChoosesBySize() throws Exception {
+		System.out.println(GREEN+"\nTest Chooses By Size"+RESET);
+
+		File file = new File(input);
+		long estimate = PoolPlanner.estimateHeapBytes(file);
+		PoolPlanner planner = new PoolPlanner(AccessPattern.LOOKUP, 2);
+
+		planner.setHeapBudget(estimate / 2);
+		assertTrue(planner.choose(file) == PoolBackends.COMPRESSED);
+
+		planner.setHeapBudget(1);
+		assertTrue(planner.choose(file) == PoolBackends.INDEXED);
+
+		/* Plain gzip cannot be read by offset */
+		File gzipped = new File(outDir + "multiple_alts.vcf.gz");
+		InputStream in = new FileInputStream(file);
+		OutputStream out = new GZIPOutputStream(new FileOutputStream(gzipped));
+		byte[] buffer = new byte[8192];
+		int n;
+		while((n = in.read(buffer)) > 0){
+			out.write(buffer, 0, n);
+		}
+		in.close();
+		out.close();
+		assertTrue(planner.choose(gzipped) == PoolBackends.SPILLED);
+
+		VariantPoolHeavy expected = new VariantPoolHeavy(file, "plannerExpected", false);
+		VariantPoolHeavy spilled = (VariantPoolHeavy) planner.createVariantPool(gzipped, "plannerSpilled", false);
+		assertTrue(spilled.hasSpilled());
+		assertTrue(spilled.getNumVarRecords() == expected.getNumVarRecords());
+		spilled.deleteSpilledVariants();
+	}
+
+	@Test
+	public void testOverride() throws Exception {
+		System.out.println(GREEN+"\nTest Override"+RESET);
+
+		File file = new File(input);
+		PoolPlanner planner = new PoolPlanner(AccessPattern.LOOKUP, 1);
+
+		PoolPlanner.setDefaultBackend("compressed");
+		assertTrue(planner.choose(file) == PoolBackends.COMPRESSED);
+		VariantPoolHeavy vp = (VariantPoolHeavy) planner.createVariantPool(file, "plannerCompressed", false);
+		assertTrue(vp.hasCompressedRecords());
+
+		/* Streaming pools cannot be looked up */
+		PoolPlanner.setDefaultBackend("streaming");
+		assertTrue(planner.choose(file) == PoolBackends.HEAVY);
+
+		PoolPlanner.setDefaultBackend(PoolPlanner.AUTO);
+		assertTrue(VTCSession.current().getDefaultPoolBackend() == null);
+	}
+
+	@Test
+	public void testRegisteredBackend() throws Exception {
+		System.out.println(GREEN+"\nTest Registered Backend"+RESET);
+
+		final int[] created = new int[1];
+		PoolPlanner.register(new PoolBackend(){
+			@Override
+			public String getName() {
+				return "counting";
+			}
+
+			@Override
+			public boolean supports(AccessPattern pattern) {
+				return true;
+			}
+
+			@Override
+			public boolean canRead(File file) throws IOException {
+				return true;
+			}
+
+			@Override
+			public AbstractVariantPool createVariantPool(File file, String poolID, boolean addChr,
+					long heapBudget) throws IOException {
+				created[0]++;
+				return new VariantPoolHeavy(file, poolID, addChr);
+			}
+		});
+		assertTrue(PoolPlanner.getBackendChoices().contains("counting"));
+
+		PoolPlanner.setDefaultBackend("counting");
+		TreeMap<String, VariantPoolHeavy> vps = UtilityBelt.createHeavyVariantPools(
+				Arrays.asList(input, input), false);
+		assertTrue(vps.size() == 2 && created[0] == 2);
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import htsjdk.tribble.index.Index;
+import htsjdk.tribble.index.IndexFactory;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import rules.OnFail;
+
+/**
+ * @author markebbert
+ *
+ */
+public class RegionListTest {
+
+	public static final String RED = "\u001B[31m";
+	public static final String GREEN = "\u001B[32m";
+	public static final String RESET = "\u001B[0m";
+
+	private static String input = "target/test-classes/15-0.vcf";
+	private static String outDir = "target/test-classes/OUTPUT/RegionList/";
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		System.out.println(RED+"========================================================\n"
+				+ "                     RegionListTest                     \n"
+				+ "========================================================\n"+RESET);
+		new File(outDir).mkdirs();
+	}
+
+	@After
+	public void tearDown(){
+		AbstractVariantPool.setDefaultRegions(null);
+	}
+
+	@Rule
+	public OnFail ruleExample = new OnFail();
+
+	/**
+	 * Count the records read by 'vp'
+	 */
+	private int countRecords(AbstractVariantPool vp) throws Exception {
+		int count = 0;
+		while(vp.getNextVar() != null){
+			count++;
+		}
+		return count;
+	}
+
+	@Test
+	public void testParseRegions() throws Exception {
+		System.out.println(GREEN+"\nTest Parse Regions"+RESET);
+
+		File bed = new File(outDir + "regions.bed");
+		PrintWriter writer = new PrintWriter(bed);
+		writer.println("track name=test");
+		writer.println("chr20\t999\t2000");
+		writer.close();
+
+		RegionList regions = RegionList.parse(Arrays.asList("20:100-200,20:150-300", "X", bed.getPath()));
+		assertTrue(regions.getRegions().size() == 3);
+		assertTrue(regions.overlaps("20", 300, 300));
+		assertTrue(regions.overlaps("chr20", 90, 100));
+		assertFalse(regions.overlaps("20", 301, 999));
+		assertTrue(regions.overlaps("20", 1000, 1000));
+		assertFalse(regions.overlaps("20", 2001, 2001));
+		assertTrue(regions.overlaps("chrX", 123456789, 123456789));
+		assertFalse(regions.overlaps("1", 150, 150));
+	}
+
+	@Test(expected = InvalidInputFileException.class)
+	public void testInvalidRegion() throws Exception {
+		System.out.println(GREEN+"\nTest Invalid Region"+RESET);
+		RegionList.parse(Arrays.asList("20:300-100"));
+	}
+
+	/**
+	 * Indexed and unindexed files must give the same records
+	 * @throws Exception
+	 */
+	@Test
+	public void testIndexedRegions() throws Exception {
+		System.out.println(GREEN+"\nTest Indexed Regions"+RESET);
+
+		/* Copy the input so its index lands in the output directory */
+		File indexed = new File(outDir + "indexed.vcf");
+		BufferedReader reader = new BufferedReader(new FileReader(input));
+		PrintWriter writer = new PrintWriter(indexed);
+		String line;
+		while((line = reader.readLine()) != null){
+			writer.println(line);
+		}
+		reader.close();
+		writer.close();
+		Index index = IndexFactory.createLinearIndex(indexed, new VCFCodec());
+		index.writeBasedOnFeatureFile(indexed);
+
+		/* Overlapping regions are merged, so no record is read twice */
+		RegionList regions = RegionList.parse(Arrays.asList("chr20:400000-8233352", "20:8000000-9000000",
+				"20:42159695"));
+		ArrayList<Integer> expected = new ArrayList<Integer>();
+		VariantPoolLight all = new VariantPoolLight(new File(input), "regionAll", false, false);
+		VariantContext var;
+		while((var = all.getNextVar()) != null){
+			if(regions.overlaps(var.getChr(), var.getStart(), var.getEnd())){
+				expected.add(var.getStart());
+			}
+		}
+		assertTrue(expected.size() > 40);
+
+		VariantPoolLight filtered = new VariantPoolLight(new File(input), "regionFiltered", false, false);
+		filtered.setRegions(regions);
+		assertTrue(countRecords(filtered) == expected.size());
+
+		VariantPoolLight queried = new VariantPoolLight(indexed, "regionQueried", false, false);
+		queried.setRegions(regions);
+		ArrayList<Integer> actual = new ArrayList<Integer>();
+		while((var = queried.getNextVar()) != null){
+			actual.add(var.getStart());
+		}
+		assertTrue(actual.equals(expected));
+
+		/* Heavy pools still rename contigs */
+		AbstractVariantPool.setDefaultRegions(regions);
+		VariantPoolHeavy heavy = new VariantPoolHeavy(indexed, "regionHeavy", true);
+		assertTrue(heavy.getNumVarRecords() == expected.size());
+		assertTrue(heavy.getNextVar().getChr().equals("chr20"));
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import rules.OnFail;
+
+/**
+ * @author markebbert
+ *
+ */
+public class VCFSorterTest {
+
+	public static final String RED = "\u001B[31m";
+	public static final String GREEN = "\u001B[32m";
+	public static final String RESET = "\u001B[0m";
+
+	private static String input = "target/test-classes/UnionTests/testOverlappingSamplesDifferentVariantSets/input2.vcf";
+	private static String outDir = "target/test-classes/OUTPUT/VCFSorter/";
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		System.out.println(RED+"========================================================\n"
+				+ "                      VCFSorterTest                     \n"
+				+ "========================================================\n"+RESET);
+		new File(outDir + "tmp").mkdirs();
+	}
+
+	@Rule
+	public OnFail ruleExample = new OnFail();
+
+	/**
+	 * Write the records of 'in' in reverse order
+	 */
+	public static void reverseRecords(File in, File out) throws IOException{
+		BufferedReader reader = new BufferedReader(new FileReader(in));
+		PrintWriter writer = new PrintWriter(out);
+		ArrayList<String> records = new ArrayList<String>();
+		String line;
+		while((line = reader.readLine()) != null){
+			if(line.startsWith("#")){
+				writer.println(line);
+			}
+			else{
+				records.add(line);
+			}
+		}
+		for(int i = records.size() - 1; i >= 0; i--){
+			writer.println(records.get(i));
+		}
+		reader.close();
+		writer.close();
+	}
+
+	@Test
+	public void testSortWithSpills() throws Exception {
+		System.out.println(GREEN+"\nTest Sort With Spills"+RESET);
+
+		File unsorted = new File(outDir + "reversed.vcf");
+		reverseRecords(new File(input), unsorted);
+		File tmpDir = new File(outDir + "tmp");
+
+		/* A tiny budget spills every record to its own file */
+		VCFSorter sorter = new VCFSorter(null, 1, tmpDir);
+		assertTrue(sorter.isSorted(new File(input)));
+		assertFalse(sorter.isSorted(unsorted));
+
+		File sorted = sorter.ensureSorted(unsorted);
+		assertTrue(sorted.getName().endsWith(".vcf.gz"));
+		assertTrue(sorter.isSorted(sorted));
+		assertTrue(tmpDir.list().length == 1);
+
+		VariantPoolLight expected = new VariantPoolLight(new File(input), "sortExpected", false, false);
+		VariantPoolLight actual = new VariantPoolLight(sorted, "sortActual", false, false);
+		VariantContext e, a;
+		while((e = expected.getNextVar()) != null){
+			a = actual.getNextVar();
+			assertTrue(a != null);
+			assertTrue(e.getChr().equals(a.getChr()) && e.getStart() == a.getStart());
+			assertTrue(e.getAlleles().equals(a.getAlleles()));
+		}
+		assertTrue(actual.getNextVar() == null);
+
+		sorter.deleteSortedFiles();
+		assertTrue(tmpDir.list().length == 0);
+	}
+
+	@Test
+	public void testSortedInputIsUnchanged() throws Exception {
+		System.out.println(GREEN+"\nTest Sorted Input Is Unchanged"+RESET);
+
+		VCFSorter sorter = new VCFSorter(null, VCFSorter.DEFAULT_MAX_MEMORY, new File(outDir + "tmp"));
+		File in = new File(input);
+		assertTrue(sorter.ensureSorted(in) == in);
+	}
+}
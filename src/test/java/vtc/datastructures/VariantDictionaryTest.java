@@ -0,0 +1,133 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.io.File;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import rules.OnFail;
+
+/**
+ * @author markebbert
+ *
+ */
+public class VariantDictionaryTest {
+
+	public static final String RED = "\u001B[31m";
+	public static final String GREEN = "\u001B[32m";
+	public static final String RESET = "\u001B[0m";
+
+	private static String input = "target/test-classes/multiple_alts.vcf";
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		System.out.println(RED+"========================================================\n"
+				+ "                  VariantDictionaryTest                 \n"
+				+ "========================================================\n"+RESET);
+	}
+
+	@Rule
+	public OnFail ruleExample = new OnFail();
+
+	@Test
+	public void testInternedPool() throws Exception {
+		System.out.println(GREEN+"\nTest Interned Pool"+RESET);
+
+		/* Adding 'chr' renames records as they are decoded. Moving the plain
+		 * records to the new contigs rebuilds them with the dictionary's values.
+		 */
+		VariantPoolHeavy plain = new VariantPoolHeavy(new File(input), "dictPlain", false);
+		VariantPoolHeavy withChr = new VariantPoolHeavy(new File(input), "dictChr", true);
+		assertTrue(plain.getNumVarRecords() == withChr.getNumVarRecords());
+
+		VariantDictionary dict = withChr.getDictionary();
+		VariantContext p, c, moved;
+		while((p = plain.getNextVar()) != null){
+			c = withChr.getNextVar();
+			assertTrue(c.getChr().equals("chr" + p.getChr()));
+			assertSame(dict.intern(new String(c.getChr())), c.getChr());
+
+			moved = dict.intern(p, c.getChr());
+			assertSame(c.getChr(), moved.getChr());
+			assertTrue(moved.getStart() == c.getStart());
+			assertTrue(moved.getAlleles().equals(c.getAlleles()));
+			assertTrue(moved.getFilters().equals(c.getFilters()));
+			assertTrue(moved.getAttributes().equals(c.getAttributes()));
+			for(Allele a : moved.getAlleles()){
+				if(a.length() <= VariantDictionary.MAX_INTERNED_LENGTH){
+					assertSame(dict.intern(Allele.create(a.getDisplayString(), a.isReference())), a);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testContigAliases() throws Exception {
+		System.out.println(GREEN+"\nTest Contig Aliases"+RESET);
+
+		ContigAliasMap aliases = new ContigAliasMap(true);
+		assertTrue(aliases.translate("20").equals("chr20"));
+		assertTrue(aliases.translate("chr20").equals("chr20"));
+		assertSame(aliases.translate("20"), aliases.translate(new String("20")));
+		assertTrue(new ContigAliasMap(false).translate("CHR20").equals("20"));
+
+		/* Records are parsed with the translated contig, so all share it */
+		VariantPoolHeavy withChr = new VariantPoolHeavy(new File(input), "aliasChr", true);
+		VariantContext first = withChr.getNextVar(), var;
+		while((var = withChr.getNextVar()) != null){
+			if(var.getChr().equals(first.getChr())){
+				assertSame(first.getChr(), var.getChr());
+			}
+		}
+	}
+
+	@Test
+	public void testInternedRecordIsNotRebuilt() throws Exception {
+		System.out.println(GREEN+"\nTest Interned Record Is Not Rebuilt"+RESET);
+
+		VariantPoolHeavy vp = new VariantPoolHeavy(new File(input), "dictSame", false);
+		VariantContext var = vp.getNextVar();
+		assertSame(var, vp.getDictionary().intern(var, var.getChr()));
+	}
+
+	@Test
+	public void testDecodedRecordsAreShared() throws Exception {
+		System.out.println(GREEN+"\nTest Decoded Records Are Shared"+RESET);
+
+		/* Records read from the file already use the dictionary's contig, so
+		 * none are rebuilt when they are added to the pool.
+		 */
+		VariantPoolHeavy vp = new VariantPoolHeavy(new File(input), "dictDecoded", false);
+		VariantDictionary dict = vp.getDictionary();
+		VariantContext var;
+		while((var = vp.getNextVar()) != null){
+			assertSame(dict.intern(new String(var.getChr())), var.getChr());
+			assertSame(var, dict.intern(var, var.getChr()));
+		}
+	}
+
+	@Test
+	public void testLongAllelesAreNotKept() throws Exception {
+		System.out.println(GREEN+"\nTest Long Alleles Are Not Kept"+RESET);
+
+		VariantDictionary dict = new VariantDictionary();
+		Allele shortAllele = Allele.create("ACGT", false);
+		assertSame(shortAllele, dict.intern(shortAllele));
+		assertSame(shortAllele, dict.intern(Allele.create("ACGT", false)));
+		assertTrue(dict.size() == 1);
+
+		Allele longAllele = Allele.create("ACGTACGTACGTACGTACGT", false);
+		assertSame(longAllele, dict.intern(longAllele));
+		assertTrue(dict.intern(Allele.create("ACGTACGTACGTACGTACGT", false)) != longAllele);
+		assertTrue(dict.size() == 1);
+	}
+}
@@ -0,0 +1,250 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.variantcontext.VariantContextBuilder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import rules.OnFail;
+import vtc.tools.utilitybelt.UtilityBelt;
+
+/**
+ * @author markebbert
+ *
+ */
+public class VariantPoolHeavySpillTest {
+
+	public static final String RED = "\u001B[31m";
+	public static final String GREEN = "\u001B[32m";
+	public static final String RESET = "\u001B[0m";
+
+	private static String input = "target/test-classes/15-0.vcf";
+	private static String multiContig = "target/test-classes/multiple_alts.vcf";
+	private static File tmpDir = new File("target/test-classes/OUTPUT/VariantPoolSpill/tmp");
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		System.out.println(RED+"========================================================\n"
+				+ "                VariantPoolHeavySpillTest               \n"
+				+ "========================================================\n"+RESET);
+		tmpDir.mkdirs();
+	}
+
+	@After
+	public void tearDown(){
+		VariantPoolHeavy.setDefaultMemoryBudget(0, null);
+		VariantPoolHeavy.setDefaultCompressedRecords(false);
+	}
+
+	@Rule
+	public OnFail ruleExample = new OnFail();
+
+	/**
+	 * A spilled pool must hold the same records, in the same order, as a pool
+	 * kept entirely in memory.
+	 */
+	private void assertSamePool(VariantPoolHeavy expected, VariantPoolHeavy actual) throws Exception {
+		assertTrue(expected.getNumVarRecords() == actual.getNumVarRecords());
+
+		VariantContext e, a;
+		while((e = expected.getNextVar()) != null){
+			a = actual.getNextVar();
+			assertTrue(a != null);
+			assertTrue(e.getChr().equals(a.getChr()) && e.getStart() == a.getStart());
+			assertTrue(e.getAlleles().equals(a.getAlleles()));
+			assertTrue(e.getNSamples() == a.getNSamples());
+			assertTrue(e.getGenotypes().toString().equals(a.getGenotypes().toString()));
+			assertTrue(e.getAttributes().toString().equals(a.getAttributes().toString()));
+
+			/* Look up records from disk too */
+			a = actual.getVariant(e.getChr(), e.getStart(), e.getReference().toString());
+			assertTrue(a != null && a.getAlleles().equals(e.getAlleles()));
+		}
+		assertTrue(actual.getNextVar() == null);
+	}
+
+	@Test
+	public void testSpillMatchesInMemoryPool() throws Exception {
+		System.out.println(GREEN+"\nTest Spill Matches In-Memory Pool"+RESET);
+
+		VariantPoolHeavy expected = new VariantPoolHeavy(new File(input), "spillExpected", false);
+		assertFalse(expected.hasSpilled());
+
+		/* A budget this small spills many times while parsing */
+		VariantPoolHeavy.setDefaultMemoryBudget(20000, tmpDir);
+		VariantPoolHeavy spilled = new VariantPoolHeavy(new File(input), "spillActual", false);
+		assertTrue(spilled.hasSpilled());
+		assertTrue(tmpDir.list().length > 1);
+
+		assertSamePool(expected, spilled);
+
+		spilled.deleteSpilledVariants();
+		assertTrue(tmpDir.list().length == 0);
+	}
+
+	@Test
+	public void testSpillAcrossContigs() throws Exception {
+		System.out.println(GREEN+"\nTest Spill Across Contigs"+RESET);
+
+		VariantPoolHeavy expected = new VariantPoolHeavy(new File(multiContig), "spillContigsExpected", false);
+		VariantPoolHeavy.setDefaultMemoryBudget(1000, tmpDir);
+		VariantPoolHeavy spilled = new VariantPoolHeavy(new File(multiContig), "spillContigsActual", false);
+		assertTrue(spilled.hasSpilled());
+
+		assertSamePool(expected, spilled);
+		spilled.deleteSpilledVariants();
+	}
+
+	@Test
+	public void testCompressedRecords() throws Exception {
+		System.out.println(GREEN+"\nTest Compressed Records"+RESET);
+
+		VariantPoolHeavy expected = new VariantPoolHeavy(new File(input), "compressExpected", false);
+		VariantPoolHeavy.setDefaultCompressedRecords(true);
+		VariantPoolHeavy compressed = new VariantPoolHeavy(new File(input), "compressActual", false);
+		assertTrue(compressed.hasCompressedRecords());
+		assertFalse(compressed.hasSpilled());
+		assertTrue(compressed.getStoredBytes() > 0);
+		assertTrue(tmpDir.list().length == 0);
+
+		assertSamePool(expected, compressed);
+	}
+
+	@Test
+	public void testUpdateSpilledVariant() throws Exception {
+		System.out.println(GREEN+"\nTest Update Spilled Variant"+RESET);
+
+		VariantPoolHeavy.setDefaultMemoryBudget(20000, tmpDir);
+		VariantPoolHeavy spilled = new VariantPoolHeavy(new File(input), "spillUpdate", false);
+		int nRecords = spilled.getNumVarRecords();
+
+		/* The first record was spilled long ago. Updating it must not add a record. */
+		VariantContext first = spilled.getNextVar();
+		String key = first.getChr() + ":" + first.getStart() + ":" + first.getReference();
+		spilled.updateVariant(key, new VariantContextBuilder(first).id("updated").make());
+		assertTrue(spilled.getNumVarRecords() == nRecords);
+		assertTrue("updated".equals(spilled.getVariant(key).getID()));
+
+		/* Iterating returns the newest copy, once */
+		while(spilled.getNextVar() != null);
+		VariantContext var = spilled.getNextVar();
+		assertTrue("updated".equals(var.getID()));
+		int count = 1;
+		while(spilled.getNextVar() != null){
+			count++;
+		}
+		assertTrue(count == nRecords);
+		spilled.deleteSpilledVariants();
+	}
+
+	/**
+	 * Lookups in random order, by key and by position, must find every
+	 * spilled record
+	 * @throws Exception
+	 */
+	@Test
+	public void testRandomLookups() throws Exception {
+		System.out.println(GREEN+"\nTest Random Lookups"+RESET);
+
+		VariantPoolHeavy expected = new VariantPoolHeavy(new File(input), "lookupExpected", false);
+		VariantPoolHeavy.setDefaultMemoryBudget(20000, tmpDir);
+		VariantPoolHeavy spilled = new VariantPoolHeavy(new File(input), "lookupActual", false);
+		try{
+			assertTrue(spilled.hasSpilled());
+
+			ArrayList<VariantContext> vars = new ArrayList<VariantContext>();
+			VariantContext var;
+			while((var = expected.getNextVar()) != null){
+				vars.add(var);
+			}
+			Collections.shuffle(vars, new Random(42));
+
+			VariantContext found;
+			Allele ref;
+			int length;
+			for(VariantContext e : vars){
+				found = spilled.getVariant(e.getChr(), e.getStart(), e.getReference().toString());
+				assertTrue(found != null && found.getAlleles().equals(e.getAlleles()));
+
+				/* Each record overlaps itself */
+				ref = e.getReference();
+				for(Allele alt : e.getAlternateAlleles()){
+					length = Math.max(ref.length(), alt.length());
+					found = spilled.getOverlappingIndel(e.getChr(), e.getStart(), length,
+							UtilityBelt.determineAltType(ref, alt));
+					assertTrue(found != null);
+				}
+			}
+		} finally {
+			spilled.deleteSpilledVariants();
+		}
+	}
+
+	/**
+	 * INFO values longer than 64KB must survive a spill
+	 * @throws Exception
+	 */
+	@Test
+	public void testSpillLongInfoValues() throws Exception {
+		System.out.println(GREEN+"\nTest Spill Long Info Values"+RESET);
+
+		StringBuilder ann = new StringBuilder();
+		while(ann.length() < 70000){
+			ann.append("A|missense_variant|MODERATE|");
+		}
+
+		/* Add a long ANN value to the first records */
+		File longInfo = new File(tmpDir.getParentFile(), "long_info.vcf");
+		BufferedReader reader = new BufferedReader(new FileReader(input));
+		PrintWriter writer = new PrintWriter(longInfo);
+		String line;
+		int nRecords = 0;
+		while((line = reader.readLine()) != null){
+			if(line.startsWith("#CHROM")){
+				writer.println("##INFO=<ID=ANN,Number=1,Type=String,Description=\"Annotations\">");
+				writer.println(line);
+			}
+			else if(line.startsWith("#") || nRecords++ >= 20){
+				writer.println(line);
+			}
+			else{
+				String[] cols = line.split("\t", 9);
+				cols[7] = cols[7] + ";ANN=" + ann;
+				StringBuilder record = new StringBuilder(cols[0]);
+				for(int i = 1; i < cols.length; i++){
+					record.append("\t").append(cols[i]);
+				}
+				writer.println(record);
+			}
+		}
+		reader.close();
+		writer.close();
+
+		VariantPoolHeavy expected = new VariantPoolHeavy(longInfo, "longInfoExpected", false);
+		VariantPoolHeavy.setDefaultMemoryBudget(200000, tmpDir);
+		VariantPoolHeavy spilled = new VariantPoolHeavy(longInfo, "longInfoActual", false);
+		try{
+			assertTrue(spilled.hasSpilled());
+			assertSamePool(expected, spilled);
+		} finally {
+			spilled.deleteSpilledVariants();
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import static org.junit.Assert.assertTrue;
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintWriter;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import rules.OnFail;
+import vtc.VTCEngine;
+import vtc.tools.miscSetOperTests.MiscSetOperTest;
+import vtc.tools.utilitybelt.UtilityBelt;
+
+/**
+ * @author markebbert
+ *
+ */
+public class VariantPoolIndexedTest {
+
+	public static final String RED = "\u001B[31m";
+	public static final String GREEN = "\u001B[32m";
+	public static final String RESET = "\u001B[0m";
+
+	private static String input = "target/test-classes/15-0.vcf";
+	private static String input2 = "target/test-classes/15-1.vcf";
+	private static String multiContig = "target/test-classes/multiple_alts.vcf";
+	private static String outDir = "target/test-classes/OUTPUT/VariantPoolIndexed/";
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		System.out.println(RED+"========================================================\n"
+				+ "                 VariantPoolIndexedTest                 \n"
+				+ "========================================================\n"+RESET);
+		new File(outDir).mkdirs();
+	}
+
+	@Rule
+	public OnFail ruleExample = new OnFail();
+
+	/**
+	 * An indexed pool must hold the same records, in the same order, as a
+	 * pool read into memory
+	 */
+	private void assertSamePool(VariantPoolHeavy expected, VariantPoolIndexed actual) throws Exception {
+		assertTrue(expected.getNumVarRecords() == actual.getNumVarRecords());
+		assertTrue(expected.getContigs().equals(actual.getContigs()));
+		assertTrue(expected.getSamples().equals(actual.getSamples()));
+
+		VariantContext e, a;
+		while((e = expected.getNextVar()) != null){
+			a = actual.getNextVar();
+			assertTrue(a != null);
+			assertTrue(e.getChr().equals(a.getChr()) && e.getStart() == a.getStart());
+			assertTrue(e.getAlleles().equals(a.getAlleles()));
+			assertTrue(e.getGenotypes().toString().equals(a.getGenotypes().toString()));
+
+			a = actual.getVariant(e.getChr(), e.getStart(), e.getReference().toString());
+			assertTrue(a != null && a.getAlleles().equals(e.getAlleles()));
+		}
+		assertTrue(actual.getNextVar() == null);
+		assertTrue(actual.getVariant("noSuchContig:1:A*") == null);
+	}
+
+	@Test
+	public void testMatchesHeavyPool() throws Exception {
+		System.out.println(GREEN+"\nTest Matches Heavy Pool"+RESET);
+
+		for(String file : new String[]{input, multiContig}){
+			VariantPoolHeavy expected = new VariantPoolHeavy(new File(file), "indexedExpected", true);
+			VariantPoolIndexed indexed = new VariantPoolIndexed(new File(file), "indexedActual", true);
+			assertTrue(VariantKeyIndex.getIndexFile(new File(file)).isFile());
+			assertSamePool(expected, indexed);
+
+			/* A second pass starts over */
+			assertTrue(indexed.getNextVar() != null);
+			indexed.close();
+		}
+	}
+
+	@Test
+	public void testOverlappingIndels() throws Exception {
+		System.out.println(GREEN+"\nTest Overlapping Indels"+RESET);
+
+		VariantPoolHeavy vp1 = new VariantPoolHeavy(new File(input), "indelVP1", false);
+		VariantPoolHeavy vp2 = new VariantPoolHeavy(new File(input2), "indelVP2", false);
+		VariantPoolIndexed indexed = new VariantPoolIndexed(new File(input2), "indelIndexed", false);
+
+		VariantContext var;
+		while((var = vp1.getNextVar()) != null){
+			assertTrue(vp2.getOverlappingIndelAlleleCount(var) == indexed.getOverlappingIndelAlleleCount(var));
+		}
+	}
+
+	@Test
+	public void testBlockCompressedAndReindexed() throws Exception {
+		System.out.println(GREEN+"\nTest Block-Compressed And Reindexed"+RESET);
+
+		File bgzipped = new File(outDir + "multiple_alts.vcf.gz");
+		BufferedReader reader = new BufferedReader(new FileReader(multiContig));
+		BlockCompressedOutputStream out = new BlockCompressedOutputStream(bgzipped);
+		String line;
+		while((line = reader.readLine()) != null){
+			out.write((line + "\n").getBytes("UTF-8"));
+		}
+		reader.close();
+		out.close();
+
+		VariantPoolHeavy expected = new VariantPoolHeavy(new File(multiContig), "bgzfExpected", false);
+		assertSamePool(expected, new VariantPoolIndexed(bgzipped, "bgzfActual", false));
+
+		/* The index is reused until the file changes */
+		File indexFile = VariantKeyIndex.getIndexFile(bgzipped);
+		indexFile.setLastModified(1000);
+		VariantKeyIndex.load(bgzipped);
+		assertTrue(indexFile.lastModified() == 1000);
+
+		bgzipped.setLastModified(bgzipped.lastModified() - 10000);
+		VariantKeyIndex.load(bgzipped);
+		assertTrue(indexFile.lastModified() != 1000);
+	}
+
+	@Test
+	public void testIndexedIntersect() throws Exception {
+		System.out.println(GREEN+"\nTest Indexed Intersect"+RESET);
+
+		/* Keep every other record, so half of the records intersect */
+		File half = new File(outDir + "half.vcf");
+		BufferedReader reader = new BufferedReader(new FileReader(multiContig));
+		PrintWriter writer = new PrintWriter(half);
+		String line;
+		int count = 0;
+		while((line = reader.readLine()) != null){
+			if(line.startsWith("#") || count++ % 2 == 0){
+				writer.println(line);
+			}
+		}
+		reader.close();
+		writer.close();
+
+		String job = "SO -s indexedI=i[ix1:ix2] -i ix1=" + multiContig + " ix2=" + half.getPath() +
+				" -R " + UtilityBelt.getHGREF() + " -o ";
+		String loaded = outDir + "loaded.vcf";
+		String indexed = outDir + "indexed.vcf";
+		VTCEngine.main((job + loaded).split(" "));
+		VTCEngine.main((job + indexed + " --indexed").split(" "));
+
+		MiscSetOperTest.test2files(loaded, indexed);
+	}
+}
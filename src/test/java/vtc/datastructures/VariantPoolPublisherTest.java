@@ -0,0 +1,217 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import static org.junit.Assert.assertTrue;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import rules.OnFail;
+import vtc.tools.setoperator.SetOperator;
+import vtc.tools.setoperator.operation.OperationFactory;
+import vtc.tools.setoperator.operation.UnionOperation;
+import vtc.tools.utilitybelt.UtilityBelt;
+import vtc.tools.varstats.VariantPoolSummarizer;
+import vtc.tools.varstats.VariantPoolSummary;
+
+/**
+ * @author markebbert
+ *
+ */
+public class VariantPoolPublisherTest {
+
+	public static final String RED = "\u001B[31m";
+	public static final String GREEN = "\u001B[32m";
+	public static final String RESET = "\u001B[0m";
+
+	private static String input = "target/test-classes/multiple_alts.vcf";
+
+	private ExecutorService executor;
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		System.out.println(RED+"========================================================\n"
+				+ "                VariantPoolPublisherTest                \n"
+				+ "========================================================\n"+RESET);
+	}
+
+	@Before
+	public void setUp(){
+		executor = Executors.newFixedThreadPool(2);
+	}
+
+	@After
+	public void tearDown(){
+		executor.shutdown();
+	}
+
+	@Rule
+	public OnFail ruleExample = new OnFail();
+
+	/**
+	 * Requests 'batch' items at a time, and cancels after 'cancelAfter'
+	 * items (if not 0). Notes any item sent that was not requested.
+	 */
+	private static class TestSubscriber<T> implements Flow.Subscriber<T> {
+		private long batch, cancelAfter;
+		private Flow.Subscription subscription;
+		private long outstanding = 0;
+		private List<T> items = new ArrayList<T>();
+		private Throwable error;
+		private boolean completed = false;
+		private boolean unrequested = false;
+		private CountDownLatch finished = new CountDownLatch(1);
+
+		private TestSubscriber(long batch, long cancelAfter){
+			this.batch = batch;
+			this.cancelAfter = cancelAfter;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			outstanding = batch;
+			subscription.request(batch);
+		}
+
+		@Override
+		public synchronized void onNext(T item) {
+			items.add(item);
+			if(--outstanding < 0){
+				unrequested = true;
+			}
+			if(cancelAfter > 0 && items.size() == cancelAfter){
+				subscription.cancel();
+				finished.countDown();
+			}
+			else if(outstanding == 0){
+				outstanding = batch;
+				subscription.request(batch);
+			}
+		}
+
+		@Override
+		public synchronized void onError(Throwable throwable) {
+			error = throwable;
+			finished.countDown();
+		}
+
+		@Override
+		public synchronized void onComplete() {
+			completed = true;
+			finished.countDown();
+		}
+
+		private List<T> await() throws Exception {
+			assertTrue(finished.await(60, TimeUnit.SECONDS));
+			return items;
+		}
+	}
+
+	private static List<String> keys(List<VariantContext> vars){
+		ArrayList<String> keys = new ArrayList<String>();
+		for(VariantContext var : vars){
+			keys.add(var.getChr() + ":" + var.getStart() + ":" + var.getAlleles());
+		}
+		return keys;
+	}
+
+	/**
+	 * Subscribers must get every record in order, no more than they request
+	 * @throws Exception
+	 */
+	@Test
+	public void testBackpressure() throws Exception {
+		System.out.println(GREEN+"\nTest Backpressure"+RESET);
+
+		VariantPoolHeavy vp = new VariantPoolHeavy(new File(input), "pubHeavy", false);
+		ArrayList<VariantContext> expected = new ArrayList<VariantContext>();
+		VariantContext var;
+		while((var = vp.getNextVar()) != null){
+			expected.add(var);
+		}
+
+		VariantPoolPublisher publisher = new VariantPoolPublisher(vp, executor);
+		for(long batch : new long[]{1, 3, Long.MAX_VALUE}){
+			TestSubscriber<VariantContext> subscriber = new TestSubscriber<VariantContext>(batch, 0);
+			publisher.subscribe(subscriber);
+			assertTrue(keys(subscriber.await()).equals(keys(expected)));
+			assertTrue(subscriber.completed && subscriber.error == null && !subscriber.unrequested);
+		}
+	}
+
+	/**
+	 * Cancelled subscriptions get nothing more, and bad requests end with
+	 * an error
+	 * @throws Exception
+	 */
+	@Test
+	public void testCancelAndBadRequest() throws Exception {
+		System.out.println(GREEN+"\nTest Cancel And Bad Request"+RESET);
+
+		VariantPoolPublisher publisher = new VariantPoolPublisher(
+				new VariantPoolLight(new File(input), "pubLight", false, false), executor);
+		TestSubscriber<VariantContext> cancelled = new TestSubscriber<VariantContext>(2, 3);
+		publisher.subscribe(cancelled);
+		assertTrue(cancelled.await().size() == 3);
+		Thread.sleep(200);
+		assertTrue(cancelled.items.size() == 3 && !cancelled.completed);
+
+		TestSubscriber<VariantContext> bad = new TestSubscriber<VariantContext>(0, 0);
+		publisher.subscribe(bad);
+		assertTrue(bad.await().isEmpty());
+		assertTrue(bad.error instanceof IllegalArgumentException);
+	}
+
+	/**
+	 * Operation results and summaries are computed once they are requested
+	 * @throws Exception
+	 */
+	@Test
+	public void testOperationAndSummaryResults() throws Exception {
+		System.out.println(GREEN+"\nTest Operation And Summary Results"+RESET);
+
+		final TreeMap<String, VariantPoolHeavy> allVPs = UtilityBelt.createHeavyVariantPools(
+				Arrays.asList("pub1=" + input, "pub2=" + input), false);
+		final UnionOperation u = (UnionOperation) OperationFactory.createOperation("pubU=u[pub1:pub2]", allVPs);
+		final VariantPoolHeavy union = new SetOperator().performUnion(u,
+				new ArrayList<VariantPoolHeavy>(allVPs.values()), false);
+
+		TestSubscriber<VariantContext> records = new TestSubscriber<VariantContext>(5, 0);
+		new VariantPoolPublisher(new Callable<VariantPool>(){
+			@Override
+			public VariantPool call() throws Exception {
+				return new SetOperator().performUnion(u, new ArrayList<VariantPoolHeavy>(allVPs.values()), false);
+			}
+		}, executor).subscribe(records);
+		assertTrue(records.await().size() == union.getNumVarRecords());
+		assertTrue(records.completed);
+
+		TestSubscriber<VariantPoolSummary> summary = new TestSubscriber<VariantPoolSummary>(1, 0);
+		new ResultPublisher<VariantPoolSummary>(new Callable<VariantPoolSummary>(){
+			@Override
+			public VariantPoolSummary call() throws Exception {
+				return VariantPoolSummarizer.summarizeVariantPool(union, false);
+			}
+		}, executor).subscribe(summary);
+		assertTrue(summary.await().size() == 1 && summary.completed);
+		assertTrue(summary.items.get(0).getNumRecords() == union.getNumVarRecords());
+	}
+}
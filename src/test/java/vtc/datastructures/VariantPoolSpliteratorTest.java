@@ -0,0 +1,154 @@
+/**
+ *
+ */
+package vtc.datastructures;
+
+import static org.junit.Assert.assertTrue;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import rules.OnFail;
+
+/**
+ * @author markebbert
+ *
+ */
+public class VariantPoolSpliteratorTest {
+
+	public static final String RED = "\u001B[31m";
+	public static final String GREEN = "\u001B[32m";
+	public static final String RESET = "\u001B[0m";
+
+	private static String input = "target/test-classes/multiple_alts.vcf";
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		System.out.println(RED+"========================================================\n"
+				+ "                VariantPoolSpliteratorTest              \n"
+				+ "========================================================\n"+RESET);
+	}
+
+	@Rule
+	public OnFail ruleExample = new OnFail();
+
+	/**
+	 * @return each record as "chr:pos:alleles", in the order read
+	 */
+	private static List<String> read(VariantPoolIterator it) throws Exception {
+		ArrayList<String> records = new ArrayList<String>();
+		try{
+			while(it.hasNext()){
+				VariantContext var = it.next();
+				records.add(var.getChr() + ":" + var.getStart() + ":" + var.getAlleles());
+			}
+		} finally {
+			it.close();
+		}
+		return records;
+	}
+
+	private static List<String> readNextVar(VariantPool vp) throws Exception {
+		ArrayList<String> records = new ArrayList<String>();
+		VariantContext var;
+		while((var = vp.getNextVar()) != null){
+			records.add(var.getChr() + ":" + var.getStart() + ":" + var.getAlleles());
+		}
+		return records;
+	}
+
+	/**
+	 * Iterators must not share a position with each other or with getNextVar
+	 * @throws Exception
+	 */
+	@Test
+	public void testIndependentIterators() throws Exception {
+		System.out.println(GREEN+"\nTest Independent Iterators"+RESET);
+
+		VariantPool[] pools = new VariantPool[]{
+				new VariantPoolHeavy(new File(input), "iterHeavy", false),
+				new VariantPoolIndexed(new File(input), "iterIndexed", false),
+				new VariantPoolLight(new File(input), "iterLight", false, false)};
+		for(VariantPool vp : pools){
+
+			/* Start getNextVar and two iterators, then read each to the end */
+			VariantContext first = vp.getNextVar();
+			VariantPoolIterator it1 = vp.iterator();
+			VariantPoolIterator it2 = vp.iterator();
+			it2.next();
+			List<String> expected = read(it1);
+			assertTrue(expected.size() > 1);
+			assertTrue(read(it2).equals(expected.subList(1, expected.size())));
+			assertTrue(expected.get(0).equals(first.getChr() + ":" + first.getStart() + ":" + first.getAlleles()));
+			assertTrue(readNextVar(vp).equals(expected.subList(1, expected.size())));
+		}
+	}
+
+	/**
+	 * The parts of a split pool, read in order, must give every record in
+	 * order, on one thread or many
+	 * @throws Exception
+	 */
+	@Test
+	public void testSplitPartsCoverPool() throws Exception {
+		System.out.println(GREEN+"\nTest Split Parts Cover Pool"+RESET);
+
+		final VariantPool[] pools = new VariantPool[]{
+				new VariantPoolHeavy(new File(input), "splitHeavy", false),
+				new VariantPoolIndexed(new File(input), "splitIndexed", false)};
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try{
+			for(VariantPool vp : pools){
+				List<String> expected = readNextVar(vp);
+				assertTrue(vp.getContigExtents().size() > 1);
+
+				for(int parts : new int[]{1, 2, 3, 8, 64}){
+					List<VariantPoolSpliterator> split = new VariantPoolSpliterator(vp).split(parts);
+					assertTrue(split.size() == parts);
+
+					ArrayList<Future<List<String>>> reads = new ArrayList<Future<List<String>>>();
+					for(final VariantPoolSpliterator part : split){
+						reads.add(executor.submit(new Callable<List<String>>(){
+							@Override
+							public List<String> call() throws Exception {
+								return read(part.iterator());
+							}
+						}));
+					}
+					ArrayList<String> records = new ArrayList<String>();
+					for(Future<List<String>> read : reads){
+						records.addAll(read.get());
+					}
+					assertTrue(records.equals(expected));
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * A pool that does not know its contigs is read as one part
+	 * @throws Exception
+	 */
+	@Test
+	public void testUnknownContigsAreOnePart() throws Exception {
+		System.out.println(GREEN+"\nTest Unknown Contigs Are One Part"+RESET);
+
+		VariantPool vp = new VariantPoolLight(new File(input), "splitLight", false, false);
+		VariantPoolSpliterator spliterator = new VariantPoolSpliterator(vp);
+		assertTrue(spliterator.trySplit() == null);
+		assertTrue(spliterator.split(4).size() == 1);
+		assertTrue(read(spliterator.iterator()).equals(readNextVar(vp)));
+	}
+}
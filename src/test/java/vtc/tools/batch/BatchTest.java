@@ -0,0 +1,101 @@
+/**
+ *
+ */
+package vtc.tools.batch;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintWriter;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import rules.OnFail;
+import vtc.VTCEngine;
+import vtc.tools.miscSetOperTests.MiscSetOperTest;
+import vtc.tools.utilitybelt.UtilityBelt;
+
+/**
+ * @author markebbert
+ *
+ */
+public class BatchTest {
+
+	public static final String RED = "\u001B[31m";
+	public static final String GREEN = "\u001B[32m";
+	public static final String RESET = "\u001B[0m";
+
+	private static String input = "target/test-classes/15-0.vcf";
+	private static String input2 = "target/test-classes/15-1.vcf";
+	private static String outDir = "target/test-classes/OUTPUT/Batch/";
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		System.out.println(RED+"========================================================\n"
+				+ "                        BatchTest                       \n"
+				+ "========================================================\n"+RESET);
+		new File(outDir + "logs").mkdirs();
+	}
+
+	@Rule
+	public OnFail ruleExample = new OnFail();
+
+	/**
+	 * Jobs in a manifest must write the same results as the command line,
+	 * reading each shared input once
+	 * @throws Exception
+	 */
+	@Test
+	public void testManifestSharesInputs() throws Exception {
+		System.out.println(GREEN+"\nTest Manifest Shares Inputs"+RESET);
+
+		String union = "SO -s baU=u[ba1:ba2] -i ba1=" + input + " ba2=" + input2 +
+				" -R " + UtilityBelt.getHGREF() + " -o ";
+		String intersect = "SO -s baI=i[ba1:ba2] -i ba1=" + input + " ba2=" + input2 +
+				" -R " + UtilityBelt.getHGREF() + " -o ";
+		VTCEngine.main((union + outDir + "serialU.vcf").split(" "));
+		VTCEngine.main((intersect + outDir + "serialI.vcf").split(" "));
+
+		File manifest = new File(outDir + "manifest.txt");
+		PrintWriter writer = new PrintWriter(manifest);
+		writer.println("# Union and intersect, twice each");
+		writer.println(union + outDir + "batchU1.vcf");
+		writer.println(intersect + outDir + "batchI1.vcf");
+		writer.println();
+		writer.println(union + outDir + "batchU2.vcf");
+		writer.println(intersect + outDir + "batchI2.vcf");
+		writer.close();
+
+		BatchRunner batch = new BatchRunner(manifest, new File(outDir + "logs"), 2,
+				64L * 1024 * 1024, 64L * 1024 * 1024);
+		batch.run();
+		assertTrue(batch.getJobs().size() == 4);
+		assertTrue(batch.getFailedJobs() == 0);
+		assertTrue(batch.getCache().getMisses() == 2);
+
+		for(int i = 1; i <= 2; i++){
+			MiscSetOperTest.test2files(outDir + "serialU.vcf", outDir + "batchU" + i + ".vcf");
+			MiscSetOperTest.test2files(outDir + "serialI.vcf", outDir + "batchI" + i + ".vcf");
+		}
+
+		/* A log for each job, and a summary line for each job in manifest order */
+		BufferedReader reader = new BufferedReader(new FileReader(outDir + "logs/" + BatchRunner.SUMMARY_FILE));
+		String line;
+		int job = 0;
+		while((line = reader.readLine()) != null){
+			if(line.startsWith("job")){
+				job++;
+				String[] cols = line.split("\t");
+				assertTrue(cols[0].equals("job" + job));
+				assertTrue(cols[1].equals("0"));
+				assertTrue(new File(outDir + "logs/job" + job + ".log").length() > 0);
+			}
+		}
+		reader.close();
+		assertTrue(job == 4);
+	}
+}
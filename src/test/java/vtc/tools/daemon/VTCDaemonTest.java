@@ -0,0 +1,164 @@
+/**
+ *
+ */
+package vtc.tools.daemon;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Arrays;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import rules.OnFail;
+import vtc.VTCEngine;
+import vtc.tools.miscSetOperTests.MiscSetOperTest;
+import vtc.tools.utilitybelt.UtilityBelt;
+
+/**
+ * @author markebbert
+ *
+ */
+public class VTCDaemonTest {
+
+	public static final String RED = "\u001B[31m";
+	public static final String GREEN = "\u001B[32m";
+	public static final String RESET = "\u001B[0m";
+
+	private static String input = "target/test-classes/15-0.vcf";
+	private static String input2 = "target/test-classes/15-1.vcf";
+	private static String outDir = "target/test-classes/OUTPUT/Daemon/";
+	private static File tokenFile = new File(outDir + "daemon.token");
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		System.out.println(RED+"========================================================\n"
+				+ "                      VTCDaemonTest                     \n"
+				+ "========================================================\n"+RESET);
+		new File(outDir).mkdirs();
+	}
+
+	@Rule
+	public OnFail ruleExample = new OnFail();
+
+	/**
+	 * Jobs run by the daemon must write the same results as the command
+	 * line, and later jobs must reuse the pools read by earlier ones
+	 * @throws Exception
+	 */
+	@Test
+	public void testJobsShareCachedPools() throws Exception {
+		System.out.println(GREEN+"\nTest Jobs Share Cached Pools"+RESET);
+
+		VTCDaemon daemon = new VTCDaemon(0, 64L * 1024 * 1024, 2, tokenFile);
+		Thread server = startDaemon(daemon);
+
+		try{
+			String job = "SO -s dmU=u[dm1:dm2] -i dm1=" + input + " dm2=" + input2 +
+					" -R " + UtilityBelt.getHGREF() + " -o ";
+			VTCEngine.main((job + outDir + "serial.vcf").split(" "));
+
+			DaemonClient client = new DaemonClient(daemon.getPort(), tokenFile);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ByteArrayOutputStream err = new ByteArrayOutputStream();
+			for(int i = 1; i <= 2; i++){
+				int status = client.submit(Arrays.asList((job + outDir + "daemon" + i + ".vcf").split(" ")),
+						new File("."), out, err);
+				assertTrue(status == 0);
+				MiscSetOperTest.test2files(outDir + "serial.vcf", outDir + "daemon" + i + ".vcf");
+			}
+
+			/* The second job reads nothing */
+			assertTrue(daemon.getCache().getMisses() == 2);
+			assertTrue(daemon.getCache().getHits() == 2);
+			assertTrue(daemon.getCache().size() == 2);
+
+			/* The jobs' output is sent back to the client */
+			assertTrue(out.toString().contains("Performing union"));
+
+			/* A failed job ends with its status and leaves the daemon running */
+			err.reset();
+			int status = client.submit(Arrays.asList("SO", "--no-such-option"), new File("."), out, err);
+			assertTrue(status == 1);
+			assertTrue(err.size() > 0);
+			assertTrue(client.submit(Arrays.asList((job + outDir + "daemon3.vcf").split(" ")),
+					new File("."), out, err) == 0);
+		} finally {
+			new DaemonClient(daemon.getPort(), tokenFile).shutdown();
+			server.join();
+		}
+	}
+
+	/**
+	 * Requests without the daemon's token must not run, and the token file
+	 * must be removed when the daemon stops
+	 * @throws Exception
+	 */
+	@Test
+	public void testRequiresToken() throws Exception {
+		System.out.println(GREEN+"\nTest Requires Token"+RESET);
+
+		VTCDaemon daemon = new VTCDaemon(0, 64L * 1024 * 1024, 1, tokenFile);
+		Thread server = startDaemon(daemon);
+
+		try{
+			assertTrue(tokenFile.canRead());
+
+			File wrongToken = new File(outDir + "wrong.token");
+			FileWriter writer = new FileWriter(wrongToken);
+			writer.write("not-the-token\n");
+			writer.close();
+
+			DaemonClient client = new DaemonClient(daemon.getPort(), wrongToken);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ByteArrayOutputStream err = new ByteArrayOutputStream();
+			int status = client.submit(Arrays.asList(("SO -s dmU=u[dm1:dm2] -i dm1=" + input + " dm2=" + input2 +
+					" -R " + UtilityBelt.getHGREF() + " -o " + outDir + "refused.vcf").split(" ")),
+					new File("."), out, err);
+			assertTrue(status == 1);
+			assertTrue(err.toString().contains("Request refused"));
+			assertTrue(!new File(outDir + "refused.vcf").exists());
+			assertTrue(daemon.getCache().getMisses() == 0);
+
+			/* Nor may it shut the daemon down */
+			try{
+				client.shutdown();
+				assertTrue(false);
+			} catch (DaemonException e){
+				assertTrue(e.getMessage().contains("refused"));
+			}
+
+			/* A client without a token file can't send anything */
+			try{
+				new DaemonClient(daemon.getPort(), new File(outDir + "missing.token"))
+					.submit(Arrays.asList("SO"), new File("."), out, err);
+				assertTrue(false);
+			} catch (DaemonException e){
+				assertTrue(e.getMessage().contains("token file"));
+			}
+		} finally {
+			new DaemonClient(daemon.getPort(), tokenFile).shutdown();
+			server.join();
+		}
+		assertTrue(!tokenFile.exists());
+	}
+
+	private static Thread startDaemon(final VTCDaemon daemon){
+		Thread server = new Thread(new Runnable(){
+			@Override
+			public void run() {
+				try {
+					daemon.serve();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		server.start();
+		return server;
+	}
+}
@@ -0,0 +1,99 @@
+package vtc.tools.miscSetOperTests;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.TreeMap;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import vtc.VTCEngine;
+import vtc.datastructures.VariantPoolHeavy;
+import vtc.tools.setoperator.ComplementType;
+import vtc.tools.setoperator.IntersectType;
+import vtc.tools.setoperator.SetOperationCounts;
+import vtc.tools.setoperator.SetOperator;
+import vtc.tools.setoperator.operation.ComplementOperation;
+import vtc.tools.setoperator.operation.IntersectOperation;
+import vtc.tools.setoperator.operation.OperationFactory;
+import vtc.tools.setoperator.operation.UnionOperation;
+import vtc.tools.utilitybelt.UtilityBelt;
+
+public class CountOnly {
+
+	public static final String RED = "\u001B[31m";
+	public static final String GREEN = "\u001B[32m";
+	public static final String RESET = "\u001B[0m";
+	public static final String BLUE = "\u001B[34m";
+
+	private static String in1 = "target/test-classes/MiscSetOperTests/Compare/input1.vcf";
+	private static String in2 = "target/test-classes/MiscSetOperTests/Compare/input2.vcf";
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		System.out.println(BLUE+ "\n      --Count Only Tests           \n"
+				+ "________________________________\n"+RESET);
+	}
+
+	/**
+	 * The counts must match the size of the pools the same operations build
+	 * @throws Exception
+	 */
+	@Test
+	public void testCountsMatchResults() throws Exception {
+
+		System.out.println(GREEN+"\ntest Counts Match Results"+RESET);
+
+		ArrayList<String> inputs = new ArrayList<String>();
+		inputs.add("cnt1=" + in1);
+		inputs.add("cnt2=" + in2);
+		TreeMap<String, VariantPoolHeavy> allVPs = UtilityBelt.createHeavyVariantPools(inputs, false);
+		ArrayList<VariantPoolHeavy> vps = new ArrayList<VariantPoolHeavy>(allVPs.values());
+		String outPath = new File("target/test-classes/OUTPUT/out.vcf").getCanonicalPath();
+
+		SetOperator so = new SetOperator();
+
+		IntersectOperation i = (IntersectOperation) OperationFactory.createOperation("cntI=i[cnt1:cnt2]", allVPs);
+		assertCountsMatch(so.countIntersect(i, vps, IntersectType.HET_OR_HOMO_ALT, outPath),
+				so.performIntersect(i, vps, IntersectType.HET_OR_HOMO_ALT, outPath));
+
+		UnionOperation u = (UnionOperation) OperationFactory.createOperation("cntU=u[cnt1:cnt2]", allVPs);
+		assertCountsMatch(so.countUnion(u, vps, false), so.performUnion(u, vps, false));
+
+		ComplementOperation c = (ComplementOperation) OperationFactory.createOperation("cntC=c[cnt1:cnt2]", allVPs);
+		assertCountsMatch(so.countComplement(c, vps, ComplementType.HET_OR_HOMO_ALT),
+				so.performComplement(c, vps, ComplementType.HET_OR_HOMO_ALT));
+
+		c = (ComplementOperation) OperationFactory.createOperation("cntC2=c[cnt2:cnt1]", allVPs);
+		assertCountsMatch(so.countComplement(c, vps, ComplementType.EXACT),
+				so.performComplement(c, vps, ComplementType.EXACT));
+	}
+
+	/**
+	 * Count-only comparisons should not write any files
+	 */
+	@Test
+	public void testCountOnlyCompare() {
+
+		System.out.println(GREEN+"\ntest Count Only Compare"+RESET);
+
+		String outDir = "target/test-classes/OUTPUT/MiscSetOperTests/CountOnly/";
+		new File(outDir).mkdirs();
+		String arguments = "SO --compare --count-only -i " + in1 + " " + in2 + " -R " + UtilityBelt.getHGREF() +
+				" -o " + outDir + "out.vcf";
+		VTCEngine.main(arguments.split(" "));
+
+		assertTrue(new File(outDir).list().length == 0);
+	}
+
+	private void assertCountsMatch(SetOperationCounts counts, VariantPoolHeavy result) throws Exception {
+		SetOperationCounts resultCounts = new SetOperationCounts(result);
+		assertTrue(counts.getNumVarRecords() == result.getNumVarRecords());
+		assertTrue(counts.getNumAlleles() == resultCounts.getNumAlleles());
+		assertTrue(counts.getNumSNVAlleles() == resultCounts.getNumSNVAlleles());
+		assertTrue(counts.getNumIndelAlleles() == resultCounts.getNumIndelAlleles());
+		assertTrue(counts.getPotentialMatchingIndelAlleles() == result.getPotentialMatchingIndelAlleles());
+	}
+}
@@ -23,7 +23,11 @@ import vtc.datastructures.VariantPoolHeavy;
 	RepairHeader.class,
 	AddCHR.class,
 	SamplesWithinSameFile.class,
-	NoCall.class
+	NoCall.class,
+	Venn.class,
+	CountOnly.class,
+	TieredMerge.class,
+	Parallel.class
 	})
 public class MiscSetOperTest {
 	public static final String RED = "\u001B[31m";
@@ -0,0 +1,106 @@
+package vtc.tools.miscSetOperTests;
+
+import static org.junit.Assert.assertTrue;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.TreeMap;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import vtc.datastructures.VariantPoolHeavy;
+import vtc.tools.setoperator.ComplementType;
+import vtc.tools.setoperator.IntersectType;
+import vtc.tools.setoperator.ParallelSetOperator;
+import vtc.tools.setoperator.SetOperator;
+import vtc.tools.setoperator.operation.ComplementOperation;
+import vtc.tools.setoperator.operation.IntersectOperation;
+import vtc.tools.setoperator.operation.OperationFactory;
+import vtc.tools.setoperator.operation.UnionOperation;
+import vtc.tools.utilitybelt.UtilityBelt;
+
+public class Parallel {
+
+	public static final String RED = "\u001B[31m";
+	public static final String GREEN = "\u001B[32m";
+	public static final String RESET = "\u001B[0m";
+	public static final String BLUE = "\u001B[34m";
+
+	private static String input = "target/test-classes/multiple_alts.vcf";
+	private static String outDir = "target/test-classes/OUTPUT/MiscSetOperTests/Parallel/";
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		System.out.println(BLUE+ "\n      --Parallel Tests           \n"
+				+ "________________________________\n"+RESET);
+		new File(outDir).mkdirs();
+	}
+
+	/**
+	 * Operations split by contig must build the same pools as SetOperator
+	 * @throws Exception
+	 */
+	@Test
+	public void testParallelMatchesSerial() throws Exception {
+
+		System.out.println(GREEN+"\ntest Parallel Matches Serial"+RESET);
+
+		/* Keep every other record, so each contig has records in one or both inputs */
+		File half = new File(outDir + "half.vcf");
+		BufferedReader reader = new BufferedReader(new FileReader(input));
+		PrintWriter writer = new PrintWriter(half);
+		String line;
+		int count = 0;
+		while((line = reader.readLine()) != null){
+			if(line.startsWith("#") || count++ % 2 == 0){
+				writer.println(line);
+			}
+		}
+		reader.close();
+		writer.close();
+
+		ArrayList<String> inputs = new ArrayList<String>();
+		inputs.add("par1=" + input);
+		inputs.add("par2=" + half.getPath());
+		TreeMap<String, VariantPoolHeavy> allVPs = UtilityBelt.createHeavyVariantPools(inputs, false);
+		ArrayList<VariantPoolHeavy> vps = new ArrayList<VariantPoolHeavy>(allVPs.values());
+		assertTrue(vps.get(0).getContigs().size() > 2);
+		String outPath = new File(outDir + "out.vcf").getCanonicalPath();
+
+		SetOperator so = new SetOperator();
+		ParallelSetOperator pso = new ParallelSetOperator(4, false, false);
+
+		IntersectOperation i = (IntersectOperation) OperationFactory.createOperation("parI=i[par1:par2]", allVPs);
+		assertSamePool(so.performIntersect(i, vps, IntersectType.HET_OR_HOMO_ALT, outPath),
+				pso.performIntersect(i, vps, IntersectType.HET_OR_HOMO_ALT, outPath));
+
+		UnionOperation u = (UnionOperation) OperationFactory.createOperation("parU=u[par1:par2]", allVPs);
+		assertSamePool(so.performUnion(u, vps, false), pso.performUnion(u, vps, false));
+
+		ComplementOperation c = (ComplementOperation) OperationFactory.createOperation("parC=c[par1:par2]", allVPs);
+		VariantPoolHeavy complement = pso.performComplement(c, vps, ComplementType.HET_OR_HOMO_ALT);
+		assertTrue(complement.getNumVarRecords() > 0);
+		assertSamePool(so.performComplement(c, vps, ComplementType.HET_OR_HOMO_ALT), complement);
+	}
+
+	private void assertSamePool(VariantPoolHeavy expected, VariantPoolHeavy actual) throws Exception {
+		assertTrue(expected.getNumVarRecords() == actual.getNumVarRecords());
+		assertTrue(expected.getSamples().equals(actual.getSamples()));
+		assertTrue(expected.getPotentialMatchingIndelAlleles() == actual.getPotentialMatchingIndelAlleles());
+		assertTrue(expected.getPotentialMatchingIndelRecords() == actual.getPotentialMatchingIndelRecords());
+
+		VariantContext e, a;
+		while((e = expected.getNextVar()) != null){
+			a = actual.getNextVar();
+			assertTrue(e.getChr().equals(a.getChr()) && e.getStart() == a.getStart());
+			assertTrue(e.getAlleles().equals(a.getAlleles()));
+			assertTrue(e.getGenotypes().toString().equals(a.getGenotypes().toString()));
+		}
+		assertTrue(actual.getNextVar() == null);
+	}
+}
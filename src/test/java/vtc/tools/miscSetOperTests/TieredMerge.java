@@ -0,0 +1,108 @@
+package vtc.tools.miscSetOperTests;
+
+import static org.junit.Assert.assertTrue;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.TreeMap;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import vtc.VTCEngine;
+import vtc.datastructures.VCFSorterTest;
+import vtc.datastructures.VariantPoolHeavy;
+import vtc.tools.setoperator.SetOperator;
+import vtc.tools.setoperator.operation.OperationFactory;
+import vtc.tools.setoperator.operation.UnionOperation;
+import vtc.tools.utilitybelt.UtilityBelt;
+
+public class TieredMerge {
+
+	public static final String RED = "\u001B[31m";
+	public static final String GREEN = "\u001B[32m";
+	public static final String RESET = "\u001B[0m";
+	public static final String BLUE = "\u001B[34m";
+
+	private static String in1 = "target/test-classes/UnionTests/testUniqueSampleSetsDifferentVariantSets/input1.vcf";
+	private static String in2 = "target/test-classes/UnionTests/testUniqueSampleSetsDifferentVariantSets/input2.vcf";
+	private static String in3 = "target/test-classes/UnionTests/testDifferentAltsAdded/input2.vcf";
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		System.out.println(BLUE+ "\n      --Tiered Union Tests         \n"
+				+ "________________________________\n"+RESET);
+	}
+
+	/**
+	 * Merging two files at a time takes two tiers for three files. The
+	 * result must match the in-memory union and leave no temporary files.
+	 * @throws Exception
+	 */
+	@Test
+	public void testTieredUnionMatchesUnion() throws Exception {
+
+		System.out.println(GREEN+"\ntest Tiered Union Matches Union"+RESET);
+
+		String outDir = "target/test-classes/OUTPUT/MiscSetOperTests/TieredUnion/";
+		File tmpDir = new File(outDir + "tmp");
+		tmpDir.mkdirs();
+		String out = outDir + "tiered.vcf";
+		String arguments = "SO --tiered-union -k 2 -T " + tmpDir.getPath() + " -i " + in1 + " " + in2 + " " + in3 +
+				" -R " + UtilityBelt.getHGREF() + " -o " + out;
+		VTCEngine.main(arguments.split(" "));
+
+		assertTrue(tmpDir.list().length == 0);
+
+		ArrayList<String> inputs = new ArrayList<String>();
+		inputs.add("tier1=" + in1);
+		inputs.add("tier2=" + in2);
+		inputs.add("tier3=" + in3);
+		TreeMap<String, VariantPoolHeavy> allVPs = UtilityBelt.createHeavyVariantPools(inputs, false);
+		UnionOperation op = (UnionOperation) OperationFactory.createOperation("tierU=u[tier1:tier2:tier3]", allVPs);
+		VariantPoolHeavy expected = new SetOperator().performUnion(op,
+				new ArrayList<VariantPoolHeavy>(allVPs.values()), false);
+
+		VariantPoolHeavy tiered = new VariantPoolHeavy(new File(out), "tieredOut", false);
+		assertTrue(tiered.getNumVarRecords() == expected.getNumVarRecords());
+		assertTrue(tiered.getSamples().equals(expected.getSamples()));
+
+		VariantContext var;
+		while((var = tiered.getNextVar()) != null){
+			VariantContext exp = expected.getVariant(var.getChr(), var.getStart(), var.getReference().toString());
+			assertTrue(exp != null);
+			assertTrue(exp.getAlternateAlleles().size() == var.getAlternateAlleles().size());
+			assertTrue(var.getNSamples() == 8);
+		}
+	}
+
+	/**
+	 * Unsorted inputs are sorted automatically
+	 * @throws Exception
+	 */
+	@Test
+	public void testUnsortedInput() throws Exception {
+
+		System.out.println(GREEN+"\ntest Unsorted Input"+RESET);
+
+		String outDir = "target/test-classes/OUTPUT/MiscSetOperTests/TieredUnion/";
+		File tmpDir = new File(outDir + "tmp");
+		tmpDir.mkdirs();
+		File reversed = new File(outDir + "reversed.vcf");
+		VCFSorterTest.reverseRecords(new File(in2), reversed);
+
+		String arguments = "SO --tiered-union -k 2 -T " + tmpDir.getPath() + " -i " + in1 + " " + reversed.getPath() +
+				" " + in3 + " -R " + UtilityBelt.getHGREF() + " -o " + outDir + "unsorted.vcf";
+		VTCEngine.main(arguments.split(" "));
+		assertTrue(tmpDir.list().length == 0);
+
+		arguments = "SO --tiered-union -k 2 -T " + tmpDir.getPath() + " -i " + in1 + " " + in2 +
+				" " + in3 + " -R " + UtilityBelt.getHGREF() + " -o " + outDir + "sorted.vcf";
+		VTCEngine.main(arguments.split(" "));
+
+		VariantPoolHeavy sorted = new VariantPoolHeavy(new File(outDir + "sorted.vcf"), "tieredSorted", false);
+		VariantPoolHeavy unsorted = new VariantPoolHeavy(new File(outDir + "unsorted.vcf"), "tieredUnsorted", false);
+		assertTrue(sorted.getNumVarRecords() == unsorted.getNumVarRecords());
+	}
+}
@@ -0,0 +1,180 @@
+package vtc.tools.miscSetOperTests;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.TreeMap;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import vtc.VTCEngine;
+import vtc.datastructures.InvalidInputFileException;
+import vtc.datastructures.VariantPoolLight;
+import vtc.tools.setoperator.VennCounter;
+import vtc.tools.utilitybelt.UtilityBelt;
+
+public class Venn {
+	private static String hgref = UtilityBelt.getHGREF();
+
+	public static final String RED = "\u001B[31m";
+	public static final String GREEN = "\u001B[32m";
+	public static final String RESET = "\u001B[0m";
+	public static final String BLUE = "\u001B[34m";
+
+	private static String in1 = "target/test-classes/UnionTests/testDifferentAltsAdded/input1.vcf";
+	private static String in2 = "target/test-classes/UnionTests/testDifferentAltsAdded/input2.vcf";
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		System.out.println(BLUE+ "\n      --Venn Tests           \n"
+				+ "________________________________\n"+RESET);
+	}
+
+	/**
+	 * Test that every allele lands in exactly one region
+	 * @throws IOException
+	 * @throws InvalidInputFileException
+	 */
+	@Test
+	public void testTwoFileRegions() throws IOException, InvalidInputFileException {
+
+		System.out.println(GREEN+"\ntest Two File Regions"+RESET);
+
+		ArrayList<VariantPoolLight> vps = new ArrayList<VariantPoolLight>();
+		vps.add(new VariantPoolLight(new File(in1), "vennA", false, false));
+		vps.add(new VariantPoolLight(new File(in2), "vennB", false, false));
+
+		VennCounter counter = new VennCounter(vps, false, false);
+		counter.count();
+		counter.printVennTable();
+
+		assertTrue(counter.getRegionCount(counter.getRegionMask("vennA")) == 2);
+		assertTrue(counter.getRegionCount(counter.getRegionMask("vennB")) == 1);
+		assertTrue(counter.getRegionCount(counter.getRegionMask("vennA", "vennB")) == 4);
+	}
+
+	/**
+	 * Test splitting the counts by variant type
+	 * @throws IOException
+	 * @throws InvalidInputFileException
+	 */
+	@Test
+	public void testSplitByType() throws IOException, InvalidInputFileException {
+
+		System.out.println(GREEN+"\ntest Split By Type"+RESET);
+
+		ArrayList<VariantPoolLight> vps = new ArrayList<VariantPoolLight>();
+		vps.add(new VariantPoolLight(new File(in1), "vennC", false, false));
+		vps.add(new VariantPoolLight(new File(in2), "vennD", false, false));
+
+		VennCounter counter = new VennCounter(vps, true, false);
+		counter.count();
+		counter.printVennTable();
+
+		TreeMap<String, Integer> both = counter.getRegionCounts().get(counter.getRegionMask("vennC", "vennD"));
+		assertTrue(both.get(VennCounter.SNV) == 2);
+		assertTrue(both.get(VennCounter.INDEL) == 2);
+	}
+
+	/**
+	 * Test the region VCFs written from the command line
+	 * @throws IOException
+	 */
+	@Test
+	public void testRegionVCFs() throws IOException {
+
+		System.out.println(GREEN+"\ntest Region VCFs"+RESET);
+
+		String outDir = "target/test-classes/OUTPUT/MiscSetOperTests/Venn/";
+		new File(outDir).mkdirs();
+		String arguments = "SO --venn --venn-vcfs -i A=" + in1 + " B=" + in2 + " -R " + hgref + " -o " +
+					outDir + "out.vcf";
+
+		String[] args = arguments.split(" ");
+		VTCEngine.main(args);
+
+		assertTrue(new File(outDir + "venn_A.vcf").exists());
+		assertTrue(new File(outDir + "venn_B.vcf").exists());
+		assertTrue(new File(outDir + "venn_A_B.vcf").exists());
+	}
+
+	/**
+	 * Test that region VCF records are the lines read from the input, not
+	 * re-encoded records
+	 * @throws IOException
+	 * @throws InvalidInputFileException
+	 */
+	@Test
+	public void testRegionVCFsKeepSourceLines() throws IOException, InvalidInputFileException {
+
+		System.out.println(GREEN+"\ntest Region VCFs Keep Source Lines"+RESET);
+
+		File outDir = new File("target/test-classes/OUTPUT/MiscSetOperTests/Venn/lines/");
+		outDir.mkdirs();
+		ArrayList<VariantPoolLight> vps = new ArrayList<VariantPoolLight>();
+		vps.add(new VariantPoolLight(new File(in1), "vennE", false, false));
+		vps.add(new VariantPoolLight(new File(in2), "vennF", false, false));
+
+		VennCounter counter = new VennCounter(vps, false, false);
+		counter.writeRegionVCFs(outDir, new File(hgref));
+		counter.count();
+
+		HashSet<String> in1Lines = readRecords(new File(in1));
+		HashSet<String> vennE = readRecords(new File(outDir, "venn_vennE.vcf"));
+		HashSet<String> vennEF = readRecords(new File(outDir, "venn_vennE_vennF.vcf"));
+		HashSet<String> vennF = readRecords(new File(outDir, "venn_vennF.vcf"));
+		assertTrue(vennE.size() == 2 && vennEF.size() > 0 && vennF.size() == 1);
+		assertTrue(in1Lines.containsAll(vennE) && in1Lines.containsAll(vennEF));
+		assertTrue(readRecords(new File(in2)).containsAll(vennF));
+		assertTrue(new File(outDir, "venn_vennE.vcf.idx").exists());
+	}
+
+	/**
+	 * Test that --add-chr is applied to Venn pools, so region VCFs use 'chr'
+	 * contigs
+	 * @throws IOException
+	 */
+	@Test
+	public void testRegionVCFsAddChr() throws IOException {
+
+		System.out.println(GREEN+"\ntest Region VCFs Add Chr"+RESET);
+
+		String outDir = "target/test-classes/OUTPUT/MiscSetOperTests/Venn/addChr/";
+		new File(outDir).mkdirs();
+		String arguments = "SO --venn --venn-vcfs --add-chr -i A=" + in1 + " B=" + in2 + " -R " + hgref + " -o " +
+					outDir + "out.vcf";
+
+		String[] args = arguments.split(" ");
+		VTCEngine.main(args);
+
+		for(String region : new String[]{"venn_A.vcf", "venn_B.vcf", "venn_A_B.vcf"}){
+			HashSet<String> records = readRecords(new File(outDir + region));
+			assertTrue(!records.isEmpty());
+			for(String record : records){
+				assertTrue(record.startsWith("chr20\t"));
+			}
+		}
+	}
+
+	private static HashSet<String> readRecords(File vcf) throws IOException {
+		HashSet<String> records = new HashSet<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(vcf));
+		try{
+			String line;
+			while((line = reader.readLine()) != null){
+				if(!line.startsWith("#")){
+					records.add(line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return records;
+	}
+}
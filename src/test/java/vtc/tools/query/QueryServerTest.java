@@ -0,0 +1,141 @@
+/**
+ *
+ */
+package vtc.tools.query;
+
+import static org.junit.Assert.assertTrue;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Scanner;
+import java.util.TreeMap;
+
+import org.json.JSONObject;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import rules.OnFail;
+import vtc.datastructures.SortedVariantIndex;
+import vtc.datastructures.VariantPoolHeavy;
+
+/**
+ * @author markebbert
+ *
+ */
+public class QueryServerTest {
+
+	public static final String RED = "\u001B[31m";
+	public static final String GREEN = "\u001B[32m";
+	public static final String RESET = "\u001B[0m";
+
+	private static String input = "target/test-classes/multiple_alts.vcf";
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		System.out.println(RED+"========================================================\n"
+				+ "                     QueryServerTest                    \n"
+				+ "========================================================\n"+RESET);
+	}
+
+	@Rule
+	public OnFail ruleExample = new OnFail();
+
+	/**
+	 * Range queries must find the same variants as a scan of the pool
+	 * @throws Exception
+	 */
+	@Test
+	public void testIndexMatchesScan() throws Exception {
+		System.out.println(GREEN+"\nTest Index Matches Scan"+RESET);
+
+		SortedVariantIndex index = new SortedVariantIndex(new VariantPoolHeavy(new File(input), "rqIndex", false));
+		ArrayList<VariantContext> all = readAll();
+		assertTrue(index.size() == all.size());
+
+		for(VariantContext var : all){
+			int[][] ranges = {{var.getStart(), var.getStart()}, {var.getStart() - 10, var.getStart() + 10},
+					{1, Integer.MAX_VALUE - 1}, {var.getEnd() + 1, var.getEnd() + 100}};
+			for(int[] range : ranges){
+				int expected = 0;
+				for(VariantContext other : all){
+					if(other.getChr().equals(var.getChr()) && other.getStart() <= range[1]
+							&& other.getEnd() >= range[0]){
+						expected++;
+					}
+				}
+				assertTrue(index.query(var.getChr(), range[0], range[1]).size() == expected);
+			}
+			assertTrue(index.getVariant(var.getChr(), var.getStart(),
+					var.getReference().getBaseString()) != null);
+		}
+	}
+
+	/**
+	 * The server must answer region and key queries with JSON and report
+	 * its latency
+	 * @throws Exception
+	 */
+	@Test
+	public void testServerAnswersQueries() throws Exception {
+		System.out.println(GREEN+"\nTest Server Answers Queries"+RESET);
+
+		TreeMap<String, VariantPoolHeavy> pools = new TreeMap<String, VariantPoolHeavy>();
+		pools.put("rq", new VariantPoolHeavy(new File(input), "rq", false));
+		QueryServer server = new QueryServer(0, pools, 2);
+		server.start();
+		try{
+			VariantContext first = readAll().get(0);
+			int onContig = 0;
+			for(VariantContext var : readAll()){
+				if(var.getChr().equals(first.getChr())){
+					onContig++;
+				}
+			}
+
+			String base = "http://localhost:" + server.getPort();
+			JSONObject region = new JSONObject(get(base + "/region?pool=rq&genotypes=true&region=" +
+					first.getChr() + ":1-1000000000", 200));
+			assertTrue(region.getInt("count") == onContig);
+			assertTrue(region.getJSONArray("variants").getJSONObject(0).has("genotypes"));
+
+			String key = first.getChr() + ":" + first.getStart() + ":" + first.getReference().getBaseString();
+			JSONObject variant = new JSONObject(get(base + "/variant?key=" + key, 200));
+			assertTrue(variant.getString("key").equals(key));
+			assertTrue(variant.getJSONArray("alts").length() == first.getAlternateAlleles().size());
+
+			get(base + "/variant?pool=rq&key=" + first.getChr() + ":1:A", 404);
+			get(base + "/region?pool=nope&region=1:1-2", 404);
+
+			JSONObject stats = new JSONObject(get(base + "/stats", 200));
+			assertTrue(stats.getLong("queries") == 4);
+			assertTrue(stats.getDouble("p99Millis") > 0);
+		} finally {
+			server.stop();
+		}
+	}
+
+	private static ArrayList<VariantContext> readAll() throws Exception {
+		VariantPoolHeavy vp = new VariantPoolHeavy(new File(input), "rqScan", false);
+		ArrayList<VariantContext> all = new ArrayList<VariantContext>();
+		VariantContext var;
+		while((var = vp.getNextVar()) != null){
+			all.add(var);
+		}
+		return all;
+	}
+
+	private static String get(String url, int expectedStatus) throws Exception {
+		HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+		assertTrue(conn.getResponseCode() == expectedStatus);
+		InputStream in = expectedStatus == 200 ? conn.getInputStream() : conn.getErrorStream();
+		Scanner scanner = new Scanner(in, "UTF-8").useDelimiter("\\A");
+		String body = scanner.hasNext() ? scanner.next() : "";
+		scanner.close();
+		return body;
+	}
+}
@@ -2,7 +2,10 @@ package vtc.tools.setoperator.operation.complementTests;
 
 import static org.junit.Assert.assertTrue;
 
+import java.io.BufferedReader;
+import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -57,6 +60,33 @@ public class HetOrHomoAlt {
 	}	
 	
 	
+	/**
+	 * Test that variants kept by the complement are written exactly as they
+	 * were read
+	 * @throws IOException
+	 */
+	@Test
+	public void testOutputLinesAreInputLines() throws IOException {
+
+		System.out.println(GREEN+"\ntest Output Lines Are Input Lines"+RESET);
+		
+		
+		String in1 = "target/test-classes/ComplementTests/Het_or_Homo_Alt/DifferentPosOrChr/input1.vcf";
+		String in2 = "target/test-classes/ComplementTests/Het_or_Homo_Alt/DifferentPosOrChr/input2.vcf";
+		String out = "target/test-classes/OUTPUT/Complement/Het_or_Homo_Alt/OutputLinesAreInputLines.vcf";
+
+		String arguments = "SO -i var1=" + in1 + " var2=" + in2 + " -R " + hgref
+				+ " -c het_homo_alt -s c[var1:var2] -o " + out;
+
+		String[] args = arguments.split(" ");
+		VTCEngine.main(args);
+
+		ArrayList<String> inLines = readRecords(in1);
+		assertTrue(inLines.size() == 2);
+		assertTrue(readRecords(out).equals(inLines));
+	}	
+	
+	
 	@Test
 	public void testRefOrAltDifferent() throws IOException {
 
@@ -101,4 +131,20 @@ public class HetOrHomoAlt {
 	}	
 
 	
+
+	private static ArrayList<String> readRecords(String vcf) throws IOException {
+		ArrayList<String> records = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(vcf));
+		try{
+			String line;
+			while((line = reader.readLine()) != null){
+				if(!line.startsWith("#")){
+					records.add(line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return records;
+	}
 }
@@ -3,12 +3,23 @@
  */
 package vtc.tools.setoperator.operation.unionTests;
 
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.VariantContext;
+
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.TreeMap;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import vtc.VTCEngine;
+import vtc.datastructures.VariantPoolHeavy;
+import vtc.tools.setoperator.SetOperator;
+import vtc.tools.setoperator.operation.OperationFactory;
+import vtc.tools.setoperator.operation.UnionOperation;
 import vtc.tools.utilitybelt.UtilityBelt;
 
 /**
@@ -122,4 +133,46 @@ public class SampleAndVariant {
 
 	}
 
+	/**
+	 * Union results only store called genotypes. Every sample must still be
+	 * present when a variant is read, using one shared NO_CALL per sample.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSparseNoCallGenotypes() throws Exception {
+
+		System.out.println(GREEN+"\ntest Sparse No Call Genotypes"+RESET);
+
+		ArrayList<String> inputs = new ArrayList<String>();
+		inputs.add("sparse1=target/test-classes/UnionTests/testUniqueSampleSetsDifferentVariantSets/input1.vcf");
+		inputs.add("sparse2=target/test-classes/UnionTests/testUniqueSampleSetsDifferentVariantSets/input2.vcf");
+		TreeMap<String, VariantPoolHeavy> allVPs = UtilityBelt.createHeavyVariantPools(inputs, false);
+
+		UnionOperation op = (UnionOperation) OperationFactory.createOperation("sparseU=u[sparse1:sparse2]", allVPs);
+		VariantPoolHeavy union = new SetOperator().performUnion(op,
+				new ArrayList<VariantPoolHeavy>(allVPs.values()), false);
+		assertTrue(union.hasSparseGenotypes());
+
+		Genotype shared = null, noCall;
+		VariantContext var;
+		int nWithNoCalls = 0;
+		while((var = union.getNextVar()) != null){
+			/* Stored without the missing samples, filled in on request */
+			assertTrue(var.getNSamples() < 5);
+			var = union.withAllGenotypes(var);
+			assertTrue(var.getNSamples() == 5);
+			if(!var.getChr().equals("20")){
+				continue;
+			}
+			noCall = var.getGenotype("WTCHG_27173_05.bam");
+			assertTrue(noCall.isNoCall());
+			if(shared != null){
+				assertSame(shared, noCall);
+			}
+			shared = noCall;
+			nWithNoCalls++;
+		}
+		assertTrue(nWithNoCalls == 5);
+	}
+
 }
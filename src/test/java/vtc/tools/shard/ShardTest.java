@@ -0,0 +1,96 @@
+/**
+ *
+ */
+package vtc.tools.shard;
+
+import static org.junit.Assert.assertTrue;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.InputStream;
+import java.io.PrintWriter;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import rules.OnFail;
+import vtc.VTCEngine;
+import vtc.datastructures.AbstractVariantPool;
+import vtc.tools.miscSetOperTests.MiscSetOperTest;
+import vtc.tools.utilitybelt.UtilityBelt;
+
+/**
+ * @author markebbert
+ *
+ */
+public class ShardTest {
+
+	public static final String RED = "\u001B[31m";
+	public static final String GREEN = "\u001B[32m";
+	public static final String RESET = "\u001B[0m";
+
+	private static String input = "target/test-classes/multiple_alts.vcf";
+	private static String outDir = "target/test-classes/OUTPUT/Shard/";
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		System.out.println(RED+"========================================================\n"
+				+ "                        ShardTest                       \n"
+				+ "========================================================\n"+RESET);
+		new File(outDir + "serial").mkdirs();
+		new File(outDir + "sharded").mkdirs();
+		new File(outDir + "tmp").mkdirs();
+	}
+
+	@After
+	public void tearDown(){
+		AbstractVariantPool.setDefaultRegions(null);
+	}
+
+	@Rule
+	public OnFail ruleExample = new OnFail();
+
+	/**
+	 * A union split into shards must write the same records as one run
+	 * @throws Exception
+	 */
+	@Test
+	public void testShardedUnionMatchesSerial() throws Exception {
+		System.out.println(GREEN+"\nTest Sharded Union Matches Serial"+RESET);
+
+		/* Keep every other record, so each contig has records in one or both inputs */
+		File half = new File(outDir + "half.vcf");
+		BufferedReader reader = new BufferedReader(new FileReader(input));
+		PrintWriter writer = new PrintWriter(half);
+		String line;
+		int count = 0;
+		while((line = reader.readLine()) != null){
+			if(line.startsWith("#") || count++ % 2 == 0){
+				writer.println(line);
+			}
+		}
+		reader.close();
+		writer.close();
+
+		String job = "SO -s shardU=u[sh1:sh2] -i sh1=" + input + " sh2=" + half.getPath() +
+				" -R " + UtilityBelt.getHGREF() + " -o ";
+		String serial = outDir + "serial/out.vcf.gz";
+		String sharded = outDir + "sharded/out.vcf.gz";
+		VTCEngine.main((job + serial).split(" "));
+		VTCEngine.main(("SH --shards 3 --workers 2 -T " + outDir + "tmp " + job + sharded).split(" "));
+
+		/* The shards are joined into one block-compressed file and cleaned up */
+		InputStream in = new BufferedInputStream(new FileInputStream(sharded));
+		assertTrue(BlockCompressedInputStream.isValidFile(in));
+		in.close();
+		assertTrue(new File(outDir + "tmp").list().length == 0);
+
+		MiscSetOperTest.test2files(serial, sharded);
+	}
+}
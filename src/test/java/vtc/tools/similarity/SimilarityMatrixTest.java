@@ -0,0 +1,93 @@
+/**
+ *
+ */
+package vtc.tools.similarity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import rules.OnFail;
+import vtc.datastructures.VariantPoolLight;
+
+/**
+ * @author markebbert
+ *
+ */
+public class SimilarityMatrixTest {
+
+	public static final String RED = "\u001B[31m";
+	public static final String GREEN = "\u001B[32m";
+	public static final String RESET = "\u001B[0m";
+
+	private static String input1 = "target/test-classes/UnionTests/testDifferentAltsAdded/input1.vcf";
+	private static String input2 = "target/test-classes/UnionTests/testDifferentAltsAdded/input2.vcf";
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		System.out.println(RED+"========================================================\n"
+				+ "                   SimilarityMatrixTest                 \n"
+				+ "========================================================\n"+RESET);
+	}
+
+	@Rule
+	public OnFail ruleExample = new OnFail();
+
+	@Test
+	public void testSketchEstimates() {
+		System.out.println(GREEN+"\nTest Sketch Estimates"+RESET);
+
+		/* Two sets of 100,000 items sharing 50,000. True Jaccard is 1/3 */
+		MinHashSketch a = new MinHashSketch(1024);
+		MinHashSketch b = new MinHashSketch(1024);
+		for(int i = 0; i < 100000; i++){
+			a.add("20:" + i + ":A:T");
+			b.add("20:" + (i + 50000) + ":A:T");
+		}
+		assertEquals(1.0 / 3, MinHashSketch.jaccard(a, b), 0.05);
+		assertEquals(100000, a.estimateCardinality(), 10000);
+		assertEquals(50000, MinHashSketch.estimateIntersection(a, b), 7500);
+	}
+
+	@Test
+	public void testFileMatrix() throws Exception {
+		System.out.println(GREEN+"\nTest File Matrix"+RESET);
+
+		/* Sketches larger than the sets are exact */
+		SimilarityMatrix matrix = new SimilarityMatrix(64, false);
+		matrix.addVariantPool(new VariantPoolLight(new File(input1), "simA", false, false));
+		matrix.addVariantPool(new VariantPoolLight(new File(input2), "simB", false, false));
+		matrix.computeMatrix(2);
+
+		double[][] jaccard = matrix.getJaccard(), containment = matrix.getContainment();
+		assertEquals(4.0 / 7, jaccard[0][1], 1e-9);
+		assertEquals(jaccard[0][1], jaccard[1][0], 1e-9);
+		assertEquals(4.0 / 6, containment[0][1], 1e-9);
+		assertEquals(4.0 / 5, containment[1][0], 1e-9);
+	}
+
+	@Test
+	public void testPerSampleAndExact() throws Exception {
+		System.out.println(GREEN+"\nTest Per Sample And Exact"+RESET);
+
+		SimilarityMatrix matrix = new SimilarityMatrix(64, true);
+		matrix.addVariantPool(new VariantPoolLight(new File(input1), "simC", false, false));
+		matrix.addVariantPool(new VariantPoolLight(new File(input2), "simD", false, false));
+		matrix.computeMatrix(1);
+
+		ArrayList<String> names = matrix.getSetNames();
+		assertTrue(names.size() == 6);
+		assertTrue(names.get(0).equals("simC[NA00001]"));
+		assertTrue(names.get(3).equals("simD[NA00004]"));
+		assertEquals(0.5, matrix.getJaccard()[0][3], 1e-9);
+
+		int[] counts = matrix.exactCounts("simC[NA00001]", "simD[NA00004]");
+		assertTrue(counts[0] == 5 && counts[1] == 4 && counts[2] == 3);
+	}
+}
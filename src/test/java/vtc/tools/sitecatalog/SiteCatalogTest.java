@@ -0,0 +1,247 @@
+/**
+ *
+ */
+package vtc.tools.sitecatalog;
+
+import static org.junit.Assert.assertTrue;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+import rules.OnFail;
+import vtc.datastructures.CompressedBitmap;
+import vtc.datastructures.InvalidInputFileException;
+import vtc.datastructures.SupportedFileType;
+import vtc.datastructures.VariantPoolHeavy;
+import vtc.datastructures.VariantPoolLight;
+import vtc.tools.utilitybelt.UtilityBelt;
+
+/**
+ * @author markebbert
+ *
+ */
+public class SiteCatalogTest {
+
+	public static final String RED = "\u001B[31m";
+	public static final String GREEN = "\u001B[32m";
+	public static final String RESET = "\u001B[0m";
+
+	private static String input1 = "target/test-classes/UnionTests/testDifferentAltsAdded/input1.vcf";
+	private static String input2 = "target/test-classes/UnionTests/testDifferentAltsAdded/input2.vcf";
+	private static File catalogDir = new File("target/test-classes/OUTPUT/siteCatalog");
+
+	@BeforeClass
+	public static void setUpClass() throws Exception {
+		System.out.println(RED+"========================================================\n"
+				+ "                       SiteCatalogTest                  \n"
+				+ "========================================================\n"+RESET);
+	}
+
+	@Rule
+	public OnFail ruleExample = new OnFail();
+
+	@Before
+	public void clearCatalog(){
+		deleteRecursively(catalogDir);
+	}
+
+	@Test
+	public void testCompressedBitmapOperations() throws IOException {
+		System.out.println(GREEN+"\nTest Compressed Bitmap Operations"+RESET);
+
+		/* 'a' crosses into a bitmap container, 'b' stays sparse */
+		CompressedBitmap a = new CompressedBitmap();
+		CompressedBitmap b = new CompressedBitmap();
+		for(int i = 0; i < 10000; i++){
+			a.add(i);
+		}
+		b.add(5);
+		b.add(9999);
+		b.add(70000);
+
+		assertTrue(a.getCardinality() == 10000);
+		assertTrue(CompressedBitmap.and(a, b).getCardinality() == 2);
+		assertTrue(CompressedBitmap.or(a, b).getCardinality() == 10001);
+		assertTrue(CompressedBitmap.andNot(a, b).getCardinality() == 9998);
+		assertTrue(CompressedBitmap.andNot(b, a).contains(70000));
+	}
+
+	@Test
+	public void testSiteLevelOperations() throws IOException, InvalidInputFileException {
+		System.out.println(GREEN+"\nTest Site Level Operations"+RESET);
+
+		SiteCatalog catalog = new SiteCatalog(catalogDir);
+		assertTrue(catalog.ingest("f1", new File(input1)) == 6);
+		assertTrue(catalog.ingest("f2", new File(input2)) == 5);
+
+		assertTrue(catalog.intersect(Arrays.asList("f1", "f2")).getCardinality() == 4);
+		assertTrue(catalog.union(Arrays.asList("f1", "f2")).getCardinality() == 7);
+		assertTrue(catalog.complement(Arrays.asList("f1", "f2")).getCardinality() == 2);
+		assertTrue(catalog.complement(Arrays.asList("f2", "f1")).getCardinality() == 1);
+
+		/* Per-sample bitmaps only include sites where the sample carries the alt */
+		assertTrue(catalog.getBitmap("f1[NA00001]").getCardinality() == 5);
+		assertTrue(catalog.intersect(Arrays.asList("f1[NA00001]", "f2[NA00004]")).getCardinality() == 3);
+	}
+
+	@Test
+	public void testCatalogPersists() throws IOException, InvalidInputFileException {
+		System.out.println(GREEN+"\nTest Catalog Persists"+RESET);
+
+		SiteCatalog catalog = new SiteCatalog(catalogDir);
+		catalog.ingest("f1", new File(input1));
+		catalog.ingest("f2", new File(input2));
+
+		/* Reopen the catalog and make sure everything comes back from disk */
+		SiteCatalog reopened = new SiteCatalog(catalogDir);
+		assertTrue(reopened.getEntries().size() == 2);
+		assertTrue(reopened.getNumSites() == 7);
+		assertTrue(reopened.intersect(Arrays.asList("f1", "f2")).getCardinality() == 4);
+
+		/* Re-ingesting an unchanged file should not add sites */
+		reopened.ingest("f2", new File(input2));
+		assertTrue(new SiteCatalog(catalogDir).getNumSites() == 7);
+	}
+
+	@Test
+	public void testHydrateResult() throws Exception {
+		System.out.println(GREEN+"\nTest Hydrate Result"+RESET);
+
+		SiteCatalog catalog = new SiteCatalog(catalogDir);
+		catalog.ingest("f1", new File(input1));
+		catalog.ingest("f2", new File(input2));
+
+		ArrayList<String> operands = new ArrayList<String>(Arrays.asList("f1", "f2"));
+		VariantPoolHeavy vp = catalog.hydrate(catalog.complement(operands), operands, "comp");
+		assertTrue(vp.getNumVarRecords() == 2);
+		assertTrue(vp.getVariant("20", 14370, "G*") != null);
+		assertTrue(vp.getVariant("20", 1110696, "A*") != null);
+
+		String out = new File(catalogDir, "comp.vcf").getPath();
+		VariantPoolHeavy.printVariantPool(out, vp, new File(UtilityBelt.getHGREF()),
+				SupportedFileType.VCF, false);
+		VariantPoolLight written = new VariantPoolLight(new File(out), "written", false, false);
+		int count = 0;
+		VariantContext var;
+		while((var = written.getNextVar()) != null){
+			assertTrue(var.getStart() == 14370 || var.getStart() == 1110696);
+			assertTrue(var.getSampleNames().size() == 6);
+			count++;
+		}
+		assertTrue(count == 2);
+	}
+
+	@Test
+	public void testIngestWithoutIDs() throws Exception {
+		System.out.println(GREEN+"\nTest Ingest Without IDs"+RESET);
+
+		/* 'v2' is taken by a user-supplied ID, so it must not be generated */
+		SiteCatalog catalog = new SiteCatalog(catalogDir);
+		catalog.ingest("v2", new File(input2));
+
+		String[] args = {"-C", catalogDir.getPath(), "--ingest", input1};
+		new SiteCatalogEngine(args).catalog();
+		new SiteCatalogEngine(args).catalog();
+
+		/* The unchanged file was skipped the second time */
+		SiteCatalog reopened = new SiteCatalog(catalogDir);
+		assertTrue(reopened.getEntries().size() == 2);
+		assertTrue(reopened.getEntry("v2").getPath().equals(new File(input2).getCanonicalPath()));
+		assertTrue(reopened.getEntry("v3").getPath().equals(new File(input1).getCanonicalPath()));
+		assertTrue(reopened.findEntry(new File(input1)) == reopened.getEntry("v3"));
+	}
+
+	@Test(expected = InvalidInputFileException.class)
+	public void testInvalidID() throws Exception {
+		System.out.println(GREEN+"\nTest Invalid ID"+RESET);
+
+		new SiteCatalog(catalogDir).ingest("../f1", new File(input1));
+	}
+
+	@Test
+	public void testSamplesFromHeader() throws Exception {
+		System.out.println(GREEN+"\nTest Samples From Header"+RESET);
+
+		/* A file with no records still lists its samples */
+		SiteCatalog catalog = new SiteCatalog(catalogDir);
+		File headerOnly = new File(catalogDir, "headerOnly.vcf");
+		copyLines(new File(input1), headerOnly, true);
+
+		assertTrue(catalog.ingest("f1", new File(input1)) == 6);
+		assertTrue(catalog.ingest("empty", headerOnly) == 0);
+		assertTrue(catalog.getEntry("empty").getSamples().equals(catalog.getEntry("f1").getSamples()));
+		assertTrue(catalog.getEntry("empty").getSamples().size() == 3);
+		assertTrue(catalog.getBitmap("empty[NA00001]").getCardinality() == 0);
+	}
+
+	/**
+	 * An intersect is hydrated from its first operand's VCF alone, and a
+	 * union stops reading each VCF once its part of the result is found
+	 * @throws Exception
+	 */
+	@Test
+	public void testHydrateReadsOnlyNeededRecords() throws Exception {
+		System.out.println(GREEN+"\nTest Hydrate Reads Only Needed Records"+RESET);
+
+		SiteCatalog catalog = new SiteCatalog(catalogDir);
+		File copy2 = new File(catalogDir, "input2.vcf");
+		copyLines(new File(input2), copy2, false);
+		catalog.ingest("f1", new File(input1));
+		catalog.ingest("f2", copy2);
+
+		/* Break the end of f2. Its sites are all in f1 or found before it. */
+		PrintWriter writer = new PrintWriter(new FileWriter(copy2, true));
+		writer.println("not a record");
+		writer.close();
+
+		ArrayList<String> operands = new ArrayList<String>(Arrays.asList("f1", "f2"));
+		VariantPoolHeavy vp = catalog.hydrate(catalog.intersect(operands), operands, "int");
+		assertTrue(vp.getNumVarRecords() == 3);
+		assertTrue(vp.getVariant("20", 17330, "G*") != null);
+		assertTrue(vp.getVariant("20", 1110696, "A*") != null);
+		assertTrue(vp.getVariant("20", 1234567, "GTC*") != null);
+		assertTrue(vp.getSamples().size() == 6);
+
+		/* f2's only new site (14370 G>T) is in its first record, at a
+		 * position already taken from f1
+		 */
+		vp = catalog.hydrate(catalog.union(operands), operands, "uni");
+		assertTrue(vp.getNumVarRecords() == 4);
+		assertTrue(vp.getVariant("20", 14370, "G*") != null);
+	}
+
+	/**
+	 * Copy 'from' to 'to', or just its header if 'headerOnly'
+	 */
+	private static void copyLines(File from, File to, boolean headerOnly) throws IOException{
+		BufferedReader reader = new BufferedReader(new FileReader(from));
+		PrintWriter writer = new PrintWriter(to);
+		String line;
+		while((line = reader.readLine()) != null && (!headerOnly || line.startsWith("#"))){
+			writer.println(line);
+		}
+		reader.close();
+		writer.close();
+	}
+
+	private static void deleteRecursively(File f){
+		if(f.isDirectory()){
+			for(File child : f.listFiles()){
+				deleteRecursively(child);
+			}
+		}
+		f.delete();
+	}
+}
@@ -90,6 +90,49 @@ public class UtilityBeltTest {
 		}
 	}
 
+	/**
+	 * Pools read in parallel must match pools read one at a time, including
+	 * the pool IDs generated for inputs without one.
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void testCreateVariantPoolsInParallel() throws Exception {
+		System.out.println(GREEN+"\nTest Create Variant Pools In Parallel"+RESET);
+
+		ArrayList<String> testlist = new ArrayList<String>();
+		testlist.add("target/test-classes/1000_genomes_example.vcf");
+		testlist.add("par2=target/test-classes/1000_genomes_example-modified.vcf");
+		testlist.add("target/test-classes/multiple_alts.vcf");
+		testlist.add("par4=target/test-classes/15-0.vcf");
+
+		TreeMap<String, VariantPoolHeavy> serial = UtilityBelt.createHeavyVariantPools(testlist, false, 1);
+		TreeMap<String, VariantPoolHeavy> parallel = UtilityBelt.createHeavyVariantPools(testlist, false, 4);
+		assertTrue(serial.size() == 4 && parallel.size() == 4);
+
+		ArrayList<String> serialIDs = new ArrayList<String>(serial.keySet());
+		ArrayList<String> parallelIDs = new ArrayList<String>(parallel.keySet());
+		for(int i = 0; i < serialIDs.size(); i++){
+			VariantPoolHeavy s = serial.get(serialIDs.get(i));
+			VariantPoolHeavy p = parallel.get(parallelIDs.get(i));
+			assertTrue(s.getFile().equals(p.getFile()));
+			assertTrue(s.getNumVarRecords() == p.getNumVarRecords());
+			assertTrue(s.getSamples().equals(p.getSamples()));
+		}
+
+		/* Generated IDs follow the input order */
+		String first = null, third = null;
+		for(String id : parallelIDs){
+			if(parallel.get(id).getFile().getName().equals("1000_genomes_example.vcf")){
+				first = id;
+			}
+			else if(parallel.get(id).getFile().getName().equals("multiple_alts.vcf")){
+				third = id;
+			}
+		}
+		assertTrue(Integer.parseInt(third.replaceAll("\\D", "")) == Integer.parseInt(first.replaceAll("\\D", "")) + 1);
+	}
+
 	/**
 	 * Test method for
 	 * {@link vtc.tools.utilitybelt.UtilityBelt#getSmallestLength(java.util.TreeSet)}.
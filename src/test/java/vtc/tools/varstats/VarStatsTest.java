@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
@@ -28,6 +29,7 @@ import vtc.datastructures.InvalidInputFileException;
 import vtc.datastructures.VariantPoolHeavy;
 import vtc.datastructures.VariantPoolLight;
 import vtc.tools.setoperator.operation.InvalidOperationException;
+import vtc.tools.shard.ShardResults;
 import vtc.tools.utilitybelt.UtilityBelt;
 
 /**
@@ -328,6 +330,45 @@ public class VarStatsTest {
 
 	}
 	
+	@Test
+	public void testSummaryWithCombinedDetailedSummary() throws Exception{
+		System.out.println(GREEN+"\nTest Summary With Combined Detailed Summary\n"+RESET);
+		
+		/* The combined detailed summary keeps one record per chr:pos:ref.
+		 * The summary must still count every record in the file.
+		 */
+		String input1 = "target/test-classes/SummaryTests/TestBasicSummaryValues/input1.vcf";
+		String duplicates = "target/test-classes/OUTPUT/Varstats/duplicates.vcf";
+		String out = "target/test-classes/OUTPUT/Varstats/duplicates";
+		String shardResults = "target/test-classes/OUTPUT/Varstats/duplicates.shard";
+		
+		Scanner in = new Scanner(new File(input1));
+		PrintWriter writer = new PrintWriter(duplicates);
+		boolean duplicated = false;
+		String line;
+		while(in.hasNextLine()){
+			line = in.nextLine();
+			writer.println(line);
+			if(!duplicated && !line.startsWith("#")){
+				writer.println(line);
+				duplicated = true;
+			}
+		}
+		in.close();
+		writer.close();
+		
+		String arguments = "VS -i var1=" + duplicates + " -s I -d C -o " + out + " --shard-results " + shardResults;
+		String[] args = arguments.split(" ");
+		VTCEngine.main(args);
+		
+		HashMap<String, VariantPoolSummary> summaries =
+				ShardResults.read(Arrays.asList(shardResults)).getSummaries();
+		assertEquals(1, summaries.size());
+		for(VariantPoolSummary summary : summaries.values()){
+			assertEquals(11, summary.getNumRecords());
+		}
+	}
+	
 	@Test
 	public void testIndDetailedSummary() throws IOException{	
 		System.out.println(GREEN+"\nTest Individual Dedailed Summary\n"+RESET);	